@@ -1,7 +1,9 @@
 package icecube.daq.bindery;
 
 
+import icecube.daq.performance.diagnostic.LatencyHistogram;
 import icecube.daq.performance.diagnostic.Metered;
+import icecube.daq.performance.diagnostic.SampledQueueTimer;
 import icecube.daq.performance.common.PowersOfTwo;
 import icecube.daq.performance.queue.QueueProvider;
 import icecube.daq.performance.queue.QueueStrategy;
@@ -29,6 +31,15 @@ public class AsyncSorterOutput implements BufferConsumer, Runnable
 
     private final Metered.Buffered meter;
 
+    /** Sample period of the delivery latency measurement. */
+    private static final PowersOfTwo LATENCY_SAMPLE_PERIOD = PowersOfTwo._16;
+
+    /** Stamps sampled buffers on the way through the queue. */
+    private final SampledQueueTimer queueTimer;
+
+    /** Latency from consume() to delivery at the delegate. */
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
 
     private static Logger logger = Logger.getLogger(AsyncSorterOutput.class);
 
@@ -54,6 +65,8 @@ public class AsyncSorterOutput implements BufferConsumer, Runnable
         this.delegate = delegate;
 
         this.q = QueueProvider.Subsystem.SORTER_OUTPUT.createQueue(capacity);
+        this.queueTimer = new SampledQueueTimer(capacity,
+                LATENCY_SAMPLE_PERIOD);
 
         executor = new Thread(this);
         executor.setName(threadName);
@@ -92,6 +105,17 @@ public class AsyncSorterOutput implements BufferConsumer, Runnable
         return executor.isAlive();
     }
 
+    /**
+     * Provides the latency from consume() to delivery of buffers to the
+     * delegate, inclusive of the delegate consume() call.
+     *
+     * @return The delivery latency histogram.
+     */
+    public LatencyHistogram getDeliveryLatency()
+    {
+        return deliveryLatency;
+    }
+
 
 
     @Override
@@ -104,7 +128,9 @@ public class AsyncSorterOutput implements BufferConsumer, Runnable
 
             try
             {
+                queueTimer.stamp();
                 q.enqueue(buf);
+                queueTimer.commit();
             }
             catch (InterruptedException e)
             {
@@ -132,6 +158,7 @@ public class AsyncSorterOutput implements BufferConsumer, Runnable
             while (running)
             {
                 ByteBuffer buf = q.dequeue();
+                final long enqueueNanos = queueTimer.dequeue();
                 meter.reportOut(buf.remaining());
 
                 // todo use record reader
@@ -144,6 +171,12 @@ public class AsyncSorterOutput implements BufferConsumer, Runnable
                 {
                     // todo use record reader
                     delegate.consume(buf);
+
+                    if(enqueueNanos != SampledQueueTimer.NOT_SAMPLED)
+                    {
+                        deliveryLatency.record(System.nanoTime() -
+                                enqueueNanos);
+                    }
                 }
             }
         }
@@ -4,6 +4,8 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Comparator;
 
+import icecube.daq.performance.diagnostic.SampledQueueTimer;
+
 /**
  * Compare DAQBuffer objects
  */
@@ -30,6 +32,11 @@ class DAQBuffer
     ByteBuffer buf;
     long mbid;
     long timestamp;
+    /**
+     * System monotonic time at which the buffer entered the sort input
+     * queue, or SampledQueueTimer.NOT_SAMPLED.
+     */
+    long inputNanos = SampledQueueTimer.NOT_SAMPLED;
     private String str;
 
     /**
@@ -4,10 +4,14 @@ import icecube.daq.hkn1.Node;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import icecube.daq.performance.common.PowersOfTwo;
+import icecube.daq.performance.diagnostic.LatencyHistogram;
 import icecube.daq.performance.diagnostic.Metered;
+import icecube.daq.performance.diagnostic.SampledQueueTimer;
 import icecube.daq.performance.queue.QueueProvider;
 import icecube.daq.performance.queue.QueueStrategy;
 import org.apache.log4j.Logger;
@@ -73,6 +77,22 @@ public class MultiChannelMergeSort
     /** Meters for tracing throughput. */
     private final Metered.UTCBuffered sortMeter;
 
+    /** Latency from consume() to sort output. */
+    private final LatencyHistogram sortLatency = new LatencyHistogram();
+
+    /** Sample period of the sort latency measurement, per channel. */
+    private static final PowersOfTwo LATENCY_SAMPLE_PERIOD = PowersOfTwo._256;
+
+    /**
+     * Stamps sampled buffers of each channel on the way through the input
+     * queue. The queue has many producers but each channel has one, and
+     * its buffers keep their order through the queue.
+     */
+    private final ConcurrentHashMap<Long, SampledQueueTimer> queueTimers =
+            new ConcurrentHashMap<Long, SampledQueueTimer>();
+
+    private final PowersOfTwo maxQueue;
+
     /** Default bound of input queue. */
     public static final PowersOfTwo DEFAULT_INPUT_MAX = PowersOfTwo._131072;
 
@@ -101,6 +121,7 @@ public class MultiChannelMergeSort
         final QueueStrategy<ByteBuffer> queue =
           QueueProvider.Subsystem.SORTER_INPUT.createQueue(maxQueue);
         q = new MeteredQueue(queue, queueMeter);
+        this.maxQueue = maxQueue;
         inputCounter = 0;
         outputCounter = 0;
 
@@ -157,7 +178,17 @@ public class MultiChannelMergeSort
     {
         try
         {
-            q.enqueue(buf);
+            final SampledQueueTimer timer = timerOf(buf);
+            if (timer != null)
+            {
+                timer.stamp();
+                q.enqueue(buf);
+                timer.commit();
+            }
+            else
+            {
+                q.enqueue(buf);
+            }
         }
         catch (Throwable th)
         {
@@ -181,6 +212,15 @@ public class MultiChannelMergeSort
     @Override
     public synchronized int getQueueSize() { return q.size(); }
 
+    /**
+     * Provides the latency of buffers through the sort, measured from
+     * consume(), including the wait in the input queue, to delivery to
+     * the output consumer. One buffer in 256 of each channel is sampled.
+     *
+     * @return The sort latency histogram.
+     */
+    public LatencyHistogram getSortLatency() { return sortLatency; }
+
     /**
      * Register a channel with the sort.
      * @param mbid
@@ -189,6 +229,32 @@ public class MultiChannelMergeSort
     public synchronized void register(long mbid)
     {
         inputMap.put(mbid, new Node<DAQBuffer>(bufferCmp));
+        queueTimers.put(mbid,
+                new SampledQueueTimer(maxQueue, LATENCY_SAMPLE_PERIOD));
+    }
+
+    /**
+     * @return The queue timer of the buffer's channel, or null for
+     *         end-of-stream markers and unregistered channels, which
+     *         are not timed.
+     */
+    private SampledQueueTimer timerOf(final ByteBuffer buf)
+    {
+        if (bigEndianLong(buf, 24) == Long.MAX_VALUE)
+        {
+            return null;
+        }
+        return queueTimers.get(bigEndianLong(buf, 8));
+    }
+
+    /**
+     * Read a field as DAQBuffer does, without changing the buffer order.
+     */
+    private static long bigEndianLong(final ByteBuffer buf, final int index)
+    {
+        final long value = buf.getLong(index);
+        return (buf.order() == ByteOrder.BIG_ENDIAN) ? value :
+                Long.reverseBytes(value);
     }
 
     @Override
@@ -202,9 +268,13 @@ public class MultiChannelMergeSort
             try
             {
                 ByteBuffer buf = q.dequeue();
+                final SampledQueueTimer timer = timerOf(buf);
+                final long enqueueNanos = (timer == null) ?
+                        SampledQueueTimer.NOT_SAMPLED : timer.dequeue();
                 int inSize = buf.remaining();
 
                 DAQBuffer daqBuffer = new DAQBuffer(buf);
+                daqBuffer.inputNanos = enqueueNanos;
                 lastInputUT = daqBuffer.timestamp;
 
 
@@ -257,6 +327,12 @@ public class MultiChannelMergeSort
                             out.consume(sorted.buf);
                             outputCounter++;
                             sortMeter.reportOut(outSize, sorted.timestamp);
+                            if (sorted.inputNanos !=
+                                    SampledQueueTimer.NOT_SAMPLED)
+                            {
+                                sortLatency.record(System.nanoTime() -
+                                        sorted.inputNanos);
+                            }
                         }
                     }
                 }
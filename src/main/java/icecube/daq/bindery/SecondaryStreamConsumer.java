@@ -8,7 +8,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.WritableByteChannel;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 
@@ -19,7 +19,39 @@ import org.apache.log4j.Logger;
  */
 public class SecondaryStreamConsumer implements BufferConsumer
 {
-    private HashMap<Integer, Integer> idMap     = new HashMap<Integer, Integer>();
+    /**
+     * Forwarded payloads are held and handed to the output channel
+     * together, up to this many at a time. Each payload keeps its own
+     * buffer, so the channel still receives one payload per buffer.
+     * One, the default, hands over each payload as it is translated.
+     */
+    private static final int BATCH_PAYLOADS =
+        Integer.getInteger("icecube.daq.bindery.secondary-batch-payloads", 1);
+
+    /**
+     * The maximum span of payload times held in a batch, in 1/10 ns.
+     * Defaults to one second.
+     */
+    private static final long BATCH_SPAN =
+        Long.getLong("icecube.daq.bindery.secondary-batch-span",
+                10000000000L);
+
+    /** Translates pdaq format IDs to payload IDs, indexed by format ID. */
+    private static final int[] FORMAT_TABLE = new int[512];
+    static
+    {
+        Arrays.fill(FORMAT_TABLE, -1);
+        FORMAT_TABLE[102] = 5;
+        FORMAT_TABLE[202] = 4;
+        FORMAT_TABLE[302] = 16;
+    }
+
+    /** Size of the TestDAQ record header. */
+    private static final int RECORD_HEADER = 32;
+
+    /** Size of the payload header. */
+    private static final int PAYLOAD_HEADER = 24;
+
     private OutputChannel outputChannel= null;
     private IByteBufferCache cacheMgr           = null;
     private static final Logger logger          = Logger.getLogger(SecondaryStreamConsumer.class);
@@ -30,6 +62,14 @@ public class SecondaryStreamConsumer implements BufferConsumer
     private int prescale;
     private int prescaleCounter = 0;
 
+    /** Reused for payloads written only to the debug channel. */
+    private ByteBuffer debugScratch = ByteBuffer.allocate(1024);
+
+    /** Payloads awaiting delivery, in order. */
+    private final ByteBuffer[] batch;
+    private int batchCount;
+    private long batchFirstUTC;
+
     public SecondaryStreamConsumer(int hubId, IByteBufferCache cacheMgr, OutputChannel outputChannel)
     {
         this(hubId, cacheMgr, outputChannel, 1);
@@ -37,13 +77,39 @@ public class SecondaryStreamConsumer implements BufferConsumer
 
 	public SecondaryStreamConsumer(int hubId, IByteBufferCache cacheMgr, OutputChannel outputChannel, int prescale)
     {
+        this(hubId, cacheMgr, outputChannel, prescale, BATCH_PAYLOADS);
+	}
+
+    /**
+     * @param batchPayloads Hand forwarded payloads to the output channel
+     *                      in batches of up to this many.
+     */
+    public SecondaryStreamConsumer(int hubId, IByteBufferCache cacheMgr, OutputChannel outputChannel, int prescale,
+                                   int batchPayloads)
+    {
+        if (batchPayloads < 1)
+        {
+            throw new IllegalArgumentException("Bad batch size " + batchPayloads);
+        }
         this.outputChannel = outputChannel;
         this.cacheMgr = cacheMgr;
         this.prescale = prescale;
-        idMap.put(102, 5);
-        idMap.put(202, 4);
-        idMap.put(302, 16);
-	}
+        this.batch = new ByteBuffer[batchPayloads];
+    }
+
+    /**
+     * Translate a pdaq format ID to the secondary stream payload ID.
+     *
+     * @return The payload ID, or -1 if the format is unknown.
+     */
+    static int translateFormat(int fmtid)
+    {
+        if (fmtid >= 0 && fmtid < FORMAT_TABLE.length)
+        {
+            return FORMAT_TABLE[fmtid];
+        }
+        return -1;
+    }
 
 	public void setDebugChannel(WritableByteChannel ch) { dbgChan = ch; }
 
@@ -55,47 +121,106 @@ public class SecondaryStreamConsumer implements BufferConsumer
 	public void consume(ByteBuffer buf) throws IOException
 	{
         buf.order(ByteOrder.BIG_ENDIAN);
-        int recl  = buf.getInt();
-        int fmtid = buf.getInt();
-        long mbid = buf.getLong();
-        buf.position(buf.position() + 8);
-        long utc  = buf.getLong();
+        final int base = buf.position();
+        int recl  = buf.getInt(base);
+        int fmtid = buf.getInt(base + 4);
+        long mbid = buf.getLong(base + 8);
+        long utc  = buf.getLong(base + 24);
 
         if (recl == 32 && utc == Long.MAX_VALUE)
         {
+            flushBatch();
             logger.info("Stopping payload destinations");
             outputChannel.sendLastAndStop();
+            if (dbgChan != null)
+            {
+                dbgChan.close();
+            }
         }
         else
         {
-            int id;
-            if (idMap.containsKey(fmtid)) {
-                id = idMap.get(fmtid);
-            } else {
+            int id = translateFormat(fmtid);
+            if (id < 0) {
                 logger.error("Unknown format ID " + fmtid);
-                id = -1;
             }
 
-            ByteBuffer payloadBuffer = cacheMgr.acquireBuffer(recl-8);
-            payloadBuffer.putInt(recl-8);
-            payloadBuffer.putInt(id);
-            payloadBuffer.putLong(utc);
-            payloadBuffer.putLong(mbid);
-            payloadBuffer.put(buf);
-            payloadBuffer.flip();
+            // prescale before acquiring a buffer
+            final boolean forward = prescale <= 0 || ++prescaleCounter == prescale;
+            if (forward)
+            {
+                prescaleCounter = 0;
+            }
+
+            final int length = recl - (RECORD_HEADER - PAYLOAD_HEADER);
+
             if (dbgChan != null)
             {
-                dbgChan.write(payloadBuffer);
-                payloadBuffer.rewind();
+                if (debugScratch.capacity() < length)
+                {
+                    debugScratch = ByteBuffer.allocate(Math.max(length, 2 * debugScratch.capacity()));
+                }
+                debugScratch.clear();
+                translate(buf, base, recl, id, mbid, utc, debugScratch);
+                debugScratch.flip();
+                dbgChan.write(debugScratch);
+            }
+
+            if (!forward)
+            {
+                return;
+            }
+
+            ByteBuffer payloadBuffer = cacheMgr.acquireBuffer(length);
+            translate(buf, base, recl, id, mbid, utc, payloadBuffer);
+            payloadBuffer.flip();
+
+            if (batchCount > 0 && utc - batchFirstUTC >= BATCH_SPAN)
+            {
+                flushBatch();
             }
-            if (prescale <=0 || ++prescaleCounter == prescale)
+            if (batchCount == 0)
             {
-                outputChannel.receiveByteBuffer(payloadBuffer);
-                prescaleCounter = 0;
+                batchFirstUTC = utc;
+            }
+            batch[batchCount++] = payloadBuffer;
+            if (batchCount == batch.length)
+            {
+                flushBatch();
             }
         }
     }
 
+    /**
+     * Hand the held payloads to the output channel, one buffer each.
+     */
+    private void flushBatch()
+    {
+        for (int i = 0; i < batchCount; i++)
+        {
+            outputChannel.receiveByteBuffer(batch[i]);
+            batch[i] = null;
+        }
+        batchCount = 0;
+    }
+
+    /**
+     * Write a record as a payload, the 32-byte record header is replaced
+     * by the 24-byte payload header.
+     */
+    private static void translate(ByteBuffer buf, int base, int recl, int id, long mbid, long utc,
+                                  ByteBuffer dest)
+    {
+        dest.putInt(recl - (RECORD_HEADER - PAYLOAD_HEADER));
+        dest.putInt(id);
+        dest.putLong(utc);
+        dest.putLong(mbid);
+
+        final int limit = buf.limit();
+        buf.limit(base + recl).position(base + RECORD_HEADER);
+        dest.put(buf);
+        buf.limit(limit);
+    }
+
     /**
      * There will be no more data.
      */
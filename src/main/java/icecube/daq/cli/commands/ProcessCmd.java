@@ -5,15 +5,22 @@ import icecube.daq.cli.options.*;
 import icecube.daq.cli.stream.DataSource;
 import icecube.daq.cli.stream.RecordType;
 import icecube.daq.cli.util.ArchiveWriter;
+import icecube.daq.cli.util.ShredWriter;
 import icecube.daq.cli.util.UTCResolver;
 import icecube.daq.performance.binary.record.RecordReader;
+import icecube.daq.performance.binary.record.pdaq.TypeCodeRecordReader;
 import picocli.CommandLine;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
 /**
  * Command to set up a processing pipeline for pdaq data
@@ -35,7 +42,8 @@ public class ProcessCmd
                         "   examples:%n" +
                         "    \"/x/y/out.dat\"%n" +
                         "    \"/x/y/out.dat.gz\"%n" +
-                        "    \"/x/y/out.dat.bz2\"%n",
+                        "    \"/x/y/out.dat.bz2\"%n" +
+                        "    \"/x/y/out.dat.zst\"%n",
                 converter = OutputOptions.class)
         BufferConsumer output = new BufferConsumer()
         {
@@ -55,20 +63,21 @@ public class ProcessCmd
         @Override
         public BufferConsumer convert(String s) throws Exception
         {
-            return new ArchiveWriter(new File(s));
+            return ArchiveWriter.open(new File(s));
         }
     }
 
     static class Meter implements Consumer<ByteBuffer>
     {
-        long byteCount;
-        long recordCount;
+        // may be updated from parallel streams
+        final LongAdder byteCount = new LongAdder();
+        final LongAdder recordCount = new LongAdder();
         long start_ns, stop_ns;
         @Override
         public void accept(ByteBuffer byteBuffer)
         {
-            recordCount++;
-            byteCount += byteBuffer.remaining();
+            recordCount.increment();
+            byteCount.add(byteBuffer.remaining());
         }
 
         void recordStartTime()
@@ -90,7 +99,7 @@ public class ProcessCmd
             final double elapseSec = elapsedSeconds();
             if(elapseSec > 0)
             {
-                return byteCount / elapseSec / 1024 / 1024;
+                return byteCount.sum() / elapseSec / 1024 / 1024;
             }
             else
             {
@@ -109,6 +118,7 @@ public class ProcessCmd
 
         long minTime = Long.MAX_VALUE;
         long maxTime = Long.MIN_VALUE;
+        long firstTime = Long.MAX_VALUE;
         long lastTime = minTime;
 
         boolean monotonic = true;
@@ -141,6 +151,9 @@ public class ProcessCmd
                 if(lastTime != Long.MAX_VALUE && utc < lastTime){
                     monotonic = false;
                 }
+                if(firstTime == Long.MAX_VALUE){
+                    firstTime = utc;
+                }
                 minTime = Math.min(utc, minTime);
                 maxTime = Math.max(utc, maxTime);
                 lastTime = utc;
@@ -150,6 +163,27 @@ public class ProcessCmd
             }
         }
 
+        /**
+         * Merge the summary of the records which follow this summary's
+         * records in the stream, supports parallel collection.
+         */
+        void combine(Summary following)
+        {
+            if(following.firstTime != Long.MAX_VALUE)
+            {
+                if(lastTime != Long.MAX_VALUE && following.firstTime < lastTime){
+                    monotonic = false;
+                }
+                if(firstTime == Long.MAX_VALUE){
+                    firstTime = following.firstTime;
+                }
+                lastTime = following.lastTime;
+            }
+            monotonic &= following.monotonic;
+            minTime = Math.min(minTime, following.minTime);
+            maxTime = Math.max(maxTime, following.maxTime);
+        }
+
     }
 
     @CommandLine.Command(name = "extract", description = "Extract records from a source", mixinStandardHelpOptions = true)
@@ -170,21 +204,21 @@ public class ProcessCmd
         public Integer call() throws Exception
         {
 
-            DataSource dataSource = sourceOptions.getDataSource();
+            DataSource dataSource = pipelineOption.plan(sourceOptions.getDataSource());
             RecordType recordType = dataSource.getRecordType();
-            PipelineOption.StreamTail tail = new PipelineOption.StreamTail(dataSource.stream(), recordType);
 
             // install meter
             Meter meter = new Meter();
 
             // install pipeline
-            tail = new PipelineOption.StreamTail(dataSource.stream().peek(meter), recordType);
+            PipelineOption.StreamTail tail =
+                    new PipelineOption.StreamTail(pipelineOption.stream(dataSource).peek(meter), recordType);
             tail = pipelineOption.plumb(tail);
 
 
             // process stream
             meter.recordStartTime();
-            tail.stream.forEach(new Consumer<ByteBuffer>()
+            pipelineOption.forEach(tail, new Consumer<ByteBuffer>()
             {
                 @Override
                 public void accept(ByteBuffer byteBuffer)
@@ -203,7 +237,7 @@ public class ProcessCmd
                 meter.recordStopTime();
 
                 System.out.printf("Processed %d bytes (%d %s records) in %.02f seconds (%.02f mb/s)%n",
-                        meter.byteCount, meter.recordCount, recordType.keyword,
+                        meter.byteCount.sum(), meter.recordCount.sum(), recordType.keyword,
                         meter.elapsedSeconds(), meter.throughput());
 
 
@@ -223,6 +257,11 @@ public class ProcessCmd
         @CommandLine.Mixin
         UTCOption utcOption = new UTCOption();
 
+        @CommandLine.Option(names={"--parallel"}, required = false,
+                description = "Summarize with a parallel stream. Uncompressed sources are memory-mapped " +
+                        "and split at file and record boundaries")
+        boolean parallel;
+
         @Override
         public Integer call() throws Exception
         {
@@ -233,10 +272,11 @@ public class ProcessCmd
             DataSource dataSource = sourceOption.getDataSource();
             RecordType recordType = dataSource.getRecordType();
 
-            Summary summary = new Summary(recordType);
             Meter meter = new Meter();
             meter.recordStartTime();
-            dataSource.stream().peek(meter).forEach(summary);
+            Stream<ByteBuffer> stream = parallel ? dataSource.parallelStream() : dataSource.stream();
+            Summary summary = stream.peek(meter).collect(() -> new Summary(recordType),
+                    Summary::accept, Summary::combine);
             meter.recordStopTime();
 
 
@@ -253,8 +293,8 @@ public class ProcessCmd
             TimeOption.TimeDuration timeDuration = new TimeOption.TimeDuration(summary.maxTime - summary.minTime);
             System.out.printf("Time Duration:   %s%n", timeDuration.toString());
             System.out.printf("Well Ordered:    %s%n", summary.monotonic ? "Yes" : "No");
-            System.out.printf("Num Bytes:       %d%n", meter.byteCount);
-            System.out.printf("Num Records:     %d%n", meter.recordCount);
+            System.out.printf("Num Bytes:       %d%n", meter.byteCount.sum());
+            System.out.printf("Num Records:     %d%n", meter.recordCount.sum());
             System.out.printf("Processing Time: %02f seconds%n", meter.elapsedSeconds());
             System.out.printf("Processing Rate: %02f mb/s%n", meter.throughput());
 
@@ -266,19 +306,163 @@ public class ProcessCmd
     @CommandLine.Command(name = "shred", description = "split a data source into multiple files based on demux criteria", mixinStandardHelpOptions = true)
     public static class Shred implements Callable<Integer>
     {
+        /**
+         * The demux criteria.
+         */
+        enum Demux
+        {
+            MBID,
+            TYPE,
+            UTC
+        }
+
+        @CommandLine.Spec
+        CommandLine.Model.CommandSpec spec;
+
         @CommandLine.Mixin
-        DataSourceOption  sourceOption;
+        PipelineOption pipelineOption = new PipelineOption();
+
+        @CommandLine.Mixin
+        DataSourceOption  sourceOption = new DataSourceOption();
+
+        @CommandLine.Option(names = {"--output"}, required = true,
+                description = "The output target, the demux key is inserted ahead of the compression suffix%n" +
+                        "   examples:%n" +
+                        "    \"/x/y/out.dat\" yields [/x/y/out.dat.<key>, ...]%n" +
+                        "    \"/x/y/out.dat.gz\" yields [/x/y/out.dat.<key>.gz, ...]%n" +
+                        "    \"/x/y/out.dat.bz2\" yields [/x/y/out.dat.<key>.bz2, ...]%n" +
+                        "    \"/x/y/out.dat.zst\" yields [/x/y/out.dat.<key>.zst, ...]%n",
+                paramLabel = "OUTPUT_SPEC")
+        String output;
+
+        @CommandLine.Option(names = {"--by"}, required = false,
+                description = "Demux records by dom mbid, record type or utc bucket: " +
+                        "[${COMPLETION-CANDIDATES}] (default: ${DEFAULT-VALUE})")
+        Demux demux = Demux.MBID;
+
+        @CommandLine.Option(names = {"--bucket"}, required = false,
+                description = "The width of utc buckets for --by UTC (default: 1h)",
+                converter = TimeOption.DurationParameterConverter.class)
+        TimeOption.TimeDuration bucket = new TimeOption.TimeDuration(TimeOption.TENTH_NANOS_PER_HOUR);
+
+        @CommandLine.Option(names = {"--max-open-files"}, required = false,
+                description = "The maximum number of output files held open (default: ${DEFAULT-VALUE})")
+        int maxOpenFiles = 256;
+
+        @CommandLine.Option(names = {"--buffer-kb"}, required = false,
+                description = "The write buffer size per output file (default: ${DEFAULT-VALUE})")
+        int bufferKB = 256;
+
+        @CommandLine.Option(names = {"--max-buffered-mb"}, required = false,
+                description = "The maximum memory held in write buffers (default: ${DEFAULT-VALUE})")
+        int maxBufferedMB = 512;
+
+        @CommandLine.Option(names = {"--compression-threads"}, required = false,
+                description = "The number of threads compressing output, 1 compresses " +
+                        "on the writing thread (default: ${DEFAULT-VALUE})")
+        int compressionThreads = ArchiveWriter.COMPRESSION_THREADS;
 
 
         @Override
         public Integer call() throws Exception
         {
-            DataSource dataSource = sourceOption.getDataSource();
+            DataSource dataSource = pipelineOption.plan(sourceOption.getDataSource());
+            RecordType recordType = dataSource.getRecordType();
+
+            // install meter
+            Meter meter = new Meter();
+
+            // install pipeline
+            PipelineOption.StreamTail tail =
+                    new PipelineOption.StreamTail(pipelineOption.stream(dataSource).peek(meter), recordType);
+            tail = pipelineOption.plumb(tail);
 
-            //dataSource.stream()
+            ExecutorService workers = compressionThreads > 1 ?
+                    Executors.newFixedThreadPool(compressionThreads) : null;
+            try
+            {
+                ShredWriter writer = new ShredWriter(keyFunction(tail.outType),
+                        key -> new File(DataOutputOption.FileOutputOption.streamFileName(output, keyName(key))),
+                        workers, maxOpenFiles, bufferKB * 1024, maxBufferedMB * 1024L * 1024L);
+
+                // process stream
+                meter.recordStartTime();
+                pipelineOption.forEach(tail, new Consumer<ByteBuffer>()
+                {
+                    @Override
+                    public void accept(ByteBuffer byteBuffer)
+                    {
+                        try {
+                            writer.consume(byteBuffer);
+                        } catch (IOException e) {
+                            throw new Error(e);
+                        }
+                    }
+                });
 
-            throw new Error("Unimplimented");
+                writer.endOfStream(-1);
+                meter.recordStopTime();
+
+                System.out.printf("Processed %d bytes (%d %s records) into %d files in %.02f seconds (%.02f mb/s)%n",
+                        meter.byteCount.sum(), meter.recordCount.sum(), tail.outType.keyword,
+                        writer.getFiles().size(), meter.elapsedSeconds(), meter.throughput());
+            }
+            finally
+            {
+                if(workers != null)
+                {
+                    workers.shutdownNow();
+                }
+            }
 
+            return 0;
+        }
+
+        private ToLongFunction<ByteBuffer> keyFunction(RecordType recordType)
+        {
+            switch (demux)
+            {
+                case MBID:
+                    RecordReader.LongField mbidField = recordType.rr.getMbidField();
+                    if(mbidField == RecordReader.NO_MBID_FIELD)
+                    {
+                        throw new CommandLine.ParameterException(spec.commandLine(),
+                                recordType.keyword + " records do not have an mbid");
+                    }
+                    return bb -> mbidField.value(bb, 0);
+                case TYPE:
+                    return bb -> TypeCodeRecordReader.instance.getTypeId(bb);
+                case UTC:
+                    RecordReader.LongField orderingField = recordType.rr.getOrderingField();
+                    if(orderingField == RecordReader.NO_ORDER_FIELD)
+                    {
+                        throw new CommandLine.ParameterException(spec.commandLine(),
+                                recordType.keyword + " records do not have a utc time");
+                    }
+                    final long width = bucket.tenth_nanos;
+                    if(width <= 0)
+                    {
+                        throw new CommandLine.ParameterException(spec.commandLine(),
+                                "--bucket must be positive");
+                    }
+                    return bb -> Math.floorDiv(orderingField.value(bb, 0), width);
+                default:
+                    throw new Error("Unknown demux: " + demux);
+            }
+        }
+
+        private String keyName(long key)
+        {
+            switch (demux)
+            {
+                case MBID:
+                    return String.format("%012x", key);
+                case UTC:
+                    // named by the start of the bucket
+                    return Long.toString(key * bucket.tenth_nanos);
+                default:
+                    return Long.toString(key);
+            }
         }
     }
 
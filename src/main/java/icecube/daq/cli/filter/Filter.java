@@ -20,8 +20,32 @@ public interface Filter
 
     String describe();
 
+    /**
+     * Records are tested in place and may be views which are only valid
+     * until the stream advances, a predicate that retains a record must
+     * copy it, see RecordStream.copy().
+     */
     Predicate<ByteBuffer> asPredicate(RecordType recordType);
 
+    /**
+     * @return True if the predicate carries state across records and
+     *         must see them sequentially, in encounter order.
+     */
+    default boolean requiresSequential()
+    {
+        return false;
+    }
+
+    /**
+     * @return The time interval outside of which the filter rejects every
+     *         record, or null if the filter does not select by time. Used
+     *         to push time selection down into the data source.
+     */
+    default TimeOption.TimeInterval getTimeInterval()
+    {
+        return null;
+    }
+
     static Filter negateFilter(Filter toNegate)
     {
         return new Filter()
@@ -32,6 +56,12 @@ public interface Filter
                 return String.format("negates (%s)", toNegate.describe());
             }
 
+            @Override
+            public boolean requiresSequential()
+            {
+                return toNegate.requiresSequential();
+            }
+
             @Override
             public Predicate<ByteBuffer> asPredicate(RecordType recordType)
             {
@@ -59,6 +89,12 @@ public interface Filter
                 return "Selects records in time interval " + interval;
             }
 
+            @Override
+            public TimeOption.TimeInterval getTimeInterval()
+            {
+                return interval;
+            }
+
             @Override
             public Predicate<ByteBuffer> asPredicate(RecordType recordType)
             {
@@ -85,6 +121,12 @@ public interface Filter
                 return String.format("Restricts the stream to the first %d records", count);
             }
 
+            @Override
+            public boolean requiresSequential()
+            {
+                return true;
+            }
+
             @Override
             public Predicate<ByteBuffer> asPredicate(RecordType recordType)
             {
@@ -111,6 +153,12 @@ public interface Filter
                 return String.format("Restricts the stream to at most the first %d bytes", maxBytes);
             }
 
+            @Override
+            public boolean requiresSequential()
+            {
+                return true;
+            }
+
             @Override
             public Predicate<ByteBuffer> asPredicate(RecordType recordType)
             {
@@ -81,6 +81,13 @@ public class TriggerSourceFilter implements Filter
                 "trigger source bit %d set", windowLen, targetSourceBit);
     }
 
+    @Override
+    public boolean requiresSequential()
+    {
+        // the windowing predicate tracks per-dom state
+        return windowLen <= 0;
+    }
+
     @Override
     public Predicate<ByteBuffer> asPredicate(RecordType recordType)
     {
@@ -33,10 +33,22 @@ public class DataOutputOption
         public BufferConsumer plumbOutput() throws IOException
         {
             logger.info(String.format("Opening output file [%s]", filename));
-            return new ArchiveWriter(new File(filename));
+            return ArchiveWriter.open(new File(filename));
         }
 
         public BufferConsumer plumbOutput(String streamId) throws IOException
+        {
+            String streamFileName = streamFileName(filename, streamId);
+            logger.info(String.format("Opening output file [%s]", streamFileName));
+            return ArchiveWriter.open(new File(streamFileName));
+
+        }
+
+        /**
+         * Derive the name of a per-stream output file by inserting the
+         * stream id ahead of the compression suffix.
+         */
+        public static String streamFileName(String filename, String streamId)
         {
             // convert  foo.gz to foo.basename.gz
             //          foo.bar.gz to foo.bar.basename.gz
@@ -44,8 +56,7 @@ public class DataOutputOption
             //
             //          foo to foo.basename
             //          foo.bar to foo.bar.basename
-            String streamFileName;
-            if(filename.endsWith(".gz") || filename.endsWith(".bz2"))
+            if(filename.endsWith(".gz") || filename.endsWith(".bz2") || filename.endsWith(".zst"))
             {
                 String tmpName = "";
                 String[] tokens = filename.split("\\.");
@@ -62,15 +73,12 @@ public class DataOutputOption
                     }
 
                 }
-                streamFileName = tmpName;
+                return tmpName;
             }
             else
             {
-                streamFileName = filename + "." + streamId;
+                return filename + "." + streamId;
             }
-            logger.info(String.format("Opening output file [%s]", streamFileName));
-            return new ArchiveWriter(new File(streamFileName));
-
         }
 
 
@@ -1,12 +1,16 @@
 package icecube.daq.cli.options;
 
 import icecube.daq.cli.filter.Filter;
+import icecube.daq.cli.stream.DataSource;
 import icecube.daq.cli.transform.Transform;
 import icecube.daq.cli.stream.RecordType;
+import org.apache.log4j.Logger;
 import picocli.CommandLine;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -16,9 +20,20 @@ import java.util.stream.Stream;
 public class PipelineOption
 {
 
+    private static final Logger logger = Logger.getLogger(PipelineOption.class);
+
     @CommandLine.ArgGroup(exclusive = true, multiplicity = "0..*")
     private List<PipelineStageOption> operations;
 
+    @CommandLine.Option(names={"--parallel"}, required = false,
+            description = "Run the pipeline as a parallel stream. Uncompressed sources are memory-mapped " +
+                    "and split at file and record boundaries")
+    private boolean parallel;
+
+    @CommandLine.Option(names={"--ordered"}, required = false,
+            description = "With --parallel, deliver records to the output in source order")
+    private boolean ordered;
+
     public String describe()
     {
         int n=0;
@@ -33,12 +48,119 @@ public class PipelineOption
     public StreamTail plumb(StreamTail stream)
     {
         StreamTail tail = stream;
-        for (PipelineStageOption op : operations) {
-            tail = op.plumb(tail);
+        if(operations != null)
+        {
+            for (PipelineStageOption op : operations) {
+                tail = op.plumb(tail);
+            }
         }
         return tail;
     }
 
+    /**
+     * Push the time selection of the pipeline down into the data source.
+     *
+     * Time range filters in the leading run of stateless filters are
+     * intersected and offered to the source, which may then skip files
+     * or records outside the interval. The filters stay in the pipeline,
+     * so the output is unchanged.
+     */
+    public DataSource plan(DataSource dataSource) throws IOException
+    {
+        if(operations == null)
+        {
+            return dataSource;
+        }
+
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        boolean selective = false;
+        for (PipelineStageOption op : operations)
+        {
+            // stop at the first stage that transforms records or
+            // depends on the records ahead of it
+            if(op.filter == null || op.filter.requiresSequential())
+            {
+                break;
+            }
+
+            TimeOption.TimeInterval interval = op.filter.getTimeInterval();
+            if(interval != null)
+            {
+                from = Math.max(from, interval.from);
+                to = Math.min(to, interval.to);
+                selective = true;
+            }
+        }
+
+        if(selective && from <= to)
+        {
+            DataSource restricted = dataSource.restrict(from, to);
+            if(restricted != dataSource)
+            {
+                logger.info(String.format("Restricted data source [%s] to [%d:%d]", dataSource.describe(),
+                        from, to));
+            }
+            return restricted;
+        }
+        else
+        {
+            return dataSource;
+        }
+    }
+
+    /**
+     * Open the record stream of a source, parallel if requested and
+     * supported by every stage of the pipeline.
+     */
+    public Stream<ByteBuffer> stream(DataSource dataSource) throws IOException
+    {
+        if(!parallel)
+        {
+            return dataSource.stream();
+        }
+
+        if(operations != null)
+        {
+            for (PipelineStageOption op : operations)
+            {
+                if(op.requiresSequential())
+                {
+                    logger.warn(String.format("Running sequentially, pipeline stage requires ordered input: %s",
+                            op.describe()));
+                    return dataSource.stream();
+                }
+            }
+        }
+
+        Stream<ByteBuffer> stream = dataSource.parallelStream();
+        return ordered ? stream : stream.unordered();
+    }
+
+    /**
+     * Terminate the pipeline, in source order if requested.
+     *
+     * The action is never invoked concurrently, but may be invoked from
+     * different threads.
+     */
+    public void forEach(StreamTail tail, Consumer<ByteBuffer> action)
+    {
+        if(!parallel || ordered)
+        {
+            tail.stream.forEachOrdered(action);
+        }
+        else
+        {
+            final Object lock = new Object();
+            tail.stream.forEach(buf -> {
+                synchronized (lock)
+                {
+                    action.accept(buf);
+                }
+            });
+        }
+    }
+
     static class PipelineStageOption
     {
         boolean populated = false;
@@ -88,6 +210,11 @@ public class PipelineOption
         }
 
 
+        boolean requiresSequential()
+        {
+            return filter != null && filter.requiresSequential();
+        }
+
         String describe()
         {
             if(filter != null)
@@ -1,9 +1,14 @@
 package icecube.daq.cli.stream;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
 import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
@@ -43,16 +48,61 @@ public class DataInput
         return new BufferedInputStream(openFile(file));
     }
 
+    /**
+     * @return True if the file will be decompressed on load.
+     */
+    public static boolean isCompressed(File file)
+    {
+        String name = file.getName();
+        return name.endsWith(".gz") || name.endsWith(".bz") || name.endsWith(".bz2") || name.endsWith(".zst");
+    }
+
+    /**
+     * Map an uncompressed file read-only.
+     *
+     * @param file The file.
+     * @return A buffer spanning the whole file.
+     * @throws IOException The file could not be mapped.
+     */
+    public static ByteBuffer mapFile(File file) throws IOException
+    {
+        if(isCompressed(file))
+        {
+            throw new IOException("Can not map compressed file " + file);
+        }
+
+        // the mapping remains valid after the channel is closed
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+            {
+                throw new IOException(String.format("File too large to map [%s], %d bytes", file, size));
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
     private static InputStream openFile(File file) throws IOException
     {
         FileInputStream fis = new FileInputStream(file);
+        BufferedInputStream bis = new BufferedInputStream(fis, 32 * 1024);
         if (file.getName().endsWith(".gz")) {
-            return new GZIPInputStream(fis);
+            return new GZIPInputStream(bis);
         }
         if (file.getName().endsWith(".bz") || file.getName().endsWith(".bz2")) {
-            return new BZip2CompressorInputStream(fis);
+            // parallel writers emit concatenated streams
+            return new BZip2CompressorInputStream(bis, true);
+        }
+        if (file.getName().endsWith(".zst")) {
+            // zstd-jni is an optional dependency of commons-compress
+            if (!ZstdUtils.isZstdCompressionAvailable()) {
+                bis.close();
+                throw new IOException("Can not read " + file + ", zstd decompression requires zstd-jni on the classpath");
+            }
+            return new ZstdCompressorInputStream(bis);
         } else {
-            return fis;
+            return bis;
         }
     }
 
@@ -78,16 +128,7 @@ public class DataInput
                     if (hasMoreElements()) {
                         File file = orderedFiles[idx++]; //post increments
                         logger.info(String.format("Reading source file [%d of %d]  [%s]", idx, orderedFiles.length, file.getName()));
-                        FileInputStream fis = new FileInputStream(file);
-                        BufferedInputStream bis = new BufferedInputStream(fis, 32 * 1024);
-                        if (file.getName().endsWith(".gz")) {
-                            return new GZIPInputStream(bis);
-                        }
-                        if (file.getName().endsWith(".bz2") || file.getName().endsWith(".bz")) {
-                            return new BZip2CompressorInputStream(bis);
-                        } else {
-                            return fis;
-                        }
+                        return openFile(file);
                     } else {
                         throw new Error("misuse");
                     }
@@ -1,12 +1,30 @@
 package icecube.daq.cli.stream;
 
 
+import icecube.daq.performance.binary.buffer.RangeSearch;
+import icecube.daq.performance.binary.buffer.RecordBuffer;
+import icecube.daq.performance.binary.buffer.RecordBuffers;
+import icecube.daq.performance.binary.record.RecordReader;
+import icecube.daq.performance.common.BufferContent;
+import icecube.daq.spool.Metadata;
+import org.apache.log4j.Logger;
+
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Encapsulates a pdaq record data source.
@@ -18,8 +36,34 @@ public interface DataSource
 
     Stream<ByteBuffer> stream() throws IOException;
 
+    /**
+     * A stream of the records suitable for parallel processing. Sources
+     * of uncompressed files split at file and record boundaries, other
+     * sources are read sequentially and handed off in batches.
+     */
+    default Stream<ByteBuffer> parallelStream() throws IOException
+    {
+        return stream().parallel();
+    }
+
     String describe();
 
+    /**
+     * Narrow the source to a time range.
+     *
+     * The returned source may omit records outside of the inclusive
+     * range. Records within the range are delivered unchanged and in
+     * the same order, callers still apply the range to the records.
+     *
+     * @param from The start of the range.
+     * @param to The end of the range.
+     * @return A source covering at least the range, possibly this source.
+     */
+    default DataSource restrict(long from, long to) throws IOException
+    {
+        return this;
+    }
+
 
     public static class FileSource implements DataSource
     {
@@ -51,6 +95,21 @@ public interface DataSource
             return RecordStream.parseRecordsToStream(is, type.rr);
         }
 
+        @Override
+        public Stream<ByteBuffer> parallelStream() throws IOException
+        {
+            File file = new File(filepath);
+            if(DataInput.isCompressed(file))
+            {
+                return DataSource.super.parallelStream();
+            }
+            else
+            {
+                is.close();
+                return RecordStream.parseMappedRecordsToStream(new File[]{file}, type.rr, true);
+            }
+        }
+
 
         @Override
         public String describe()
@@ -62,6 +121,8 @@ public interface DataSource
 
     public static class DirSource implements DataSource
     {
+        static final Logger logger = Logger.getLogger(DirSource.class);
+
         final String dir;
         final FileScheme scheme;
         final RecordType type;
@@ -97,6 +158,22 @@ public interface DataSource
             return RecordStream.parseRecordsToStream(is, type.rr);
         }
 
+        @Override
+        public Stream<ByteBuffer> parallelStream() throws IOException
+        {
+            File[] files = scheme.listOrdered(dir, true);
+            for (File file : files)
+            {
+                if(DataInput.isCompressed(file))
+                {
+                    return DataSource.super.parallelStream();
+                }
+            }
+
+            is.close();
+            return RecordStream.parseMappedRecordsToStream(files, type.rr, true);
+        }
+
 
         @Override
         public String describe()
@@ -104,6 +181,275 @@ public interface DataSource
             return String.format("%s:%s:%s", scheme.keyword, type.keyword, dir);
         }
 
+        @Override
+        public DataSource restrict(long from, long to) throws IOException
+        {
+            if(type.rr.getOrderingField() == RecordReader.NO_ORDER_FIELD)
+            {
+                return this;
+            }
+
+            final DataSource restricted;
+            switch (scheme)
+            {
+                case HITSPOOL:
+                    restricted = restrictHitspool(from, to);
+                    break;
+                case SECONDBUILD_MONI:
+                case SECONDBUILD_SN:
+                case SECONDBUILD_TCAL:
+                    restricted = restrictByFirstTime(from, to);
+                    break;
+                default:
+                    restricted = this;
+            }
+
+            if(restricted != this)
+            {
+                is.close();
+            }
+            return restricted;
+        }
+
+        /**
+         * Select hitspool files from the spool metadata, the records are
+         * located by a range search within the files which straddle an
+         * end of the range.
+         *
+         * Files keep the order of the file scheme, so a range spanning the
+         * wrap of the spool is delivered as it would be unrestricted.
+         */
+        private DataSource restrictHitspool(long from, long to) throws IOException
+        {
+            File[] files = scheme.listOrdered(dir, true);
+
+            final Set<String> indexed = new HashSet<>();
+            final Map<String, Metadata.HitSpoolRecord> selected = new HashMap<>();
+            Metadata metadata;
+            try
+            {
+                metadata = new Metadata(new File(dir), false);
+            }
+            catch (SQLException e)
+            {
+                logger.info(String.format("No usable spool metadata in [%s]: %s", dir, e.getMessage()));
+                return this;
+            }
+            try
+            {
+                for (Metadata.HitSpoolRecord record : metadata.listRecords())
+                {
+                    indexed.add(record.filename);
+                }
+                for (Metadata.HitSpoolRecord record : metadata.listRecords(from, to))
+                {
+                    selected.put(record.filename, record);
+                }
+            }
+            finally
+            {
+                metadata.close();
+            }
+
+            List<File> inRange = new ArrayList<>();
+            List<Boolean> searched = new ArrayList<>();
+            for (File file : files)
+            {
+                // every file must be accounted for by the metadata
+                if(!indexed.contains(file.getName()) || DataInput.isCompressed(file))
+                {
+                    return this;
+                }
+                Metadata.HitSpoolRecord record = selected.get(file.getName());
+                if(record != null)
+                {
+                    // only files which straddle an end of the range
+                    // need to be searched
+                    inRange.add(file);
+                    searched.add(record.startTick < from || record.stopTick > to);
+                }
+            }
+
+            boolean[] search = new boolean[searched.size()];
+            for (int i = 0; i < search.length; i++)
+            {
+                search[i] = searched.get(i);
+            }
+
+            return new HitspoolRangeSource(describe(), inRange.toArray(new File[inRange.size()]), search,
+                    type, from, to);
+        }
+
+        /**
+         * Select 2ndbuild files by the time of their first record.
+         *
+         * The archives are written in time order, so a file holds the
+         * records from its first time through the first time of the
+         * following file.
+         */
+        private DataSource restrictByFirstTime(long from, long to) throws IOException
+        {
+            File[] files = scheme.listOrdered(dir, true);
+            RecordReader.LongField orderingField = type.rr.getOrderingField();
+
+            // empty files are omitted from the index
+            List<File> indexed = new ArrayList<>(files.length);
+            List<Long> firstTimes = new ArrayList<>(files.length);
+            for (File file : files)
+            {
+                try(InputStream in = DataInput.loadFile(file))
+                {
+                    ByteBuffer first = type.rr.deserialize(Channels.newChannel(in));
+                    if(first != null)
+                    {
+                        indexed.add(file);
+                        firstTimes.add(orderingField.value(first, 0));
+                    }
+                }
+            }
+
+            List<File> inRange = new ArrayList<>();
+            for (int i = 0; i < indexed.size(); i++)
+            {
+                boolean startsBeforeEnd = firstTimes.get(i) <= to;
+                boolean endsAfterStart = i == indexed.size() - 1 || firstTimes.get(i + 1) >= from;
+                if(startsBeforeEnd && endsAfterStart)
+                {
+                    inRange.add(indexed.get(i));
+                }
+            }
+
+            return new FileSetSource(describe(), inRange.toArray(new File[inRange.size()]), type);
+        }
+
+    }
+
+    /**
+     * A source of an ordered set of files.
+     */
+    public static class FileSetSource implements DataSource
+    {
+        final String description;
+        final File[] files;
+        final RecordType type;
+
+        public FileSetSource(String description, File[] files, RecordType type)
+        {
+            this.description = description;
+            this.files = files;
+            this.type = type;
+        }
+
+        @Override
+        public RecordType getRecordType()
+        {
+            return type;
+        }
+
+        @Override
+        public Stream<ByteBuffer> stream() throws IOException
+        {
+            InputStream is = new BufferedInputStream(DataInput.loadFiles(files), 32768);
+            return RecordStream.parseRecordsToStream(is, type.rr);
+        }
+
+        @Override
+        public Stream<ByteBuffer> parallelStream() throws IOException
+        {
+            for (File file : files)
+            {
+                if(DataInput.isCompressed(file))
+                {
+                    return DataSource.super.parallelStream();
+                }
+            }
+            return RecordStream.parseMappedRecordsToStream(files, type.rr, true);
+        }
+
+        @Override
+        public String describe()
+        {
+            return description;
+        }
+
+    }
+
+    /**
+     * A time range of hitspool files.
+     *
+     * Files which lie within the range are delivered whole. The records
+     * of a file which straddles an end of the range are located by a
+     * range search over the mapped file. Records are variable length and
+     * carry no sync marker, so their boundaries can only be found by
+     * walking the length fields from the start of the file and the search
+     * is linear in the number of records before the range end. At most
+     * the first and last files of a range are searched.
+     */
+    public static class HitspoolRangeSource implements DataSource
+    {
+        final String description;
+        final File[] files;
+        final boolean[] search;
+        final RecordType type;
+        final long from;
+        final long to;
+
+        /**
+         * @param description The description of the unrestricted source.
+         * @param files The files in range, in the file scheme order.
+         * @param search True for each file which must be searched for
+         *               the range, false for files delivered whole.
+         * @param type The record type.
+         * @param from The start of the range.
+         * @param to The end of the range.
+         */
+        public HitspoolRangeSource(String description, File[] files, boolean[] search, RecordType type,
+                                   long from, long to)
+        {
+            this.description = description;
+            this.files = files;
+            this.search = search;
+            this.type = type;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public RecordType getRecordType()
+        {
+            return type;
+        }
+
+        @Override
+        public Stream<ByteBuffer> stream() throws IOException
+        {
+            final RangeSearch rangeSearch = new RangeSearch.LinearSearch(type.rr, type.rr.getOrderingField());
+
+            return IntStream.range(0, files.length).boxed().flatMap(i -> {
+                try
+                {
+                    RecordBuffer range = RecordBuffers.wrap(DataInput.mapFile(files[i]),
+                            BufferContent.POSITION_TO_LIMIT);
+                    if(search[i])
+                    {
+                        range = rangeSearch.extractRange(range, RecordBuffer.MemoryMode.SHARED_VIEW,
+                                from, to);
+                    }
+                    return StreamSupport.stream(range.eachBuffer(type.rr).spliterator(), false);
+                }
+                catch (IOException e)
+                {
+                    throw new Error(e);
+                }
+            });
+        }
+
+        @Override
+        public String describe()
+        {
+            return description;
+        }
+
     }
 
     public static class InputStreamSource implements DataSource
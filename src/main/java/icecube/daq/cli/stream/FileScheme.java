@@ -183,7 +183,7 @@ public enum FileScheme
      * Orders pdaq data files
      *
      *   filename format:
-     *      <type>_<run>_seq_<first record>_<last_record>.dat[.gz | .bz | .bz2]
+     *      <type>_<run>_seq_<first record>_<last_record>.dat[.gz | .bz | .bz2 | .zst]
      *
      *      EXAMPLE:
      *
@@ -229,7 +229,7 @@ public enum FileScheme
      * Selects pdaq output files such as 2ndbuild and evbuilder outputs.
      *
      *   filename format:
-     *      <type>_<run>_seq_<first record>_<last_record>.dat[.gz | .bz | .bz2]
+     *      <type>_<run>_seq_<first record>_<last_record>.dat[.gz | .bz | .bz2 | .zst]
      *
      *      EXAMPLE:
      *
@@ -253,7 +253,7 @@ public enum FileScheme
         PdaqDataFileFilter(String prefix)
         {
             this.prefix = prefix;
-            this.regex = String.format("%s_\\d+_\\d+_\\d+_\\d+.dat(?:\\.gz|\\.bz|\\.bz2)?", Pattern.quote(prefix));
+            this.regex = String.format("%s_\\d+_\\d+_\\d+_\\d+.dat(?:\\.gz|\\.bz|\\.bz2|\\.zst)?", Pattern.quote(prefix));
         }
 
 
@@ -314,7 +314,7 @@ public enum FileScheme
         HitspoolFilter(String prefix)
         {
             this.prefix = prefix;
-            this.regex = String.format("%s-\\d+.dat(?:\\.gz|\\.bz|\\.bz2)?", Pattern.quote(prefix));
+            this.regex = String.format("%s-\\d+.dat(?:\\.gz|\\.bz|\\.bz2|\\.zst)?", Pattern.quote(prefix));
         }
 
 
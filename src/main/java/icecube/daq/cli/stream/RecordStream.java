@@ -1,7 +1,9 @@
 package icecube.daq.cli.stream;
 
 import icecube.daq.performance.binary.record.RecordReader;
+import icecube.daq.performance.binary.record.pdaq.LengthPrependedRecordReader;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -9,6 +11,9 @@ import java.nio.channels.Channels;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -21,29 +26,436 @@ public class RecordStream
 
 
     /**
-     * Adapt an input stream to a stream of records
+     * Adapt an input stream to a stream of records.
+     *
+     * The source is read in bulk, records are views into a reused read
+     * buffer which are valid until the stream advances. Consumers that
+     * retain a record must copy it, see copy().
+     *
      * @param src the source stream.
      * @param rr The record reader with knowledge of the record format.
      * @return A stream of records.
      * */
     public static Stream<ByteBuffer> parseRecordsToStream(InputStream src, RecordReader rr)
     {
-        RecordIterator recordIterator = new RecordIterator(new RecordReaderDeserializer(src, rr));
-        return StreamSupport.stream(recordIterator.asIterable().spliterator(), false);
+        return StreamSupport.stream(new BulkRecordSpliterator(src, rr), false);
     }
 
 
     /**
      * Assumes records are prefixed by a 32-bit BE length field.
+     *
+     * Records are views as by parseRecordsToStream().
+     *
      * @param src the source stream.
      * @return A stream of records.
      */
     public static Stream<ByteBuffer> parseLengthPrependedRecordsToStream(InputStream src)
     {
-//        RecordIterator recordIterator = new RecordIterator(new LengthPrependedDeserializer.FromInputStream(src));
-        RecordIterator recordIterator = new RecordIterator(new LengthPrependedDeserializer.FromChannel(Channels.newChannel(src)));
+        return parseRecordsToStream(src, LengthPrependedRecordReader._32Bit.instance);
+    }
+
+
+    /**
+     * Copy a record for retention beyond the stream advance.
+     *
+     * @param record A record, possibly a view.
+     * @return A copy of the record, positioned at zero.
+     */
+    public static ByteBuffer copy(ByteBuffer record)
+    {
+        ByteBuffer copy = ByteBuffer.allocate(record.remaining());
+        copy.put(record.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+
+    /**
+     * Adapt uncompressed files to a stream of records, memory-mapping
+     * the files rather than reading them.
+     *
+     * The stream may be run in parallel, the source splits at file
+     * boundaries and then at record boundaries within a file. Records
+     * are read-only views into the mapping, consumers that retain a
+     * record must copy it.
+     *
+     * @param files The files, in order.
+     * @param rr The record reader with knowledge of the record format.
+     * @param parallel If true, return a parallel stream.
+     * @return A stream of records.
+     * @throws IOException A file could not be mapped.
+     */
+    public static Stream<ByteBuffer> parseMappedRecordsToStream(File[] files, RecordReader rr, boolean parallel)
+            throws IOException
+    {
+        ByteBuffer[] segments = new ByteBuffer[files.length];
+        for (int i = 0; i < files.length; i++)
+        {
+            segments[i] = DataInput.mapFile(files[i]);
+        }
+
+        return StreamSupport.stream(new MappedRecordSpliterator(segments, rr), parallel);
+    }
+
+
+    /**
+     * Splits records from a sequence of mapped files.
+     *
+     * Covers the range from <tt>pos</tt> within segment <tt>seg</tt> to
+     * <tt>endPos</tt> within segment <tt>endSeg</tt>. Splits hand off
+     * the prefix of the range, first at segment boundaries, then at the
+     * record boundary nearest the middle of a single segment.
+     */
+    static class MappedRecordSpliterator implements Spliterator<ByteBuffer>
+    {
+        /** Ranges smaller than this are not split within a segment. */
+        static final int MIN_SPLIT_BYTES = 1024 * 1024;
+
+        final ByteBuffer[] segments;
+        final RecordReader rr;
+
+        int seg;
+        int pos;
+        final int endSeg;
+        int endPos;
+
+        // private view of the current segment
+        ByteBuffer view;
+
+
+        MappedRecordSpliterator(ByteBuffer[] segments, RecordReader rr)
+        {
+            this(segments, rr, 0, 0, segments.length - 1,
+                    segments.length > 0 ? segments[segments.length - 1].limit() : 0);
+        }
+
+        private MappedRecordSpliterator(ByteBuffer[] segments, RecordReader rr,
+                                        int seg, int pos, int endSeg, int endPos)
+        {
+            this.segments = segments;
+            this.rr = rr;
+            this.seg = seg;
+            this.pos = pos;
+            this.endSeg = endSeg;
+            this.endPos = endPos;
+            this.view = seg <= endSeg ? segments[seg].duplicate() : null;
+        }
+
+        private int segmentLimit()
+        {
+            return seg == endSeg ? endPos : segments[seg].limit();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ByteBuffer> action)
+        {
+            while (seg <= endSeg)
+            {
+                int limit = segmentLimit();
+                if (pos < limit)
+                {
+                    int length = recordLength(pos, limit);
+
+                    view.limit(pos + length).position(pos);
+                    ByteBuffer record = view.slice();
+                    view.limit(view.capacity());
+
+                    pos += length;
+                    action.accept(record);
+                    return true;
+                }
+
+                if (seg == endSeg)
+                {
+                    break;
+                }
+                seg++;
+                pos = 0;
+                view = segments[seg].duplicate();
+            }
+            return false;
+        }
+
+        private int recordLength(int offset, int limit)
+        {
+            if (limit - offset < 4)
+            {
+                throw new Error(new RecordReader.IncompleteRecordException("Reading length header at idx " + offset +
+                        " of segment " + seg));
+            }
+
+            int length = rr.getLength(view, offset);
+            if (length < 4)
+            {
+                throw new Error(new IOException(String.format("Invalid record length: %d at idx %d of segment %d",
+                        length, offset, seg)));
+            }
+            if (length > limit - offset)
+            {
+                throw new Error(new RecordReader.IncompleteRecordException("Reading record of length " + length +
+                        " at idx " + offset + " of segment " + seg));
+            }
+            return length;
+        }
+
+        @Override
+        public Spliterator<ByteBuffer> trySplit()
+        {
+            if (seg < endSeg)
+            {
+                // hand off whole segments
+                int mid = (seg + endSeg + 1) / 2;
+                MappedRecordSpliterator prefix = new MappedRecordSpliterator(segments, rr, seg, pos,
+                        mid - 1, segments[mid - 1].limit());
+                seg = mid;
+                pos = 0;
+                view = segments[seg].duplicate();
+                return prefix;
+            }
+            else if (seg == endSeg && endPos - pos >= MIN_SPLIT_BYTES)
+            {
+                // walk the length headers to the middle of the range
+                int middle = pos + (endPos - pos) / 2;
+                int boundary = pos;
+                while (boundary < middle)
+                {
+                    boundary += recordLength(boundary, endPos);
+                }
+                if (boundary >= endPos)
+                {
+                    return null;
+                }
+
+                MappedRecordSpliterator prefix = new MappedRecordSpliterator(segments, rr, seg, pos,
+                        seg, boundary);
+                pos = boundary;
+                return prefix;
+            }
+            else
+            {
+                return null;
+            }
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            // in bytes, record counts are not known until traversed
+            if (seg > endSeg)
+            {
+                return 0;
+            }
+            else if (seg == endSeg)
+            {
+                return endPos - pos;
+            }
+            else
+            {
+                long size = segments[seg].limit() - pos;
+                for (int i = seg + 1; i < endSeg; i++)
+                {
+                    size += segments[i].limit();
+                }
+                return size + endPos;
+            }
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
 
-        return StreamSupport.stream(recordIterator.asIterable().spliterator(), false);
+
+    /**
+     * Reads records from an input stream in large chunks into a reused
+     * buffer and yields views of the records.
+     *
+     * A view is valid until the next advance, the buffer is compacted
+     * and refilled in place. Records larger than the buffer grow it.
+     * Splits hand off a batch of copied records so that a parallel
+     * stream over a sequential source remains correct.
+     */
+    static class BulkRecordSpliterator implements Spliterator<ByteBuffer>
+    {
+        /** The size of the read buffer. */
+        static final int DEFAULT_CHUNK_SIZE =
+                Integer.getInteger("icecube.daq.cli.bulk-read-kb", 1024) * 1024;
+
+        static final int BATCH_UNIT = 1024;
+        static final int MAX_BATCH = 1 << 16;
+
+        final InputStream src;
+        final RecordReader rr;
+        final int headerSize;
+
+        // unconsumed data occupies [pos, limit) of the chunk
+        byte[] chunk;
+        ByteBuffer view;
+        int pos;
+        int limit;
+        boolean eof;
+
+        // stream offset of the chunk start, for diagnostics
+        long offset;
+
+        int batch;
+
+
+        BulkRecordSpliterator(InputStream src, RecordReader rr)
+        {
+            this(src, rr, DEFAULT_CHUNK_SIZE);
+        }
+
+        BulkRecordSpliterator(InputStream src, RecordReader rr, int chunkSize)
+        {
+            this.src = src;
+            this.rr = rr;
+            this.headerSize = rr instanceof LengthPrependedRecordReader._16Bit ? 2 : 4;
+            this.chunk = new byte[Math.max(chunkSize, headerSize)];
+            this.view = ByteBuffer.wrap(chunk);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ByteBuffer> action)
+        {
+            ByteBuffer record = advance();
+            if(record != null)
+            {
+                action.accept(record);
+                return true;
+            }
+            else
+            {
+                return false;
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super ByteBuffer> action)
+        {
+            ByteBuffer record;
+            while ((record = advance()) != null)
+            {
+                action.accept(record);
+            }
+        }
+
+        private ByteBuffer advance()
+        {
+            try
+            {
+                if(!fill(headerSize))
+                {
+                    if(pos == limit)
+                    {
+                        return null;
+                    }
+                    throw new RecordReader.IncompleteRecordException("Reading byte " + (limit - pos) +
+                            " of length header at idx " + (offset + pos));
+                }
+
+                int length = rr.getLength(view, pos);
+                if(length < headerSize)
+                {
+                    throw new IOException(String.format("Invalid record length: %d at idx %d", length,
+                            (offset + pos)));
+                }
+
+                if(!fill(length))
+                {
+                    throw new RecordReader.IncompleteRecordException("Reading byte " + (limit - pos) +
+                            " of record at " + (offset + pos));
+                }
+
+                view.limit(pos + length).position(pos);
+                ByteBuffer record = view.slice();
+                view.clear();
+
+                pos += length;
+                return record;
+            }
+            catch (IOException e)
+            {
+                throw new Error(e);
+            }
+        }
+
+        /**
+         * Ensure that the chunk holds <tt>n</tt> bytes from <tt>pos</tt>.
+         *
+         * @return false if the source ended first.
+         */
+        private boolean fill(int n) throws IOException
+        {
+            if(limit - pos >= n)
+            {
+                return true;
+            }
+
+            if(pos > 0)
+            {
+                System.arraycopy(chunk, pos, chunk, 0, limit - pos);
+                offset += pos;
+                limit -= pos;
+                pos = 0;
+            }
+            if(n > chunk.length)
+            {
+                byte[] grown = new byte[Math.max(n, 2 * chunk.length)];
+                System.arraycopy(chunk, 0, grown, 0, limit);
+                chunk = grown;
+                view = ByteBuffer.wrap(chunk);
+            }
+
+            while (limit < n && !eof)
+            {
+                int read = src.read(chunk, limit, chunk.length - limit);
+                if(read < 0)
+                {
+                    eof = true;
+                }
+                else
+                {
+                    limit += read;
+                }
+            }
+            return limit >= n;
+        }
+
+        @Override
+        public Spliterator<ByteBuffer> trySplit()
+        {
+            int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+            ByteBuffer[] records = new ByteBuffer[n];
+            int count = 0;
+            ByteBuffer record;
+            while (count < n && (record = advance()) != null)
+            {
+                records[count++] = copy(record);
+            }
+
+            if(count == 0)
+            {
+                return null;
+            }
+            batch = count;
+            return Spliterators.spliterator(records, 0, count, ORDERED | NONNULL | IMMUTABLE);
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | NONNULL;
+        }
     }
 
 
@@ -160,7 +572,7 @@ public class RecordStream
 
             final InputStream is;
 
-            final ByteBuffer header = ByteBuffer.allocate(4);
+            final byte[] hdr = new byte[4];
             long count;
 
             public FromInputStream(InputStream is)
@@ -171,12 +583,11 @@ public class RecordStream
             @Override
             public ByteBuffer deserialize() throws IOException
             {
-                byte[] hdr = new byte[4];
-
-                for (int i = 0; i < 4; i++)
+                int i = 0;
+                while (i < 4)
                 {
-                    int read = is.read(hdr, i, 1);
-                    if(read<1)
+                    int read = is.read(hdr, i, 4 - i);
+                    if(read<0)
                     {
                         if(i == 0) { return null; }
                         else
@@ -184,7 +595,8 @@ public class RecordStream
                             throw new RecordReader.IncompleteRecordException("Reading byte " + i + "of length header at idx " + count);
                         }
                     }
-                    count++;
+                    i += read;
+                    count += read;
                 }
 
                 int length =  hdr[0] << 24 | (hdr[1] & 0xFF) << 16 | (hdr[2] & 0xFF) << 8 | (hdr[3] & 0xFF);
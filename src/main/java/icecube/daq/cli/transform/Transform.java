@@ -10,6 +10,10 @@ public interface Transform
 {
     String describe();
 
+    /**
+     * Input records may be views which are only valid until the stream
+     * advances, a mapper may return a view of its input.
+     */
     Function<ByteBuffer, ByteBuffer> asMapper(RecordType inputType);
 
      RecordType outputType(RecordType inputType);
@@ -60,7 +64,8 @@ public interface Transform
                          pdaq.putLong(mbid);
                          pdaq.putLong(0);
                          pdaq.putLong(utc);
-                         pdaq.put((ByteBuffer) bb.slice().position(bb.position() + 24));
+                         // read through a duplicate, the record may be a view
+                         pdaq.put((ByteBuffer) bb.duplicate().position(bb.position() + 24));
 
                          return (ByteBuffer) pdaq.flip();
                      }
@@ -2,11 +2,15 @@ package icecube.daq.cli.util;
 
 import icecube.daq.bindery.BufferConsumer;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
@@ -18,31 +22,122 @@ import java.util.zip.GZIPOutputStream;
  */
 public class ArchiveWriter implements BufferConsumer
 {
+    /** Number of threads compressing output, 1 compresses on the consuming thread. */
+    public static final int COMPRESSION_THREADS =
+            Integer.getInteger("icecube.daq.cli.compression-threads", Runtime.getRuntime().availableProcessors());
+
     final WritableByteChannel channel;
 
-    public ArchiveWriter(File file) throws IOException
+    /**
+     * The compression formats, inferred from the file extension.
+     */
+    public enum Compression
     {
-        this(file, 8096);
-    }
+        NONE
+                {
+                    @Override
+                    OutputStream wrap(OutputStream os)
+                    {
+                        return os;
+                    }
+                },
+        GZIP
+                {
+                    @Override
+                    OutputStream wrap(OutputStream os) throws IOException
+                    {
+                        return new GZIPOutputStream(os);
+                    }
+                },
+        BZIP2
+                {
+                    @Override
+                    OutputStream wrap(OutputStream os) throws IOException
+                    {
+                        return new BZip2CompressorOutputStream(os);
+                    }
+                },
+        ZSTD
+                {
+                    @Override
+                    OutputStream wrap(OutputStream os) throws IOException
+                    {
+                        // zstd-jni is an optional dependency of commons-compress
+                        if(!ZstdUtils.isZstdCompressionAvailable())
+                        {
+                            throw new IOException("zstd compression requires zstd-jni on the classpath");
+                        }
+                        return new ZstdCompressorOutputStream(os);
+                    }
+                };
 
-    public ArchiveWriter(File file, int bufSize) throws IOException
-    {
-        BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(file), bufSize);
+        abstract OutputStream wrap(OutputStream os) throws IOException;
+
+        /**
+         * Compress a block of data as a complete, independent stream.
+         * Such streams may be concatenated into a single file.
+         */
+        byte[] compressBlock(byte[] data, int length) throws IOException
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 2 + 64);
+            try(OutputStream os = wrap(bos))
+            {
+                os.write(data, 0, length);
+            }
+            return bos.toByteArray();
+        }
 
-        if(file.getName().endsWith(".gz"))
+        public static Compression forFile(File file)
         {
-            channel = Channels.newChannel(new GZIPOutputStream(fos));
+            String name = file.getName();
+            if(name.endsWith(".gz"))
+            {
+                return GZIP;
+            }
+            else if(name.endsWith(".bz") || name.endsWith(".bz2"))
+            {
+                return BZIP2;
+            }
+            else if(name.endsWith(".zst"))
+            {
+                return ZSTD;
+            }
+            else
+            {
+                return NONE;
+            }
         }
-        else if(file.getName().endsWith(".bz") || file.getName().endsWith(".bz2"))
+    }
+
+    /**
+     * Open a writer for a file, compressing in parallel when the file
+     * is compressed and more than one compression thread is configured.
+     */
+    public static BufferConsumer open(File file) throws IOException
+    {
+        Compression compression = Compression.forFile(file);
+        if(compression != Compression.NONE && COMPRESSION_THREADS > 1)
         {
-            channel = Channels.newChannel(new BZip2CompressorOutputStream(fos));
+            return new ParallelArchiveWriter(file, compression);
         }
         else
         {
-            channel = Channels.newChannel(fos);
+            return new ArchiveWriter(file);
         }
     }
 
+    public ArchiveWriter(File file) throws IOException
+    {
+        this(file, 8096);
+    }
+
+    public ArchiveWriter(File file, int bufSize) throws IOException
+    {
+        BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(file), bufSize);
+
+        channel = Channels.newChannel(Compression.forFile(file).wrap(fos));
+    }
+
 
     @Override
     public void consume(ByteBuffer buf) throws IOException
@@ -0,0 +1,244 @@
+package icecube.daq.cli.util;
+
+import icecube.daq.bindery.BufferConsumer;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams byte buffers to a compressed file, compressing fixed size
+ * blocks in parallel.
+ *
+ * Each block is compressed as a complete gzip member, bzip2 stream or
+ * zstd frame and the blocks are written in order. Concatenated streams
+ * are read by the standard tools (gzip, bzip2, zstd) and by DataInput.
+ *
+ * The consuming thread writes the compressed blocks, a bounded number
+ * of blocks in flight applies back-pressure to the producer. Workers are
+ * shared by all writers in the process.
+ */
+public class ParallelArchiveWriter implements BufferConsumer
+{
+    private static final Logger logger = Logger.getLogger(ParallelArchiveWriter.class);
+
+    /** Uncompressed size of a block. */
+    public static final int DEFAULT_BLOCK_SIZE =
+            Integer.getInteger("icecube.daq.cli.compression-block-kb", 1024) * 1024;
+
+    /** Workers shared by all writers. */
+    private static ExecutorService sharedWorkers;
+
+    private final File file;
+    private final ArchiveWriter.Compression compression;
+    private final ExecutorService workers;
+    private final int blockSize;
+    private final int maxPending;
+
+    private final OutputStream out;
+
+    /** Compressed blocks in file order. */
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    /** Uncompressed blocks available for reuse. */
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+
+    private byte[] block;
+    private int fill;
+    private long blockCount;
+
+    // statistics
+    private long inputBytes;
+    private long outputBytes;
+    private final LongAdder compressNanos = new LongAdder();
+    private long startNanos;
+    private long stopNanos;
+
+
+    public ParallelArchiveWriter(File file, ArchiveWriter.Compression compression) throws IOException
+    {
+        this(file, compression, getSharedWorkers(), 2 * ArchiveWriter.COMPRESSION_THREADS, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param file The output file.
+     * @param compression The compression format.
+     * @param workers Executes the block compression.
+     * @param maxPending The maximum number of blocks in flight.
+     * @param blockSize The uncompressed size of a block.
+     */
+    public ParallelArchiveWriter(File file, ArchiveWriter.Compression compression, ExecutorService workers,
+                                 int maxPending, int blockSize) throws IOException
+    {
+        this.file = file;
+        this.compression = compression;
+        this.workers = workers;
+        this.maxPending = maxPending;
+        this.blockSize = blockSize;
+
+        // fail early on an unavailable format
+        compression.compressBlock(new byte[0], 0);
+
+        this.out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        this.block = new byte[blockSize];
+    }
+
+    private static synchronized ExecutorService getSharedWorkers()
+    {
+        if(sharedWorkers == null)
+        {
+            final AtomicInteger seq = new AtomicInteger();
+            sharedWorkers = Executors.newFixedThreadPool(ArchiveWriter.COMPRESSION_THREADS, r -> {
+                Thread thread = new Thread(r, "archive-compressor-" + seq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedWorkers;
+    }
+
+    @Override
+    public void consume(ByteBuffer buf) throws IOException
+    {
+        if(startNanos == 0)
+        {
+            startNanos = System.nanoTime();
+        }
+
+        inputBytes += buf.remaining();
+        while (buf.hasRemaining())
+        {
+            int length = Math.min(buf.remaining(), blockSize - fill);
+            buf.get(block, fill, length);
+            fill += length;
+
+            if(fill == blockSize)
+            {
+                submitBlock();
+            }
+        }
+    }
+
+    @Override
+    public void endOfStream(long token) throws IOException
+    {
+        // an empty output is still a valid compressed stream
+        if(fill > 0 || blockCount == 0)
+        {
+            submitBlock();
+        }
+        while (!pending.isEmpty())
+        {
+            writeBlock();
+        }
+        out.close();
+
+        stopNanos = System.nanoTime();
+        logger.info(String.format("Compressed [%s] %d bytes to %d (%.1f%%) in %.2f seconds, %.2f mb/s," +
+                        " %.2f mb/s per thread", file.getName(), inputBytes, outputBytes,
+                inputBytes > 0 ? 100.0 * outputBytes / inputBytes : 0.0,
+                elapsedSeconds(), getThroughput(), getThreadThroughput()));
+    }
+
+    private void submitBlock() throws IOException
+    {
+        final byte[] data = block;
+        final int length = fill;
+        pending.add(workers.submit(() -> {
+            long start = System.nanoTime();
+            try
+            {
+                return compression.compressBlock(data, length);
+            }
+            finally
+            {
+                compressNanos.add(System.nanoTime() - start);
+                free.offer(data);
+            }
+        }));
+        blockCount++;
+
+        block = free.poll();
+        if(block == null)
+        {
+            block = new byte[blockSize];
+        }
+        fill = 0;
+
+        while (pending.size() >= maxPending)
+        {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException
+    {
+        try
+        {
+            byte[] compressed = pending.remove().get();
+            out.write(compressed);
+            outputBytes += compressed.length;
+        }
+        catch (InterruptedException e)
+        {
+            throw new InterruptedIOException("Interrupted compressing " + file);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("Error compressing " + file, e.getCause());
+        }
+    }
+
+    private double elapsedSeconds()
+    {
+        return startNanos == 0 ? 0.0 : (stopNanos - startNanos) / 1e9;
+    }
+
+    /**
+     * @return The number of uncompressed bytes consumed.
+     */
+    public long getInputBytes()
+    {
+        return inputBytes;
+    }
+
+    /**
+     * @return The number of compressed bytes written.
+     */
+    public long getOutputBytes()
+    {
+        return outputBytes;
+    }
+
+    /**
+     * @return Uncompressed mb/s from first consume to end of stream.
+     */
+    public double getThroughput()
+    {
+        double elapsed = elapsedSeconds();
+        return elapsed > 0 ? inputBytes / elapsed / 1024 / 1024 : 0.0;
+    }
+
+    /**
+     * @return Uncompressed mb/s of a single compression thread.
+     */
+    public double getThreadThroughput()
+    {
+        double busy = compressNanos.sum() / 1e9;
+        return busy > 0 ? inputBytes / busy / 1024 / 1024 : 0.0;
+    }
+
+}
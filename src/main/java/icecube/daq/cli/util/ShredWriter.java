@@ -0,0 +1,446 @@
+package icecube.daq.cli.util;
+
+import icecube.daq.bindery.BufferConsumer;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Demultiplexes a record stream into many files by a record key.
+ *
+ * Records are collected in a buffer per target and written in large
+ * chunks. Buffer memory is bounded, when exhausted the least recently
+ * written target is flushed early. A bounded number of files are held
+ * open, the least recently written file is closed and reopened for
+ * append when next needed.
+ *
+ * Compressed targets are written as a sequence of independently
+ * compressed chunks, as by ParallelArchiveWriter, which are read back
+ * as a single stream. Chunks may be compressed in parallel, they are
+ * written in order.
+ */
+public class ShredWriter implements BufferConsumer
+{
+    private static final Logger logger = Logger.getLogger(ShredWriter.class);
+
+    private final ToLongFunction<ByteBuffer> keyFunction;
+    private final LongFunction<File> targetFunction;
+    private final ExecutorService workers;
+    private final int maxOpenFiles;
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final int maxPending;
+
+    /** All targets by key, in order of creation. */
+    private final Map<Long, Target> targets = new LinkedHashMap<>();
+
+    /** Targets holding a buffer, least recently written first. */
+    private final LinkedHashMap<Target, Target> buffered = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Targets with an open file, least recently written first. */
+    private final LinkedHashMap<Target, FileChannel> open = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Compressed chunks in submission order. */
+    private final ArrayDeque<Chunk> pending = new ArrayDeque<>();
+
+    /** Buffers available for reuse. */
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+    private int allocated;
+
+    // most streams deliver runs of records with the same key
+    private long lastKey;
+    private Target lastTarget;
+
+    // statistics
+    private long inputBytes;
+    private long outputBytes;
+    private long chunkCount;
+    private long openCount;
+    private long startNanos;
+    private long stopNanos;
+
+
+    /**
+     * @param keyFunction Derives the demux key of a record.
+     * @param targetFunction Names the output file of a key, the file name
+     *                       selects the compression.
+     * @param workers Compresses chunks, null to compress on the
+     *                consuming thread.
+     * @param maxOpenFiles The maximum number of open files.
+     * @param bufferSize The size of the per-target write buffer.
+     * @param maxBuffered The maximum number of bytes held in buffers.
+     */
+    public ShredWriter(ToLongFunction<ByteBuffer> keyFunction, LongFunction<File> targetFunction,
+                       ExecutorService workers, int maxOpenFiles, int bufferSize, long maxBuffered)
+    {
+        if(maxOpenFiles < 1)
+        {
+            throw new IllegalArgumentException("maxOpenFiles must be positive: " + maxOpenFiles);
+        }
+        this.keyFunction = keyFunction;
+        this.targetFunction = targetFunction;
+        this.workers = workers;
+        this.maxOpenFiles = maxOpenFiles;
+        this.bufferSize = bufferSize;
+        this.maxBuffers = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBuffered / bufferSize));
+        this.maxPending = Math.max(2, Math.min(maxBuffers, 2 * ArchiveWriter.COMPRESSION_THREADS));
+    }
+
+    private static class Target
+    {
+        final long key;
+        final File file;
+        final ArchiveWriter.Compression compression;
+
+        byte[] buf;
+        int fill;
+
+        // subsequent opens append
+        boolean created;
+
+        Target(long key, File file)
+        {
+            this.key = key;
+            this.file = file;
+            this.compression = ArchiveWriter.Compression.forFile(file);
+        }
+    }
+
+    private static class Chunk
+    {
+        final Target target;
+        final Future<byte[]> compressed;
+
+        Chunk(Target target, Future<byte[]> compressed)
+        {
+            this.target = target;
+            this.compressed = compressed;
+        }
+    }
+
+    @Override
+    public void consume(ByteBuffer buf) throws IOException
+    {
+        if(startNanos == 0)
+        {
+            startNanos = System.nanoTime();
+        }
+
+        final long key = keyFunction.applyAsLong(buf);
+        final Target target;
+        if(lastTarget != null && key == lastKey)
+        {
+            target = lastTarget;
+        }
+        else
+        {
+            target = lookup(key);
+            lastKey = key;
+            lastTarget = target;
+        }
+
+        final int length = buf.remaining();
+        inputBytes += length;
+
+        if(target.buf != null && length > bufferSize - target.fill)
+        {
+            flush(target);
+        }
+
+        if(length > bufferSize)
+        {
+            // oversize records are a chunk of their own
+            byte[] record = new byte[length];
+            buf.duplicate().get(record);
+            submit(target, record, length, false);
+        }
+        else
+        {
+            if(target.buf == null)
+            {
+                target.buf = acquireBuffer();
+                target.fill = 0;
+            }
+            buf.duplicate().get(target.buf, target.fill, length);
+            target.fill += length;
+            buffered.put(target, target);
+        }
+    }
+
+    @Override
+    public void endOfStream(long token) throws IOException
+    {
+        try
+        {
+            for (Target target : targets.values())
+            {
+                if(target.buf != null)
+                {
+                    flush(target);
+                }
+            }
+            while (!pending.isEmpty())
+            {
+                writePending();
+            }
+        }
+        finally
+        {
+            closeAll();
+        }
+
+        stopNanos = System.nanoTime();
+        logger.info(String.format("Shredded %d bytes into %d files, wrote %d bytes in %d chunks" +
+                        " with %d file opens in %.2f seconds (%.2f mb/s)", inputBytes, targets.size(),
+                outputBytes, chunkCount, openCount, elapsedSeconds(), getThroughput()));
+    }
+
+    private Target lookup(long key)
+    {
+        Target target = targets.get(key);
+        if(target == null)
+        {
+            target = new Target(key, targetFunction.apply(key));
+            targets.put(key, target);
+        }
+        return target;
+    }
+
+    private byte[] acquireBuffer() throws IOException
+    {
+        while (true)
+        {
+            byte[] buf = free.poll();
+            if(buf != null)
+            {
+                return buf;
+            }
+            else if(allocated < maxBuffers)
+            {
+                allocated++;
+                return new byte[bufferSize];
+            }
+            else if(!pending.isEmpty())
+            {
+                // completed compression releases a buffer
+                writePending();
+            }
+            else if(!buffered.isEmpty())
+            {
+                flush(buffered.keySet().iterator().next());
+            }
+            else
+            {
+                allocated++;
+                return new byte[bufferSize];
+            }
+        }
+    }
+
+    private void flush(Target target) throws IOException
+    {
+        byte[] data = target.buf;
+        int length = target.fill;
+        target.buf = null;
+        target.fill = 0;
+        buffered.remove(target);
+
+        submit(target, data, length, true);
+    }
+
+    private void submit(final Target target, final byte[] data, final int length, final boolean pooled)
+            throws IOException
+    {
+        chunkCount++;
+        if(target.compression == ArchiveWriter.Compression.NONE)
+        {
+            write(target, data, length);
+            if(pooled)
+            {
+                free.offer(data);
+            }
+        }
+        else if(workers == null)
+        {
+            byte[] compressed;
+            try
+            {
+                compressed = target.compression.compressBlock(data, length);
+            }
+            finally
+            {
+                if(pooled)
+                {
+                    free.offer(data);
+                }
+            }
+            write(target, compressed, compressed.length);
+        }
+        else
+        {
+            pending.add(new Chunk(target, workers.submit(() -> {
+                try
+                {
+                    return target.compression.compressBlock(data, length);
+                }
+                finally
+                {
+                    if(pooled)
+                    {
+                        free.offer(data);
+                    }
+                }
+            })));
+
+            while (pending.size() >= maxPending)
+            {
+                writePending();
+            }
+        }
+    }
+
+    private void writePending() throws IOException
+    {
+        Chunk chunk = pending.remove();
+        try
+        {
+            byte[] compressed = chunk.compressed.get();
+            write(chunk.target, compressed, compressed.length);
+        }
+        catch (InterruptedException e)
+        {
+            throw new InterruptedIOException("Interrupted compressing " + chunk.target.file);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("Error compressing " + chunk.target.file, e.getCause());
+        }
+    }
+
+    private void write(Target target, byte[] data, int length) throws IOException
+    {
+        FileChannel channel = channel(target);
+        ByteBuffer bb = ByteBuffer.wrap(data, 0, length);
+        while (bb.hasRemaining())
+        {
+            channel.write(bb);
+        }
+        outputBytes += length;
+    }
+
+    private FileChannel channel(Target target) throws IOException
+    {
+        FileChannel channel = open.get(target);
+        if(channel == null)
+        {
+            if(open.size() >= maxOpenFiles)
+            {
+                Iterator<Map.Entry<Target, FileChannel>> eldest = open.entrySet().iterator();
+                FileChannel evicted = eldest.next().getValue();
+                eldest.remove();
+                evicted.close();
+            }
+
+            channel = target.created ?
+                    FileChannel.open(target.file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND) :
+                    FileChannel.open(target.file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+            target.created = true;
+            openCount++;
+            open.put(target, channel);
+        }
+        return channel;
+    }
+
+    private void closeAll() throws IOException
+    {
+        IOException error = null;
+        for (FileChannel channel : open.values())
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                error = e;
+            }
+        }
+        open.clear();
+        if(error != null)
+        {
+            throw error;
+        }
+    }
+
+    private double elapsedSeconds()
+    {
+        return startNanos == 0 ? 0.0 : (stopNanos - startNanos) / 1e9;
+    }
+
+    /**
+     * @return The output files, in order of first appearance of their key.
+     */
+    public List<File> getFiles()
+    {
+        List<File> files = new ArrayList<>(targets.size());
+        for (Target target : targets.values())
+        {
+            files.add(target.file);
+        }
+        return files;
+    }
+
+    /**
+     * @return The number of bytes consumed.
+     */
+    public long getInputBytes()
+    {
+        return inputBytes;
+    }
+
+    /**
+     * @return The number of bytes written, after compression.
+     */
+    public long getOutputBytes()
+    {
+        return outputBytes;
+    }
+
+    /**
+     * @return The number of times an output file was opened, exceeds
+     *         the number of files when open files are evicted.
+     */
+    public long getOpenCount()
+    {
+        return openCount;
+    }
+
+    /**
+     * @return Consumed mb/s from first consume to end of stream.
+     */
+    public double getThroughput()
+    {
+        double elapsed = elapsedSeconds();
+        return elapsed > 0 ? inputBytes / elapsed / 1024 / 1024 : 0.0;
+    }
+
+}
@@ -7,6 +7,12 @@ import icecube.daq.monitoring.IRunMonitor;
 import icecube.daq.util.DOMInfo;
 import icecube.daq.util.FlasherboardConfiguration;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
 import org.apache.log4j.Logger;
 
 /**
@@ -43,6 +49,9 @@ public abstract class AbstractDataCollector extends Thread
     protected long lastHitTime;
     protected int runNumber = Integer.MIN_VALUE;
 
+    /** Futures awaiting a run level, completed by setRunLevel(). */
+    private final List<RunLevelWaiter> waiters = new ArrayList<RunLevelWaiter>();
+
     private static final Logger logger = Logger.getLogger(AbstractDataCollector.class);
 
     public AbstractDataCollector(int card, int pair, char dom)
@@ -213,10 +222,86 @@ public abstract class AbstractDataCollector extends Thread
 	    return 0L;
 	}
 
-	public synchronized void setRunLevel(RunLevel runLevel)
+	public void setRunLevel(RunLevel runLevel)
+	{
+	    List<RunLevelWaiter> completed = null;
+	    synchronized (this)
+	    {
+	        this.runLevel = runLevel;
+	        if (logger.isDebugEnabled()) logger.debug("Run level is " + this.runLevel);
+	        notifyAll();
+
+	        for (Iterator<RunLevelWaiter> it = waiters.iterator(); it.hasNext(); )
+	        {
+	            RunLevelWaiter waiter = it.next();
+	            if (waiter.condition.test(runLevel))
+	            {
+	                if (completed == null) completed = new ArrayList<RunLevelWaiter>();
+	                completed.add(waiter);
+	                it.remove();
+	            }
+	        }
+	    }
+
+	    // complete outside the lock, dependent actions may signal this collector
+	    if (completed != null)
+	    {
+	        for (RunLevelWaiter waiter : completed) waiter.future.complete(runLevel);
+	    }
+	}
+
+	/**
+	 * Returns a future which completes with the run level as soon as the
+	 * collector reaches a run level accepted by the condition, immediately
+	 * if the current run level is accepted.  Dependent actions run on the
+	 * thread changing the run level and must not block.
+	 */
+	public CompletableFuture<RunLevel> whenRunLevel(Predicate<RunLevel> condition)
+	{
+	    RunLevelWaiter waiter = new RunLevelWaiter(condition);
+	    RunLevel current;
+	    synchronized (this)
+	    {
+	        current = runLevel;
+	        if (!condition.test(current))
+	        {
+	            waiters.add(waiter);
+	            return waiter.future;
+	        }
+	    }
+	    waiter.future.complete(current);
+	    return waiter.future;
+	}
+
+	/**
+	 * Wait up to <tt>millis</tt> for the run level to change from
+	 * <tt>from</tt>.  Used by collector threads in place of a fixed
+	 * sleep so that signals are acted on without delay.
+	 *
+	 * @return The current run level.
+	 */
+	protected synchronized RunLevel awaitRunLevelChange(RunLevel from, long millis)
+	    throws InterruptedException
+	{
+	    final long deadline = System.currentTimeMillis() + millis;
+	    long remaining = millis;
+	    while (runLevel == from && remaining > 0)
+	    {
+	        wait(remaining);
+	        remaining = deadline - System.currentTimeMillis();
+	    }
+	    return runLevel;
+	}
+
+	private static class RunLevelWaiter
 	{
-	    this.runLevel = runLevel;
-	    if (logger.isDebugEnabled()) logger.debug("Run level is " + this.runLevel);
+	    final Predicate<RunLevel> condition;
+	    final CompletableFuture<RunLevel> future = new CompletableFuture<RunLevel>();
+
+	    RunLevelWaiter(Predicate<RunLevel> condition)
+	    {
+	        this.condition = condition;
+	    }
 	}
 
 
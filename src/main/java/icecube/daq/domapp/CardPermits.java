@@ -0,0 +1,52 @@
+package icecube.daq.domapp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of DOMs on each DOR card which are softbooted or
+ * configured at the same time.  A DOM holds a permit from its card while
+ * its collector initializes it and again while the DOM connector
+ * configures it.
+ */
+public class CardPermits
+{
+    /**
+     * The permits shared by the data collectors and the DOM connector,
+     * sized by icecube.daq.domapp.max-concurrent-per-card.
+     */
+    public static final CardPermits SHARED = new CardPermits(
+        Integer.getInteger("icecube.daq.domapp.max-concurrent-per-card", 8));
+
+    private final int permitsPerCard;
+    private final ConcurrentHashMap<Integer, Semaphore> cards =
+        new ConcurrentHashMap<Integer, Semaphore>();
+
+    /**
+     * @param permitsPerCard maximum number of DOMs softbooting or
+     *                       configuring at once on a card
+     */
+    public CardPermits(int permitsPerCard)
+    {
+        if (permitsPerCard < 1)
+        {
+            throw new IllegalArgumentException("Bad permits per card " +
+                                               permitsPerCard);
+        }
+        this.permitsPerCard = permitsPerCard;
+    }
+
+    public int getPermitsPerCard()
+    {
+        return permitsPerCard;
+    }
+
+    /**
+     * @return the permits of a DOR card
+     */
+    public Semaphore forCard(int card)
+    {
+        return cards.computeIfAbsent(card,
+            k -> new Semaphore(permitsPerCard));
+    }
+}
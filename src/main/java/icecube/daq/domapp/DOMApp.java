@@ -1,6 +1,7 @@
 package icecube.daq.domapp;
 
 import icecube.daq.domapp.LocalCoincidenceConfiguration.Source;
+import icecube.daq.dor.IDriver;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -32,7 +33,21 @@ public class DOMApp implements IDOMApp
      */
     public DOMApp(int card, int pair, char dom) throws IOException
     {
-        devIO = new DOMIO(card, pair, dom);
+        this(new DOMIO(card, pair, dom));
+    }
+
+    /**
+     * Talk to a DOM through a specific driver.
+     */
+    public DOMApp(IDriver driver, int card, int pair, char dom)
+        throws IOException
+    {
+        this(new DOMIO(driver, card, pair, dom));
+    }
+
+    private DOMApp(DOMIO devIO)
+    {
+        this.devIO = devIO;
         msgBuffer = ByteBuffer.allocate(4092);
         msgBufferOut = ByteBuffer.allocate(4092);
 
@@ -268,25 +283,7 @@ public class DOMApp implements IDOMApp
     @Override
     public ArrayList<ByteBuffer> getData(int n) throws MessageException
     {
-        ByteBuffer buf = (ByteBuffer) msgBuffer.clear();
-        for (int i = 0; i < n; i++)
-        {
-            buf.put(MessageType.GET_DATA.getFacility());
-            buf.put(MessageType.GET_DATA.getSubtype());
-            buf.putShort((short) 0).putShort((short) 0);
-            buf.put((byte) 0).put((byte) 0);
-        }
-
-        buf.flip();
-        logger.debug("Sending multimessage request.");
-        try
-        {
-            devIO.send(buf);
-        }
-        catch (IOException e)
-        {
-            throw new MessageException(MessageType.GET_DATA, e);
-        }
+        requestData(n);
 
         ArrayList<ByteBuffer> outC = new ArrayList<ByteBuffer>();
 
@@ -318,6 +315,31 @@ public class DOMApp implements IDOMApp
         return outC;
     }
 
+    /**
+     * Pack multiple data requests into a single write
+     */
+    @Override
+    public void requestData(int n) throws MessageException
+    {
+        ByteBuffer buf = (ByteBuffer) msgBuffer.clear();
+        for (int i = 0; i < n; i++)
+        {
+            buf.put(dataMsgArray);
+        }
+
+        buf.flip();
+        if (logger.isDebugEnabled())
+            logger.debug("Sending multimessage request.");
+        try
+        {
+            devIO.send(buf);
+        }
+        catch (IOException e)
+        {
+            throw new MessageException(MessageType.GET_DATA, e);
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
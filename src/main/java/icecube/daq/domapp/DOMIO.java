@@ -1,11 +1,12 @@
 package icecube.daq.domapp;
 
-import java.io.File;
+import icecube.daq.dor.DriverService;
+import icecube.daq.dor.IDriver;
+
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.channels.ByteChannel;
 
 import org.apache.log4j.Logger;
 
@@ -14,19 +15,24 @@ public class DOMIO {
     private int card;
     private int pair;
     private char dom;
-    private RandomAccessFile file;
-    private FileChannel channel;
+    private ByteChannel channel;
     private ByteBuffer in;
     private static Logger logger = Logger.getLogger(DOMIO.class);
 
     public DOMIO(int card, int pair, char dom) throws FileNotFoundException {
+	this(DriverService.getInstance(), card, pair, dom);
+    }
+
+    /**
+     * Open the DOM channel provided by a specific driver.
+     */
+    public DOMIO(IDriver driver, int card, int pair, char dom)
+	throws FileNotFoundException {
 	this.card = card;
 	this.pair = pair;
 	this.dom  = dom;
 
-	File devfile = new File("/dev/dhc" + card + 'w' + pair + 'd' + dom);
-	file = new RandomAccessFile(devfile, "rws");
-	channel = file.getChannel();
+	channel = driver.openDOM(card, pair, dom);
 
 	// TODO - hack to 4092 - make this better
 	// TODO - do we want Direct or Indirect?
@@ -38,7 +44,6 @@ public class DOMIO {
      */
     public void close() {
 	try {
-	    file.close();
 	    channel.close();
 	    if (logger.isDebugEnabled())
 		logger.debug("Closed file/channel for [" + card + "" + pair + dom + "]");
@@ -66,7 +71,8 @@ public class DOMIO {
      * @throws IOException
     */
     public void send(byte[] arr) throws IOException {
-	file.write(arr);
+	ByteBuffer buf = ByteBuffer.wrap(arr);
+	while (buf.hasRemaining()) channel.write(buf);
 
         if (logger.isDebugEnabled()) {
             logger.debug("dorch=" + card + "" + pair + "" + dom + " - xmit. ");
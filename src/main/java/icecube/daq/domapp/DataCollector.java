@@ -5,6 +5,7 @@ package icecube.daq.domapp;
 import icecube.daq.bindery.BufferConsumer;
 import icecube.daq.domapp.LocalCoincidenceConfiguration.RxMode;
 import icecube.daq.domapp.dataacquisition.AcquisitionError;
+import icecube.daq.domapp.dataacquisition.AcquisitionService;
 import icecube.daq.domapp.dataacquisition.DataAcquisition;
 import icecube.daq.domapp.dataprocessor.DataStats;
 import icecube.daq.domapp.dataacquisition.Watchdog;
@@ -14,6 +15,7 @@ import icecube.daq.domapp.dataprocessor.DataProcessorFactory;
 import icecube.daq.domapp.dataprocessor.GPSProvider;
 import icecube.daq.juggler.alert.Alerter.Priority;
 import icecube.daq.monitoring.IRunMonitor;
+import icecube.daq.performance.diagnostic.LatencyHistogram;
 import icecube.daq.time.gps.GPSService;
 import icecube.daq.util.FlasherboardConfiguration;
 import icecube.daq.util.SimpleMovingAverage;
@@ -27,6 +29,10 @@ import java.util.List;
 import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A data collection engine which drives the readout of the hits,
@@ -112,8 +118,13 @@ public class DataCollector extends AbstractDataCollector
     /** Counters populated by the data processor. */
     private final DataStats dataStats;
 
+    /**
+     * Runs the polling while running when the hub-wide acquisition
+     * service is enabled, otherwise null.
+     */
+    private final AcquisitionService.Channel serviceChannel;
+
 
-    private long    threadSleepInterval        = 50;
     private long    tcalReadIntervalNanos      = 1_000_000_000; // 1 second
 
 
@@ -151,6 +162,9 @@ public class DataCollector extends AbstractDataCollector
     private final int PROCESSOR_GRACEFUL_SHUTDOWN_MILLIS = Integer.getInteger(
             "icecube.daq.domapp.datacollector.graceful-shutdown-millis", 60000);
 
+    /** Interval between checks for shutdown while handed to the service. */
+    private static final long SERVICE_CHECK_MILLIS = 100;
+
     /** watchdog */
     private final InterruptorTask watchdog = new InterruptorTask();
 
@@ -204,6 +218,10 @@ public class DataCollector extends AbstractDataCollector
 
         dataAcquisition = new DataAcquisition(card, pair, dom, dataProcessor);
 
+        serviceChannel = AcquisitionService.isEnabled() ?
+                AcquisitionService.getInstance().register(card + "" + pair +
+                        dom, new ServiceCycle()) : null;
+
 
         latelyRunningFlashers = false;
 
@@ -357,8 +375,24 @@ public class DataCollector extends AbstractDataCollector
         mbid = dataAcquisition.getMBID();
         numericMBID = Long.parseLong(mbid, 16);
 
-        String reportedMBid =
-                dataAcquisition.doInitialization(watchdog, alwaysSoftboot);
+        // Softboot is slow, DOMs initialize concurrently up to a
+        // per-card limit shared with configure
+        Semaphore permits = CardPermits.SHARED.forCard(card);
+        while (!permits.tryAcquire(1, TimeUnit.SECONDS))
+        {
+            watchdog.ping();
+        }
+
+        String reportedMBid;
+        try
+        {
+            reportedMBid =
+                    dataAcquisition.doInitialization(watchdog, alwaysSoftboot);
+        }
+        finally
+        {
+            permits.release();
+        }
 
         // mbid reported from domapp messaging will be compared with mbid
         // obtained from proc file
@@ -441,8 +475,16 @@ public class DataCollector extends AbstractDataCollector
 
         while (!stop_thread)
         {
+            if (serviceChannel != null && !useIntervals &&
+                    getRunLevel() == RunLevel.RUNNING)
+            {
+                runOnService();
+                continue;
+            }
+
             long now = System.nanoTime();
             boolean tired = true;
+            boolean polled = false;
 
             // Ping the watchdog task
             watchdog.ping();
@@ -450,14 +492,15 @@ public class DataCollector extends AbstractDataCollector
             loopCounter++;
 
             /* Do TCAL and GPS -- this always runs regardless of the run state */
-            if (now >= (dataAcquisition.getLastTCalNanos() + tcalReadIntervalNanos))
+            // Note: The TCAL is run by the hub-wide TCAL service, it is
+            //       collected and processed on a later iteration.
+            final boolean tcalDue =
+                    now >= (dataAcquisition.getLastTCalNanos() + tcalReadIntervalNanos);
+            if (tcalDue && logger.isDebugEnabled())
             {
-                if (logger.isDebugEnabled())
-                {
-                    logger.debug("Doing TCAL - runLevel is " + getRunLevel());
-                }
-               dataAcquisition.attemptTCAL(watchdog);
+                logger.debug("Requesting TCAL - runLevel is " + getRunLevel());
             }
+            dataAcquisition.pollTCAL(tcalDue);
 
             switch (getRunLevel())
             {
@@ -475,6 +518,7 @@ public class DataCollector extends AbstractDataCollector
                     else
                     {
                         tired = dataAcquisition.doPolling(watchdog, now);
+                        polled = true;
                     }
 
                     //todo This is not an optimal way to track this data.
@@ -617,18 +661,102 @@ public class DataCollector extends AbstractDataCollector
                     break;
             }
 
-            if (tired)
+            final long idleMillis =
+                    dataAcquisition.completeCycle(tired, polled);
+            if (idleMillis > 0)
             {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Runcore loop is tired - sleeping " +
-                            threadSleepInterval + " ms.");
+                            idleMillis + " ms.");
                 }
-                watchdog.sleep(threadSleepInterval);
+                watchdog.sleep(idleMillis);
             }
         } /* END RUN LOOP */
     } /* END METHOD */
 
 
+    /**
+     * Hands the polling to the acquisition service until the run level
+     * changes, the collector is stopped or a polling cycle fails.
+     *
+     * The service pings the watchdog on each cycle, a cycle blocked on
+     * the DOM is aborted by the watchdog closing the device.
+     *
+     * @throws Exception The failure of a polling cycle.
+     */
+    private void runOnService() throws Exception
+    {
+        serviceChannel.resume();
+        try
+        {
+            final CompletableFuture<Object> leaving = CompletableFuture.anyOf(
+                    whenRunLevel(level -> level != RunLevel.RUNNING),
+                    serviceChannel.getFailure());
+            while (!stop_thread && !leaving.isDone())
+            {
+                try
+                {
+                    leaving.get(SERVICE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                catch (TimeoutException te)
+                {
+                    // check for shutdown
+                }
+                catch (InterruptedException ie)
+                {
+                    watchdog.handleInterrupted(ie);
+                }
+            }
+        }
+        finally
+        {
+            serviceChannel.suspend();
+        }
+
+        final Throwable failure = serviceChannel.getFailure().getNow(null);
+        if (failure instanceof Exception)
+        {
+            throw (Exception) failure;
+        }
+        else if (failure != null)
+        {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * One iteration of the running acquisition loop in polling mode, run
+     * by the acquisition service.  The data request is launched ahead of
+     * the cycle so that it overlaps the requests of other channels.
+     */
+    private class ServiceCycle implements AcquisitionService.Cycle
+    {
+        @Override
+        public void launch(final long now) throws Exception
+        {
+            dataAcquisition.requestPolling(now);
+        }
+
+        @Override
+        public long complete(final long now) throws Exception
+        {
+            watchdog.ping();
+
+            loopCounter++;
+
+            final boolean tcalDue =
+                    now >= (dataAcquisition.getLastTCalNanos() + tcalReadIntervalNanos);
+            dataAcquisition.pollTCAL(tcalDue);
+
+            final boolean tired = dataAcquisition.doPolling(watchdog, now);
+
+            firstHitTime = dataStats.getFirstHitTime();
+            lastHitTime = dataStats.getLastHitTime();
+
+            return dataAcquisition.completeCycle(tired, true);
+        }
+    }
+
     /**
      * Calls processor sync() under an adjusted watchdog timeout.
      *
@@ -751,6 +879,34 @@ public class DataCollector extends AbstractDataCollector
                 };
     }
 
+    @Override
+    public long getDataReadIntervalMicros()
+    {
+        return dataAcquisition.getScheduler().getDataReadIntervalNanos() /
+                1000;
+    }
+
+    @Override
+    public double getTiredRatio()
+    {
+        return dataAcquisition.getScheduler().getTiredRatio();
+    }
+
+    @Override
+    public long[] getDispatchLatencyNanos()
+    {
+        return dataStats.getDispatchLatency().summary();
+    }
+
+    /**
+     * Provides the latency from acquisition of data to completion of its
+     * processing and dispatch, for aggregation across channels.
+     */
+    public LatencyHistogram.Snapshot getDispatchLatency()
+    {
+        return dataStats.getDispatchLatency();
+    }
+
     @Override
     public long getNumSupernova()
     {
@@ -124,4 +124,22 @@ public interface DataCollectorMBean
      * array contains [current average, max] in milliseconds.
      */
     long[] getAcquisitionPauseTimeMillis();
+
+    /**
+     * Get the latency from acquisition of data to completion of its
+     * processing and dispatch, returned array contains
+     * [p50, p99, p99.9, max] in nanoseconds.
+     */
+    long[] getDispatchLatencyNanos();
+
+    /**
+     * Get the current interval between data reads in polling mode,
+     * in microseconds.
+     */
+    long getDataReadIntervalMicros();
+
+    /**
+     * Get the fraction of acquisition cycles which found no work.
+     */
+    double getTiredRatio();
 }
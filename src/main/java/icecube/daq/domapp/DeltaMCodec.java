@@ -1,6 +1,8 @@
 package icecube.daq.domapp;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -21,6 +23,23 @@ public class DeltaMCodec
 
 	static final Logger logger = Logger.getLogger(DeltaMCodec.class);
 
+	/** Samples in the FADC channel of a hit */
+	public static final int FADC_SAMPLES = 256;
+	/** Samples in each ATWD channel of a hit */
+	public static final int ATWD_SAMPLES = 128;
+	/** ATWD channels of a hit */
+	public static final int ATWD_CHANNELS = 4;
+
+	/*
+	 * Bit width transitions of the word decoder, indexed by state.
+	 * The states are the word widths 1, 2, 3, 6, 11 bits.
+	 */
+	private static final int[] WORD_BITS = { 1, 2, 3, 6, 11 };
+	private static final int[] BOUNDARY = { 0, 1, 2, 4, 32 };
+	private static final int[] SHIFT_UP = { 1, 2, 3, 4, 4 };
+	private static final int[] SHIFT_DOWN = { 0, 0, 1, 2, 3 };
+	private static final int INITIAL_STATE = 2;
+
 	public DeltaMCodec(ByteBuffer buf)
 	{
 		this.buf = buf;
@@ -29,7 +48,9 @@ public class DeltaMCodec
 
 	/**
 	 * Decode the next vector of N short integers from the
-	 * compressed buffer.
+	 * compressed buffer.  This decoder works bit group by bit
+	 * group and traces the bit register at DEBUG level, use
+	 * decode(short[], int, int) where throughput matters.
 	 * @param samples length of vector to decode
 	 * @return decompressed vector of short ints
 	 */
@@ -58,11 +79,137 @@ public class DeltaMCodec
 		return out;
 	}
 
+	/**
+	 * Decode the next vector of N short integers from the
+	 * compressed buffer into a caller supplied array.  The
+	 * bitstream is read 64 bits at a time where the buffer
+	 * allows, the result and the buffer position are identical
+	 * to decode(int).
+	 * @param out destination of the decompressed vector
+	 * @param offset index in out of the first sample
+	 * @param samples length of vector to decode
+	 */
+	public void decode(short[] out, int offset, int samples)
+	{
+		final boolean swap = buf.order() == ByteOrder.BIG_ENDIAN;
+		final int limit = buf.limit();
+		int pos = buf.position();
+
+		// the bit register, least significant bit first
+		long window = reg & ((1L << bvalid) - 1);
+		int nbits = bvalid;
+
+		int state = INITIAL_STATE;
+		short last = 0;
+		final int end = offset + samples;
+		for (int i = offset; i < end; i++)
+		{
+			int bits;
+			int word;
+			while (true)
+			{
+				bits = WORD_BITS[state];
+				if (nbits < bits)
+				{
+					if (limit - pos >= 8)
+					{
+						// top up to 56..63 bits, any bits already held
+						// above nbits are the same stream bits
+						long w = buf.getLong(pos);
+						if (swap) w = Long.reverseBytes(w);
+						window |= w << nbits;
+						pos += (63 - nbits) >>> 3;
+						nbits |= 56;
+					}
+					else
+					{
+						while (nbits < bits)
+						{
+							if (pos >= limit) throw new BufferUnderflowException();
+							window |= (long) (buf.get(pos++) & 0xff) << nbits;
+							nbits += 8;
+						}
+					}
+				}
+				word = (int) window & ((1 << bits) - 1);
+				window >>>= bits;
+				nbits -= bits;
+				if (word != (1 << (bits - 1))) break;
+				state = SHIFT_UP[state];
+			}
+			if (word > (1 << (bits - 1)))
+			{
+				// It's actually a negative number
+				word -= (1 << bits);
+			}
+			if (Math.abs(word) < BOUNDARY[state]) state = SHIFT_DOWN[state];
+			last += word;
+			out[i] = last;
+		}
+
+		// hand back the whole bytes read ahead, leaving the register
+		// as the byte-wise decoder would
+		int ahead = nbits >>> 3;
+		pos -= ahead;
+		nbits -= ahead << 3;
+		buf.position(pos);
+		reg = (int) (window & ((1L << nbits) - 1));
+		bvalid = nbits;
+	}
+
+	/**
+	 * Decode the waveforms of many delta compressed hits in one
+	 * pass.  The FADC vector of hit n is written to fadc starting
+	 * at n * FADC_SAMPLES and ATWD channel c to atwd starting at
+	 * (n * ATWD_CHANNELS + c) * ATWD_SAMPLES.  Channels not present
+	 * in a hit are left untouched.  The buffer position is not
+	 * affected.
+	 * @param buf buffer holding the hits
+	 * @param word1 the first header word of each hit
+	 * @param offsets buffer index of the compressed waveforms of
+	 * each hit, following the third header word
+	 * @param nhits number of hits to decode
+	 * @param fadc destination of the FADC vectors
+	 * @param atwd destination of the ATWD vectors
+	 */
+	public static void decodeHits(ByteBuffer buf, int[] word1, int[] offsets,
+			int nhits, short[] fadc, short[] atwd)
+	{
+		DeltaMCodec codec = new DeltaMCodec(buf.duplicate());
+		for (int n = 0; n < nhits; n++)
+		{
+			codec.buf.position(offsets[n]);
+			codec.reg = 0;
+			codec.bvalid = 0;
+
+			int w = word1[n];
+			if ((w & 0x8000) != 0)
+			{
+				codec.decode(fadc, n * FADC_SAMPLES, FADC_SAMPLES);
+			}
+			if ((w & 0x4000) != 0)
+			{
+				int natwd = ((w & 0x3000) >> 12) + 1;
+				for (int ch = 0; ch < natwd; ch++)
+				{
+					codec.decode(atwd, (n * ATWD_CHANNELS + ch) * ATWD_SAMPLES,
+							ATWD_SAMPLES);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Delta encoder
 	 * @param vec
 	 */
 	public void encode(short[] vec)
+	{
+		encodeVector(vec);
+		flush();
+	}
+
+	private void encodeVector(short[] vec)
 	{
 		short last = 0;
 		bitsPerWord = 3; bitBoundary = 2;
@@ -87,6 +234,21 @@ public class DeltaMCodec
 				putBits(delta);
 			}
 		}
+	}
+
+	/**
+	 * Delta encoder for consecutive vectors sharing one bitstream,
+	 * as the DOM packs the waveforms of a hit.  The bitstream is
+	 * flushed after the last vector only, matching the decoder which
+	 * carries the bit register from one vector to the next.
+	 * @param vecs
+	 */
+	public void encode(short[][] vecs)
+	{
+		for (int v = 0; v < vecs.length; v++)
+		{
+			encodeVector(vecs[v]);
+		}
 		flush();
 	}
 
@@ -150,6 +150,15 @@ public interface IDOMApp {
 	ByteBuffer getData() throws MessageException;
 	ArrayList<ByteBuffer> getData(int n) throws MessageException;
 
+	/**
+	 * Send several GET_DATA requests in a single write without
+	 * waiting for the replies.  Each reply must be collected with
+	 * recvMessage() before any other message is sent.
+	 * @param n number of requests
+	 * @throws MessageException
+	 */
+	void requestData(int n) throws MessageException;
+
 	/**
 	 * Get the currently configured ASCII-F (a.k.a. "FAST") monitoring
 	 * records' variant : either HLC hits or SLC hits are counted
@@ -147,6 +147,7 @@ public class SimDataCollector extends AbstractDataCollector
     public synchronized void setRunStopFlag(boolean val)
     {
         stopRunLoop = val;
+        notifyAll();
     }
 
     public synchronized boolean keepRunning()
@@ -224,7 +225,8 @@ public class SimDataCollector extends AbstractDataCollector
 
                 loopCounter++;
 
-                switch (getRunLevel()) {
+                final RunLevel level = getRunLevel();
+                switch (level) {
                 case CONFIGURING:
                     // Simulate configure time
                     Thread.sleep(500);
@@ -282,8 +284,8 @@ public class SimDataCollector extends AbstractDataCollector
                     return;
                 }
 
-                // CPU reduction action
-                if (needSomeSleep) Thread.sleep(100);
+                // CPU reduction action, wakes early on a run level change
+                if (needSomeSleep) awaitRunLevelChange(level, 100);
             }
         } catch (InterruptedException intx) {
             logger.error("Simulated DOM failure", intx);
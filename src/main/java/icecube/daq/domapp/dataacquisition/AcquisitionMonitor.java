@@ -55,6 +55,10 @@ public class AcquisitionMonitor
 
     long lastCycleNanos;
 
+    // receive buffer pool usage, interval mode only
+    int bufferPoolHighWater;
+    long bufferPoolExhaustedCount;
+
 
     // statistics on data packet size
     // welford's method
@@ -132,6 +136,41 @@ public class AcquisitionMonitor
         currentCycle.initiateMessageRead();
     }
 
+    /**
+     * Report a receive buffer taken from the channel's pool.
+     *
+     * @param outstanding The number of buffers now outstanding.
+     * @param exhausted True if the pool had to exceed its capacity.
+     */
+    final void reportBufferPoolTake(int outstanding, boolean exhausted)
+    {
+        if (outstanding > bufferPoolHighWater)
+        {
+            bufferPoolHighWater = outstanding;
+        }
+        if (exhausted)
+        {
+            bufferPoolExhaustedCount++;
+        }
+    }
+
+    /**
+     * @return The maximum number of receive buffers outstanding at once.
+     */
+    public int getBufferPoolHighWater()
+    {
+        return bufferPoolHighWater;
+    }
+
+    /**
+     * @return The number of receive buffers taken beyond the pool
+     *         capacity.
+     */
+    public long getBufferPoolExhaustedCount()
+    {
+        return bufferPoolExhaustedCount;
+    }
+
     public void completeCycle()
     {
 
@@ -166,7 +205,10 @@ public class AcquisitionMonitor
         StringBuilder sb = new StringBuilder(128);
         sb.append("avg-cycle-duration [").append
                 (avgCycleDurationMillis.getAverage())
-                .append(" ms]");
+                .append(" ms] buffer-pool-high-water [")
+                .append(bufferPoolHighWater)
+                .append("] buffer-pool-exhausted [")
+                .append(bufferPoolExhaustedCount).append("]");
         return sb;
     }
 
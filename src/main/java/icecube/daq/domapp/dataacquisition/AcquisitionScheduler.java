@@ -0,0 +1,177 @@
+package icecube.daq.domapp.dataacquisition;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sets the acquisition cadence of a channel.
+ * <p>
+ * In polling mode the interval between data reads follows the hit rate
+ * of the DOM, aiming for a fixed number of hits per read, and backs off
+ * exponentially while reads come back empty.
+ * <p>
+ * Cycles which find no work idle for an exponentially growing time,
+ * capped at the ceiling and at the time of the next scheduled read,
+ * instead of a fixed sleep.
+ * <p>
+ * Configuration
+ * <pre>
+ *
+ *    icecube.daq.domapp.dataacquisition.min-data-read-interval-micros = [1000]
+ *    icecube.daq.domapp.dataacquisition.max-data-read-interval-micros = [50000]
+ *
+ *           Bounds on the interval between data reads in polling mode.
+ *
+ *    icecube.daq.domapp.dataacquisition.target-hits-per-read = [4]
+ *
+ *           Number of hits a data read should return at the observed
+ *           hit rate.
+ *
+ *    icecube.daq.domapp.dataacquisition.max-idle-millis = [50]
+ *
+ *           Ceiling on the idle time of a cycle which found no work.
+ *
+ * </pre>
+ *
+ * Caller is assumed to be the DataCollector thread, monitoring getters
+ * may be called from any thread.
+ */
+public class AcquisitionScheduler
+{
+    public static final long MIN_DATA_READ_INTERVAL_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Integer.getInteger(
+            "icecube.daq.domapp.dataacquisition.min-data-read-interval-micros",
+            1000));
+
+    public static final long MAX_DATA_READ_INTERVAL_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Integer.getInteger(
+            "icecube.daq.domapp.dataacquisition.max-data-read-interval-micros",
+            50000));
+
+    public static final int TARGET_HITS_PER_READ = Integer.getInteger(
+            "icecube.daq.domapp.dataacquisition.target-hits-per-read", 4);
+
+    public static final long MAX_IDLE_MILLIS = Integer.getInteger(
+            "icecube.daq.domapp.dataacquisition.max-idle-millis", 50);
+
+    /** Limits the backoff shifts, well past any ceiling. */
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+
+    /** Current interval between data reads. */
+    private volatile long dataReadIntervalNanos = 10_000_000;
+
+    /** Consecutive data reads which returned nothing. */
+    private int emptyReads;
+
+    /** Consecutive cycles which found no work. */
+    private int tiredCycles;
+
+    // lifetime counters for monitoring
+    private volatile long cycleCount;
+    private volatile long tiredCount;
+
+
+    /**
+     * Report the outcome of a data read and schedule the next one.
+     *
+     * @param productive True if the read returned data.
+     * @param hitRate The current hit rate of the DOM, in Hz.
+     * @return The interval until the next data read, in nanoseconds.
+     */
+    public long nextDataReadInterval(final boolean productive,
+                                     final double hitRate)
+    {
+        if (productive)
+        {
+            emptyReads = 0;
+        }
+        else if (emptyReads < MAX_BACKOFF_SHIFT)
+        {
+            emptyReads++;
+        }
+
+        long interval;
+        if (hitRate > 0)
+        {
+            interval = clampInterval(
+                    (long) (TARGET_HITS_PER_READ * 1.0E9 / hitRate));
+        }
+        else
+        {
+            interval = MAX_DATA_READ_INTERVAL_NANOS;
+        }
+
+        // back off while the DOM is quieter than its rate suggests
+        interval = clampInterval(interval << emptyReads);
+
+        dataReadIntervalNanos = interval;
+        return interval;
+    }
+
+    /**
+     * Report the outcome of an acquisition cycle.
+     *
+     * @param tired True if the cycle found no work.
+     * @param nanosUntilNextRead Time until the next scheduled read,
+     *                           Long.MAX_VALUE if nothing is scheduled.
+     * @return The time to idle before the next cycle, in milliseconds.
+     */
+    public long completeCycle(final boolean tired,
+                              final long nanosUntilNextRead)
+    {
+        cycleCount++;
+
+        if (!tired)
+        {
+            tiredCycles = 0;
+            return 0;
+        }
+
+        tiredCount++;
+
+        long idle = Math.min(1L << tiredCycles, MAX_IDLE_MILLIS);
+        if (tiredCycles < MAX_BACKOFF_SHIFT)
+        {
+            tiredCycles++;
+        }
+
+        // wake up for the next read, but always yield the processor
+        final long untilRead =
+                TimeUnit.NANOSECONDS.toMillis(Math.max(nanosUntilNextRead, 0));
+        return Math.max(1L, Math.min(idle, untilRead));
+    }
+
+    /**
+     * @return The current interval between data reads in polling mode,
+     *         in nanoseconds.
+     */
+    public long getDataReadIntervalNanos()
+    {
+        return dataReadIntervalNanos;
+    }
+
+    /**
+     * @return The fraction of acquisition cycles which found no work.
+     */
+    public double getTiredRatio()
+    {
+        final long cycles = cycleCount;
+        return cycles == 0 ? 0.0 : (double) tiredCount / cycles;
+    }
+
+    private static long clampInterval(final long nanos)
+    {
+        if (nanos < MIN_DATA_READ_INTERVAL_NANOS)
+        {
+            return MIN_DATA_READ_INTERVAL_NANOS;
+        }
+        else if (nanos > MAX_DATA_READ_INTERVAL_NANOS || nanos < 0)
+        {
+            return MAX_DATA_READ_INTERVAL_NANOS;
+        }
+        else
+        {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package icecube.daq.domapp.dataacquisition;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hub-wide service which runs the polling cycles of the running DOM
+ * channels on a small set of threads, in place of a thread per channel.
+ * <p>
+ * A channel is handed to the service by its collector while running and
+ * is scheduled by the idle time returned from each of its cycles. A
+ * service thread takes the channels which are due, launches the cycle of
+ * every one of them before completing any, so that the round trips to
+ * the DOMs of the batch overlap, then completes them in turn. Data is
+ * read through the blocking IDOMApp interface as before and each
+ * channel's data is fed to its own processor.
+ * <p>
+ * A channel is never run by two threads at once. A failed cycle stops
+ * the channel and is reported through its failure future.
+ * <p>
+ * Configuration
+ * <pre>
+ *
+ *    icecube.daq.domapp.dataacquisition.service-threads = [0]
+ *
+ *           Number of threads running the polling cycles, zero keeps
+ *           the polling on the collector threads.
+ *
+ *    icecube.daq.domapp.dataacquisition.service-batch = [16]
+ *
+ *           Maximum number of channels whose cycles overlap on a
+ *           service thread.
+ *
+ * </pre>
+ */
+public class AcquisitionService
+{
+    private static final Logger logger =
+            Logger.getLogger(AcquisitionService.class);
+
+    /** Number of service threads, zero if the service is disabled. */
+    public static final int SERVICE_THREADS = Integer.getInteger(
+            "icecube.daq.domapp.dataacquisition.service-threads", 0);
+
+    /** Maximum number of overlapping cycles on a service thread. */
+    private static final int SERVICE_BATCH = Integer.getInteger(
+            "icecube.daq.domapp.dataacquisition.service-batch", 16);
+
+    /** The singleton, system wide service instance. */
+    private static AcquisitionService instance;
+
+    private final int batch;
+
+    /** Guards the schedule and the channel states. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when the head of the schedule changes. */
+    private final Condition due = lock.newCondition();
+
+    /** Signalled when channels are handed back by a service thread. */
+    private final Condition idle = lock.newCondition();
+
+    /** Resumed channels which are not running, by due time. */
+    private final PriorityQueue<Channel> schedule =
+            new PriorityQueue<>(Comparator.comparingLong(c -> c.dueNanos));
+
+    private final Thread[] threads;
+    private volatile boolean running = true;
+
+
+    /**
+     * @return true if the polling of running channels is configured to
+     *         be run by the service.
+     */
+    public static boolean isEnabled()
+    {
+        return SERVICE_THREADS > 0;
+    }
+
+    /**
+     * Provides access to the hub-wide service.
+     *
+     * @return The acquisition service.
+     */
+    public static synchronized AcquisitionService getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new AcquisitionService(SERVICE_THREADS, SERVICE_BATCH);
+        }
+        return instance;
+    }
+
+    /**
+     * Create and start a service.
+     *
+     * @param numThreads The number of service threads.
+     * @param batch The maximum number of overlapping cycles on a thread.
+     */
+    public AcquisitionService(final int numThreads, final int batch)
+    {
+        if (numThreads < 1)
+        {
+            throw new IllegalArgumentException("Bad number of threads " +
+                    numThreads);
+        }
+        if (batch < 1)
+        {
+            throw new IllegalArgumentException("Bad batch size " + batch);
+        }
+        this.batch = batch;
+
+        threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++)
+        {
+            threads[i] = new Thread(this::run, "AcquisitionService-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Register a channel with the service, the channel is not run
+     * until it is resumed.
+     *
+     * @param id The channel name used in error messages.
+     * @param cycle The polling cycle of the channel.
+     * @return The channel's view of the service.
+     */
+    public Channel register(final String id, final Cycle cycle)
+    {
+        return new Channel(id, cycle);
+    }
+
+    /**
+     * Stop the service threads, the channels still scheduled fail.
+     */
+    public void shutdown()
+    {
+        lock.lock();
+        try
+        {
+            running = false;
+            due.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        for (Thread thread : threads)
+        {
+            try
+            {
+                thread.join(1000);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        lock.lock();
+        try
+        {
+            Channel channel;
+            while ((channel = schedule.poll()) != null)
+            {
+                channel.active = false;
+                channel.failure.complete(channel.stopped());
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void run()
+    {
+        final List<Channel> taken = new ArrayList<>(batch);
+        try
+        {
+            while (take(taken))
+            {
+                // launch all the cycles before completing any, so that
+                // the round trips of different channels overlap
+                final long now = System.nanoTime();
+                for (Channel channel : taken)
+                {
+                    channel.launch(now);
+                }
+                for (Channel channel : taken)
+                {
+                    channel.complete(now);
+                }
+
+                handBack(taken);
+            }
+        }
+        catch (Throwable th)
+        {
+            logger.error("Acquisition service thread failed", th);
+        }
+        finally
+        {
+            for (Channel channel : taken)
+            {
+                if (channel.error == null)
+                {
+                    channel.error = channel.stopped();
+                }
+            }
+            handBack(taken);
+        }
+    }
+
+    /**
+     * Wait for channels to become due and take them off the schedule.
+     *
+     * @param taken Receives the channels.
+     * @return false if the service is stopping.
+     */
+    private boolean take(final List<Channel> taken)
+            throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            while (running)
+            {
+                Channel head = schedule.peek();
+                if (head == null)
+                {
+                    due.await();
+                    continue;
+                }
+
+                final long now = System.nanoTime();
+                final long wait = head.dueNanos - now;
+                if (wait > 0)
+                {
+                    due.awaitNanos(wait);
+                    continue;
+                }
+
+                while (taken.size() < batch && head != null &&
+                        head.dueNanos - now <= 0)
+                {
+                    schedule.poll();
+                    head.busy = true;
+                    taken.add(head);
+                    head = schedule.peek();
+                }
+
+                // more channels are due than one thread takes
+                if (head != null)
+                {
+                    due.signal();
+                }
+                return true;
+            }
+            return false;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return channels to the schedule after their cycles, or stop them
+     * if their cycle failed.
+     *
+     * @param taken The channels, cleared on return.
+     */
+    private void handBack(final List<Channel> taken)
+    {
+        if (taken.isEmpty())
+        {
+            return;
+        }
+
+        final long finish = System.nanoTime();
+        lock.lock();
+        try
+        {
+            for (Channel channel : taken)
+            {
+                channel.busy = false;
+                if (channel.active && !running && channel.error == null)
+                {
+                    channel.error = channel.stopped();
+                }
+
+                if (channel.error != null)
+                {
+                    channel.active = false;
+                    channel.failure.complete(channel.error);
+                    channel.error = null;
+                }
+                else if (channel.active)
+                {
+                    channel.dueNanos = finish +
+                            TimeUnit.MILLISECONDS.toNanos(channel.idleMillis);
+                    schedule.add(channel);
+                }
+            }
+            due.signal();
+            idle.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        taken.clear();
+    }
+
+
+    /**
+     * The polling cycle of a channel, split at the point where the
+     * channel waits on its DOM.
+     */
+    public interface Cycle
+    {
+        /**
+         * Send the requests of the cycle without waiting for the replies.
+         *
+         * @param nowNanos The time of the cycle.
+         */
+        void launch(long nowNanos) throws Exception;
+
+        /**
+         * Collect the replies and complete the cycle.
+         *
+         * @param nowNanos The time of the cycle.
+         * @return The time to idle before the next cycle, in milliseconds.
+         */
+        long complete(long nowNanos) throws Exception;
+    }
+
+
+    /**
+     * A channel's view of the service. Intended to be called from the
+     * channel's collector thread.
+     */
+    public final class Channel
+    {
+        private final String id;
+        private final Cycle cycle;
+
+        /** Completed with the error which stopped the channel. */
+        private volatile CompletableFuture<Throwable> failure =
+                new CompletableFuture<>();
+
+        // members guarded by the service lock
+        private boolean active;
+        private boolean busy;
+        private long dueNanos;
+
+        // members owned by the service thread running the channel
+        private Throwable error;
+        private long idleMillis;
+
+        private Channel(final String id, final Cycle cycle)
+        {
+            this.id = id;
+            this.cycle = cycle;
+        }
+
+        /**
+         * Schedule the channel to be run now and after each of its
+         * cycles, until it is suspended or a cycle fails.
+         */
+        public void resume()
+        {
+            lock.lock();
+            try
+            {
+                if (!running)
+                {
+                    throw new IllegalStateException("Acquisition service" +
+                            " stopped");
+                }
+                if (active)
+                {
+                    return;
+                }
+
+                if (failure.isDone())
+                {
+                    failure = new CompletableFuture<>();
+                }
+                active = true;
+                dueNanos = System.nanoTime();
+                schedule.add(this);
+                due.signal();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Take the channel off the schedule, waiting for a cycle in
+         * progress to complete. The channel is no longer run by the
+         * service when this returns.
+         */
+        public void suspend()
+        {
+            lock.lock();
+            try
+            {
+                active = false;
+                schedule.remove(this);
+                while (busy)
+                {
+                    idle.awaitUninterruptibly();
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return A future completed with the error which stopped the
+         *         channel since it was last resumed.
+         */
+        public CompletableFuture<Throwable> getFailure()
+        {
+            return failure;
+        }
+
+        private AcquisitionError stopped()
+        {
+            return new AcquisitionError("Acquisition service stopped" +
+                    " running [" + id + "]");
+        }
+
+        /**
+         * Launch the cycle, service thread only.
+         */
+        private void launch(final long now)
+        {
+            try
+            {
+                cycle.launch(now);
+            }
+            catch (Throwable th)
+            {
+                error = th;
+            }
+        }
+
+        /**
+         * Complete the cycle unless its launch failed, service thread only.
+         */
+        private void complete(final long now)
+        {
+            if (error != null)
+            {
+                return;
+            }
+
+            try
+            {
+                idleMillis = cycle.complete(now);
+            }
+            catch (Throwable th)
+            {
+                error = th;
+            }
+        }
+    }
+
+}
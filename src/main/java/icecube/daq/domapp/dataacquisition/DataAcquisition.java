@@ -4,8 +4,9 @@ import icecube.daq.domapp.*;
 import icecube.daq.domapp.dataprocessor.DataProcessor;
 import icecube.daq.domapp.dataprocessor.DataProcessorError;
 import icecube.daq.domapp.dataprocessor.DataStats;
-import icecube.daq.dor.Driver;
+import icecube.daq.dor.DriverService;
 import icecube.daq.dor.IDriver;
+import icecube.daq.dor.TCALService;
 import icecube.daq.dor.TimeCalib;
 import icecube.daq.time.monitoring.ClockMonitoringSubsystem;
 import icecube.daq.time.monitoring.ClockProcessor;
@@ -16,16 +17,19 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A collection of methods that handle data acquisition
  * from the DOM device.
  *
- * Caller is assumed to be the DataCollector thread. This is a requirement
- * for correct behavior.
+ * Caller is assumed to be the DataCollector thread, or the acquisition
+ * service thread to which the collector has handed its polling. This is
+ * a requirement for correct behavior.
  *
  * This implementation requires that the dor driver be in blocking mode.
  *
@@ -46,9 +50,12 @@ public class DataAcquisition
 
     /** members supporting dom communication*/
     private final IDriver driver;
-    private DOMApp app;
+    private IDOMApp app;
     private final File tcalFile;
 
+    /** Runs the TCALs of this channel. */
+    private final TCALService.Channel tcalChannel;
+
 
     // Note: read intervals are only applicable to polling mode.
     private long nextSupernovaReadNanos = 0;
@@ -56,21 +63,52 @@ public class DataAcquisition
     private long nextDataReadNanos = 0;
 
 
-    private long    dataReadIntervalNanos      = 10_000_000;    //10 millisec
     private long    moniReadIntervalNanos      = 1_000_000_000; // 1 second
     private long    supernovaReadIntervalNanos = 1_000_000_000; // 1 second
 
+    /** Sets the data read cadence and idle time of the channel. */
+    private final AcquisitionScheduler scheduler = new AcquisitionScheduler();
+
     // System time of last successful tcal
     private long lastTCalNanos;
 
 
     // Note: interval data is only applicable to interval mode;
     private IntervalData intervalData = new IntervalData();
+    private final ReceiveBufferPool bufferPool;
+
+    // Note: pipelined reads are only applicable to polling mode.
+    //       The processor copies the data it is handed, so one
+    //       receive buffer serves every reply.
+    private final boolean pipelinedReads;
+    private int pipelineDepth = 1;
+    private final ByteBuffer dataRecvBuffer = ByteBuffer.allocate(4092);
 
+    // Note: set by requestPolling() when a data request is in flight,
+    //       its reply is collected by the next doPolling().
+    private boolean dataRequested;
 
-    /** Wait time used when spinning on data reads. */
+
+    /** Ceiling on the wait time used when spinning on data reads. */
     private final static long SPIN_WAIT_SLEEP_MILLIS = 50;
 
+    /** Enables pipelined data reads in polling mode. */
+    public final static boolean PIPELINED_READS = Boolean.getBoolean(
+            "icecube.daq.domapp.dataacquisition.pipelined-reads");
+
+    /** Upper bound on the data requests in flight in pipelined mode. */
+    public final static int MAX_PIPELINE_DEPTH = Integer.getInteger(
+            "icecube.daq.domapp.dataacquisition.max-pipeline-depth", 8);
+
+    /**
+     * Upper bound on the data requests issued by one pipelined read,
+     * so that moni, supernova and tcal reads are not starved.
+     */
+    private final static int MAX_PIPELINED_REQUESTS = 4 * MAX_PIPELINE_DEPTH;
+
+    /** Upper bound on waiting for the TCAL service. */
+    private final static long TCAL_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     /** Timeout used while softbooting. */
     public final static long SOFTBOOT_TIMEOUT_MILLIS = Integer.getInteger(
             "icecube.daq.domapp.dataacquisition.softboot-timeout-millis",
@@ -91,6 +129,21 @@ public class DataAcquisition
 
     public DataAcquisition(final int card, final int pair, final char dom,
                            final DataProcessor dataProcessor)
+    {
+        this(card, pair, dom, dataProcessor, DriverService.getInstance(),
+                TCALService.getInstance(), null, PIPELINED_READS);
+    }
+
+    /**
+     * Constructor for testing, which supplies the dom interface in place
+     * of initialization.
+     */
+    DataAcquisition(final int card, final int pair, final char dom,
+                    final DataProcessor dataProcessor,
+                    final IDriver driver,
+                    final TCALService tcalService,
+                    final IDOMApp app,
+                    final boolean pipelinedReads)
     {
         this.card = card;
         this.pair = pair;
@@ -99,11 +152,16 @@ public class DataAcquisition
         this.dataStats = dataProcessor.getDataCounters();
 
         this.id = card + "" + pair + "" + dom;
-        this.driver = Driver.getInstance();
+        this.driver = driver;
+        this.app = app;
+        this.pipelinedReads = pipelinedReads;
 
         tcalFile = this.driver.getTCALFile(card, pair, dom);
+        tcalChannel = tcalService.register(tcalFile, id);
 
         this.monitor = new AcquisitionMonitor(id);
+        this.bufferPool = new ReceiveBufferPool(4092,
+                IntervalData.MAX_MESSAGES, monitor);
 
         this.lastTCalNanos = System.nanoTime();
     }
@@ -339,7 +397,7 @@ public class DataAcquisition
             app.beginRun();
             monitor.reportRunStart();
 
-            TimeCalib timeCalib = driver.readTCAL(tcalFile);
+            TimeCalib timeCalib = awaitTCAL().getTimeCalib();
             long domclock = timeCalib.getDomTx().in_0_1ns() / 250L;
             return dataProcessor.resolveUTCTime(domclock).in_0_1ns();
         }
@@ -387,7 +445,7 @@ public class DataAcquisition
             );
 
 
-            TimeCalib timeCalib = driver.readTCAL(tcalFile);
+            TimeCalib timeCalib = awaitTCAL().getTimeCalib();
 
             long domclock = timeCalib.getDomTx().in_0_1ns() / 250L;
             return dataProcessor.resolveUTCTime(domclock).in_0_1ns();
@@ -435,7 +493,7 @@ public class DataAcquisition
                     (short) flasherConfig.getRate()
             );
 
-            TimeCalib timeCalib = driver.readTCAL(tcalFile);
+            TimeCalib timeCalib = awaitTCAL().getTimeCalib();
 
             long domclock = timeCalib.getDomTx().in_0_1ns() / 250L;
             return dataProcessor.resolveUTCTime(domclock).in_0_1ns();
@@ -511,6 +569,8 @@ public class DataAcquisition
         {
             app.close();
         }
+
+        tcalChannel.release();
     }
 
 
@@ -529,61 +589,80 @@ public class DataAcquisition
         try
         {
             boolean done = false;
+            long spinWaitMillis = 1;
             app.getInterval();
 
             while (!done) {
-                monitor.initiateMessageRead();
-                ByteBuffer msg = app.recvMessage(ByteBuffer.allocate(4092));
-                monitor.reportDataMessageRcv(msg);
-
-                watchdog.ping();
+                ByteBuffer recvBuf = bufferPool.take();
+                boolean retained = false;
+                try
+                {
+                    monitor.initiateMessageRead();
+                    ByteBuffer msg = app.recvMessage(recvBuf);
+                    monitor.reportDataMessageRcv(msg);
 
-                // consume message header
-                byte msg_type = msg.get(0);
-                byte msg_subtype = msg.get(1);
-                msg.position(8);
+                    watchdog.ping();
 
-                // pass message payload to processor
-                if(MessageType.GET_DATA.equals(msg_type, msg_subtype)) {
-                    if (msg.remaining()>0) {
-                        intervalData.accumulate(msg.slice(), DataProcessor.StreamType.HIT);
-                        tired = false;
-                    }
-                } else if(MessageType.GET_SN_DATA.equals(msg_type, msg_subtype)) {
-                    if (msg.remaining()>0) {
-                        intervalData.accumulate(msg.slice(), DataProcessor.StreamType.SUPERNOVA);
-                        tired = false;
+                    // consume message header
+                    byte msg_type = msg.get(0);
+                    byte msg_subtype = msg.get(1);
+                    msg.position(8);
+
+                    // pass message payload to processor
+                    if(MessageType.GET_DATA.equals(msg_type, msg_subtype)) {
+                        if (msg.remaining()>0) {
+                            intervalData.accumulate(msg.slice(), DataProcessor.StreamType.HIT, recvBuf);
+                            retained = true;
+                            tired = false;
+                        }
+                    } else if(MessageType.GET_SN_DATA.equals(msg_type, msg_subtype)) {
+                        if (msg.remaining()>0) {
+                            intervalData.accumulate(msg.slice(), DataProcessor.StreamType.SUPERNOVA, recvBuf);
+                            retained = true;
+                            tired = false;
+                        }
+                        done = true;
+                    } else if(MessageType.GET_MONI.equals(msg_type, msg_subtype)) {
+                        if (msg.remaining()>0) {
+                            intervalData.accumulate(msg.slice(), DataProcessor.StreamType.MONI, recvBuf);
+                            retained = true;
+                            tired = false;
+                        }
+                        // If we're not going to get a SN message, this marks the
+                        // end of the interval
+                        done = supernova_disabled;
+                    } else {
+                        // assume a status of one
+                        // as the recv code will have
+                        // thrown an exception if that was not
+                        // true
+                        throw new MessageException(MessageType.GET_DATA,
+                                msg_type, msg_subtype, 1);
                     }
-                    done = true;
-                } else if(MessageType.GET_MONI.equals(msg_type, msg_subtype)) {
-                    if (msg.remaining()>0) {
-                        intervalData.accumulate(msg.slice(), DataProcessor.StreamType.MONI);
-                        tired = false;
+                }
+                finally
+                {
+                    if (!retained)
+                    {
+                        bufferPool.give(recvBuf);
                     }
-                    // If we're not going to get a SN message, this marks the
-                    // end of the interval
-                    done = supernova_disabled;
-                } else {
-                    // assume a status of one
-                    // as the recv code will have
-                    // thrown an exception if that was not
-                    // true
-                    throw new MessageException(MessageType.GET_DATA,
-                            msg_type, msg_subtype, 1);
                 }
 
                 if(tired) {
-                    // sleep before next iteration
-                    watchdog.sleep(SPIN_WAIT_SLEEP_MILLIS);
+                    // back off before next iteration
+                    watchdog.sleep(spinWaitMillis);
+                    spinWaitMillis = Math.min(2 * spinWaitMillis,
+                            SPIN_WAIT_SLEEP_MILLIS);
                 }
             }
 
             //Note: Before submitting the interval, run a tcal.  This
             //      (almost always) ensures that a bounding isochron
             //      will be available while processing the data in the
-            //      interval.
+            //      interval.  The TCAL is launched after the last
+            //      message of the interval and awaited here.
             attemptTCAL(watchdog);
-            intervalData.submitAll(dataProcessor);
+            intervalData.submitAll(dataProcessor, bufferPool);
 
             return tired;
         }
@@ -598,6 +677,41 @@ public class DataAcquisition
         }
     }
 
+    /**
+     * Send the data request of the next polling acquisition without
+     * waiting for the reply, so that the round trips of several channels
+     * can overlap. The reply is collected by the doPolling() call which
+     * must follow.
+     *
+     * Pipelined reads manage their own requests and are not launched
+     * early.
+     *
+     * @param systemTimeNanos The time of the polling acquisition.
+     * @return True if a data request was sent.
+     * @throws AcquisitionError
+     */
+    public boolean requestPolling(final long systemTimeNanos)
+            throws AcquisitionError
+    {
+        if (pipelinedReads || dataRequested ||
+                systemTimeNanos < nextDataReadNanos)
+        {
+            return false;
+        }
+
+        try
+        {
+            app.requestData(1);
+            dataRequested = true;
+            return true;
+        }
+        catch(Exception ex)
+        {
+            throw new AcquisitionError("Error requesting data from [" +
+                    id + "]", ex);
+        }
+    }
+
     /**
      * Execute an polling acquisition.
      *
@@ -615,20 +729,26 @@ public class DataAcquisition
             monitor.initiateCycle();
 
             // Time to do a data collection?
-            if (systemTimeNanos >= nextDataReadNanos)
+            if (dataRequested || systemTimeNanos >= nextDataReadNanos)
             {
-                nextDataReadNanos = systemTimeNanos + dataReadIntervalNanos;
-
                 try
                 {
-                    // Get debug information during Alpaca failures
-                    monitor.initiateMessageRead();
-                    ByteBuffer data = app.getData();
-                    monitor.reportDataMessageRcv(data);
+                    if (pipelinedReads)
+                    {
+                        tired = readDataPipelined(watchdog);
+                    }
+                    else
+                    {
+                        // Get debug information during Alpaca failures
+                        monitor.initiateMessageRead();
+                        ByteBuffer data = dataRequested ?
+                                recvRequestedData() : app.getData();
+                        monitor.reportDataMessageRcv(data);
 
-                    if (data.remaining() > 0) tired = false;
+                        if (data.remaining() > 0) tired = false;
 
-                    dataProcessor.process(DataProcessor.StreamType.HIT, data);
+                        dataProcessor.process(DataProcessor.StreamType.HIT, data);
+                    }
                 }
                 catch (IllegalArgumentException ex)
                 {
@@ -637,6 +757,10 @@ public class DataAcquisition
                     logger.error("FPGA regs for card "+card+":\n"+driver.getFPGARegs(card));
                     throw ex;
                 }
+
+                nextDataReadNanos = systemTimeNanos +
+                        scheduler.nextDataReadInterval(!tired,
+                                dataStats.getHitRate());
             }
 
             // What about monitoring?
@@ -686,6 +810,142 @@ public class DataAcquisition
         }
     }
 
+    /**
+     * Collect the reply to the data request sent by requestPolling().
+     *
+     * @return The hit data.
+     */
+    private ByteBuffer recvRequestedData() throws MessageException
+    {
+        dataRequested = false;
+
+        ByteBuffer msg = app.recvMessage(dataRecvBuffer);
+        byte msg_type = msg.get(0);
+        byte msg_subtype = msg.get(1);
+        if (!MessageType.GET_DATA.equals(msg_type, msg_subtype))
+        {
+            throw new MessageException(MessageType.GET_DATA,
+                    msg_type, msg_subtype, 1);
+        }
+
+        msg.position(8);
+        return msg.slice();
+    }
+
+    /**
+     * Read hit data with several GET_DATA requests in flight.
+     *
+     * Requests are topped up as replies arrive until the DOM returns
+     * an empty reply, then the remaining replies are drained so that
+     * no request is outstanding when the method returns.  The depth
+     * grows by one while every reply carries data, and is halved when
+     * the DOM runs dry with more than one request still in flight.
+     *
+     * @param watchdog The watchdog.
+     * @return True if no data was received.
+     */
+    private boolean readDataPipelined(final Watchdog watchdog)
+            throws MessageException, DataProcessorError
+    {
+        boolean tired = true;
+        boolean backlog = true;
+        int emptyReplies = 0;
+
+        app.requestData(pipelineDepth);
+        int inFlight = pipelineDepth;
+        int requested = pipelineDepth;
+
+        while (inFlight > 0)
+        {
+            monitor.initiateMessageRead();
+            ByteBuffer msg = app.recvMessage(dataRecvBuffer);
+            inFlight--;
+
+            watchdog.ping();
+
+            byte msg_type = msg.get(0);
+            byte msg_subtype = msg.get(1);
+            if (!MessageType.GET_DATA.equals(msg_type, msg_subtype))
+            {
+                throw new MessageException(MessageType.GET_DATA,
+                        msg_type, msg_subtype, 1);
+            }
+
+            msg.position(8);
+            ByteBuffer data = msg.slice();
+            monitor.reportDataMessageRcv(data);
+
+            if (data.remaining() > 0)
+            {
+                tired = false;
+                dataProcessor.process(DataProcessor.StreamType.HIT, data);
+            }
+            else
+            {
+                backlog = false;
+                emptyReplies++;
+            }
+
+            if (backlog && requested < MAX_PIPELINED_REQUESTS)
+            {
+                app.requestData(1);
+                inFlight++;
+                requested++;
+            }
+        }
+
+        if (emptyReplies == 0)
+        {
+            pipelineDepth = Math.min(pipelineDepth + 1, MAX_PIPELINE_DEPTH);
+        }
+        else if (emptyReplies > 1)
+        {
+            pipelineDepth = Math.max(pipelineDepth / 2, 1);
+        }
+
+        return tired;
+    }
+
+    /**
+     * Complete an acquisition cycle.
+     *
+     * @param tired True if the cycle found no work.
+     * @param polled True if the cycle polled the DOM for data.
+     * @return The time to idle before the next cycle, in milliseconds.
+     */
+    public long completeCycle(final boolean tired, final boolean polled)
+    {
+        long nanosUntilNextRead = Long.MAX_VALUE;
+        if (polled)
+        {
+            long nextRead = Math.min(nextDataReadNanos, nextMoniReadNanos);
+            if (!supernova_disabled)
+            {
+                nextRead = Math.min(nextRead, nextSupernovaReadNanos);
+            }
+            nanosUntilNextRead = nextRead - System.nanoTime();
+        }
+
+        return scheduler.completeCycle(tired, nanosUntilNextRead);
+    }
+
+    /**
+     * @return The acquisition scheduler of the channel.
+     */
+    public AcquisitionScheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    /**
+     * @return The number of data requests kept in flight by pipelined
+     *         reads.
+     */
+    public int getPipelineDepth()
+    {
+        return pipelineDepth;
+    }
+
     /**
      * Initialize the connection to the DOM, including
      * attempts at fault recovery.
@@ -862,34 +1122,7 @@ public class DataAcquisition
     {
         try
         {
-            long before = System.nanoTime();
-            TimeCalib tcal = driver.readTCAL(tcalFile);
-            long after = System.nanoTime();
-
-            // re-synthesize a data buffer.
-            ByteBuffer buf = ByteBuffer.allocate(314);
-            tcal.writeUncompressedRecord(buf);
-            buf.flip();
-
-            dataProcessor.process(DataProcessor.StreamType.TCAL, buf);
-
-            // Tee readings to clock monitoring for GPS clock triangulation
-            //
-            // Note: This is the point at which we associate a dor timestamp
-            //       with a monotonic nano timestamp. We are choosing the dor
-            //       tx time.
-            final long dortxDor = tcal.getDorTxInDorUnits();
-            final long dortxNano = tcal.getDorTXPointInTimeNano();
-            tcalConsumer.process(new ClockProcessor.TCALMeasurement(dortxDor,
-                    dortxNano, (after - before), card, id));
-
-            // Note: nuisance hack, dom/system times must be tracked from
-            //       acquisition thread because the nano point-in-time field
-            //       is not propagated to the processor.
-            dataStats.reportClockRelationship(tcal.getDomRxInDomUnits(),
-                    dortxNano);
-
-            lastTCalNanos = after;
+            processTCAL(awaitTCAL());
         }
         catch (InterruptedException e)
         {
@@ -902,6 +1135,106 @@ public class DataAcquisition
         }
     }
 
+    /**
+     * Service the periodic TCAL without blocking. A completed TCAL is
+     * processed, and a new one is requested if one is due and none is
+     * in flight.
+     *
+     * As with attemptTCAL(), acquisition errors are logged and suppressed
+     * while processing errors are propagated.
+     *
+     * @param due True if a TCAL should be requested.
+     * @exception DataProcessorError An error occurred while passing the
+     *            time calibration to the data processor.
+     */
+    public void pollTCAL(final boolean due) throws DataProcessorError
+    {
+        try
+        {
+            TCALService.Result result = tcalChannel.poll();
+            if (result != null)
+            {
+                processTCAL(result);
+            }
+        }
+        catch (IOException ioe)
+        {
+            logger.error("Ignoring tcal error", new AcquisitionError(
+                    "IO Error performing a tcal on [" + id + "]", ioe));
+        }
+
+        if (due)
+        {
+            tcalChannel.request();
+        }
+    }
+
+    /**
+     * Run a TCAL and wait for it. A periodic TCAL still in flight is
+     * processed first so that the returned TCAL is always launched after
+     * this call.
+     *
+     * @return The completed TCAL.
+     */
+    private TCALService.Result awaitTCAL()
+            throws IOException, InterruptedException, DataProcessorError
+    {
+        if (tcalChannel.isPending())
+        {
+            try
+            {
+                processTCAL(tcalChannel.await(TCAL_WAIT_NANOS));
+            }
+            catch (IOException ioe)
+            {
+                logger.error("Ignoring tcal error", new AcquisitionError(
+                        "IO Error performing a tcal on [" + id + "]", ioe));
+            }
+        }
+
+        return tcalChannel.await(TCAL_WAIT_NANOS);
+    }
+
+    /**
+     * Queue a completed TCAL to the data processor and to clock
+     * monitoring.
+     *
+     * @param result The completed TCAL.
+     * @throws DataProcessorError Error occurred processing TCAL.
+     */
+    private void processTCAL(final TCALService.Result result)
+            throws DataProcessorError
+    {
+        TimeCalib tcal = result.getTimeCalib();
+        long before = result.getInitiatedNanos();
+        long after = result.getCompletedNanos();
+
+        // re-synthesize a data buffer.
+        ByteBuffer buf = ByteBuffer.allocate(314);
+        tcal.writeUncompressedRecord(buf);
+        buf.flip();
+
+        dataProcessor.process(DataProcessor.StreamType.TCAL, buf);
+
+        // Tee readings to clock monitoring for GPS clock triangulation
+        //
+        // Note: This is the point at which we associate a dor timestamp
+        //       with a monotonic nano timestamp. We are choosing the dor
+        //       tx time.
+        final long dortxDor = tcal.getDorTxInDorUnits();
+        final long dortxNano = tcal.getDorTXPointInTimeNano();
+        tcalConsumer.process(new ClockProcessor.TCALMeasurement(dortxDor,
+                dortxNano, (after - before), card, id));
+
+        // Note: nuisance hack, dom/system times must be tracked from
+        //       acquisition thread because the nano point-in-time field
+        //       is not propagated to the processor.
+        dataStats.reportClockRelationship(tcal.getDomRxInDomUnits(),
+                dortxNano);
+
+        lastTCalNanos = after;
+    }
+
     /**
      * @return The system time of the last successful tcal.
      */
@@ -1036,37 +1369,57 @@ public class DataAcquisition
         private final ByteBuffer[] batch = new ByteBuffer[MAX_MESSAGES];
         private final DataProcessor.StreamType[] batchType =
                 new DataProcessor.StreamType[MAX_MESSAGES];
+        private final ByteBuffer[] batchOwner = new ByteBuffer[MAX_MESSAGES];
         private int batchIdx = 0;
 
 
 
         /**
          * Accumulate a message for deferred submission.
+         *
+         * @param buffer The message payload.
+         * @param type The stream of the message.
+         * @param owner The pooled buffer holding the payload.
          */
-        void accumulate(ByteBuffer buffer, DataProcessor.StreamType type)
+        void accumulate(ByteBuffer buffer, DataProcessor.StreamType type,
+                        ByteBuffer owner)
         {
             batch[batchIdx] = buffer;
             batchType[batchIdx] = type;
+            batchOwner[batchIdx] = owner;
             batchIdx++;
         }
 
         /**
-         * Submit accumulated messages and clear the batch.
+         * Submit accumulated messages and clear the batch. The pooled
+         * buffers are returned once the processor is done with them.
          */
-        void submitAll(final DataProcessor processor) throws DataProcessorError
+        void submitAll(final DataProcessor processor,
+                       final ReceiveBufferPool pool)
+                throws DataProcessorError
         {
             ByteBuffer[] data = new ByteBuffer[batchIdx];
             DataProcessor.StreamType[] dataType =
                     new DataProcessor.StreamType[batchIdx];
+            final ByteBuffer[] owners = new ByteBuffer[batchIdx];
             System.arraycopy(batch, 0, data, 0, data.length);
             System.arraycopy(batchType, 0, dataType, 0, dataType.length);
-            processor.process(dataType, data);
+            System.arraycopy(batchOwner, 0, owners, 0, owners.length);
+
+            processor.process(dataType, data, () -> {
+                for (ByteBuffer owner : owners)
+                {
+                    pool.give(owner);
+                }
+            });
 
             clear();
         }
 
         void clear()
         {
+            Arrays.fill(batch, 0, batchIdx, null);
+            Arrays.fill(batchOwner, 0, batchIdx, null);
             batchIdx = 0;
         }
 
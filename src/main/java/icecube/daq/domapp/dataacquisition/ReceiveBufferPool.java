@@ -0,0 +1,72 @@
+package icecube.daq.domapp.dataacquisition;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of DOMApp receive buffers for a single channel.
+ *
+ * Buffers are taken on the acquisition thread and given back by
+ * whichever thread finishes with them, typically the processing thread.
+ * The pool never blocks, when more than <tt>capacity</tt> buffers are
+ * outstanding it allocates and the exhaustion is reported to the
+ * acquisition monitor. At most <tt>capacity</tt> idle buffers are
+ * retained, and they are allocated on demand, so the pool only grows to
+ * the working set of the channel.
+ */
+class ReceiveBufferPool
+{
+    private final int bufferSize;
+    private final int capacity;
+
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final AcquisitionMonitor monitor;
+
+
+    ReceiveBufferPool(final int bufferSize, final int capacity,
+                      final AcquisitionMonitor monitor)
+    {
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.free = new ArrayBlockingQueue<ByteBuffer>(capacity);
+        this.monitor = monitor;
+    }
+
+    /**
+     * Take a buffer, acquisition thread only.
+     */
+    ByteBuffer take()
+    {
+        ByteBuffer buf = free.poll();
+        if (buf == null)
+        {
+            buf = ByteBuffer.allocate(bufferSize);
+        }
+
+        final int count = outstanding.incrementAndGet();
+        monitor.reportBufferPoolTake(count, count > capacity);
+
+        return buf;
+    }
+
+    /**
+     * Return a buffer to the pool, from any thread.
+     */
+    void give(final ByteBuffer buf)
+    {
+        outstanding.decrementAndGet();
+        buf.clear();
+        free.offer(buf);
+    }
+
+    /**
+     * @return The number of buffers taken and not yet given back.
+     */
+    int getOutstanding()
+    {
+        return outstanding.get();
+    }
+}
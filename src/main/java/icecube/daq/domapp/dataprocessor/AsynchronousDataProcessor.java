@@ -130,6 +130,9 @@ public class AsynchronousDataProcessor implements DataProcessor
      */
     public static final int PROCESSING_QUEUE_DEPTH = 5000;
 
+    /** Completion callback for bulk submissions without one. */
+    private static final Runnable NO_COMPLETION = () -> {};
+
 
 
     /**
@@ -326,6 +329,7 @@ public class AsynchronousDataProcessor implements DataProcessor
     {
 
         final ByteBuffer copy = copy(data);
+        final long acquiredNanos = System.nanoTime();
 
         enqueWork(new Callable<Void>()
         {
@@ -335,6 +339,8 @@ public class AsynchronousDataProcessor implements DataProcessor
                 try
                 {
                     delegate.process(stream, copy);
+                    dataStats.reportDispatchLatency(System.nanoTime() -
+                            acquiredNanos);
                 }
                 catch (Throwable th)
                 {
@@ -355,6 +361,21 @@ public class AsynchronousDataProcessor implements DataProcessor
     public void process(final StreamType[] stream,
                         final ByteBuffer[] data) throws DataProcessorError
     {
+        process(stream, data, NO_COMPLETION);
+    }
+
+    /**
+     * Note: The completion callback runs on the processing thread once
+     *       the data buffers have been processed, successfully or not.
+     *       It will not run for work discarded by a shutdown.
+     */
+    @Override
+    public void process(final StreamType[] stream,
+                        final ByteBuffer[] data,
+                        final Runnable onComplete) throws DataProcessorError
+    {
+        final long acquiredNanos = System.nanoTime();
+
         enqueWork(new Callable<Void>()
         {
             @Override
@@ -366,11 +387,17 @@ public class AsynchronousDataProcessor implements DataProcessor
                     {
                         delegate.process(stream[i], data[i]);
                     }
+                    dataStats.reportDispatchLatency(System.nanoTime() -
+                            acquiredNanos);
                 }
                 catch (Throwable th)
                 {
                     handleException(th);
                 }
+                finally
+                {
+                    onComplete.run();
+                }
                 return null;
             }
         });
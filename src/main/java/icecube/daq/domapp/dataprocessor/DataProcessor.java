@@ -106,6 +106,31 @@ public interface DataProcessor
 
         }
     }
+
+    /**
+     * Send data for processing on a specified stream with notice of
+     * completion. The data buffers are owned by the processor until
+     * the completion callback runs, after which the caller may reuse
+     * them.
+     *
+     * @param stream Identifies the type of data.
+     * @param data The data in domapp payload format.
+     * @param onComplete Run once all the data has been processed.
+     * @throws DataProcessorError
+     */
+    default void process(StreamType[] stream, ByteBuffer[] data,
+                         Runnable onComplete)
+            throws DataProcessorError
+    {
+        try
+        {
+            process(stream, data);
+        }
+        finally
+        {
+            onComplete.run();
+        }
+    }
     /**
      * Send an EOS on a specified stream.
      * @param stream The stream to send eos to.
@@ -99,6 +99,14 @@ public class DataProcessorFactory
         final RAPCal rapcal = instantiateRAPCal();
         rapcal.setMainboardID(mbid);
 
+        // warm start from a checkpoint of a previous component instance
+        final RAPCalCheckpointer checkpointer =
+                RAPCalCheckpointer.create(rapcal, mbid);
+        if(checkpointer != null)
+        {
+            checkpointer.restore(System.currentTimeMillis());
+        }
+
         //build the dispatchers
         UTCHitDispatcher hitDispatch =
                 new UTCHitDispatcher(hitConsumer,
@@ -131,7 +139,7 @@ public class DataProcessorFactory
 
         DataProcessor.StreamProcessor tcalProcessor =
                 new TCalProcessor(tcalDispatcher, mbid,
-                        rapcal, gpsProvider);
+                        rapcal, gpsProvider, checkpointer);
 
 
 
@@ -1,6 +1,7 @@
 package icecube.daq.domapp.dataprocessor;
 
 import icecube.daq.dor.TimeCalib;
+import icecube.daq.performance.diagnostic.LatencyHistogram;
 import icecube.daq.util.RealTimeRateMeter;
 import icecube.daq.util.SimpleMovingAverage;
 
@@ -60,6 +61,9 @@ public class DataStats
     private long lastHitLatencySampleDOMTicks = -1 * windowDOMTicks;
 
 
+    // latency from acquisition to completion of processing and dispatch
+    private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+
     // Calculate 10-sec averages of the hit rate
     private RealTimeRateMeter rtHitRate = new RealTimeRateMeter(100000000000L);
     private RealTimeRateMeter rtLCRate  = new RealTimeRateMeter(100000000000L);
@@ -193,6 +197,15 @@ public class DataStats
         maxProcessorQueueDepth = Math.max(maxProcessorQueueDepth, depth);
     }
 
+    /**
+     * Report the latency from acquisition of data to completion of its
+     * processing and dispatch.
+     */
+    protected void reportDispatchLatency(final long nanos)
+    {
+        dispatchLatency.record(nanos);
+    }
+
     protected void reportDispatcherQueueDepth(final int depth)
     {
         this.dispatcherQueueDepth = depth;
@@ -319,5 +332,10 @@ public class DataStats
         return avgHitAcquisitionLatencyMillis.getAverage();
     }
 
+    public LatencyHistogram.Snapshot getDispatchLatency()
+    {
+        return dispatchLatency.snapshot();
+    }
+
 
 }
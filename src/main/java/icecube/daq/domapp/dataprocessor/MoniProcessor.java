@@ -1,18 +1,22 @@
 package icecube.daq.domapp.dataprocessor;
 
 import icecube.daq.bindery.MultiChannelMergeSort;
-import icecube.daq.domapp.AsciiMonitorRecord;
-import icecube.daq.domapp.MonitorRecord;
-import icecube.daq.domapp.MonitorRecordFactory;
 import icecube.daq.domapp.RunLevel;
+import icecube.daq.performance.binary.record.pdaq.MonitoringRecordReader.DOMAPP_MonitoringRecordReader;
+import icecube.daq.performance.binary.record.pdaq.MonitoringRecordReader.RAW_AsciiMonitoringRecordReader;
+import icecube.daq.performance.binary.record.pdaq.MonitoringRecordReader.RAW_MonitoringRecordReader;
 import org.apache.log4j.Logger;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Processes moni message payloads (in DOMApp payload format), passing
  * each message to the dispatcher.
  *
+ * Records are classified in place by flyweight readers, the text of an
+ * ASCII record is only decoded when it is logged.
+ *
  * Note:
  * Initial implementation was taken from DataCollector.java revision 15482.
  */
@@ -20,6 +24,16 @@ class MoniProcessor implements DataProcessor.StreamProcessor
 {
     private static final Logger logger =  Logger.getLogger(HitProcessor.class);
 
+    private static final RAW_MonitoringRecordReader MONI_READER =
+            DOMAPP_MonitoringRecordReader.monitoringRecordReader;
+    private static final RAW_AsciiMonitoringRecordReader ASCII_READER =
+            DOMAPP_MonitoringRecordReader.asciiMonitoringRecordReader;
+
+    private static final byte[] LBM_OVERFLOW =
+            "LBM OVERFLOW".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STARTING_RUN =
+            "Starting run".getBytes(StandardCharsets.US_ASCII);
+
     private final long mbid;
 
     private final UTCMonotonicDispatcher dispatcher;
@@ -46,29 +60,34 @@ class MoniProcessor implements DataProcessor.StreamProcessor
 
         while (in.remaining() > 0)
         {
-            MonitorRecord monitor = MonitorRecordFactory.createFromBuffer(in);
-            if (monitor instanceof AsciiMonitorRecord)
+            final int pos = in.position();
+            final int recl = MONI_READER.getLength(in, pos);
+            if (MONI_READER.getType(in, pos) ==
+                    RAW_MonitoringRecordReader.ASCII_TYPE)
             {
-                String moniMsg = monitor.toString();
-                if (moniMsg.contains("LBM OVERFLOW")) {
+                if (ASCII_READER.contains(in, pos, LBM_OVERFLOW)) {
                     String msg = String.format("LBM Overflow ["
-                            + moniMsg + "] on %12x", mbid);
+                            + ASCII_READER.getText(in, pos) + "] on %12x",
+                            mbid);
                     logger.error(msg);
                     counters.reportLBMOverflow();
-                } else if (moniMsg.startsWith("Starting run")) {
+                } else if (ASCII_READER.startsWith(in, pos, STARTING_RUN)) {
                     dispatcher.clearDeferred();
                 } else if (logger.isDebugEnabled()) {
-                    logger.debug(moniMsg);
+                    logger.debug(ASCII_READER.getText(in, pos));
                 }
             }
             counters.reportMoni();
-            ByteBuffer moniBuffer = ByteBuffer.allocate(monitor.getLength()+32);
-            moniBuffer.putInt(monitor.getLength()+32);
+            ByteBuffer moniBuffer = ByteBuffer.allocate(recl+32);
+            moniBuffer.putInt(recl+32);
             moniBuffer.putInt(DataProcessor.MAGIC_MONITOR_FMTID);
             moniBuffer.putLong(mbid);
             moniBuffer.putLong(0L);
-            moniBuffer.putLong(monitor.getClock());
-            moniBuffer.put(monitor.getBuffer());
+            moniBuffer.putLong(MONI_READER.getDOMClock(in, pos));
+            final int limit = in.limit();
+            in.limit(pos + recl);
+            moniBuffer.put(in);
+            in.limit(limit);
             moniBuffer.flip();
             dispatcher.dispatchBuffer(moniBuffer);
         }
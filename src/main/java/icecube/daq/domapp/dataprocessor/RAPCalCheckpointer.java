@@ -0,0 +1,121 @@
+package icecube.daq.domapp.dataprocessor;
+
+import icecube.daq.rapcal.AbstractRAPCal;
+import icecube.daq.rapcal.RAPCal;
+import icecube.daq.rapcal.RAPCalCheckpoint;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Periodically persists the RAPCal state of a DOM, and seeds the RAPCal
+ * of a restarted component from the persisted state so that UTC
+ * reconstruction resumes after the first fresh tcal.
+ *
+ * Checkpointing is enabled by naming a checkpoint directory.
+ */
+class RAPCalCheckpointer
+{
+    private static final Logger logger =
+            Logger.getLogger(RAPCalCheckpointer.class);
+
+    /** Directory holding the checkpoint files, unset to disable. */
+    private static final String CHECKPOINT_DIR = System.getProperty(
+            "icecube.daq.domapp.dataprocessor.rapcal-checkpoint-dir");
+
+    /** Minimum interval between checkpoints of a DOM. */
+    private static final long CHECKPOINT_INTERVAL_MILLIS = Long.getLong(
+            "icecube.daq.domapp.dataprocessor.rapcal-checkpoint-interval",
+            10000L);
+
+    private final AbstractRAPCal rapcal;
+    private final File file;
+    private final long intervalMillis;
+
+    private long lastCheckpointMillis;
+    private boolean failed;
+
+
+    RAPCalCheckpointer(final AbstractRAPCal rapcal, final File file,
+                       final long intervalMillis)
+    {
+        this.rapcal = rapcal;
+        this.file = file;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Create a checkpointer according to configuration directives.
+     *
+     * @return The checkpointer, or null if checkpointing is disabled or
+     *         unsupported by the RAPCal implementation.
+     */
+    static RAPCalCheckpointer create(final RAPCal rapcal, final long mbid)
+    {
+        if(CHECKPOINT_DIR == null || !(rapcal instanceof AbstractRAPCal))
+        {
+            return null;
+        }
+        return new RAPCalCheckpointer((AbstractRAPCal) rapcal,
+                RAPCalCheckpoint.fileFor(new File(CHECKPOINT_DIR), mbid),
+                CHECKPOINT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Seed the RAPCal from an existing checkpoint.
+     *
+     * @return <tt>true</tt> if the RAPCal was seeded.
+     */
+    boolean restore(final long nowMillis)
+    {
+        if(!file.exists())
+        {
+            return false;
+        }
+
+        try
+        {
+            return rapcal.seed(RAPCalCheckpoint.read(file), nowMillis);
+        }
+        catch (IOException ioe)
+        {
+            logger.warn("Unable to read RAPCal checkpoint " + file, ioe);
+            return false;
+        }
+    }
+
+    /**
+     * Write a checkpoint if the interval has elapsed.
+     */
+    void update(final long nowMillis)
+    {
+        if(nowMillis - lastCheckpointMillis < intervalMillis)
+        {
+            return;
+        }
+
+        RAPCalCheckpoint checkpoint = rapcal.checkpoint(nowMillis);
+        if(checkpoint == null)
+        {
+            return;
+        }
+
+        lastCheckpointMillis = nowMillis;
+        try
+        {
+            checkpoint.write(file);
+            failed = false;
+        }
+        catch (IOException ioe)
+        {
+            // log once per run of failures
+            if(!failed)
+            {
+                logger.warn("Unable to write RAPCal checkpoint " + file, ioe);
+                failed = true;
+            }
+        }
+    }
+
+}
@@ -38,6 +38,9 @@ class TCalProcessor implements DataProcessor.StreamProcessor
     /** The GPS source.*/
     private final GPSProvider gpsProvider;
 
+    /** Persists the rapcal state, null if disabled. */
+    private final RAPCalCheckpointer checkpointer;
+
     interface ProcessingBehavior
     {
         void process(final TimeCalib tcal, final GPSInfo gps,
@@ -72,11 +75,21 @@ class TCalProcessor implements DataProcessor.StreamProcessor
                   final long mbid,
                   final RAPCal rapcal,
                   final GPSProvider gpsProvider)
+    {
+        this(dispatcher, mbid, rapcal, gpsProvider, null);
+    }
+
+    TCalProcessor(final DataDispatcher dispatcher,
+                  final long mbid,
+                  final RAPCal rapcal,
+                  final GPSProvider gpsProvider,
+                  final RAPCalCheckpointer checkpointer)
     {
         this.dispatcher = dispatcher;
         this.mbid = mbid;
         this.rapcal = rapcal;
         this.gpsProvider = gpsProvider;
+        this.checkpointer = checkpointer;
 
         this.processingState = INITIAL_PROCESSOR;
         this.dispatchState = NULL_DISPATCH;
@@ -143,6 +156,11 @@ class TCalProcessor implements DataProcessor.StreamProcessor
                 //count valid tcals and update counters.
                 counters.reportTCAL(tcal, utc, rapcal.cableLength(),
                                     rapcal.epsilon());
+
+                if(checkpointer != null)
+                {
+                    checkpointer.update(System.currentTimeMillis());
+                }
             }
             else
             {
@@ -155,6 +155,24 @@ public class UTCDispatcher implements DataDispatcher
         long domclk = buf.getLong(24);
         long utc    = rapcal.domToUTC(domclk).in_0_1ns();
 
+        dispatch(buf, callback, domclk, utc);
+    }
+
+    /**
+     * Dispatch a buffer with a reconstructed timestamp, supports
+     * subclasses which reconstruct timestamps in batches.
+     *
+     * @param buf The buffer.
+     * @param callback Notified with the UTC time of the buffer.
+     * @param domclk The DOM clock of the buffer.
+     * @param utc The UTC time reconstructed from the DOM clock.
+     * @throws DataProcessorError Error dispatching the buffer.
+     */
+    protected void dispatch(final ByteBuffer buf,
+                            final DispatchCallback callback,
+                            final long domclk, final long utc)
+            throws DataProcessorError
+    {
         if(enforceOrdering(domclk, utc))
         {
             buf.putLong(24, utc);
@@ -5,7 +5,6 @@ import icecube.daq.rapcal.RAPCal;
 import org.apache.log4j.Logger;
 
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
 
 /**
  * Wraps the UTC dispatcher, delaying time reconstruction util the rapcal
@@ -40,45 +39,120 @@ class UTCMonotonicDispatcher extends UTCDispatcher
     private boolean gateClosed;
 
     /**
-     * Structure to hold deferred data.
+     * The initial capacity of the deferral ring, it grows as needed
+     * to MAX_DEFERRED_RECORDS.
      */
-    private static class DeferredDataRecord
+    static final int INITIAL_DEFERRED_CAPACITY =
+    Integer.getInteger("icecube.daq.domapp.dataprocessor.initial-deferred-capacity",
+            256);
+
+    /**
+     * A ring of deferred records held as parallel arrays of buffer,
+     * callback and DOM clock, avoiding a node allocation per deferred
+     * record.
+     */
+    private static class DeferralRing
     {
-        final ByteBuffer data;
-        final DispatchCallback callback;
+        ByteBuffer[] data;
+        DispatchCallback[] callbacks;
+        long[] domclks;
+
+        int head;
+        int size;
 
-        private DeferredDataRecord(final ByteBuffer data,
-                                   final DispatchCallback callback)
+        DeferralRing(final int capacity)
         {
-            this.data = data;
-            this.callback = callback;
+            data = new ByteBuffer[capacity];
+            callbacks = new DispatchCallback[capacity];
+            domclks = new long[capacity];
         }
 
-        long getDOMClock()
+        void add(final ByteBuffer buf, final DispatchCallback callback)
         {
-            if (data == null || data.capacity() < 32) {
-                return Long.MIN_VALUE;
+            if(size == data.length)
+            {
+                grow();
             }
+            int idx = (head + size) % data.length;
+            data[idx] = buf;
+            callbacks[idx] = callback;
+            domclks[idx] = getDOMClock(buf);
+            size++;
+        }
 
-            return data.getLong(24);
+        long domclk(final int n)
+        {
+            return domclks[(head + n) % data.length];
         }
 
-        @Override
-        public String toString()
+        /**
+         * Remove the first n records, releasing buffer references.
+         */
+        void remove(final int n)
         {
-            if (data == null) {
-                return "<null>";
-            } else if (data.capacity() < 32) {
-                return "<short*" + data.capacity() + ">";
+            for (int i = 0; i < n; i++)
+            {
+                int idx = (head + i) % data.length;
+                data[idx] = null;
+                callbacks[idx] = null;
             }
+            head = (head + n) % data.length;
+            size -= n;
+            if(size == 0)
+            {
+                head = 0;
+            }
+        }
 
-            return "<clk " + data.getLong(24) + ">";
+        void clear()
+        {
+            remove(size);
+        }
+
+        private void grow()
+        {
+            int capacity = Math.max(1, Math.min(2 * data.length,
+                    MAX_DEFERRED_RECORDS));
+            if(capacity <= data.length)
+            {
+                capacity = data.length + 1;
+            }
+
+            // unwrap the ring into the new arrays
+            ByteBuffer[] newData = new ByteBuffer[capacity];
+            DispatchCallback[] newCallbacks = new DispatchCallback[capacity];
+            long[] newDomclks = new long[capacity];
+            int first = Math.min(size, data.length - head);
+            System.arraycopy(data, head, newData, 0, first);
+            System.arraycopy(data, 0, newData, first, size - first);
+            System.arraycopy(callbacks, head, newCallbacks, 0, first);
+            System.arraycopy(callbacks, 0, newCallbacks, first, size - first);
+            System.arraycopy(domclks, head, newDomclks, 0, first);
+            System.arraycopy(domclks, 0, newDomclks, first, size - first);
+
+            data = newData;
+            callbacks = newCallbacks;
+            domclks = newDomclks;
+            head = 0;
+        }
+
+        private static long getDOMClock(final ByteBuffer data)
+        {
+            if (data == null || data.capacity() < 32) {
+                return Long.MIN_VALUE;
+            }
+
+            return data.getLong(24);
         }
     }
 
     /** Holds data for deferred dispatch. */
-    private LinkedList<DeferredDataRecord> deferred =
-            new LinkedList<DeferredDataRecord>();
+    private final DeferralRing deferred =
+            new DeferralRing(Math.min(INITIAL_DEFERRED_CAPACITY,
+                    MAX_DEFERRED_RECORDS));
+
+    /** Reconstructed timestamps of a released batch. */
+    private long[] utcBatch = new long[0];
 
 
     /**
@@ -141,11 +215,7 @@ class UTCMonotonicDispatcher extends UTCDispatcher
         // of the rapcal bounding.
         try
         {
-            while(deferred.size() > 0)
-            {
-                DeferredDataRecord record = deferred.removeFirst();
-                super.dispatchBuffer(record.data, record.callback);
-            }
+            release(deferred.size);
         }
         finally
         {
@@ -164,12 +234,20 @@ class UTCMonotonicDispatcher extends UTCDispatcher
                                final DispatchCallback callback)
             throws DataProcessorError
     {
-        deferred.add(new DeferredDataRecord(buf, callback));
+        // nothing waiting, dispatch directly if the time is bounded
+        if(!gateClosed && deferred.size == 0 &&
+                rapcal.laterThan(DeferralRing.getDOMClock(buf)))
+        {
+            super.dispatchBuffer(buf, callback);
+            return;
+        }
+
+        deferred.add(buf, callback);
 
         if(gateClosed)
         {
             // defer records until we're a bit shy of the max limit
-            if(deferred.size() < MAX_DEFERRED_RECORDS - 2)
+            if(deferred.size < MAX_DEFERRED_RECORDS - 2)
             {
                 return;
             }
@@ -180,31 +258,57 @@ class UTCMonotonicDispatcher extends UTCDispatcher
             logger.error("Giving up on run start message for " + mbid +
                          "; releasing all deferred records");
         }
-        else if(deferred.size() >= MAX_DEFERRED_RECORDS)
+        else if(deferred.size >= MAX_DEFERRED_RECORDS)
         {
             // indicates an unusual problem with rapcal updates,
             // capture debugging details
-            long firstDOMClk = deferred.peekFirst().getDOMClock();
-            long lastDOMClk = deferred.peekLast().getDOMClock();
+            long firstDOMClk = deferred.domclk(0);
+            long lastDOMClk = deferred.domclk(deferred.size - 1);
             String msg = String.format("Over limit of %d records waiting for" +
                     " rapcal DOM clock range [%d, %d], mbid: %12x",
-                    deferred.size(), firstDOMClk, lastDOMClk, mbid);
+                    deferred.size, firstDOMClk, lastDOMClk, mbid);
             throw new DataProcessorError(msg);
         }
 
-        // release any deferred records which can be assigned valid times
-        while(deferred.size() > 0)
+        // release the deferred records which can be assigned valid times
+        int count = 0;
+        while(count < deferred.size &&
+                rapcal.laterThan(deferred.domclk(count)))
         {
-            DeferredDataRecord record = deferred.peekFirst();
-            if(record != null && rapcal.laterThan(record.getDOMClock()) )
-            {
-                record = deferred.removeFirst();
-                super.dispatchBuffer(record.data, record.callback);
-            }
-            else
-            {
-                return;
-            }
+            count++;
+        }
+        release(count);
+    }
+
+    /**
+     * Dispatch the first n deferred records as a batch, reconstructing
+     * the timestamps of the batch before dispatching.
+     */
+    private void release(final int n) throws DataProcessorError
+    {
+        if(n == 0)
+        {
+            return;
+        }
+
+        if(utcBatch.length < n)
+        {
+            utcBatch = new long[Math.max(n, 2 * utcBatch.length)];
+        }
+        for (int i = 0; i < n; i++)
+        {
+            utcBatch[i] = rapcal.domToUTC(deferred.domclk(i)).in_0_1ns();
+        }
+
+        for (int i = 0; i < n; i++)
+        {
+            int idx = deferred.head;
+            ByteBuffer buf = deferred.data[idx];
+            DispatchCallback callback = deferred.callbacks[idx];
+            long domclk = deferred.domclks[idx];
+            deferred.remove(1);
+
+            dispatch(buf, callback, domclk, utcBatch[i]);
         }
     }
 
@@ -214,7 +318,7 @@ class UTCMonotonicDispatcher extends UTCDispatcher
      */
     int getDeferredRecordCount()
     {
-        return deferred.size();
+        return deferred.size;
     }
 
 }
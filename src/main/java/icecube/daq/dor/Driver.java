@@ -226,6 +226,7 @@ public final class Driver implements IDriver {
      * @return list of DOMChannelInfo structures.
      * @throws IOException
      */
+    @Override
     public LinkedList<DOMChannelInfo> discoverActiveDOMs() throws IOException {
 	char[] ab = { 'A', 'B' };
 	LinkedList<DOMChannelInfo> channelList = new LinkedList<DOMChannelInfo>();
@@ -291,6 +292,80 @@ public final class Driver implements IDriver {
         throw new IOException("TCAL read failed.");
     }
 
+    @Override
+    public TCALHandle openTCAL(File tcalFile) throws IOException {
+        return new ProcfileTCALHandle(tcalFile);
+    }
+
+    /**
+     * Split-phase TCAL on a tcalib procfile which is held open between
+     * TCALs.  Follows the same write/read sequence as readTCAL(), but
+     * leaves the waiting to the caller.
+     */
+    private static final class ProcfileTCALHandle implements TCALHandle
+    {
+        private final File tcalFile;
+        private final RandomAccessFile tcalib;
+        private final FileChannel ch;
+
+        /** Read buffer, TimeCalib decodes it so it can be reused */
+        private final ByteBuffer buf = ByteBuffer.allocate(292);
+
+        private boolean initiated;
+        private long txNano;
+
+        ProcfileTCALHandle(File tcalFile) throws IOException
+        {
+            this.tcalFile = tcalFile;
+            this.tcalib = new RandomAccessFile(tcalFile, "rw");
+            this.ch = tcalib.getChannel();
+        }
+
+        @Override
+        public void initiate() throws IOException
+        {
+            if (logger.isDebugEnabled()) logger.debug("Initiating TCAL sequence");
+
+            // rewind to match the state of a freshly opened procfile
+            tcalib.seek(0);
+            tcalib.writeBytes("single\n");
+
+            // Arbitrary moment to establish the correlation between the
+            // DOR TCAL TX and the system monotonic clock
+            txNano = System.nanoTime();
+            initiated = true;
+        }
+
+        @Override
+        public TimeCalib poll() throws IOException
+        {
+            if (!initiated)
+            {
+                throw new IOException("TCAL was not initiated");
+            }
+
+            buf.clear();
+            int nr = ch.read(buf);
+            if (logger.isDebugEnabled()) logger.debug("Read " + nr + " bytes from " + tcalFile.getAbsolutePath());
+            if (nr != 292)
+            {
+                return null;
+            }
+
+            initiated = false;
+
+            buf.flip();
+            return new TimeCalib(buf, txNano);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            ch.close();
+            tcalib.close();
+        }
+    }
+
     @Override
     public File getGPSFile(int card) {
 	return makeProcfile("" + card, "syncgps");
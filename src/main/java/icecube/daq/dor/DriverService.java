@@ -0,0 +1,101 @@
+package icecube.daq.dor;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Factory providing system-wide access to the DOR driver.
+ * <p>
+ * In normal deployments, the driver is the DOR card driver. Off-site
+ * deployments may configure this factory to provide a simulated driver
+ * backed by in-process DOM emulators, which drives the unmodified
+ * acquisition stack without DOR hardware.
+ * <p>
+ * Configuration
+ * <pre>
+ *
+ *    icecube.daq.dor.driver-mode = [dor]
+ *
+ *           dor:       The DOR card driver.
+ *           simulated: A simulated driver, see SimulatedDriver.
+ *
+ *</pre>
+ *
+ */
+public class DriverService
+{
+
+    private static final Logger logger = Logger.getLogger(DriverService.class);
+
+    public static final String DRIVER_MODE_PROPERTY =
+            "icecube.daq.dor.driver-mode";
+
+    /**
+     * Configures the driver mode, one of dor, simulated.
+     */
+    public static final String DRIVER_MODE_SETTING =
+            System.getProperty(DRIVER_MODE_PROPERTY, "dor");
+
+    /** The singleton, system wide driver instance. */
+    private static final IDriver driver;
+
+    // supported modes
+    public static enum DriverMode
+    {
+        DOR("dor")
+                {
+                    @Override
+                    protected IDriver initDriver()
+                    {
+                        return Driver.getInstance();
+                    }
+                },
+        SIMULATED("simulated")
+                {
+                    @Override
+                    protected IDriver initDriver()
+                    {
+                        // This is not an appropriate production mode so log
+                        // a warning
+                        logger.warn("Running with a simulated DOR driver," +
+                                " data is synthetic.");
+                        return new SimulatedDriver();
+                    }
+                };
+
+        public final String key;
+
+        DriverMode(String key)
+        {
+            this.key = key;
+        }
+
+        protected abstract IDriver initDriver();
+
+        static DriverMode resolve(String key)
+        {
+            switch (key)
+            {
+                case "dor": return DOR;
+                case "simulated": return SIMULATED;
+                default: throw new Error("Unknown driver mode: [" + key + "]");
+            }
+        }
+    }
+
+
+    // initialize the driver
+    static
+    {
+        driver = DriverMode.resolve(DRIVER_MODE_SETTING).initDriver();
+    }
+
+
+    /**
+     * Provides access the configured driver.
+     *
+     * @return The driver.
+     */
+    public static IDriver getInstance() { return driver; }
+
+
+}
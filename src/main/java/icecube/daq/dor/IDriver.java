@@ -1,8 +1,13 @@
 package icecube.daq.dor;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.ByteChannel;
 import java.util.HashMap;
+import java.util.List;
 
 public interface IDriver
 {
@@ -15,6 +20,75 @@ public interface IDriver
     TimeCalib readTCAL(File tcalFile)
         throws IOException, InterruptedException;
 
+    /**
+     * Open a handle for running split-phase TCALs on a channel.
+     *
+     * The default implementation runs a blocking readTCAL() when the
+     * handle is polled, drivers which can overlap TCALs should override
+     * it.
+     *
+     * @param tcalFile The tcalib procfile of the channel.
+     * @return A handle which owns the procfile until closed.
+     * @throws IOException Error opening the procfile.
+     */
+    default TCALHandle openTCAL(final File tcalFile) throws IOException
+    {
+        return new TCALHandle()
+        {
+            private boolean initiated;
+
+            @Override
+            public void initiate()
+            {
+                initiated = true;
+            }
+
+            @Override
+            public TimeCalib poll() throws IOException
+            {
+                if (!initiated)
+                {
+                    throw new IOException("TCAL was not initiated");
+                }
+                initiated = false;
+
+                try
+                {
+                    return readTCAL(tcalFile);
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted TCAL");
+                }
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+    }
+
+    /**
+     * Open the message channel of a DOM.
+     *
+     * The default implementation opens the DOR device file of the
+     * channel.
+     *
+     * @param card 0 to 7
+     * @param pair 0 to 3
+     * @param dom 'A' or 'B'
+     * @return A channel which owns the device until closed.
+     * @throws FileNotFoundException Error opening the device.
+     */
+    default ByteChannel openDOM(int card, int pair, char dom)
+        throws FileNotFoundException
+    {
+        File devfile = new File("/dev/dhc" + card + 'w' + pair + 'd' + dom);
+        return new RandomAccessFile(devfile, "rws").getChannel();
+    }
+
     void softboot(int card, int pair, char dom) throws IOException;
 
     void commReset(int card, int pair, char dom) throws IOException;
@@ -33,4 +107,12 @@ public interface IDriver
     
     String getProcfileID(int card, int pair, char dom) throws IOException;
 
+    /**
+     * Get the list of DOMs that are turned on, communicating, and in iceboot
+     * or above (i.e. not in configboot)
+     * @return list of DOMChannelInfo structures.
+     * @throws IOException
+     */
+    List<DOMChannelInfo> discoverActiveDOMs() throws IOException;
+
 }
@@ -0,0 +1,915 @@
+package icecube.daq.dor;
+
+import icecube.daq.domapp.DeltaMCodec;
+import icecube.daq.domapp.MessageType;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.spi.AbstractInterruptibleChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process emulation of a DOM on a DOR channel, see SimulatedDriver.
+ * <p>
+ * The DOM boots into iceboot, which answers the DOMApp probe with an
+ * error and echoes commands until DOMApp is executed.  DOMApp requests
+ * are answered in order, one reply message per read of the channel.
+ * <p>
+ * Data accumulates while a run is in progress and is returned up to
+ * the DOM clock of the request:
+ * <ul>
+ *     <li>Hits arrive at the configured rate.  A fraction are HLC hits
+ *         carrying delta-compressed FADC and ATWD waveforms, the rest
+ *         are SLC hits.  A backlog larger than one message is carried
+ *         over to the next request, a backlog older than the lookback
+ *         memory depth is lost and reported as an LBM overflow.</li>
+ *     <li>Hardware monitoring records at the configured hardware
+ *         monitoring interval, ASCII records at the configured rate.</li>
+ *     <li>Supernova scalers, once enabled.</li>
+ * </ul>
+ * Getters other than the DOM ID, release and HV query answer with an
+ * empty payload, engineering format is not emulated.
+ */
+class SimulatedDOM
+{
+    /** DOM clock ticks per second. */
+    private static final long DOM_TICKS_PER_SECOND = 40000000L;
+
+    /** Largest message payload, the DOR transfers at most 4092 bytes. */
+    private static final int MAX_PAYLOAD = 4092 - 8;
+
+    /** Status byte of a failed request. */
+    private static final byte STATUS_FAILED = 0;
+
+    /** DOM clock ticks between TCAL receive and transmit. */
+    private static final long TURNAROUND_TICKS = 20000;
+
+    /** Age of the hit backlog which overflows the lookback memory. */
+    private static final long LBM_DEPTH_TICKS = 10 * DOM_TICKS_PER_SECOND;
+
+    private static final int FADC_SAMPLES = 256;
+    private static final int ATWD_SAMPLES = 128;
+    private static final int ATWD_CHANNELS = 3;
+
+    /** Hit word 1 flags, compressed with the SPE trigger bit. */
+    private static final int HIT_FLAGS = 0x80000000 | (1 << 18);
+
+    private static final int SLC_HIT_BYTES = 12;
+
+    /** Bounds an HLC hit, 20 bits per sample after escapes. */
+    private static final int MAX_HLC_HIT_BYTES = SLC_HIT_BYTES +
+            (FADC_SAMPLES + ATWD_CHANNELS * ATWD_SAMPLES) * 20 / 8;
+
+    /** Number of distinct waveforms, encoded once per DOM. */
+    private static final int WAVEFORM_POOL = 32;
+
+    private static final int HW_MONI_BYTES = 84;
+
+    /** Width of a supernova scaler bin, 1.6384 ms. */
+    private static final long SN_BIN_TICKS = 1L << 16;
+
+    /** Reply to the DOMApp probe when in iceboot, see isRunningDOMApp(). */
+    private static final byte[] ICEBOOT_PROBE_REPLY =
+            String.format("%-31s\r\n>", "\r\n> ERROR: unknown word")
+                    .getBytes();
+
+    /** TCAL pulse as knots of a piecewise linear shape. */
+    private static final double[] PULSE_U = {-10.0, -6.0, -4.0, 2.0, 8.0};
+    private static final double[] PULSE_V = {0.0, 400.0, 440.0, -220.0, 0.0};
+
+    private static final Map<Integer, MessageType> MESSAGE_TYPES =
+            new HashMap<Integer, MessageType>();
+    static
+    {
+        for (MessageType type : MessageType.values())
+        {
+            MESSAGE_TYPES.put(key(type.getFacility(), type.getSubtype()), type);
+        }
+    }
+
+    private final SimulatedDriver driver;
+    private final int card;
+    private final int pair;
+    private final char dom;
+    private final long mbid;
+
+    private final double hitRate;
+    private final double hlcFraction;
+    private final double supernovaMean;
+    private final long asciiMoniIntervalTicks;
+
+    // clock model
+    private final double cableDelayNanos;
+    private final double drift;
+    private final long domBaseTicks;
+
+    private final Random random;
+
+    /** Replies awaiting a read. */
+    private final ArrayDeque<ByteBuffer> replies = new ArrayDeque<ByteBuffer>();
+
+    /** The system monotonic clock at which the replies can be read. */
+    private long repliesReadyNanos;
+
+    /** Monitoring records reporting events, awaiting a moni request. */
+    private final ArrayDeque<ByteBuffer> pendingMoni =
+            new ArrayDeque<ByteBuffer>();
+
+    // domapp state
+    private boolean domapp;
+    private boolean running;
+    private boolean supernovaEnabled;
+    private boolean hvEnabled;
+    private short hvDac;
+    private long hwMoniIntervalTicks;
+
+    // data generation
+    private long nextHitClock;
+    private boolean nextHitHLC;
+    private int atwdChip;
+    private long nextHwMoniClock;
+    private long nextAsciiMoniClock;
+    private long supernovaClock;
+    private byte[][] waveforms;
+    private int[] chargeStamps;
+
+    // counters
+    private long hitCount;
+    private long rxMessages;
+    private long txMessages;
+
+
+    SimulatedDOM(final SimulatedDriver driver, final int card,
+                 final int pair, final char dom, final long mbid,
+                 final double hitRate, final double hlcFraction,
+                 final double supernovaRate, final double asciiMoniRate)
+    {
+        this.driver = driver;
+        this.card = card;
+        this.pair = pair;
+        this.dom = dom;
+        this.mbid = mbid;
+        this.hitRate = hitRate;
+        this.hlcFraction = hlcFraction;
+        this.supernovaMean =
+                supernovaRate * SN_BIN_TICKS / DOM_TICKS_PER_SECOND;
+        this.asciiMoniIntervalTicks = asciiMoniRate > 0 ?
+                (long) (DOM_TICKS_PER_SECOND / asciiMoniRate) : 0;
+
+        random = new Random(mbid);
+        cableDelayNanos = 1500.0 + 250.0 * (2 * pair + (dom - 'A'));
+        drift = (random.nextDouble() - 0.5) * 2.0E-6;
+        domBaseTicks = 10000000000L + (long) (random.nextDouble() * 1.0E10);
+    }
+
+    int getCard()
+    {
+        return card;
+    }
+
+    int getPair()
+    {
+        return pair;
+    }
+
+    char getDom()
+    {
+        return dom;
+    }
+
+    String getMainboardID()
+    {
+        return String.format("%012x", mbid);
+    }
+
+    /**
+     * The DOM clock, in nanoseconds.
+     *
+     * @param elapsedNanos Time since the creation of the driver.
+     */
+    private double domNanos(final double elapsedNanos)
+    {
+        return domBaseTicks * 25.0 + elapsedNanos * (1.0 + drift);
+    }
+
+    /**
+     * The DOM clock at a point in time.
+     *
+     * @param nanos The system monotonic clock.
+     * @return The DOM clock.
+     */
+    long domClock(final long nanos)
+    {
+        return (long) (domNanos(nanos - driver.getStartNanos()) / 25.0);
+    }
+
+    /**
+     * Synthesize the time calibration of a TCAL launched by the DOR.
+     *
+     * The rough timestamps are the second waveform sample after the
+     * arrival of the pulse, the waveforms place the zero crossing of the
+     * pulse such that ZeroCrossingRAPCal recovers the arrival time.
+     *
+     * @param dorTx The DOR clock of the transmission.
+     * @param txNanos The system monotonic clock of the transmission.
+     * @return The time calibration.
+     */
+    TimeCalib timeCalib(final long dorTx, final long txNanos)
+    {
+        final double tx = (dorTx - SimulatedDriver.DOR_BASE_TICKS) * 50.0;
+
+        final double domRxNanos = domNanos(tx + cableDelayNanos);
+        final long domRxSample = sample(domRxNanos);
+        final long domRx = 2 * domRxSample;
+        final long domTx = domRx + TURNAROUND_TICKS;
+
+        final double domTxElapsed =
+                (domTx - domBaseTicks) * 25.0 / (1.0 + drift);
+        final double dorRxNanos = SimulatedDriver.DOR_BASE_TICKS * 50.0 +
+                domTxElapsed + cableDelayNanos;
+        final long dorRx = sample(dorRxNanos);
+
+        ByteBuffer buf = ByteBuffer.allocate(292).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putShort((short) 292).putShort((short) 0);
+        buf.putLong(dorTx).putLong(dorRx);
+        for (short s : tcalWaveform(dorRxNanos, dorRx)) buf.putShort(s);
+        buf.putLong(domRx).putLong(domTx);
+        for (short s : tcalWaveform(domRxNanos, domRxSample)) buf.putShort(s);
+        buf.flip();
+        return new TimeCalib(buf, txNanos);
+    }
+
+    /**
+     * The 50 ns waveform sample which rough timestamps a pulse.
+     */
+    private static long sample(final double nanos)
+    {
+        return (long) Math.ceil(nanos / 50.0) + 1;
+    }
+
+    /**
+     * A TCAL waveform with the zero crossing of the pulse at the arrival
+     * time, ZeroCrossingRAPCal corrects the rough timestamp by
+     * 50 ns * (crossing - 48).
+     */
+    private static short[] tcalWaveform(final double nanos, final long sample)
+    {
+        // crossing at sample 47 - q
+        final double q = sample - 1 - nanos / 50.0;
+        short[] w = new short[64];
+        for (int i = 0; i < w.length; i++)
+        {
+            w[i] = (short) (500 + Math.round(pulse(i - 47 + q)));
+        }
+        return w;
+    }
+
+    private static double pulse(final double u)
+    {
+        if (u <= PULSE_U[0] || u >= PULSE_U[PULSE_U.length - 1])
+        {
+            return 0.0;
+        }
+        int k = 1;
+        while (u > PULSE_U[k]) k++;
+        return PULSE_V[k - 1] + (PULSE_V[k] - PULSE_V[k - 1]) *
+                (u - PULSE_U[k - 1]) / (PULSE_U[k] - PULSE_U[k - 1]);
+    }
+
+    /**
+     * Open the message channel, the DOM state is kept between opens.
+     */
+    ByteChannel open()
+    {
+        return new Device();
+    }
+
+    synchronized void softboot()
+    {
+        domapp = false;
+        running = false;
+        supernovaEnabled = false;
+        hvEnabled = false;
+        hwMoniIntervalTicks = 0;
+        replies.clear();
+        pendingMoni.clear();
+        notifyAll();
+    }
+
+    synchronized void commReset()
+    {
+        replies.clear();
+        notifyAll();
+    }
+
+    synchronized void resetComstat()
+    {
+        rxMessages = 0;
+        txMessages = 0;
+    }
+
+    synchronized String getComstat()
+    {
+        return String.format("RX messages: %d%nTX messages: %d%n" +
+                "Hits: %d%n", rxMessages, txMessages, hitCount);
+    }
+
+    private synchronized int read(final Device device, final ByteBuffer dst)
+            throws IOException
+    {
+        long waitNanos;
+        while ((waitNanos = untilReady()) != 0)
+        {
+            if (!device.isOpen())
+            {
+                throw new AsynchronousCloseException();
+            }
+            if (!driver.isBlocking())
+            {
+                return 0;
+            }
+            try
+            {
+                if (waitNanos < 0)
+                {
+                    wait();
+                }
+                else
+                {
+                    TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                }
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted read");
+            }
+        }
+
+        ByteBuffer reply = replies.peek();
+        int nr = Math.min(reply.remaining(), dst.remaining());
+        int limit = reply.limit();
+        reply.limit(reply.position() + nr);
+        dst.put(reply);
+        reply.limit(limit);
+        if (!reply.hasRemaining())
+        {
+            replies.remove();
+            txMessages++;
+        }
+        return nr;
+    }
+
+    /**
+     * @return Nanoseconds until the next reply can be read, zero if it can
+     *         be read now or negative if no reply is queued.
+     */
+    private long untilReady()
+    {
+        if (replies.isEmpty())
+        {
+            return -1;
+        }
+        return Math.max(0, repliesReadyNanos - System.nanoTime());
+    }
+
+    private synchronized int write(final Device device, final ByteBuffer src)
+            throws IOException
+    {
+        if (!device.isOpen())
+        {
+            throw new ClosedChannelException();
+        }
+
+        final int nw = src.remaining();
+        rxMessages++;
+        if (domapp)
+        {
+            while (src.remaining() >= 8)
+            {
+                byte type = src.get();
+                byte subtype = src.get();
+                int len = src.getShort() & 0xffff;
+                src.position(src.position() + 4);
+                if (src.remaining() < len)
+                {
+                    throw new IOException("Truncated DOMApp message");
+                }
+                ByteBuffer payload = src.slice();
+                payload.limit(len);
+                src.position(src.position() + len);
+
+                handle(type, subtype, payload);
+            }
+            if (src.hasRemaining())
+            {
+                throw new IOException("Truncated DOMApp message");
+            }
+        }
+        else
+        {
+            iceboot(src);
+        }
+        repliesReadyNanos = System.nanoTime() + driver.getReplyLatencyNanos();
+        notifyAll();
+        return nw;
+    }
+
+    private void iceboot(final ByteBuffer src)
+    {
+        if (src.get(src.position()) < ' ')
+        {
+            // the DOMApp probe
+            src.position(src.limit());
+            replies.add(ByteBuffer.wrap(ICEBOOT_PROBE_REPLY));
+            return;
+        }
+
+        byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        String cmd = new String(bytes).trim();
+
+        replies.add(ByteBuffer.wrap((cmd + "\r\n").getBytes()));
+        if (cmd.contains(" exec"))
+        {
+            domapp = true;
+            replies.add(ByteBuffer.wrap("DOMAPP READY\r\n".getBytes()));
+        }
+        else
+        {
+            replies.add(ByteBuffer.wrap("> \n".getBytes()));
+        }
+    }
+
+    private void handle(final byte type, final byte subtype,
+                        final ByteBuffer payload)
+    {
+        final long now = domClock(System.nanoTime());
+        final ByteBuffer reply = ByteBuffer.allocate(8 + MAX_PAYLOAD);
+        reply.position(8);
+
+        MessageType mt = MESSAGE_TYPES.get(key(type, subtype));
+        if (mt == null)
+        {
+            queue(reply, type, subtype, STATUS_FAILED);
+            return;
+        }
+
+        byte status = 1;
+        switch (mt)
+        {
+            case GET_DOM_ID:
+                reply.put(getMainboardID().getBytes());
+                break;
+            case GET_DOMAPP_RELEASE:
+                reply.put("simulated".getBytes());
+                break;
+            case QUERY_HV:
+                reply.putShort(hvEnabled ? hvDac : 0);
+                reply.putShort(hvEnabled ? hvDac : 0);
+                break;
+            case SET_HV:
+                if (payload.remaining() >= 2) hvDac = payload.getShort();
+                break;
+            case ENABLE_HV:
+                hvEnabled = true;
+                break;
+            case DISABLE_HV:
+                hvEnabled = false;
+                break;
+            case SET_MONI_IVAL:
+                if (payload.remaining() >= 4)
+                {
+                    hwMoniIntervalTicks = payload.getInt();
+                    nextHwMoniClock = now + hwMoniIntervalTicks;
+                }
+                break;
+            case ENABLE_SN:
+                supernovaEnabled = true;
+                break;
+            case DISABLE_SN:
+                supernovaEnabled = false;
+                break;
+            case BEGIN_RUN:
+            case BEGIN_FB_RUN:
+                if (running)
+                {
+                    status = STATUS_FAILED;
+                }
+                else
+                {
+                    beginRun(now);
+                }
+                break;
+            case END_RUN:
+            case END_FB_RUN:
+                if (running)
+                {
+                    running = false;
+                }
+                else
+                {
+                    status = STATUS_FAILED;
+                }
+                break;
+            case GET_DATA:
+                putHits(reply, now);
+                break;
+            case GET_MONI:
+                putMoni(reply, now);
+                break;
+            case GET_SN_DATA:
+                putSupernova(reply, now);
+                break;
+            case GET_INTERVAL:
+                interval(reply, now);
+                return;
+            default:
+                // setters and unemulated getters
+                break;
+        }
+        queue(reply, type, subtype, status);
+    }
+
+    /**
+     * An interval is answered by data messages up to the request,
+     * followed by a moni message and a supernova message, if enabled.
+     */
+    private void interval(ByteBuffer reply, final long now)
+    {
+        // leave room for the moni and supernova messages
+        int messages = 0;
+        do
+        {
+            putHits(reply, now);
+            queue(reply, MessageType.GET_DATA);
+            reply = ByteBuffer.allocate(8 + MAX_PAYLOAD);
+            reply.position(8);
+        }
+        while (running && nextHitClock <= now && ++messages < 998);
+
+        putMoni(reply, now);
+        queue(reply, MessageType.GET_MONI);
+
+        if (supernovaEnabled)
+        {
+            reply = ByteBuffer.allocate(8 + MAX_PAYLOAD);
+            reply.position(8);
+            putSupernova(reply, now);
+            queue(reply, MessageType.GET_SN_DATA);
+        }
+    }
+
+    private void queue(final ByteBuffer reply, final MessageType type)
+    {
+        queue(reply, type.getFacility(), type.getSubtype(), (byte) 1);
+    }
+
+    private void queue(final ByteBuffer reply, final byte type,
+                       final byte subtype, final byte status)
+    {
+        reply.put(0, type).put(1, subtype);
+        reply.putShort(2, (short) (reply.position() - 8));
+        reply.putShort(4, (short) 0);
+        reply.put(6, (byte) 0);
+        reply.put(7, status);
+        reply.flip();
+        replies.add(reply);
+    }
+
+    private void beginRun(final long now)
+    {
+        running = true;
+        nextHitClock = now + hitInterval();
+        nextHitHLC = random.nextDouble() < hlcFraction;
+        nextHwMoniClock = now + hwMoniIntervalTicks;
+        nextAsciiMoniClock = now + asciiMoniIntervalTicks;
+        supernovaClock = now & ~(SN_BIN_TICKS - 1);
+        pendingMoni.add(asciiMoni(now, "Starting run"));
+    }
+
+    private long hitInterval()
+    {
+        if (hitRate <= 0)
+        {
+            return Long.MAX_VALUE / 2;
+        }
+        double seconds = -Math.log(1.0 - random.nextDouble()) / hitRate;
+        return Math.max(1, (long) (seconds * DOM_TICKS_PER_SECOND));
+    }
+
+    /**
+     * Append a delta-compressed hit block.
+     */
+    private void putHits(final ByteBuffer reply, final long now)
+    {
+        if (!running || nextHitClock > now)
+        {
+            return;
+        }
+
+        if (now - nextHitClock > LBM_DEPTH_TICKS)
+        {
+            long lost = (long) ((now - nextHitClock) * hitRate /
+                    DOM_TICKS_PER_SECOND);
+            pendingMoni.add(asciiMoni(now, "LBM OVERFLOW " + lost +
+                    " hits lost"));
+            nextHitClock = now;
+        }
+
+        if (waveforms == null)
+        {
+            encodeWaveforms();
+        }
+
+        final int start = reply.position();
+        final long clockMSB = nextHitClock >>> 32;
+        reply.putShort((short) 0);
+        reply.putShort((short) 0x90);
+        reply.putShort((short) clockMSB);
+        reply.putShort((short) 0);
+
+        reply.order(ByteOrder.LITTLE_ENDIAN);
+        while (nextHitClock <= now && (nextHitClock >>> 32) == clockMSB)
+        {
+            int need = nextHitHLC ? MAX_HLC_HIT_BYTES : SLC_HIT_BYTES;
+            if (reply.remaining() < need)
+            {
+                break;
+            }
+
+            int k = random.nextInt(WAVEFORM_POOL);
+            int word1 = HIT_FLAGS;
+            if (nextHitHLC)
+            {
+                word1 |= 0x30000 | 0x8000 | 0x4000 |
+                        ((ATWD_CHANNELS - 1) << 12) | (atwdChip << 11) |
+                        (SLC_HIT_BYTES + waveforms[k].length);
+                atwdChip ^= 1;
+            }
+            else
+            {
+                word1 |= SLC_HIT_BYTES;
+            }
+            reply.putInt(word1);
+            reply.putInt((int) nextHitClock);
+            reply.putInt(chargeStamps[k]);
+            if (nextHitHLC)
+            {
+                reply.put(waveforms[k]);
+            }
+
+            hitCount++;
+            nextHitClock += hitInterval();
+            nextHitHLC = random.nextDouble() < hlcFraction;
+        }
+        reply.order(ByteOrder.BIG_ENDIAN);
+
+        reply.putShort(start, (short) (reply.position() - start));
+    }
+
+    /**
+     * Encode a pool of waveforms, the compressed FADC and ATWD channels
+     * of an HLC hit, with their FADC charge stamps.
+     */
+    private void encodeWaveforms()
+    {
+        waveforms = new byte[WAVEFORM_POOL][];
+        chargeStamps = new int[WAVEFORM_POOL];
+
+        final double[] atwdGain = {16.0, 2.0, 0.25};
+        ByteBuffer scratch = ByteBuffer.allocate(MAX_HLC_HIT_BYTES);
+        for (int k = 0; k < WAVEFORM_POOL; k++)
+        {
+            double amplitude = Math.min(800.0,
+                    10.0 - 50.0 * Math.log(1.0 - random.nextDouble()));
+
+            short[][] channels = new short[1 + ATWD_CHANNELS][];
+            channels[0] = waveform(FADC_SAMPLES, 100, 4.0, 3.0, amplitude);
+            for (int ch = 0; ch < ATWD_CHANNELS; ch++)
+            {
+                channels[1 + ch] = waveform(ATWD_SAMPLES, 130, 20.0, 6.0,
+                        amplitude * atwdGain[ch]);
+            }
+
+            scratch.clear();
+            new DeltaMCodec(scratch).encode(channels);
+            scratch.flip();
+            waveforms[k] = new byte[scratch.remaining()];
+            scratch.get(waveforms[k]);
+
+            chargeStamps[k] = chargeStamp(channels[0]);
+        }
+    }
+
+    private short[] waveform(final int samples, final int pedestal,
+                             final double start, final double tau,
+                             final double amplitude)
+    {
+        short[] w = new short[samples];
+        for (int i = 0; i < samples; i++)
+        {
+            double t = (i - start) / tau;
+            double v = pedestal + random.nextInt(3) - 1;
+            if (t > 0) v += amplitude * t * Math.exp(1.0 - t);
+            w[i] = (short) Math.max(0, Math.min(1023, Math.round(v)));
+        }
+        return w;
+    }
+
+    /**
+     * The FADC charge stamp, three samples around the peak of the first
+     * sixteen.
+     */
+    private static int chargeStamp(final short[] fadc)
+    {
+        int peak = 1;
+        for (int i = 1; i < 15; i++)
+        {
+            if (fadc[i] > fadc[peak]) peak = i;
+        }
+        int shift = (fadc[peak] > 511) ? 1 : 0;
+        int word = (shift << 31) | (peak << 27);
+        for (int i = 0; i < 3; i++)
+        {
+            word |= ((fadc[peak - 1 + i] >> shift) & 0x1ff) << (18 - 9 * i);
+        }
+        return word;
+    }
+
+    /**
+     * Append the monitoring records due.
+     */
+    private void putMoni(final ByteBuffer reply, final long now)
+    {
+        while (!pendingMoni.isEmpty() &&
+                reply.remaining() >= pendingMoni.peek().remaining())
+        {
+            reply.put(pendingMoni.remove());
+        }
+
+        if (!running)
+        {
+            return;
+        }
+        while (true)
+        {
+            boolean hw = hwMoniIntervalTicks > 0 && nextHwMoniClock <= now;
+            boolean ascii = asciiMoniIntervalTicks > 0 &&
+                    nextAsciiMoniClock <= now;
+            if (hw && reply.remaining() >= HW_MONI_BYTES &&
+                    (!ascii || nextHwMoniClock <= nextAsciiMoniClock))
+            {
+                putHardwareMoni(reply, nextHwMoniClock);
+                nextHwMoniClock += hwMoniIntervalTicks;
+            }
+            else if (ascii)
+            {
+                ByteBuffer record = asciiMoni(nextAsciiMoniClock,
+                        "SIMULATED DOM " + getMainboardID() + " HITS " +
+                                hitCount);
+                if (reply.remaining() < record.remaining())
+                {
+                    return;
+                }
+                reply.put(record);
+                nextAsciiMoniClock += asciiMoniIntervalTicks;
+            }
+            else
+            {
+                return;
+            }
+        }
+    }
+
+    private void putHardwareMoni(final ByteBuffer reply, final long clock)
+    {
+        final int pos = reply.position();
+        reply.putShort((short) HW_MONI_BYTES).putShort((short) 0xC8);
+        putClock(reply, clock);
+        reply.put(new byte[HW_MONI_BYTES - 10]);
+
+        final short hv = hvEnabled ? hvDac : 0;
+        reply.putShort(pos + 22, (short) 1600);
+        reply.putShort(pos + 26, (short) 1000);
+        reply.putShort(pos + 70, hv);
+        reply.putShort(pos + 72, hv);
+        reply.putShort(pos + 74, (short) (-30 * 256));
+        reply.putInt(pos + 76, (int) hitRate);
+        reply.putInt(pos + 80, (int) (hitRate / 10));
+    }
+
+    private static ByteBuffer asciiMoni(final long clock, final String text)
+    {
+        byte[] bytes = text.getBytes();
+        ByteBuffer record = ByteBuffer.allocate(10 + bytes.length);
+        record.putShort((short) (10 + bytes.length)).putShort((short) 0xCB);
+        putClock(record, clock);
+        record.put(bytes);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Append a supernova record of the scaler bins completed.
+     */
+    private void putSupernova(final ByteBuffer reply, final long now)
+    {
+        if (!running || !supernovaEnabled)
+        {
+            return;
+        }
+
+        int bins = (int) Math.min((now - supernovaClock) / SN_BIN_TICKS,
+                reply.remaining() - 10);
+        if (bins <= 0)
+        {
+            return;
+        }
+
+        reply.putShort((short) (10 + bins)).putShort((short) 300);
+        putClock(reply, supernovaClock);
+        for (int i = 0; i < bins; i++)
+        {
+            reply.put((byte) Math.min(15, poisson(supernovaMean)));
+        }
+        supernovaClock += bins * SN_BIN_TICKS;
+    }
+
+    private int poisson(final double mean)
+    {
+        double limit = Math.exp(-mean);
+        double p = random.nextDouble();
+        int k = 0;
+        while (p > limit)
+        {
+            p *= random.nextDouble();
+            k++;
+        }
+        return k;
+    }
+
+    private static void putClock(final ByteBuffer buf, final long clock)
+    {
+        for (int shift = 40; shift >= 0; shift -= 8)
+        {
+            buf.put((byte) (clock >>> shift));
+        }
+    }
+
+    private static int key(final byte type, final byte subtype)
+    {
+        return ((type & 0xff) << 8) | (subtype & 0xff);
+    }
+
+
+    /**
+     * The message channel of the DOM, reads block while the driver is
+     * in blocking mode.
+     */
+    private class Device extends AbstractInterruptibleChannel
+            implements ByteChannel
+    {
+        @Override
+        public int read(final ByteBuffer dst) throws IOException
+        {
+            boolean completed = false;
+            try
+            {
+                begin();
+                int nr = SimulatedDOM.this.read(this, dst);
+                completed = true;
+                return nr;
+            }
+            finally
+            {
+                end(completed);
+            }
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException
+        {
+            return SimulatedDOM.this.write(this, src);
+        }
+
+        @Override
+        protected void implCloseChannel()
+        {
+            synchronized (SimulatedDOM.this)
+            {
+                SimulatedDOM.this.notifyAll();
+            }
+        }
+    }
+
+}
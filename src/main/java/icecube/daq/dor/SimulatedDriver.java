@@ -0,0 +1,349 @@
+package icecube.daq.dor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DOR driver backed by in-process DOM emulators, for running the
+ * acquisition stack without DOR hardware.
+ * <p>
+ * Each emulated DOM speaks the DOMApp message protocol on the channel
+ * returned by openDOM(), boots from iceboot into DOMApp and produces
+ * delta-compressed hits, monitoring and supernova data while running.
+ * <p>
+ * Time calibrations and GPS snapshots are synthesized from a model of
+ * the DOR and DOM clocks which is consistent with the data timestamps,
+ * so RAPCal reconstructs the system time at which the data was
+ * generated.  Each DOM has its own clock offset, drift and cable delay.
+ * <p>
+ * Configuration
+ * <pre>
+ *
+ *    icecube.daq.dor.simulation.doms = [60]
+ *
+ *           Number of DOMs, filling the pairs of each card in order.
+ *
+ *    icecube.daq.dor.simulation.hit-rate = [1000.0]
+ *
+ *           Hit rate of each DOM in Hz.
+ *
+ *    icecube.daq.dor.simulation.hlc-fraction = [0.1]
+ *
+ *           Fraction of hits which carry waveforms.
+ *
+ *    icecube.daq.dor.simulation.supernova-rate = [500.0]
+ *
+ *           Supernova scaler rate of each DOM in Hz.
+ *
+ *    icecube.daq.dor.simulation.ascii-moni-rate = [0.1]
+ *
+ *           Rate of ASCII monitoring records of each DOM in Hz.
+ *
+ *    icecube.daq.dor.simulation.reply-latency-micros = [0]
+ *
+ *           Time from a request until its reply can be read, standing in
+ *           for the round trip over the DOR wire pair.
+ *
+ * </pre>
+ */
+public class SimulatedDriver implements IDriver
+{
+    /** DOR clock ticks per second. */
+    static final long DOR_TICKS_PER_SECOND = 20000000L;
+
+    /** DOR clock at the creation of the driver. */
+    static final long DOR_BASE_TICKS = 1000000000L;
+
+    private static final File DRIVER_ROOT =
+            new File("/proc/driver/domhub-simulated");
+
+    private final long startNanos;
+    private final long startMillis;
+
+    /** The DOMs by card, pair and dom. */
+    private final Map<String, SimulatedDOM> doms =
+            new LinkedHashMap<String, SimulatedDOM>();
+    private final Map<File, SimulatedDOM> tcalFiles =
+            new HashMap<File, SimulatedDOM>();
+    private final Map<File, Integer> gpsFiles = new HashMap<File, Integer>();
+
+    private final long replyLatencyNanos;
+
+    private volatile boolean blocking = true;
+
+
+    /**
+     * Create a driver according to configuration directives.
+     */
+    public SimulatedDriver()
+    {
+        this(Integer.getInteger("icecube.daq.dor.simulation.doms", 60),
+                Double.parseDouble(System.getProperty(
+                        "icecube.daq.dor.simulation.hit-rate", "1000.0")),
+                Double.parseDouble(System.getProperty(
+                        "icecube.daq.dor.simulation.hlc-fraction", "0.1")),
+                Double.parseDouble(System.getProperty(
+                        "icecube.daq.dor.simulation.supernova-rate", "500.0")),
+                Double.parseDouble(System.getProperty(
+                        "icecube.daq.dor.simulation.ascii-moni-rate", "0.1")),
+                Long.getLong("icecube.daq.dor.simulation.reply-latency-micros",
+                        0L));
+    }
+
+    /**
+     * @param numDOMs Number of DOMs, at most 64.
+     * @param hitRate Hit rate of each DOM in Hz.
+     * @param hlcFraction Fraction of hits which carry waveforms.
+     * @param supernovaRate Supernova scaler rate of each DOM in Hz.
+     * @param asciiMoniRate Rate of ASCII monitoring records in Hz.
+     */
+    public SimulatedDriver(final int numDOMs, final double hitRate,
+                           final double hlcFraction,
+                           final double supernovaRate,
+                           final double asciiMoniRate)
+    {
+        this(numDOMs, hitRate, hlcFraction, supernovaRate, asciiMoniRate, 0L);
+    }
+
+    /**
+     * @param numDOMs Number of DOMs, at most 64.
+     * @param hitRate Hit rate of each DOM in Hz.
+     * @param hlcFraction Fraction of hits which carry waveforms.
+     * @param supernovaRate Supernova scaler rate of each DOM in Hz.
+     * @param asciiMoniRate Rate of ASCII monitoring records in Hz.
+     * @param replyLatencyMicros Time from a request until its reply can
+     *                           be read.
+     */
+    public SimulatedDriver(final int numDOMs, final double hitRate,
+                           final double hlcFraction,
+                           final double supernovaRate,
+                           final double asciiMoniRate,
+                           final long replyLatencyMicros)
+    {
+        if (numDOMs < 0 || numDOMs > 64)
+        {
+            throw new IllegalArgumentException("Cannot simulate " + numDOMs +
+                    " DOMs");
+        }
+
+        if (replyLatencyMicros < 0)
+        {
+            throw new IllegalArgumentException("Bad reply latency " +
+                    replyLatencyMicros);
+        }
+        this.replyLatencyNanos = replyLatencyMicros * 1000L;
+
+        startNanos = System.nanoTime();
+        startMillis = System.currentTimeMillis();
+
+        for (int i = 0; i < numDOMs; i++)
+        {
+            int card = i / 8;
+            int pair = (i % 8) / 2;
+            char dom = (i % 2 == 0) ? 'A' : 'B';
+            SimulatedDOM sim = new SimulatedDOM(this, card, pair, dom,
+                    0x51d000000000L + i, hitRate, hlcFraction,
+                    supernovaRate, asciiMoniRate);
+            doms.put(card + "" + pair + dom, sim);
+            tcalFiles.put(getTCALFile(card, pair, dom), sim);
+        }
+        for (int card = 0; card < 8; card++)
+        {
+            gpsFiles.put(getGPSFile(card), card);
+        }
+    }
+
+    /**
+     * @return The system monotonic clock at the creation of the driver.
+     */
+    long getStartNanos()
+    {
+        return startNanos;
+    }
+
+    /**
+     * @return The time from a request until its reply can be read.
+     */
+    long getReplyLatencyNanos()
+    {
+        return replyLatencyNanos;
+    }
+
+    /**
+     * The DOR clock at a point in time.
+     *
+     * @param nanos The system monotonic clock.
+     * @return The DOR clock.
+     */
+    long dorClock(final long nanos)
+    {
+        return DOR_BASE_TICKS +
+                (nanos - startNanos) / (1000000000L / DOR_TICKS_PER_SECOND);
+    }
+
+    private SimulatedDOM lookup(final int card, final int pair,
+                                final char dom)
+            throws FileNotFoundException
+    {
+        SimulatedDOM sim = doms.get(card + "" + pair + dom);
+        if (sim == null)
+        {
+            throw new FileNotFoundException("No simulated DOM on " + card +
+                    "" + pair + dom);
+        }
+        return sim;
+    }
+
+    @Override
+    public File getTCALFile(final int card, final int pair, final char dom)
+    {
+        return new File(DRIVER_ROOT, "card" + card + "/pair" + pair +
+                "/dom" + dom + "/tcalib");
+    }
+
+    @Override
+    public File getGPSFile(final int card)
+    {
+        return new File(DRIVER_ROOT, "card" + card + "/syncgps");
+    }
+
+    /**
+     * Synthesize the snapshot of the last second boundary of the system
+     * clock, the time string is in UTC without leap second adjustments.
+     */
+    @Override
+    public GPSInfo readGPS(final File gpsFile) throws GPSException
+    {
+        if (!gpsFiles.containsKey(gpsFile))
+        {
+            throw new GPSException("No simulated DOR card for \"" +
+                    gpsFile.getAbsolutePath() + "\"");
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long wallNanos = startMillis * 1000000L + elapsedNanos;
+        long second = Math.floorDiv(wallNanos, 1000000000L);
+        long boundaryNanos = second * 1000000000L - startMillis * 1000000L;
+        long dorclk = DOR_BASE_TICKS + Math.floorDiv(boundaryNanos,
+                1000000000L / DOR_TICKS_PER_SECOND);
+
+        ZonedDateTime utc =
+                Instant.ofEpochSecond(second).atZone(ZoneOffset.UTC);
+        String timestring = String.format("%03d:%02d:%02d:%02d",
+                utc.getDayOfYear(), utc.getHour(), utc.getMinute(),
+                utc.getSecond());
+
+        ByteBuffer buf = ByteBuffer.allocate(22);
+        buf.put((byte) 1);
+        buf.put(timestring.getBytes());
+        buf.put((byte) ' ');
+        buf.putLong(dorclk);
+        buf.flip();
+        return new GPSInfo(buf, null);
+    }
+
+    @Override
+    public TimeCalib readTCAL(final File tcalFile) throws IOException
+    {
+        SimulatedDOM sim = tcalFiles.get(tcalFile);
+        if (sim == null)
+        {
+            throw new FileNotFoundException("No simulated DOM for \"" +
+                    tcalFile.getAbsolutePath() + "\"");
+        }
+
+        long txNanos = System.nanoTime();
+        return sim.timeCalib(dorClock(txNanos), txNanos);
+    }
+
+    @Override
+    public ByteChannel openDOM(final int card, final int pair, final char dom)
+            throws FileNotFoundException
+    {
+        return lookup(card, pair, dom).open();
+    }
+
+    @Override
+    public void softboot(final int card, final int pair, final char dom)
+            throws IOException
+    {
+        lookup(card, pair, dom).softboot();
+    }
+
+    @Override
+    public void commReset(final int card, final int pair, final char dom)
+            throws IOException
+    {
+        lookup(card, pair, dom).commReset();
+    }
+
+    @Override
+    public void setBlocking(final boolean block)
+    {
+        blocking = block;
+    }
+
+    @Override
+    public boolean isBlocking()
+    {
+        return blocking;
+    }
+
+    @Override
+    public HashMap<String, Integer> getFPGARegisters(final int card)
+    {
+        return new HashMap<String, Integer>();
+    }
+
+    @Override
+    public void resetComstat(final int card, final int pair, final char dom)
+            throws IOException
+    {
+        lookup(card, pair, dom).resetComstat();
+    }
+
+    @Override
+    public String getComstat(final int card, final int pair, final char dom)
+            throws IOException
+    {
+        return lookup(card, pair, dom).getComstat();
+    }
+
+    @Override
+    public String getFPGARegs(final int card)
+    {
+        return "";
+    }
+
+    @Override
+    public String getProcfileID(final int card, final int pair,
+                                final char dom)
+            throws IOException
+    {
+        return lookup(card, pair, dom).getMainboardID();
+    }
+
+    @Override
+    public List<DOMChannelInfo> discoverActiveDOMs()
+    {
+        List<DOMChannelInfo> channels = new ArrayList<DOMChannelInfo>();
+        for (SimulatedDOM sim : doms.values())
+        {
+            channels.add(new DOMChannelInfo(sim.getMainboardID(),
+                    sim.getCard(), sim.getPair(), sim.getDom()));
+        }
+        return channels;
+    }
+
+}
@@ -0,0 +1,31 @@
+package icecube.daq.dor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * An open handle to a DOM channel's <tt>tcalib</tt> procfile which runs
+ * time calibrations in two phases, allowing the caller to overlap
+ * many TCALs without blocking on any of them.
+ *
+ * Handles are not thread safe, a handle is expected to be owned by
+ * a single thread.
+ */
+public interface TCALHandle extends Closeable
+{
+    /**
+     * Launch a TCAL.
+     *
+     * @throws IOException Error initiating the TCAL.
+     */
+    void initiate() throws IOException;
+
+    /**
+     * Check for the completion of the last TCAL launched by initiate().
+     *
+     * @return The time calibration, or null if the TCAL has not
+     *         completed yet.
+     * @throws IOException Error reading the TCAL.
+     */
+    TimeCalib poll() throws IOException;
+}
@@ -0,0 +1,488 @@
+package icecube.daq.dor;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hub-wide service which runs the time calibrations of all DOM channels.
+ * <p>
+ * A single service thread keeps the tcalib procfiles open, launches the
+ * TCALs requested by the channels concurrently and polls them for
+ * completion, so acquisition threads never sleep waiting on a TCAL.
+ * Completed time calibrations are handed back to the requesting channel,
+ * which processes them on its own acquisition thread, in series with its
+ * data.
+ * <p>
+ * Each channel may have at most one TCAL in flight.
+ * <p>
+ * Configuration
+ * <pre>
+ *
+ *    icecube.daq.dor.tcal-timeout-millis = [100]
+ *
+ *           Time allowed for a TCAL to complete before it is failed.
+ *
+ *    icecube.daq.dor.tcal-poll-micros = [1000]
+ *
+ *           Interval between polls of the TCALs in flight.
+ *
+ * </pre>
+ */
+public class TCALService
+{
+    private static final Logger logger = Logger.getLogger(TCALService.class);
+
+    /** Time allowed for a TCAL to complete. */
+    public static final long TCAL_TIMEOUT_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Integer.getInteger(
+                    "icecube.daq.dor.tcal-timeout-millis", 100));
+
+    /** Interval between polls of the TCALs in flight. */
+    private static final long POLL_INTERVAL_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Integer.getInteger(
+                    "icecube.daq.dor.tcal-poll-micros", 1000));
+
+    /** The singleton, system wide service instance. */
+    private static TCALService instance;
+
+    /** Source of the TCAL handles. */
+    private final IDriver driver;
+
+    /** Channels with a newly requested TCAL. */
+    private final ConcurrentLinkedQueue<Channel> requests =
+            new ConcurrentLinkedQueue<>();
+
+    /** Channels with a handle to release. */
+    private final ConcurrentLinkedQueue<Channel> releases =
+            new ConcurrentLinkedQueue<>();
+
+    /** Channels with a TCAL in flight, owned by the service thread. */
+    private final List<Channel> active = new ArrayList<>();
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+
+    /**
+     * Provides access to the hub-wide service backed by the configured
+     * driver, see DriverService.
+     *
+     * @return The TCAL service.
+     */
+    public static synchronized TCALService getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new TCALService(DriverService.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Create and start a service.
+     *
+     * @param driver The driver providing the TCAL handles.
+     */
+    public TCALService(final IDriver driver)
+    {
+        this.driver = driver;
+
+        thread = new Thread(this::run, "TCALService");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Register a channel with the service.
+     *
+     * @param tcalFile The tcalib procfile of the channel.
+     * @param id The channel name used in log messages.
+     * @return The channel's view of the service.
+     */
+    public Channel register(final File tcalFile, final String id)
+    {
+        return new Channel(tcalFile, id);
+    }
+
+    /**
+     * Stop the service thread and release all handles.
+     */
+    public void shutdown()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+        try
+        {
+            thread.join(1000);
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run()
+    {
+        try
+        {
+            while (running)
+            {
+                Channel channel;
+                while ((channel = releases.poll()) != null)
+                {
+                    if (channel.inFlight)
+                    {
+                        channel.releaseWhenDone = true;
+                    }
+                    else
+                    {
+                        channel.releaseHandle();
+                    }
+                }
+
+                // launch all the new requests before polling any, so that
+                // the TCALs of different channels overlap
+                while ((channel = requests.poll()) != null)
+                {
+                    if (channel.launch())
+                    {
+                        active.add(channel);
+                    }
+                }
+
+                Iterator<Channel> it = active.iterator();
+                while (it.hasNext())
+                {
+                    channel = it.next();
+                    if (channel.check())
+                    {
+                        channel.inFlight = false;
+                        if (channel.releaseWhenDone)
+                        {
+                            channel.releaseHandle();
+                        }
+                        it.remove();
+                    }
+                }
+
+                if (active.isEmpty())
+                {
+                    if (requests.isEmpty() && releases.isEmpty())
+                    {
+                        LockSupport.park(this);
+                    }
+                }
+                else
+                {
+                    LockSupport.parkNanos(this, POLL_INTERVAL_NANOS);
+                }
+            }
+        }
+        catch (Throwable th)
+        {
+            logger.error("TCAL service failed", th);
+        }
+        finally
+        {
+            for (Channel channel : active)
+            {
+                channel.releaseHandle();
+                channel.complete(null, new IOException("TCAL service" +
+                        " stopped"));
+            }
+            active.clear();
+
+            Channel channel;
+            while ((channel = requests.poll()) != null)
+            {
+                channel.complete(null, new IOException("TCAL service" +
+                        " stopped"));
+            }
+            while ((channel = releases.poll()) != null)
+            {
+                channel.releaseHandle();
+            }
+        }
+    }
+
+
+    /**
+     * The outcome of a TCAL.
+     */
+    public static final class Result
+    {
+        private final TimeCalib timeCalib;
+        private final long initiatedNanos;
+        private final long completedNanos;
+
+        Result(final TimeCalib timeCalib, final long initiatedNanos,
+               final long completedNanos)
+        {
+            this.timeCalib = timeCalib;
+            this.initiatedNanos = initiatedNanos;
+            this.completedNanos = completedNanos;
+        }
+
+        public TimeCalib getTimeCalib()
+        {
+            return timeCalib;
+        }
+
+        /**
+         * @return The system time at which the TCAL was launched.
+         */
+        public long getInitiatedNanos()
+        {
+            return initiatedNanos;
+        }
+
+        /**
+         * @return The system time at which the TCAL completion was seen.
+         */
+        public long getCompletedNanos()
+        {
+            return completedNanos;
+        }
+    }
+
+
+    /**
+     * A channel's view of the service. Request methods are intended to be
+     * called from the channel's acquisition thread.
+     */
+    public final class Channel
+    {
+        private final File tcalFile;
+        private final String id;
+
+        /** TCAL requested and not yet collected by the channel. */
+        private volatile boolean pending;
+
+        /** Completion, published by the volatile write to done. */
+        private Result result;
+        private IOException error;
+        private volatile boolean done;
+
+        /** Thread waiting in await(), if any. */
+        private volatile Thread waiter;
+
+        // members owned by the service thread
+        private TCALHandle handle;
+        private long initiatedNanos;
+        private boolean inFlight;
+        private boolean releaseWhenDone;
+
+        private Channel(final File tcalFile, final String id)
+        {
+            this.tcalFile = tcalFile;
+            this.id = id;
+        }
+
+        /**
+         * Request a TCAL without waiting for it.
+         *
+         * @return false if a TCAL was already pending.
+         */
+        public boolean request()
+        {
+            if (pending)
+            {
+                return false;
+            }
+
+            pending = true;
+            requests.add(this);
+            LockSupport.unpark(thread);
+            return true;
+        }
+
+        /**
+         * @return true if a TCAL was requested and has not been collected.
+         */
+        public boolean isPending()
+        {
+            return pending;
+        }
+
+        /**
+         * Collect a completed TCAL without waiting.
+         *
+         * @return The TCAL result, or null if no TCAL has completed.
+         * @throws IOException The TCAL failed.
+         */
+        public Result poll() throws IOException
+        {
+            if (!done)
+            {
+                return null;
+            }
+
+            final Result res = result;
+            final IOException ioe = error;
+            result = null;
+            error = null;
+            done = false;
+            pending = false;
+
+            if (ioe != null)
+            {
+                throw ioe;
+            }
+            return res;
+        }
+
+        /**
+         * Wait for the completion of a TCAL, requesting one if none
+         * is pending.
+         *
+         * @param timeoutNanos Maximum wait.
+         * @return The TCAL result.
+         * @throws IOException The TCAL failed or timed out.
+         * @throws InterruptedException Interrupted while waiting.
+         */
+        public Result await(final long timeoutNanos)
+                throws IOException, InterruptedException
+        {
+            request();
+
+            final long deadline = System.nanoTime() + timeoutNanos;
+            waiter = Thread.currentThread();
+            try
+            {
+                while (!done)
+                {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                    {
+                        throw new IOException("Timed out waiting for TCAL" +
+                                " on [" + id + "]");
+                    }
+
+                    LockSupport.parkNanos(this, remaining);
+                    if (Thread.interrupted())
+                    {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+            finally
+            {
+                waiter = null;
+            }
+
+            return poll();
+        }
+
+        /**
+         * Release the procfile handle. The handle is reopened if
+         * another TCAL is requested.
+         */
+        public void release()
+        {
+            releases.add(this);
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * Launch the requested TCAL, service thread only.
+         *
+         * @return true if the TCAL is in flight.
+         */
+        private boolean launch()
+        {
+            try
+            {
+                if (handle == null)
+                {
+                    handle = driver.openTCAL(tcalFile);
+                }
+
+                initiatedNanos = System.nanoTime();
+                handle.initiate();
+                inFlight = true;
+                return true;
+            }
+            catch (IOException ioe)
+            {
+                releaseHandle();
+                complete(null, ioe);
+                return false;
+            }
+        }
+
+        /**
+         * Poll the TCAL in flight, service thread only.
+         *
+         * @return true if the TCAL is no longer in flight.
+         */
+        private boolean check()
+        {
+            try
+            {
+                final TimeCalib tcal = handle.poll();
+                final long now = System.nanoTime();
+                if (tcal != null)
+                {
+                    complete(new Result(tcal, initiatedNanos, now), null);
+                    return true;
+                }
+                else if (now - initiatedNanos > TCAL_TIMEOUT_NANOS)
+                {
+                    // start the next TCAL on a fresh handle
+                    releaseHandle();
+                    complete(null, new IOException("TCAL read failed."));
+                    return true;
+                }
+                else
+                {
+                    return false;
+                }
+            }
+            catch (IOException ioe)
+            {
+                releaseHandle();
+                complete(null, ioe);
+                return true;
+            }
+        }
+
+        private void complete(final Result res, final IOException ioe)
+        {
+            result = res;
+            error = ioe;
+            done = true;
+
+            final Thread t = waiter;
+            if (t != null)
+            {
+                LockSupport.unpark(t);
+            }
+        }
+
+        private void releaseHandle()
+        {
+            releaseWhenDone = false;
+            if (handle != null)
+            {
+                try
+                {
+                    handle.close();
+                }
+                catch (IOException ioe)
+                {
+                    logger.warn("Error closing tcalib on [" + id + "]", ioe);
+                }
+                handle = null;
+            }
+        }
+    }
+
+}
@@ -9,8 +9,8 @@ package icecube.daq.monitoring;
 public class BatchHLCReporter
 {
     private final int batchSize;
-    private long[] mbidBatch;
-    protected long[] utcBatch;
+    private final long[] mbidBatch;
+    protected final long[] utcBatch;
     protected int idx;
 
     // run monitor is set post-construction
@@ -40,23 +40,9 @@ public class BatchHLCReporter
     {
         if(runMonitor != null)
         {
-            if(idx < batchSize)
-            {
-                // a runt batch
-                long[] runtMbid = new long[idx];
-                long[] runtUTC = new long[idx];
-                System.arraycopy(mbidBatch, 0, runtMbid, 0, runtMbid.length);
-                System.arraycopy(utcBatch, 0, runtUTC, 0, runtUTC.length);
-                runMonitor.countHLCHit(runtMbid, runtUTC);
-            }
-            else
-            {
-                // a full batch
-                runMonitor.countHLCHit(mbidBatch, utcBatch);
-            }
+            // the monitor copies the hits, so the batch arrays are reused
+            runMonitor.countHLCHit(mbidBatch, utcBatch, idx);
         }
-        this.mbidBatch = new long[batchSize];
-        this.utcBatch = new long[batchSize];
         idx = 0;
     }
 
@@ -0,0 +1,514 @@
+package icecube.daq.monitoring;
+
+import java.util.Arrays;
+
+/**
+ * Count events per DOM in fixed-width bins, periodically reporting
+ * the completed bins.
+ *
+ * This is a primitive specialization of a BinnedQueueConsumer holding
+ * a BinManager&lt;Counter&gt; for each DOM.  Mainboard IDs are mapped to
+ * dense channel slots the first time they are seen in a run and each
+ * channel keeps its active and previous bins in a two-entry ring of
+ * counts, so counting an event does not box the mainboard ID or
+ * allocate bins.  Bin boundaries, report points and the rejection of
+ * late events are identical to the generic implementation.
+ *
+ * Note: Not thread safe, for use by the monitoring thread only.
+ */
+class CountBinner
+{
+    /**
+     * Receives the range of each completed bin
+     */
+    interface Reporter
+    {
+        /**
+         * Send the totals for the specified bin
+         *
+         * @param binStart starting index
+         * @param binEnd ending index
+         */
+        void sendData(long binStart, long binEnd);
+    }
+
+    /** Marks an unused entry in the mainboard ID table */
+    private static final int NO_SLOT = -1;
+
+    /** Initial number of channel slots */
+    private static final int INITIAL_SLOTS = 64;
+
+    private final long binWidth;
+    private final Reporter reporter;
+
+    /** Open-addressed mainboard ID table */
+    private long[] keys;
+    /** Slot for the corresponding entry in <tt>keys</tt> */
+    private int[] keySlots;
+    /** Mainboard ID held in each slot */
+    private long[] slotKeys;
+    /** Number of slots in use */
+    private int numSlots;
+
+    /** Counts for each slot, indexed by <tt>activeIdx</tt> */
+    private long[][] counts;
+    /** Ring index of the active bin count, the other is the previous bin */
+    private int[] activeIdx;
+
+    private boolean[] hasActive;
+    private long[] activeStart;
+    private long[] activeEnd;
+    private long[] activeLatest;
+
+    private boolean[] hasPrevious;
+    private long[] previousStart;
+    private long[] previousEnd;
+
+    private long[] lastBinEnd;
+
+    /**
+     * The max value that has already been reported.
+     * Incoming values (from delayed producers) less than or equal this
+     * value will be rejected as they can no longer be reported.
+     */
+    private long lastReportedBinEnd = Long.MIN_VALUE;
+
+    /**
+     * Create a binner
+     *
+     * @param binWidth size of each bin
+     * @param reporter receives completed bins
+     */
+    CountBinner(long binWidth, Reporter reporter)
+    {
+        this.binWidth = binWidth;
+        this.reporter = reporter;
+
+        keys = new long[INITIAL_SLOTS * 2];
+        keySlots = new int[INITIAL_SLOTS * 2];
+        Arrays.fill(keySlots, NO_SLOT);
+
+        allocate(INITIAL_SLOTS);
+    }
+
+    /**
+     * Allocate (or grow) the per-slot arrays
+     *
+     * @param size number of slots
+     */
+    private void allocate(int size)
+    {
+        slotKeys = grow(slotKeys, size);
+
+        long[][] newCounts = new long[size][];
+        int start = 0;
+        if (counts != null) {
+            System.arraycopy(counts, 0, newCounts, 0, counts.length);
+            start = counts.length;
+        }
+        for (int i = start; i < size; i++) {
+            newCounts[i] = new long[2];
+        }
+        counts = newCounts;
+
+        activeIdx = activeIdx == null ? new int[size] :
+            Arrays.copyOf(activeIdx, size);
+        hasActive = hasActive == null ? new boolean[size] :
+            Arrays.copyOf(hasActive, size);
+        activeStart = grow(activeStart, size);
+        activeEnd = grow(activeEnd, size);
+        activeLatest = grow(activeLatest, size);
+        hasPrevious = hasPrevious == null ? new boolean[size] :
+            Arrays.copyOf(hasPrevious, size);
+        previousStart = grow(previousStart, size);
+        previousEnd = grow(previousEnd, size);
+        lastBinEnd = grow(lastBinEnd, size);
+    }
+
+    private static long[] grow(long[] array, int size)
+    {
+        if (array == null) {
+            return new long[size];
+        }
+
+        return Arrays.copyOf(array, size);
+    }
+
+    private static int hash(long key)
+    {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Find the slot for a mainboard ID
+     *
+     * @param key mainboard ID
+     *
+     * @return slot number, or <tt>NO_SLOT</tt> if the ID has not been seen
+     */
+    private int findSlot(long key)
+    {
+        final int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (keySlots[i] == NO_SLOT) {
+                return NO_SLOT;
+            } else if (keys[i] == key) {
+                return keySlots[i];
+            }
+        }
+    }
+
+    /**
+     * Assign the next slot to a mainboard ID
+     *
+     * @param key mainboard ID
+     *
+     * @return new slot number
+     */
+    private int addSlot(long key)
+    {
+        if (numSlots == slotKeys.length) {
+            allocate(slotKeys.length * 2);
+        }
+        if ((numSlots + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        final int slot = numSlots++;
+        slotKeys[slot] = key;
+        insertKey(key, slot);
+        return slot;
+    }
+
+    private void insertKey(long key, int slot)
+    {
+        final int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keySlots[i] != NO_SLOT) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        keySlots[i] = slot;
+    }
+
+    private void rehash(int size)
+    {
+        keys = new long[size];
+        keySlots = new int[size];
+        Arrays.fill(keySlots, NO_SLOT);
+        for (int s = 0; s < numSlots; s++) {
+            insertKey(slotKeys[s], s);
+        }
+    }
+
+    /**
+     * Create the bins for a newly seen DOM
+     *
+     * @param slot DOM slot
+     * @param binStart index of the first event
+     */
+    private void initSlot(int slot, long binStart)
+    {
+        long binEnd = binStart + binWidth;
+        long partial = binStart % binWidth;
+        if (partial != 0) {
+            binEnd -= partial;
+        }
+
+        hasActive[slot] = true;
+        activeStart[slot] = binStart;
+        activeEnd[slot] = binEnd;
+        activeLatest[slot] = binStart;
+        activeIdx[slot] = 0;
+        counts[slot][0] = 0;
+
+        hasPrevious[slot] = false;
+
+        lastBinEnd[slot] = binEnd;
+    }
+
+    /**
+     * Does <tt>binIndex</tt> fall past the end of the DOM's latest bin?
+     */
+    private boolean pastLatestBin(int slot, long binIndex)
+    {
+        long binEnd;
+        if (hasActive[slot]) {
+            binEnd = activeEnd[slot];
+        } else if (hasPrevious[slot]) {
+            binEnd = previousEnd[slot] + binWidth;
+        } else {
+            binEnd = lastBinEnd[slot] + binWidth;
+        }
+
+        return binIndex >= binEnd;
+    }
+
+    /**
+     * Count an event, creating a new active bin if necessary
+     *
+     * @param slot DOM slot
+     * @param binIndex event index
+     */
+    private void countEvent(int slot, long binIndex)
+    {
+        if (!hasActive[slot] || activeStart[slot] > binIndex ||
+            activeEnd[slot] <= binIndex)
+        {
+            long newStart;
+            if (hasActive[slot]) {
+                newStart = activeEnd[slot];
+            } else {
+                newStart = lastBinEnd[slot];
+            }
+
+            if (binIndex > newStart) {
+                // start of the bin containing binIndex, or of the bin
+                // before if binIndex lies on a bin boundary
+                final long steps = (binIndex - newStart + binWidth - 1) /
+                    binWidth;
+                newStart += (steps - 1) * binWidth;
+            }
+
+            if (binIndex < newStart) {
+                final String msg =
+                    String.format("New index %d is before bin start %d for %012x",
+                                  binIndex, newStart, slotKeys[slot]);
+                throw new Error(msg);
+            }
+
+            if (hasPrevious[slot]) {
+                final String msg =
+                    String.format("Previous bin %d-%d was not reported for %012x",
+                                  previousStart[slot], previousEnd[slot],
+                                  slotKeys[slot]);
+                throw new Error(msg);
+            }
+
+            if (hasActive[slot]) {
+                hasPrevious[slot] = true;
+                previousStart[slot] = activeStart[slot];
+                previousEnd[slot] = activeEnd[slot];
+                activeIdx[slot] ^= 1;
+            }
+
+            hasActive[slot] = true;
+            activeStart[slot] = newStart;
+            activeEnd[slot] = newStart + binWidth;
+            activeLatest[slot] = newStart;
+            counts[slot][activeIdx[slot]] = 0;
+
+            lastBinEnd[slot] = activeEnd[slot];
+        }
+
+        activeLatest[slot] = binIndex;
+        counts[slot][activeIdx[slot]]++;
+    }
+
+    /**
+     * Count an event, first sending the previous bins if all DOMs have
+     * moved past them.
+     *
+     * @param key DOM mainboard ID
+     * @param binIndex event index
+     *
+     * @return <tt>false</tt> if the bin for the index has already been
+     *         reported and the event was not counted
+     */
+    boolean count(long key, long binIndex)
+    {
+        if (binIndex <= lastReportedBinEnd) {
+            return false;
+        }
+
+        int slot = findSlot(key);
+        if (slot == NO_SLOT) {
+            slot = addSlot(key);
+            initSlot(slot, binIndex);
+        }
+
+        if (pastLatestBin(slot, binIndex)) {
+            boolean sendData = true;
+            boolean anyPrevious = false;
+            for (int s = 0; s < numSlots; s++) {
+                // if the binIndex is in the latest bin...
+                if (!pastLatestBin(s, binIndex)) {
+                    // ...don't send a report yet
+                    sendData = false;
+                    break;
+                } else if (hasPrevious[s]) {
+                    anyPrevious = true;
+                }
+            }
+
+            if (sendData && anyPrevious) {
+                sendRange();
+            }
+        }
+
+        countEvent(slot, binIndex);
+        return true;
+    }
+
+    /**
+     * Get the index of the end of the most recently reported bin
+     *
+     * @return bin end
+     */
+    long getLastReportedBinEnd()
+    {
+        return lastReportedBinEnd;
+    }
+
+    /**
+     * Get the DOM's count for the bin overlapping the specified range
+     *
+     * @param key DOM mainboard ID
+     * @param binStart starting index
+     * @param binEnd ending index
+     *
+     * @return count, or zero if the DOM has no matching bin
+     */
+    long getCount(long key, long binStart, long binEnd)
+    {
+        final int slot = findSlot(key);
+        if (slot == NO_SLOT) {
+            return 0;
+        }
+
+        if (hasPrevious[slot] &&
+            overlaps(previousStart[slot], previousEnd[slot], binStart, binEnd))
+        {
+            return counts[slot][activeIdx[slot] ^ 1];
+        }
+
+        if (hasActive[slot] &&
+            overlaps(activeStart[slot], activeEnd[slot], binStart, binEnd))
+        {
+            return counts[slot][activeIdx[slot]];
+        }
+
+        return 0;
+    }
+
+    private static boolean overlaps(long start, long end, long binStart,
+                                    long binEnd)
+    {
+        return binStart < end && binEnd >= start;
+    }
+
+    /**
+     * Send the earliest unreported range and clear the matching bins
+     *
+     * @return <tt>-1</tt> if there was nothing to send, <tt>1</tt> if
+     *         a range of previous bins was sent, otherwise <tt>0</tt>
+     */
+    private int sendRange()
+    {
+        boolean isPrevious = false;
+        for (int s = 0; s < numSlots; s++) {
+            if (hasPrevious[s]) {
+                isPrevious = true;
+                break;
+            }
+        }
+
+        long binStart = Long.MAX_VALUE;
+        long binEnd = Long.MIN_VALUE;
+        for (int s = 0; s < numSlots; s++) {
+            // Previous bins are considered to span from
+            // start to end.
+            if (isPrevious) {
+                if (hasPrevious[s]) {
+                    if (previousStart[s] < binStart) {
+                        binStart = previousStart[s];
+                    }
+                    if (previousEnd[s] > binEnd) {
+                        binEnd = previousEnd[s] - 1;
+                    }
+                }
+            // Active bins are considered to span from
+            // start to latest reported event.
+            } else if (hasActive[s]) {
+                if (activeStart[s] < binStart) {
+                    binStart = activeStart[s];
+                }
+                if (activeLatest[s] > binEnd) {
+                    binEnd = activeLatest[s];
+                }
+            }
+        }
+
+        if (binStart == Long.MAX_VALUE) {
+            return -1;
+        }
+
+        reporter.sendData(binStart, binEnd);
+        clearBin(binStart, binEnd);
+
+        return isPrevious ? 1 : 0;
+    }
+
+    /**
+     * Clear all bins overlapping the specified range
+     */
+    private void clearBin(long binStart, long binEnd)
+    {
+        for (int s = 0; s < numSlots; s++) {
+            if (hasPrevious[s] &&
+                overlaps(previousStart[s], previousEnd[s], binStart, binEnd))
+            {
+                hasPrevious[s] = false;
+            } else if (hasActive[s] &&
+                       overlaps(activeStart[s], activeEnd[s], binStart,
+                                binEnd))
+            {
+                if (hasPrevious[s]) {
+                    final String msg =
+                        String.format("Cannot clear active bin for %012x" +
+                                      " while previous bin is set",
+                                      slotKeys[s]);
+                    throw new Error(msg);
+                }
+
+                hasActive[s] = false;
+            }
+        }
+
+        lastReportedBinEnd = binEnd;
+    }
+
+    /**
+     * Forget all DOMs and their bins.  The end of the last reported bin
+     * is retained so late events are still rejected.
+     */
+    void reset()
+    {
+        for (int s = 0; s < numSlots; s++) {
+            hasActive[s] = false;
+            hasPrevious[s] = false;
+        }
+        numSlots = 0;
+        Arrays.fill(keySlots, NO_SLOT);
+    }
+
+    /**
+     * Send all remaining bins, then reset
+     */
+    void sendRunData()
+    {
+        while (sendRange() == 1) {
+            // keep sending until the active bins have been sent
+        }
+
+        reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("CountBinner[%d doms, lastReported %d]",
+                             numSlots, lastReportedBinEnd);
+    }
+}
@@ -9,6 +9,7 @@ import icecube.daq.rapcal.Isochron;
 import icecube.daq.rapcal.RAPCalException;
 import icecube.daq.util.DOMInfo;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 
@@ -22,6 +23,21 @@ public interface IRunMonitor
      */
     void countHLCHit(long[] domID, long[] utc);
 
+    /**
+     * Add the first <tt>length</tt> hits from reusable arrays to the total
+     * number of HLC hits for this period.  The arrays may be overwritten
+     * as soon as this method returns.
+     *
+     * @param domID An array of mainboard IDs
+     * @param utc An array of utc times at which an hlc hit occurred for
+     *            the dom in the corresponding slot of the domID array.
+     * @param length number of valid entries in each array
+     */
+    default void countHLCHit(long[] domID, long[] utc, int length)
+    {
+        countHLCHit(Arrays.copyOf(domID, length), Arrays.copyOf(utc, length));
+    }
+
     /**
      * Return the list of DOMs configured for this string
      *
@@ -0,0 +1,159 @@
+package icecube.daq.monitoring;
+
+import icecube.daq.juggler.alert.Alerter;
+import icecube.daq.payload.impl.UTCTime;
+import icecube.daq.performance.diagnostic.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Periodically sends the latency percentiles of hit processing stages
+ * to Live.
+ *
+ * Stages are registered as suppliers of cumulative histogram snapshots,
+ * each report covers the values recorded since the previous report.
+ */
+public class LatencyMonitor
+{
+    /** Live quantity name */
+    public static final String NAME = "stringhub_latency";
+    /** Live quantity version */
+    public static final int VERSION = 1;
+
+    /** Live message priority */
+    private static final Alerter.Priority PRIORITY = Alerter.Priority.SCP;
+
+    /** Default reporting period */
+    public static final long DEFAULT_PERIOD_MILLIS = 10L * 60L * 1000L;
+
+    /** Reporting period */
+    private final long periodMillis;
+
+    /** Map stage name -&gt; histogram source */
+    private final Map<String, Supplier<LatencyHistogram.Snapshot>> stages =
+        new LinkedHashMap<String, Supplier<LatencyHistogram.Snapshot>>();
+    /** Map stage name -&gt; snapshot sent in the previous report */
+    private final Map<String, LatencyHistogram.Snapshot> previous =
+        new HashMap<String, LatencyHistogram.Snapshot>();
+
+    /** System time of the previous report */
+    private long lastReportMillis;
+    /** DAQ time of the previous report */
+    private long lastReportUTC;
+
+    /**
+     * Create a latency monitor which reports every ten minutes
+     */
+    public LatencyMonitor()
+    {
+        this(DEFAULT_PERIOD_MILLIS);
+    }
+
+    /**
+     * Create a latency monitor
+     *
+     * @param periodMillis reporting period
+     */
+    public LatencyMonitor(long periodMillis)
+    {
+        this.periodMillis = periodMillis;
+
+        lastReportMillis = System.currentTimeMillis();
+        lastReportUTC = new UTCTime().longValue();
+    }
+
+    /**
+     * Add a stage to the report, replacing any stage of the same name
+     *
+     * @param name stage name
+     * @param source supplier of cumulative snapshots for the stage
+     */
+    public synchronized void addStage(String name,
+                                      Supplier<LatencyHistogram.Snapshot> source)
+    {
+        stages.put(name, source);
+        previous.remove(name);
+    }
+
+    /**
+     * How long until the next report is due?
+     *
+     * @param nowMillis current system time
+     *
+     * @return number of milliseconds, at least 1
+     */
+    public synchronized long millisUntilDue(long nowMillis)
+    {
+        return Math.max(1L, lastReportMillis + periodMillis - nowMillis);
+    }
+
+    /**
+     * Send a report if the reporting period has elapsed
+     *
+     * @param parent main monitoring object
+     * @param nowMillis current system time
+     */
+    public synchronized void sendIfDue(IRunMonitor parent, long nowMillis)
+    {
+        if (nowMillis - lastReportMillis >= periodMillis) {
+            send(parent);
+        }
+    }
+
+    /**
+     * Send the latencies recorded since the previous report
+     *
+     * @param parent main monitoring object
+     */
+    public synchronized void send(IRunMonitor parent)
+    {
+        final UTCTime utcEnd = new UTCTime();
+
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put("version", VERSION);
+
+        for (Map.Entry<String, Supplier<LatencyHistogram.Snapshot>> entry :
+                 stages.entrySet()) {
+            final LatencyHistogram.Snapshot current = entry.getValue().get();
+            final LatencyHistogram.Snapshot interval =
+                current.since(previous.get(entry.getKey()));
+            previous.put(entry.getKey(), current);
+
+            map.put(entry.getKey(), getStageMap(interval));
+        }
+
+        map.put("recordingStartTime", UTCTime.toDateString(lastReportUTC));
+        map.put("recordingStopTime", utcEnd.toDateString());
+
+        lastReportMillis = System.currentTimeMillis();
+        lastReportUTC = utcEnd.longValue();
+
+        if (!stages.isEmpty()) {
+            parent.sendMoni(NAME, PRIORITY, utcEnd, map, true);
+        }
+    }
+
+    /**
+     * Build the map of values for a single stage
+     *
+     * @param snapshot stage latencies
+     *
+     * @return count and percentiles in nanoseconds
+     */
+    private static Map<String, Object> getStageMap(
+        LatencyHistogram.Snapshot snapshot)
+    {
+        final long[] summary = snapshot.summary();
+
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put("count", snapshot.getCount());
+        map.put("p50", summary[0]);
+        map.put("p99", summary[1]);
+        map.put("p999", summary[2]);
+        map.put("max", summary[3]);
+        return map;
+    }
+}
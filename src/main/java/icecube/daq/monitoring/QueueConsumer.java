@@ -32,8 +32,6 @@ abstract class QueueConsumer<T>
 
     /**
      * Hold a value for later processing.
-     * This is run while the RunMonitor lock is active, so should do
-     * as little as possible.
      * @return <tt>true</tt> if a value was held
      */
     boolean holdValue()
@@ -69,7 +67,6 @@ abstract class QueueConsumer<T>
 
     /**
      * Process one value in the RunMonitor thread.
-     * This is run outside any active RunMonitor lock.
      */
     abstract void process(T value);
 
@@ -98,7 +95,6 @@ abstract class QueueConsumer<T>
 
     /**
      * Process the held value in the RunMonitor thread.
-     * This is run outside any active lock.
      */
     void processHeldValue()
     {
@@ -22,6 +22,9 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.log4j.Logger;
 
@@ -303,30 +306,18 @@ class GPSProblemConsumer
     }
 }
 
-class HLCBinManager
-    extends BinManager<Counter>
-{
-    HLCBinManager(String name, long binStart, long binWidth)
-    {
-        super(name, binStart, binWidth);
-    }
-
-    public Counter createBinContainer()
-    {
-        return new Counter();
-    }
-}
-
 /**
  * Consume HLC hits and periodically report the counts.
  */
 class HLCCountConsumer
-    extends BinnedQueueConsumer<HLCCountConsumer.DOMTimes, Long, Counter>
+    extends QueueConsumer<HLCCountConsumer.DOMTimes>
 {
     static class DOMTimes
     {
-        long mbid[];
-        long utc[];
+        final long mbid[];
+        final long utc[];
+        /** Number of valid entries in each array */
+        int length;
 
         DOMTimes(long mbid[], long utc[])
         {
@@ -338,6 +329,36 @@ class HLCCountConsumer
             }
             this.mbid = mbid;
             this.utc = utc;
+            this.length = utc.length;
+        }
+
+        /**
+         * Create an empty batch to be filled from reused arrays
+         *
+         * @param capacity maximum number of hits
+         */
+        DOMTimes(int capacity)
+        {
+            this.mbid = new long[capacity];
+            this.utc = new long[capacity];
+        }
+
+        /**
+         * Copy the first <tt>length</tt> hits into this batch
+         */
+        void fill(long[] mbid, long[] utc, int length)
+        {
+            System.arraycopy(mbid, 0, this.mbid, 0, length);
+            System.arraycopy(utc, 0, this.utc, 0, length);
+            this.length = length;
+        }
+
+        /**
+         * Called by the monitor thread once the hits have been counted.
+         */
+        void recycle()
+        {
+            // not pooled
         }
 
         /**
@@ -347,19 +368,19 @@ class HLCCountConsumer
         @Override
         public String toString()
         {
-            if(utc.length == 0)
+            if(length == 0)
             {
                 return "mbid[], utc[]";
             }
-            if(utc.length == 1)
+            if(length == 1)
             {
                 return String.format("mbid[%012x], utc[%d]", utc[0], mbid[0]);
             }
             else
             {
                 return String.format("mbid[%012x, ..., %012x]," +
-                        " utc[%d, ..., %d]", utc[0], utc[utc.length-1],
-                        mbid[0], mbid[mbid.length - 1]);
+                        " utc[%d, ..., %d]", utc[0], utc[length-1],
+                        mbid[0], mbid[length - 1]);
             }
         }
     }
@@ -379,6 +400,9 @@ class HLCCountConsumer
     /** Live message priority */
     private static final Alerter.Priority PRIORITY = Alerter.Priority.SCP;
 
+    /** Per-DOM counts */
+    private final CountBinner binner;
+
     /**
      * Create an HLC hit rate consumer
      *
@@ -397,15 +421,9 @@ class HLCCountConsumer
      */
     HLCCountConsumer(IRunMonitor parent, long binWidth)
     {
-        super(parent, binWidth);
-    }
+        super(parent);
 
-    @Override
-    public BinManager<Counter> createBinManager(Long dom, long binStart,
-                                                long binWidth)
-    {
-        return new HLCBinManager(String.format("%012x", dom), binStart,
-                                 binWidth);
+        binner = new CountBinner(binWidth, (start, end) -> sendData(start, end));
     }
 
     /**
@@ -418,16 +436,8 @@ class HLCCountConsumer
     {
         HashMap<String, Integer> counts = new HashMap<String, Integer>();
         for (DOMInfo dom : parent.getConfiguredDOMs()) {
-            final Long key = Long.valueOf(dom.getNumericMainboardId());
-
-            Counter counter = getExisting(key, binStart, binEnd);
-
-            int count;
-            if (counter == null) {
-                count = 0;
-            } else {
-                count = counter.get();
-            }
+            final int count = (int) binner.getCount(dom.getNumericMainboardId(),
+                                                    binStart, binEnd);
 
             counts.put(dom.getDeploymentLocation(), count);
         }
@@ -443,20 +453,21 @@ class HLCCountConsumer
     @Override
     void process(DOMTimes domTimes)
     {
-        int numSamples = domTimes.utc.length;
+        int numSamples = domTimes.length;
         for(int i = 0; i < numSamples; i++)
         {
-            try
-            {
-                reportEvent(domTimes.utc[i], domTimes.mbid[i]).inc();
-            }
-            catch (ExpiredRange e)
+            if (!binner.count(domTimes.mbid[i], domTimes.utc[i]))
             {
                 String msg = String.format("Late HLC hit report from %012x " +
-                        "not counted by monitor.", domTimes.mbid[i]);
-                LOG.error(msg, e);
+                        "not counted by monitor. Index %d is earlier than" +
+                        " the end of the last reported bin range %d",
+                        domTimes.mbid[i], domTimes.utc[i],
+                        binner.getLastReportedBinEnd());
+                LOG.error(msg);
             }
         }
+
+        domTimes.recycle();
     }
 
     /**
@@ -471,7 +482,28 @@ class HLCCountConsumer
         push(new DOMTimes(mbid, utc));
     }
 
+    /**
+     * Push a batch of hits onto this consumer's queue
+     *
+     * @param domTimes hits
+     */
+    void pushData(DOMTimes domTimes)
+    {
+        push(domTimes);
+    }
+
+    /**
+     * Reset everything back to initial conditions for the next run
+     */
     @Override
+    void reset()
+    {
+        binner.reset();
+    }
+
+    /**
+     * Send the totals for the specified bin to Live
+     */
     void sendData(long binStart, long binEnd)
     {
         if (binStart > binEnd) {
@@ -499,6 +531,15 @@ class HLCCountConsumer
 
         parent.sendMoni(NAME, PRIORITY, utcEnd, map, false);
     }
+
+    /**
+     * Send the remaining counts.
+     */
+    @Override
+    void sendRunData()
+    {
+        binner.sendRunData();
+    }
 }
 
 /**
@@ -1290,11 +1331,21 @@ public class RunMonitor
     private Map<Long, DOMInfo> mbidMap;
 
     /** Current run number */
-    private int runNumber = NO_ACTIVE_RUN;
+    private volatile int runNumber = NO_ACTIVE_RUN;
     /** If not equal to <tt>runNumber</tt>, the run has changed */
-    private int nextNumber = NO_ACTIVE_RUN;
-    /** Lock which controls access to the consumer data */
-    private Object queueLock = new Object();
+    private volatile int nextNumber = NO_ACTIVE_RUN;
+
+    /**
+     * Events from producer threads, drained by the monitor thread.
+     * Producers never lock, consumer data is only touched by the
+     * monitor thread.
+     */
+    private final ConcurrentLinkedQueue<Runnable> intake =
+        new ConcurrentLinkedQueue<Runnable>();
+    /** The monitor thread, set when the main loop starts */
+    private volatile Thread monitorThread;
+    /** <tt>true</tt> while the monitor thread is (about to be) parked */
+    private volatile boolean waiting;
 
     /** Start of this data period */
     private Date startTime;
@@ -1318,6 +1369,14 @@ public class RunMonitor
     private WildTCalConsumer wildConsumer;
     /** HLC hit rate consumer */
     private HLCCountConsumer hlcCountConsumer;
+    /** Periodic latency reporter */
+    private volatile LatencyMonitor latencyMonitor;
+
+    /** Initial size of pooled HLC batches */
+    private static final int HLC_BATCH_CAPACITY = 256;
+    /** HLC batches which have been counted, ready for reuse */
+    private final ConcurrentLinkedQueue<HLCBatch> hlcPool =
+        new ConcurrentLinkedQueue<HLCBatch>();
 
     /** List of active consumers */
     private ArrayList<QueueConsumer> consumers =
@@ -1348,16 +1407,59 @@ public class RunMonitor
     }
 
     @Override
-    public void countHLCHit(long[] mbid, long[] utc)
+    public void countHLCHit(final long[] mbid, final long[] utc)
     {
-        synchronized (queueLock) {
-            if (hasRunNumber()) {
-                if (hlcCountConsumer == null) {
-                    hlcCountConsumer = new HLCCountConsumer(this);
-                    consumers.add(hlcCountConsumer);
-                }
-                hlcCountConsumer.pushData(mbid, utc);
-                queueLock.notify();
+        if (hasRunNumber()) {
+            submit(() ->
+                   queueHLCHits(new HLCCountConsumer.DOMTimes(mbid, utc)));
+        }
+    }
+
+    /**
+     * Copy the reporter's hits into a pooled batch, which is its own
+     * intake event and returns to the pool once it has been counted
+     */
+    @Override
+    public void countHLCHit(final long[] mbid, final long[] utc,
+                            final int length)
+    {
+        if (hasRunNumber()) {
+            HLCBatch batch = hlcPool.poll();
+            if (batch == null || batch.utc.length < length) {
+                batch = new HLCBatch(Math.max(length, HLC_BATCH_CAPACITY));
+            }
+            batch.fill(mbid, utc, length);
+            submit(batch);
+        }
+    }
+
+    /**
+     * Queue HLC hits on the consumer.
+     * This is only called from the monitor thread.
+     *
+     * @param domTimes hits
+     */
+    private void queueHLCHits(HLCCountConsumer.DOMTimes domTimes)
+    {
+        if (hlcCountConsumer == null) {
+            hlcCountConsumer = new HLCCountConsumer(this);
+            consumers.add(hlcCountConsumer);
+        }
+        hlcCountConsumer.pushData(domTimes);
+    }
+
+    /**
+     * Move all pending events into the consumer queues.
+     * This is only called from the monitor thread.
+     */
+    private void drainIntake()
+    {
+        Runnable event;
+        while ((event = intake.poll()) != null) {
+            try {
+                event.run();
+            } catch (Throwable thr) {
+                LOG.error("Cannot queue monitoring event", thr);
             }
         }
     }
@@ -1380,6 +1482,12 @@ public class RunMonitor
             consumer.sendRunData();
             consumer.reset();
         }
+
+        // send latencies from the final partial period
+        final LatencyMonitor latMon = latencyMonitor;
+        if (latMon != null) {
+            latMon.send(this);
+        }
     }
 
     /**
@@ -1474,11 +1582,9 @@ public class RunMonitor
      */
     private boolean isEmpty()
     {
-        synchronized (queueLock) {
-            for (QueueConsumer consumer : consumers) {
-                if (!consumer.isEmpty()) {
-                    return false;
-                }
+        for (QueueConsumer consumer : consumers) {
+            if (!consumer.isEmpty()) {
+                return false;
             }
         }
         return true;
@@ -1497,83 +1603,108 @@ public class RunMonitor
         nextNumber = NO_ACTIVE_RUN;
     }
 
+    /**
+     * Park the monitor thread until an event arrives, the thread state
+     * changes or the next latency report is due.
+     */
+    private void awaitEvents()
+    {
+        // producers check 'waiting' after queueing, so either they see
+        // it set and unpark us, or we see their event here
+        waiting = true;
+        try {
+            if (intake.isEmpty() && nextNumber == runNumber &&
+                !isStopping())
+            {
+                final LatencyMonitor latMon = latencyMonitor;
+                if (latMon == null || !hasRunNumber()) {
+                    LockSupport.park(this);
+                } else {
+                    final long millis =
+                        latMon.millisUntilDue(System.currentTimeMillis());
+                    LockSupport.parkNanos(this,
+                                          TimeUnit.MILLISECONDS.toNanos(millis));
+                }
+            }
+        } finally {
+            waiting = false;
+        }
+
+        if (Thread.interrupted()) {
+            LOG.error("Interrupt while waiting for monitoring data");
+        }
+    }
+
     /**
      * Main thread loop
      */
     @Override
     void mainloop()
     {
-        ArrayList<QueueConsumer> held = new ArrayList<QueueConsumer>();
+        monitorThread = Thread.currentThread();
 
         stopTime = null;
         while (true) {
-            synchronized (queueLock) {
-                boolean empty = isEmpty();
-
-                // if all queues are empty and there's a new run number...
-                if (empty && runNumber != nextNumber) {
-                    if (hasRunNumber()) {
-                        try {
-                            finishRun();
-                        } catch (Throwable thr) {
-                            LOG.error("Cannot finish run " + runNumber, thr);
-                        }
-                    }
+            // read the next run number before draining so that any event
+            // queued before the switch is counted in the old run
+            final int pendingNumber = nextNumber;
 
-                    // ...switch to the new number
-                    runNumber = nextNumber;
+            drainIntake();
 
-                    // record the starting time for this run
-                    startTime = new Date();
-                    stopTime = null;
-                }
+            boolean empty = isEmpty();
 
-                if (empty && !isStopping()) {
-                    // if all queues are empty, wait for more data
+            // if all queues are empty and there's a new run number...
+            if (empty && runNumber != pendingNumber) {
+                if (hasRunNumber()) {
                     try {
-                        queueLock.wait();
-                    } catch (InterruptedException ie) {
-                        LOG.error("Interrupt while waiting for" +
-                                  " monitoring data", ie);
-                        // go back to the top of the loop
-                        // to check if we're stopping
-                        continue;
+                        finishRun();
+                    } catch (Throwable thr) {
+                        LOG.error("Cannot finish run " + runNumber, thr);
                     }
+                }
 
-                    // did we get more data?
-                    empty = isEmpty();
+                // ...switch to the new number
+                runNumber = pendingNumber;
+
+                // record the starting time for this run
+                startTime = new Date();
+                stopTime = null;
+            }
+
+            final LatencyMonitor latMon = latencyMonitor;
+            if (latMon != null && hasRunNumber()) {
+                try {
+                    latMon.sendIfDue(this, System.currentTimeMillis());
+                } catch (Throwable thr) {
+                    LOG.error("Cannot send latency report", thr);
                 }
+            }
 
+            if (empty) {
                 // if there's no data and we've been asked to stop, do it now
-                if (empty && isStopping()) {
+                if (isStopping()) {
                     break;
                 }
 
-                // hold a value while we're inside the lock
-                held.clear();
-                for (QueueConsumer consumer : consumers) {
-                    try {
-                        if (consumer.holdValue()) {
-                            held.add(consumer);
-                        }
-                    } catch (Throwable thr) {
-                        LOG.error("Cannot hold value for " + consumer, thr);
-                    }
-                }
+                // if all queues are empty, wait for more data
+                awaitEvents();
+                continue;
             }
 
-            // now that we're outside the lock, process stashed values
-            for (QueueConsumer consumer : held) {
+            // process one value from each consumer
+            for (QueueConsumer consumer : consumers) {
                 try {
-                    consumer.processHeldValue();
+                    if (consumer.holdValue()) {
+                        consumer.processHeldValue();
+                    }
                 } catch (Throwable thr) {
-                    LOG.error("Cannot process held value for " + consumer,
-                              thr);
+                    LOG.error("Cannot process value for " + consumer, thr);
                 }
             }
         }
 
         if (hasRunNumber()) {
+            drainIntake();
             try {
                 finishRun();
             } catch (Throwable thr) {
@@ -1590,8 +1721,23 @@ public class RunMonitor
     @Override
     void notifyThread()
     {
-        synchronized (queueLock) {
-            queueLock.notify();
+        final Thread thread = monitorThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Queue an event for the monitor thread.
+     * This does not lock and only wakes the monitor thread if it is idle.
+     *
+     * @param event action which queues data on the appropriate consumer
+     */
+    private void submit(Runnable event)
+    {
+        intake.offer(event);
+        if (waiting) {
+            notifyThread();
         }
     }
 
@@ -1602,17 +1748,16 @@ public class RunMonitor
      * @param isochron isochron
      */
     @Override
-    public void push(long mbid, Isochron isochron)
+    public void push(final long mbid, final Isochron isochron)
     {
-        synchronized (queueLock) {
-            if (hasRunNumber()) {
-                if (isoConsumer == null) {
-                    isoConsumer = new IsoConsumer(this);
-                    consumers.add(isoConsumer);
-                }
-                isoConsumer.pushData(mbid, isochron);
-                queueLock.notify();
-            }
+        if (hasRunNumber()) {
+            submit(() -> {
+                    if (isoConsumer == null) {
+                        isoConsumer = new IsoConsumer(this);
+                        consumers.add(isoConsumer);
+                    }
+                    isoConsumer.pushData(mbid, isochron);
+                });
         }
     }
 
@@ -1624,17 +1769,17 @@ public class RunMonitor
      * @param exception GPS exception
      */
     @Override
-    public void pushException(int string, int card, GPSException exception)
+    public void pushException(final int string, final int card,
+                              final GPSException exception)
     {
-        synchronized (queueLock) {
-            if (hasRunNumber()) {
-                if (gpsexConsumer == null) {
-                    gpsexConsumer = new GPSProblemConsumer(this);
-                    consumers.add(gpsexConsumer);
-                }
-                gpsexConsumer.pushData(string, card, exception);
-                queueLock.notify();
-            }
+        if (hasRunNumber()) {
+            submit(() -> {
+                    if (gpsexConsumer == null) {
+                        gpsexConsumer = new GPSProblemConsumer(this);
+                        consumers.add(gpsexConsumer);
+                    }
+                    gpsexConsumer.pushData(string, card, exception);
+                });
         }
     }
 
@@ -1646,18 +1791,18 @@ public class RunMonitor
      * @param tcal time calibration data which caused this exception
      */
     @Override
-    public void pushException(long mbid, RAPCalException exception,
-                              TimeCalib tcal)
-    {
-        synchronized (queueLock) {
-            if (hasRunNumber()) {
-                if (rapexcConsumer == null) {
-                    rapexcConsumer = new RAPCalProblemConsumer(this);
-                    consumers.add(rapexcConsumer);
-                }
-                rapexcConsumer.pushData(mbid, exception, tcal);
-                queueLock.notify();
-            }
+    public void pushException(final long mbid,
+                              final RAPCalException exception,
+                              final TimeCalib tcal)
+    {
+        if (hasRunNumber()) {
+            submit(() -> {
+                    if (rapexcConsumer == null) {
+                        rapexcConsumer = new RAPCalProblemConsumer(this);
+                        consumers.add(rapexcConsumer);
+                    }
+                    rapexcConsumer.pushData(mbid, exception, tcal);
+                });
         }
     }
 
@@ -1669,18 +1814,18 @@ public class RunMonitor
      * @param newGPS new, problematic GPS information
      */
     @Override
-    public void pushGPSMisalignment(int string, int card, GPSInfo oldGPS,
-                                    GPSInfo newGPS)
-    {
-        synchronized (queueLock) {
-            if (hasRunNumber()) {
-                if (alignConsumer == null) {
-                    alignConsumer = new GPSMisalignmentConsumer(this);
-                    consumers.add(alignConsumer);
-                }
-                alignConsumer.pushData(string, card, oldGPS, newGPS);
-                queueLock.notify();
-            }
+    public void pushGPSMisalignment(final int string, final int card,
+                                    final GPSInfo oldGPS,
+                                    final GPSInfo newGPS)
+    {
+        if (hasRunNumber()) {
+            submit(() -> {
+                    if (alignConsumer == null) {
+                        alignConsumer = new GPSMisalignmentConsumer(this);
+                        consumers.add(alignConsumer);
+                    }
+                    alignConsumer.pushData(string, card, oldGPS, newGPS);
+                });
         }
     }
 
@@ -1691,17 +1836,16 @@ public class RunMonitor
      * @param card card number
      */
     @Override
-    public void pushGPSProcfileNotReady(int string, int card)
+    public void pushGPSProcfileNotReady(final int string, final int card)
     {
-        synchronized (queueLock) {
-            if (hasRunNumber()) {
-                if (pfileConsumer == null) {
-                    pfileConsumer = new ProcfileConsumer(this);
-                    consumers.add(pfileConsumer);
-                }
-                pfileConsumer.pushData(string, card);
-                queueLock.notify();
-            }
+        if (hasRunNumber()) {
+            submit(() -> {
+                    if (pfileConsumer == null) {
+                        pfileConsumer = new ProcfileConsumer(this);
+                        consumers.add(pfileConsumer);
+                    }
+                    pfileConsumer.pushData(string, card);
+                });
         }
     }
 
@@ -1713,17 +1857,17 @@ public class RunMonitor
      * @param averageLen average cable length
      */
     @Override
-    public void pushWildTCal(long mbid, double cableLength, double averageLen)
+    public void pushWildTCal(final long mbid, final double cableLength,
+                             final double averageLen)
     {
-        synchronized (queueLock) {
-            if (hasRunNumber()) {
-                if (wildConsumer == null) {
-                    wildConsumer = new WildTCalConsumer(this);
-                    consumers.add(wildConsumer);
-                }
-                wildConsumer.pushData(mbid, cableLength, averageLen);
-                queueLock.notify();
-            }
+        if (hasRunNumber()) {
+            submit(() -> {
+                    if (wildConsumer == null) {
+                        wildConsumer = new WildTCalConsumer(this);
+                        consumers.add(wildConsumer);
+                    }
+                    wildConsumer.pushData(mbid, cableLength, averageLen);
+                });
         }
     }
 
@@ -1769,6 +1913,17 @@ public class RunMonitor
         }
     }
 
+    /**
+     * Set the object which periodically reports processing latencies
+     *
+     * @param latencyMonitor latency reporter
+     */
+    public void setLatencyMonitor(LatencyMonitor latencyMonitor)
+    {
+        this.latencyMonitor = latencyMonitor;
+        notifyThread();
+    }
+
     /**
      * Set the run number
      *
@@ -1777,9 +1932,32 @@ public class RunMonitor
     @Override
     public void setRunNumber(int runNumber)
     {
-        synchronized (queueLock) {
-            nextNumber = runNumber;
-            queueLock.notify();
+        nextNumber = runNumber;
+        notifyThread();
+    }
+
+    /**
+     * A reusable batch of HLC hits which queues itself on the consumer
+     */
+    private final class HLCBatch
+        extends HLCCountConsumer.DOMTimes
+        implements Runnable
+    {
+        HLCBatch(int capacity)
+        {
+            super(capacity);
+        }
+
+        @Override
+        public void run()
+        {
+            queueHLCHits(this);
+        }
+
+        @Override
+        void recycle()
+        {
+            hlcPool.offer(this);
         }
     }
 }
@@ -50,5 +50,15 @@ public interface SenderMXBean
         return -1;
     }
 
+    /**
+     * Get the latency from arrival of a readout request to the readout
+     * being sent, returned array contains [p50, p99, p99.9, max].
+     * @return The latency percentiles in nanoseconds.
+     */
+    default long[] getReadoutRequestLatencyNanos()
+    {
+        return new long[0];
+    }
+
 
 }
@@ -643,6 +643,149 @@ public class MonitoringRecordReader
     }
 
 
+    public static class RAW_AsciiMonitoringRecordReader extends RAW_MonitoringRecordReader
+    {
+
+        private static final String DOC =
+                "--------------------------------------------------------------------------------------------\n" +
+                "|   length  | type=0xcb |   domclk (uint48)               |     text ...                   |\n" +
+                "--------------------------------------------------------------------------------------------\n" +
+                "|                                            ...                                           |\n" +
+                "--------------------------------------------------------------------------------------------\n" +
+                "length:  uint16\n" +
+                "type:    uint16 = 0xcb = ASCII Monitoring Record\n" +
+                "text:    byte[length-10] = ASCII log message\n";
+
+        /** Offset of the text within the record. */
+        private static final int TEXT_OFFSET = 10;
+
+
+        RAW_AsciiMonitoringRecordReader(int offset)
+        {
+            super(offset);
+        }
+
+        public String getText(ByteBuffer buffer)
+        {
+            return getText(buffer, 0);
+        }
+
+        public String getText(ByteBuffer buffer, int offset)
+        {
+            byte[] text = new byte[getLength(buffer, offset) - TEXT_OFFSET];
+            for (int i = 0; i < text.length; i++)
+            {
+                text[i] = buffer.get(super.OFFSET + offset + TEXT_OFFSET + i);
+            }
+            return new String(text);
+        }
+
+        public String getText(RecordBuffer buffer, int offset)
+        {
+            return new String(buffer.getBytes(super.OFFSET + offset + TEXT_OFFSET,
+                    getLength(buffer, offset) - TEXT_OFFSET));
+        }
+
+        /**
+         * Test the text for a prefix without decoding it.
+         * @param prefix The prefix, as ASCII bytes.
+         */
+        public boolean startsWith(ByteBuffer buffer, int offset, byte[] prefix)
+        {
+            return matchesAt(buffer, offset, 0, prefix);
+        }
+
+        public boolean startsWith(RecordBuffer buffer, int offset, byte[] prefix)
+        {
+            return matchesAt(buffer, offset, 0, prefix);
+        }
+
+        /**
+         * Test the text for a substring without decoding it.
+         * @param pattern The substring, as ASCII bytes.
+         */
+        public boolean contains(ByteBuffer buffer, int offset, byte[] pattern)
+        {
+            int last = getLength(buffer, offset) - TEXT_OFFSET - pattern.length;
+            for (int i = 0; i <= last; i++)
+            {
+                if (matchesAt(buffer, offset, i, pattern))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean contains(RecordBuffer buffer, int offset, byte[] pattern)
+        {
+            int last = getLength(buffer, offset) - TEXT_OFFSET - pattern.length;
+            for (int i = 0; i <= last; i++)
+            {
+                if (matchesAt(buffer, offset, i, pattern))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesAt(ByteBuffer buffer, int offset, int idx,
+                                  byte[] pattern)
+        {
+            if (idx + pattern.length > getLength(buffer, offset) - TEXT_OFFSET)
+            {
+                return false;
+            }
+            int pos = super.OFFSET + offset + TEXT_OFFSET + idx;
+            for (int i = 0; i < pattern.length; i++)
+            {
+                if (buffer.get(pos + i) != pattern[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matchesAt(RecordBuffer buffer, int offset, int idx,
+                                  byte[] pattern)
+        {
+            if (idx + pattern.length > getLength(buffer, offset) - TEXT_OFFSET)
+            {
+                return false;
+            }
+            int pos = super.OFFSET + offset + TEXT_OFFSET + idx;
+            for (int i = 0; i < pattern.length; i++)
+            {
+                if (buffer.getByte(pos + i) != pattern[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String describe()
+        {
+            return DOC;
+        }
+    }
+
+
+    /**
+     * Readers of monitoring records in the DOMApp format, as delivered
+     * by the DOM.
+     */
+    public static class DOMAPP_MonitoringRecordReader
+    {
+        public static final RAW_MonitoringRecordReader monitoringRecordReader = new RAW_MonitoringRecordReader(0);
+        public static final RAW_HardwareMonitoringRecordReader hardwareMonitoringRecordReader  = new RAW_HardwareMonitoringRecordReader(0);
+        public static final RAW_AsciiMonitoringRecordReader asciiMonitoringRecordReader  = new RAW_AsciiMonitoringRecordReader(0);
+    }
+
+
         public static class PDAQ_MonitoringRecordReader extends DaqBufferRecordReader
     {
 
@@ -666,6 +809,7 @@ public class MonitoringRecordReader
         public static final RAW_HardwareMonitoringRecordReader hardwareMonitoringRecordReader  = new RAW_HardwareMonitoringRecordReader(32);
         public static final RAW_ConfigMonitoringRecordReader configMonitoringRecordReader  = new RAW_ConfigMonitoringRecordReader(32);
         public static final RAW_ConfigChangeMonitoringRecordReader configChangeMonitoringRecordReader  = new RAW_ConfigChangeMonitoringRecordReader(32);
+        public static final RAW_AsciiMonitoringRecordReader asciiMonitoringRecordReader  = new RAW_AsciiMonitoringRecordReader(32);
 
 
         public String describe()
@@ -700,6 +844,7 @@ public class MonitoringRecordReader
 
         public static final RAW_ConfigMonitoringRecordReader configMonitoringRecordReader  = new RAW_ConfigMonitoringRecordReader(24);
         public static final RAW_ConfigChangeMonitoringRecordReader configChangeMonitoringRecordReader  = new RAW_ConfigChangeMonitoringRecordReader(24);
+        public static final RAW_AsciiMonitoringRecordReader asciiMonitoringRecordReader  = new RAW_AsciiMonitoringRecordReader(24);
 
         public String describe()
         {
@@ -0,0 +1,258 @@
+package icecube.daq.performance.diagnostic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-footprint, log-linear histogram of latencies in nanoseconds.
+ *
+ * Values are bucketed in the manner of HdrHistogram: values below 64 are
+ * recorded exactly, thereafter each power-of-two range is divided into 32
+ * linear sub-buckets which bounds the quantization error to ~3%. Values
+ * above MAX_TRACKABLE_NANOS (~36 minutes) are clamped.
+ *
+ * Recording is lock-free and allocation-free so that the histogram can be
+ * left enabled on the data path. Readers take a snapshot of the counts.
+ * The copy is not atomic with respect to concurrent recording, so a
+ * snapshot may include or omit a few of the values recorded while it was
+ * being taken.
+ */
+public class LatencyHistogram
+{
+    /** Values below 2^SUB_BUCKET_BITS are recorded exactly. */
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    /** The magnitude of the largest trackable value. */
+    private static final int MAX_MAGNITUDE = 40;
+
+    /** The largest value that is recorded without clamping. */
+    public static final long MAX_TRACKABLE_NANOS =
+            (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    /** The number of buckets needed to span [0 - MAX_TRACKABLE_NANOS]. */
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT +
+            (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF;
+
+    /** The percentiles reported by Snapshot.summary(). */
+    public static final double[] SUMMARY_PERCENTILES = {50.0, 99.0, 99.9};
+
+    /** Snapshot of an histogram with no recorded values. */
+    public static final Snapshot EMPTY = new Snapshot(new long[BUCKET_COUNT], 0);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency in nanoseconds, negative values are recorded
+     *              as zero.
+     */
+    public void record(final long nanos)
+    {
+        counts.incrementAndGet(indexOf(nanos));
+
+        // racing writers are rare, the loop rarely executes more than once
+        long current = max.get();
+        while (nanos > current)
+        {
+            if (max.compareAndSet(current, nanos))
+            {
+                break;
+            }
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return A copy of the counts recorded since construction.
+     */
+    public Snapshot snapshot()
+    {
+        final long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < copy.length; i++)
+        {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, max.get());
+    }
+
+    /**
+     * Map a value to its bucket.
+     */
+    static int indexOf(final long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+        {
+            return (int) Math.max(value, 0);
+        }
+
+        final long clamped = Math.min(value, MAX_TRACKABLE_NANOS);
+        final int magnitude = 63 - Long.numberOfLeadingZeros(clamped);
+        final int shift = magnitude - (SUB_BUCKET_BITS - 1);
+
+        return SUB_BUCKET_COUNT + ((shift - 1) * SUB_BUCKET_HALF) +
+                (int) (clamped >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    /**
+     * Map a bucket to the largest value it holds.
+     */
+    static long highestEquivalentValue(final int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+
+        final int offset = index - SUB_BUCKET_COUNT;
+        final int shift = (offset / SUB_BUCKET_HALF) + 1;
+        final long subBucket = (offset % SUB_BUCKET_HALF) + SUB_BUCKET_HALF;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+
+    /**
+     * An immutable copy of histogram counts.
+     */
+    public static class Snapshot
+    {
+        private final long[] counts;
+        private final long total;
+        private final long max;
+
+        private Snapshot(final long[] counts, final long max)
+        {
+            this.counts = counts;
+            this.max = max;
+
+            long sum = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                sum += counts[i];
+            }
+            this.total = sum;
+        }
+
+        /**
+         * @return The number of recorded values.
+         */
+        public long getCount()
+        {
+            return total;
+        }
+
+        /**
+         * @return The largest recorded value, zero if empty.
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * Resolve a percentile.
+         *
+         * @param percentile The percentile, in the range [0 - 100].
+         * @return The value at or below which the percentile of recorded
+         *         values fall, to within the bucket resolution. Zero if
+         *         empty.
+         */
+        public long getValueAtPercentile(final double percentile)
+        {
+            if (total == 0)
+            {
+                return 0;
+            }
+
+            final double fraction = Math.min(Math.max(percentile, 0), 100) / 100;
+            final long rank = Math.max(1, (long) Math.ceil(fraction * total));
+
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                cumulative += counts[i];
+                if (cumulative >= rank)
+                {
+                    return Math.min(highestEquivalentValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @return The values at SUMMARY_PERCENTILES followed by the max.
+         */
+        public long[] summary()
+        {
+            final long[] summary = new long[SUMMARY_PERCENTILES.length + 1];
+            for (int i = 0; i < SUMMARY_PERCENTILES.length; i++)
+            {
+                summary[i] = getValueAtPercentile(SUMMARY_PERCENTILES[i]);
+            }
+            summary[SUMMARY_PERCENTILES.length] = max;
+            return summary;
+        }
+
+        /**
+         * Combine with another snapshot.
+         *
+         * @param other The other snapshot.
+         * @return A snapshot holding the counts of both.
+         */
+        public Snapshot add(final Snapshot other)
+        {
+            final long[] sum = new long[BUCKET_COUNT];
+            for (int i = 0; i < sum.length; i++)
+            {
+                sum[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(sum, Math.max(max, other.max));
+        }
+
+        /**
+         * Derive the values recorded between an earlier snapshot and this
+         * one.
+         *
+         * If the earlier snapshot was not taken from the same histogram
+         * (i.e. a count has gone backwards) this snapshot is returned
+         * as-is.
+         *
+         * @param earlier A snapshot taken earlier, may be null.
+         * @return A snapshot of the interval.
+         */
+        public Snapshot since(final Snapshot earlier)
+        {
+            if (earlier == null)
+            {
+                return this;
+            }
+
+            final long[] delta = new long[BUCKET_COUNT];
+            int highest = -1;
+            for (int i = 0; i < delta.length; i++)
+            {
+                delta[i] = counts[i] - earlier.counts[i];
+                if (delta[i] < 0)
+                {
+                    return this;
+                }
+                if (delta[i] > 0)
+                {
+                    highest = i;
+                }
+            }
+
+            // the interval max is known only to the bucket resolution
+            final long intervalMax = (highest < 0) ? 0 :
+                    Math.min(highestEquivalentValue(highest), max);
+
+            return new Snapshot(delta, intervalMax);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package icecube.daq.performance.diagnostic;
+
+import icecube.daq.performance.common.PowersOfTwo;
+
+/**
+ * Measures the time that elements spend in a single-producer,
+ * single-consumer FIFO queue without wrapping the elements.
+ *
+ * Every Nth element is stamped with the system monotonic clock on
+ * enqueue. The consumer, which sees elements in the same order, recovers
+ * the stamp on dequeue. Stamps are held in a ring sized to the sampled
+ * capacity of the queue so no allocation is performed.
+ *
+ * The producer stamps an element before enqueuing it, so visibility is
+ * provided by the queue hand-off, and commits the stamp once the element
+ * is queued. A failed enqueue leaves the sequence unchanged and the next
+ * stamp overwrites the slot. Every element, including end-of-stream
+ * markers, must be committed and dequeued, or the producer and consumer
+ * sequences will diverge.
+ */
+public class SampledQueueTimer
+{
+    /** Value returned for elements that were not sampled. */
+    public static final long NOT_SAMPLED = -1;
+
+    private final int sampleMask;
+    private final int sampleShift;
+
+    private final long[] stamps;
+    private final int stampMask;
+
+    /** Owned by the producer thread. */
+    private long producerSequence;
+
+    /** Owned by the consumer thread. */
+    private long consumerSequence;
+
+
+    /**
+     * @param capacity The bounding size of the queue.
+     * @param period Sample one element per period.
+     */
+    public SampledQueueTimer(final PowersOfTwo capacity,
+                             final PowersOfTwo period)
+    {
+        this.sampleMask = period.mask();
+        this.sampleShift = Integer.numberOfTrailingZeros(period.value());
+
+        // allow for queue implementations that round capacity upward
+        final int ringSize =
+                Math.max(16, (capacity.value() / period.value()) * 2);
+        this.stamps = new long[ringSize];
+        this.stampMask = ringSize - 1;
+    }
+
+    /**
+     * Producer side, call immediately before enqueuing an element.
+     */
+    public void stamp()
+    {
+        if ((producerSequence & sampleMask) == 0)
+        {
+            stamps[(int) ((producerSequence >>> sampleShift) & stampMask)] =
+                    System.nanoTime();
+        }
+    }
+
+    /**
+     * Producer side, call after the stamped element was enqueued.
+     */
+    public void commit()
+    {
+        producerSequence++;
+    }
+
+    /**
+     * Consumer side, call immediately after dequeuing an element.
+     *
+     * @return The enqueue time of the element, or NOT_SAMPLED.
+     */
+    public long dequeue()
+    {
+        final long sequence = consumerSequence++;
+        if ((sequence & sampleMask) == 0)
+        {
+            return stamps[(int) ((sequence >>> sampleShift) & stampMask)];
+        }
+        else
+        {
+            return NOT_SAMPLED;
+        }
+    }
+
+}
@@ -27,6 +27,10 @@ public class QueueProvider
             System.getProperty("icecube.daq.performance.queue.sorter-output.queue",
                     SPSCOption.RELAXED_BACKOFF.name());
 
+    private static final String replayConfig =
+            System.getProperty("icecube.daq.performance.queue.replay.queue",
+                    SPSCOption.RELAXED_BACKOFF.name());
+
     /**
      * Implemented as an enumeration to emphasize that queue selection details
      * are highly use-case specific.
@@ -71,6 +75,27 @@ public class QueueProvider
                 return spscOptions.createQueue(size);
             }
 
+        },
+
+        REPLAY
+        {
+            /**
+             * Creates the queues between the replay file handler
+             * threads.
+             *
+             * Each replay stage is a single-producer,
+             * single-consumer queue case.
+             */
+            @Override
+            public <T> QueueStrategy<T> createQueue(final PowersOfTwo size)
+            {
+
+                SPSCOption spscOptions =
+                        SPSCOption.valueOf(replayConfig.toUpperCase());
+
+                return spscOptions.createQueue(size);
+            }
+
         };
 
         /**
@@ -72,6 +72,41 @@ public abstract class AbstractRAPCal implements RAPCal
     public static final String PROP_WILD_TCAL_THRESH =
             "icecube.daq.rapcal.AbstractRAPCal.wildTcalThresh";
 
+    /**
+     * Name of property that controls the maximum age of a checkpoint
+     * used to seed the RAPCal, in milliseconds.
+     */
+    public static final String PROP_CHECKPOINT_MAX_AGE =
+            "icecube.daq.rapcal.AbstractRAPCal.checkpointMaxAge";
+
+    /**
+     * Name of property that controls the maximum change in epsilon
+     * between a checkpoint and the first fresh isochron.
+     */
+    public static final String PROP_CHECKPOINT_EPSILON =
+            "icecube.daq.rapcal.AbstractRAPCal.checkpointEpsilon";
+
+    /**
+     * Name of property that controls the maximum discontinuity in UTC
+     * reconstruction between a checkpoint and the first fresh isochron,
+     * in 0.1 nanosecond units.
+     */
+    public static final String PROP_CHECKPOINT_UTC_TOLERANCE =
+            "icecube.daq.rapcal.AbstractRAPCal.checkpointUTCTolerance";
+
+    /** The maximum age of a checkpoint used to seed the RAPCal. */
+    public static final long CHECKPOINT_MAX_AGE_MILLIS =
+            Long.getLong(PROP_CHECKPOINT_MAX_AGE, 300000L);
+
+    /** The maximum change in epsilon across a checkpoint. */
+    public static final double CHECKPOINT_EPSILON_TOLERANCE =
+            Double.parseDouble(System.getProperty(PROP_CHECKPOINT_EPSILON,
+                    "1.0E-7"));
+
+    /** The maximum discontinuity in UTC reconstruction across a checkpoint. */
+    public static final long CHECKPOINT_UTC_TOLERANCE =
+            Long.getLong(PROP_CHECKPOINT_UTC_TOLERANCE, 10000L);
+
     /**
      * The number of waveform sample used to define the baseline.
      */
@@ -156,11 +191,16 @@ public abstract class AbstractRAPCal implements RAPCal
     enum State
     {
         NoTCAL,      // must wait for a tcal
+        Seeded,      // must wait for a tcal consistent with the checkpoint
         OneTCAL,     // must wait until a successful isochron initialization
         Initialized, // At least one isochron has been established
     }
     private State state = State.NoTCAL;
 
+    /** A checkpoint awaiting confirmation by the first fresh tcal. */
+    private RAPCalCheckpoint seed;
+    private LinkedList<Isochron> seedHistory;
+
 
     /**
      * Construct an instance with parameters provided by environment.
@@ -372,6 +412,9 @@ public abstract class AbstractRAPCal implements RAPCal
                     state = State.OneTCAL;
                     rtnval = true;
                     break;
+                case Seeded:
+                    rtnval = confirmSeed(tcal, gpsOffset);
+                    break;
                 case OneTCAL:
                     rtnval = addIsochron(new Isochron(setupVierling(lastTcal),
                                      setupVierling(tcal), gpsOffset.in_0_1ns()));
@@ -456,6 +499,198 @@ public abstract class AbstractRAPCal implements RAPCal
         return true;
     }
 
+    /**
+     * Take a snapshot of the RAPCal state for seeding a future instance.
+     *
+     * @param nowMillis The current system time.
+     * @return The snapshot, or null if no isochron has been established.
+     */
+    public RAPCalCheckpoint checkpoint(final long nowMillis)
+    {
+        if(state != State.Initialized || hist.isEmpty())
+        {
+            return null;
+        }
+
+        final int size = hist.size();
+        long[][] tcals = new long[size + 1][];
+        long[] gpsOffsets = new long[size];
+        int idx = 0;
+        for (Isochron iso : hist)
+        {
+            if(idx == 0)
+            {
+                tcals[0] = iso.getTCal(0);
+            }
+            tcals[idx + 1] = iso.getTCal(1);
+            gpsOffsets[idx] = iso.getGpsOffset();
+            idx++;
+        }
+
+        return new RAPCalCheckpoint(mbid, getClass().getName(), nowMillis,
+                clenAverage.getAverage(), clenAverage.getStableSampleCount(),
+                tcals, gpsOffsets);
+    }
+
+    /**
+     * Seed a new RAPCal from a checkpoint.
+     *
+     * The seed is held until the next time calibration, which must bridge
+     * the checkpoint history with an isochron consistent in time span,
+     * epsilon, cable length and UTC reconstruction. Once bridged the
+     * RAPCal is ready, otherwise the seed is discarded and initialization
+     * proceeds as without a checkpoint.
+     *
+     * @param checkpoint The checkpoint.
+     * @param nowMillis The current system time.
+     * @return <tt>false</tt> if the checkpoint was rejected.
+     */
+    public boolean seed(final RAPCalCheckpoint checkpoint, final long nowMillis)
+    {
+        final String reason;
+        if(state != State.NoTCAL)
+        {
+            reason = "already initialized";
+        }
+        else if(checkpoint.getMainboardID() != mbid)
+        {
+            reason = String.format("mainboard ID %012x",
+                    checkpoint.getMainboardID());
+        }
+        else if(!getClass().getName().equals(checkpoint.getRAPCalClass()))
+        {
+            reason = "RAPCal class " + checkpoint.getRAPCalClass();
+        }
+        else if(nowMillis - checkpoint.getSavedMillis() < 0 ||
+                nowMillis - checkpoint.getSavedMillis() >
+                        CHECKPOINT_MAX_AGE_MILLIS)
+        {
+            reason = "age " + (nowMillis - checkpoint.getSavedMillis()) +
+                    " ms";
+        }
+        else if(checkpoint.getStableSamples() < REQUIRED_SETUP_SAMPLES ||
+                Double.isNaN(checkpoint.getCableLengthAverage()))
+        {
+            reason = "cable length average not established";
+        }
+        else
+        {
+            LinkedList<Isochron> restored = new LinkedList<Isochron>();
+            String error = null;
+            try
+            {
+                for (int i = 0; i < checkpoint.size(); i++)
+                {
+                    restored.add(new Isochron(checkpoint.getTCal(i),
+                            checkpoint.getTCal(i + 1),
+                            checkpoint.getGpsOffset(i)));
+                }
+            }
+            catch (RAPCalException re)
+            {
+                error = re.getMessage();
+            }
+
+            if(error == null)
+            {
+                seed = checkpoint;
+                seedHistory = restored;
+                state = State.Seeded;
+                return true;
+            }
+            reason = error;
+        }
+
+        logger.warn(String.format("Rejected RAPCal checkpoint for %012x: %s",
+                mbid, reason));
+        return false;
+    }
+
+    /**
+     * Bridge the seeded history to a fresh time calibration.
+     */
+    private boolean confirmSeed(final TimeCalib tcal, final UTC gpsOffset)
+            throws RAPCalException
+    {
+        final Isochron last = seedHistory.getLast();
+        final long[] next = setupVierling(tcal);
+
+        Isochron bridge = null;
+        String reason = null;
+        try
+        {
+            bridge = new Isochron(last, next, gpsOffset.in_0_1ns());
+        }
+        catch (RAPCalException re)
+        {
+            reason = re.getMessage();
+        }
+
+        if(bridge != null)
+        {
+            final long span = bridge.getUpperBound() - bridge.getLowerBound();
+            final long boundary = last.getUpperBound();
+            final long discontinuity =
+                    bridge.reconstructUTC(boundary, TimeUnits.UTC) -
+                    last.reconstructUTC(boundary, TimeUnits.UTC);
+
+            if(span > CHECKPOINT_MAX_AGE_MILLIS * 10000000L)
+            {
+                reason = "span " + span;
+            }
+            else if(Math.abs(bridge.getEpsilon() - last.getEpsilon()) >
+                    CHECKPOINT_EPSILON_TOLERANCE)
+            {
+                reason = "epsilon " + bridge.getEpsilon() + " from " +
+                        last.getEpsilon();
+            }
+            else if(Math.abs(bridge.getCableLength() -
+                    seed.getCableLengthAverage()) >= WILD_TCAL_THRESHOLD)
+            {
+                reason = "cable length " + bridge.getCableLength() +
+                        " from " + seed.getCableLengthAverage();
+            }
+            else if(Math.abs(discontinuity) > CHECKPOINT_UTC_TOLERANCE)
+            {
+                reason = "UTC discontinuity " + discontinuity;
+            }
+        }
+
+        if(reason != null)
+        {
+            logger.warn(String.format("Discarded RAPCal checkpoint for" +
+                    " %012x: %s", mbid, reason));
+            seed = null;
+            seedHistory = null;
+
+            // proceed as if this were the first tcal
+            state = State.OneTCAL;
+            return true;
+        }
+
+        clenAverage.restore(seed.getCableLengthAverage(),
+                seed.getStableSamples());
+        for (Isochron iso : seedHistory)
+        {
+            if (hist.size() == maxHistory) hist.removeFirst();
+            hist.add(iso);
+        }
+        latestIsochron = hist.getLast();
+        lowerBound = latestIsochron.getLowerBound();
+        upperBound = latestIsochron.getUpperBound();
+
+        if (logger.isInfoEnabled())
+        {
+            logger.info(String.format("Seeded RAPCal for %012x from a" +
+                    " checkpoint of %d isochrons", mbid, seedHistory.size()));
+        }
+        seed = null;
+        seedHistory = null;
+        state = State.Initialized;
+
+        return addIsochron(bridge);
+    }
+
     /**
      * Applies the fine time corrections to a time calibration.
      * @param tcal The time calibration.
@@ -30,6 +30,23 @@ public class ExponentialAverage
         return average;
     }
 
+    public int getStableSampleCount()
+    {
+        return stableSampleCount;
+    }
+
+    /**
+     * Restore the average to a previously saved state.
+     *
+     * @param average The saved average.
+     * @param stableSampleCount The saved number of stable samples.
+     */
+    public void restore(final double average, final int stableSampleCount)
+    {
+        this.average = average;
+        this.stableSampleCount = stableSampleCount;
+    }
+
     public boolean add(double sample)
     {
         if (Double.isNaN(average))
@@ -141,6 +141,26 @@ public class Isochron
         return t1[DOR_RX];
     }
 
+    /**
+     * The time calibrations defining this isochron, with fine time
+     * corrections applied.
+     * @return A copy of the first or second time calibration, in 0.1
+     *         nanosecond units.
+     */
+    long[] getTCal(final int which)
+    {
+        return (which == 0 ? t0 : t1).clone();
+    }
+
+    /**
+     * The DOR to UTC offset.
+     * @return The offset, in 0.1 nanosecond units.
+     */
+    long getGpsOffset()
+    {
+        return gpsOffset;
+    }
+
     /**
      * The (inclusive) upper-bound of the dom clock interval.
      * @return The DOM TX time of the second tcal that defines this
@@ -0,0 +1,231 @@
+package icecube.daq.rapcal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A snapshot of the RAPCal state of a DOM, sufficient to seed a new
+ * RAPCal instance after a component restart.
+ *
+ * The snapshot holds the isochron history as the sequence of time
+ * calibrations that define it, with fine time corrections applied,
+ * together with the state of the cable length average.
+ *
+ * Snapshots are persisted in a compact binary file per DOM. Files are
+ * replaced atomically so that a reader never observes a partial write.
+ */
+public class RAPCalCheckpoint
+{
+    /** Identifies a checkpoint file, "RAPC". */
+    private static final int MAGIC = 0x52415043;
+
+    private static final int VERSION = 1;
+
+    /** Bounds the history read from a file. */
+    private static final int MAX_ISOCHRONS = 1024;
+
+    private final long mbid;
+    private final String rapcalClass;
+    private final long savedMillis;
+    private final double cableLengthAverage;
+    private final int stableSamples;
+
+    /** n + 1 contiguous time calibrations defining n isochrons. */
+    private final long[][] tcals;
+
+    /** The DOR to UTC offset of each isochron. */
+    private final long[] gpsOffsets;
+
+
+    /**
+     * @param mbid The DOM mainboard ID.
+     * @param rapcalClass The RAPCal implementation which applied the fine
+     *                    time corrections.
+     * @param savedMillis The system time of the snapshot.
+     * @param cableLengthAverage The cable length average.
+     * @param stableSamples The number of stable samples in the average.
+     * @param tcals The time calibrations defining the isochrons, in 0.1
+     *              nanosecond units.
+     * @param gpsOffsets The DOR to UTC offset of each isochron.
+     */
+    public RAPCalCheckpoint(final long mbid, final String rapcalClass,
+                            final long savedMillis,
+                            final double cableLengthAverage,
+                            final int stableSamples,
+                            final long[][] tcals, final long[] gpsOffsets)
+    {
+        if(tcals.length != gpsOffsets.length + 1 || gpsOffsets.length == 0)
+        {
+            throw new IllegalArgumentException("Expected " +
+                    (gpsOffsets.length + 1) + " tcals for " +
+                    gpsOffsets.length + " isochrons, got " + tcals.length);
+        }
+        this.mbid = mbid;
+        this.rapcalClass = rapcalClass;
+        this.savedMillis = savedMillis;
+        this.cableLengthAverage = cableLengthAverage;
+        this.stableSamples = stableSamples;
+        this.tcals = tcals;
+        this.gpsOffsets = gpsOffsets;
+    }
+
+    public long getMainboardID()
+    {
+        return mbid;
+    }
+
+    public String getRAPCalClass()
+    {
+        return rapcalClass;
+    }
+
+    public long getSavedMillis()
+    {
+        return savedMillis;
+    }
+
+    public double getCableLengthAverage()
+    {
+        return cableLengthAverage;
+    }
+
+    public int getStableSamples()
+    {
+        return stableSamples;
+    }
+
+    /**
+     * @return The number of isochrons in the history.
+     */
+    public int size()
+    {
+        return gpsOffsets.length;
+    }
+
+    long[] getTCal(final int index)
+    {
+        return tcals[index].clone();
+    }
+
+    long getGpsOffset(final int index)
+    {
+        return gpsOffsets[index];
+    }
+
+    /**
+     * The checkpoint file of a DOM.
+     *
+     * @param dir The checkpoint directory.
+     * @param mbid The DOM mainboard ID.
+     * @return The checkpoint file.
+     */
+    public static File fileFor(final File dir, final long mbid)
+    {
+        return new File(dir, String.format("rapcal-%012x.ckpt", mbid));
+    }
+
+    /**
+     * Write the checkpoint, atomically replacing an existing file.
+     *
+     * @param file The checkpoint file.
+     * @throws IOException An error writing the file.
+     */
+    public void write(final File file) throws IOException
+    {
+        File tmp = new File(file.getPath() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mbid);
+            out.writeUTF(rapcalClass);
+            out.writeLong(savedMillis);
+            out.writeDouble(cableLengthAverage);
+            out.writeInt(stableSamples);
+            out.writeInt(gpsOffsets.length);
+            for (long[] tcal : tcals)
+            {
+                for (int i = 0; i < 4; i++)
+                {
+                    out.writeLong(tcal[i]);
+                }
+            }
+            for (long gpsOffset : gpsOffsets)
+            {
+                out.writeLong(gpsOffset);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a checkpoint.
+     *
+     * @param file The checkpoint file.
+     * @return The checkpoint.
+     * @throws IOException An error reading the file, or the file is not a
+     *                     valid checkpoint.
+     */
+    public static RAPCalCheckpoint read(final File file) throws IOException
+    {
+        try(DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file))))
+        {
+            if(in.readInt() != MAGIC)
+            {
+                throw new IOException("Not a RAPCal checkpoint: " + file);
+            }
+            int version = in.readInt();
+            if(version != VERSION)
+            {
+                throw new IOException("Unsupported RAPCal checkpoint version " +
+                        version + ": " + file);
+            }
+            long mbid = in.readLong();
+            String rapcalClass = in.readUTF();
+            long savedMillis = in.readLong();
+            double cableLengthAverage = in.readDouble();
+            int stableSamples = in.readInt();
+            int size = in.readInt();
+            if(size < 1 || size > MAX_ISOCHRONS)
+            {
+                throw new IOException("Corrupt RAPCal checkpoint, " + size +
+                        " isochrons: " + file);
+            }
+
+            long[][] tcals = new long[size + 1][4];
+            for (long[] tcal : tcals)
+            {
+                for (int i = 0; i < 4; i++)
+                {
+                    tcal[i] = in.readLong();
+                }
+            }
+            long[] gpsOffsets = new long[size];
+            for (int i = 0; i < size; i++)
+            {
+                gpsOffsets[i] = in.readLong();
+            }
+            if(in.read() >= 0)
+            {
+                throw new IOException("Corrupt RAPCal checkpoint, trailing" +
+                        " data: " + file);
+            }
+
+            return new RAPCalCheckpoint(mbid, rapcalClass, savedMillis,
+                    cableLengthAverage, stableSamples, tcals, gpsOffsets);
+        }
+    }
+
+}
@@ -1,10 +1,10 @@
 package icecube.daq.replay;
 
-import icecube.daq.sender.Sender;
+import icecube.daq.performance.common.PowersOfTwo;
+import icecube.daq.performance.queue.QueueProvider;
+import icecube.daq.performance.queue.QueueStrategy;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -16,6 +16,9 @@ public class FileHandler
     /** Maximum number of huge gaps before the file is closed */
     public static final int MAX_HUGE_GAPS = 20;
 
+    /** Marks the end of the payloads in the handler queues */
+    static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
     private static final Logger LOG =
         Logger.getLogger(FileHandler.class);
 
@@ -28,6 +31,8 @@ public class FileHandler
     private long timeOffset;
     /** maximum number of huge gaps allowed */
     private int maxHugeGaps = MAX_HUGE_GAPS;
+    /** clock shared by all of this hub's streams */
+    private ReplayTimeKeeper replayTime;
 
     /** Reader thread */
     private InputThread inThread;
@@ -187,13 +192,33 @@ public class FileHandler
         timeOffset = offset;
     }
 
+    /**
+     * Set the clock used to pace this handler's payloads.  The same
+     * clock should be used for all of a hub's handlers.
+     *
+     * @param replayTime shared clock
+     */
+    public void setReplayTimeKeeper(ReplayTimeKeeper replayTime)
+    {
+        if (dataThread != null) {
+            LOG.error("Data thread has been started, ignoring time keeper");
+            return;
+        }
+
+        this.replayTime = replayTime;
+    }
+
     public void startThreads(HandlerOutputProcessor out)
     {
         outThread = new OutputThread(hubId, dataType, out);
         outThread.start();
 
+        if (replayTime == null) {
+            replayTime = new ReplayTimeKeeper(hubId);
+        }
+
         dataThread = new DataThread(hubId, dataType, inThread, timeOffset,
-                                    outThread, maxHugeGaps);
+                                    outThread, maxHugeGaps, replayTime);
         dataThread.start();
     }
 
@@ -218,7 +243,8 @@ class InputThread
 {
     private static final Logger LOG = Logger.getLogger(InputThread.class);
 
-    private static final int MAX_QUEUED = 100000;
+    /** Size of the input queue */
+    private static final PowersOfTwo MAX_QUEUED = PowersOfTwo._131072;
 
     /** ID of this replay hub */
     private int hubId;
@@ -230,13 +256,14 @@ class InputThread
     /** Thread */
     private Thread thread;
 
-    private boolean waiting;
-    private boolean stopping;
-    private boolean stopped;
+    private volatile boolean stopping;
+    private volatile boolean stopped;
+    /** Set by the consumer after the end-of-stream marker is dequeued */
+    private boolean exhausted;
 
     /** Input queue. */
-    private Deque<ByteBuffer> inputQueue =
-        new ArrayDeque<ByteBuffer>();
+    private final QueueStrategy<ByteBuffer> inputQueue =
+        QueueProvider.Subsystem.REPLAY.createQueue(MAX_QUEUED);
 
     InputThread(int hubId, DataStreamType dataType, Iterator<ByteBuffer> rdr)
     {
@@ -265,37 +292,33 @@ class InputThread
         return stopped;
     }
 
-    public boolean isWaiting()
-    {
-        return waiting;
-    }
-
+    /**
+     * Return the next payload, waiting for one to be read if necessary.
+     * This must only be called from a single consumer thread.
+     *
+     * @return <tt>null</tt> if all payloads have been read, or if the
+     *         consumer thread was interrupted
+     */
     public ByteBuffer next()
     {
-        synchronized (inputQueue) {
-            while (!stopping && !stopped) {
-                if (inputQueue.size() != 0) {
-                    break;
-                }
-
-                try {
-                    inputQueue.wait();
-                } catch (InterruptedException ie) {
-                    // if we got interrupted, restart the loop and
-                    //  we'll exit if we're stopping or out of data
-                    continue;
-                }
-            }
+        if (exhausted) {
+            return null;
+        }
 
-            if (inputQueue.size() == 0) {
-                return null;
-            }
+        ByteBuffer buf;
+        try {
+            buf = inputQueue.dequeue();
+        } catch (InterruptedException ie) {
+            return null;
+        }
 
-            ByteBuffer buf = inputQueue.removeFirst();
-            inputQueue.notify();
-            return buf;
+        if (buf == FileHandler.END_OF_STREAM) {
+            exhausted = true;
+            return null;
         }
-     }
+
+        return buf;
+    }
 
     /**
      * Main input loop.
@@ -305,36 +328,23 @@ class InputThread
     {
         stopped = false;
 
-        while (!stopping && !stopped) {
-            synchronized (inputQueue) {
-                if (!stopping && inputQueue.size() >= MAX_QUEUED) {
-                    try {
-                        waiting = true;
-                        inputQueue.wait();
-                    } catch (InterruptedException ie) {
-                        LOG.error("Interrupt while waiting for hub#" + hubId +
-                                  " " + dataType + " input queue", ie);
-                    }
-                    waiting = false;
-                }
-
-                if (inputQueue.size() >= MAX_QUEUED) {
-                    continue;
+        try {
+            while (!stopping) {
+                ByteBuffer buf = rdr.next();
+                if (buf == null) {
+                    break;
                 }
-            }
 
-            ByteBuffer buf = rdr.next();
-            if (buf == null) {
-                break;
+                inputQueue.enqueue(buf);
             }
 
-            synchronized (inputQueue) {
-                inputQueue.addLast(buf);
-                inputQueue.notify();
+            inputQueue.enqueue(FileHandler.END_OF_STREAM);
+        } catch (InterruptedException ie) {
+            if (!stopping) {
+                LOG.error("Interrupt while waiting for hub#" + hubId +
+                          " " + dataType + " input queue", ie);
             }
-        }
-
-        synchronized (inputQueue) {
+        } finally {
             stopping = false;
             stopped = true;
         }
@@ -347,9 +357,9 @@ class InputThread
 
     public void stop()
     {
-        synchronized (inputQueue) {
+        if (!stopped) {
             stopping = true;
-            inputQueue.notify();
+            thread.interrupt();
         }
     }
 
@@ -374,8 +384,6 @@ class DataThread
 
     /** Nanoseconds per second */
     private static final long NS_PER_SEC = 1000000000L;
-    /** Maximum gap between payloads (in nanoseconds!) */
-    private static final long MAX_GAP_NS = NS_PER_SEC * 3L;
     /** If <tt>true</tt>, log when this thread finishes queuing all data */
     private static final boolean LOUD = false;
 
@@ -391,6 +399,8 @@ class DataThread
     private OutputThread outThread;
     /** maximum huge gaps allowed */
     private int maxHugeGaps;
+    /** clock shared by all of this hub's streams */
+    private ReplayTimeKeeper replayTime;
 
     /** The actual thread object */
     private Thread realThread;
@@ -419,9 +429,11 @@ class DataThread
      * @param timeOffset offset to use for recalibrating payload times
      * @param outThread thread which writes data to the sender
      * @param maxHugeGaps maximum number of huge gaps allowed
+     * @param replayTime clock shared by all of this hub's streams
      */
     DataThread(int hubId, DataStreamType dataType, InputThread inThread,
-               long timeOffset, OutputThread outThread, int maxHugeGaps)
+               long timeOffset, OutputThread outThread, int maxHugeGaps,
+               ReplayTimeKeeper replayTime)
     {
         this.hubId = hubId;
         this.dataType = dataType;
@@ -429,6 +441,25 @@ class DataThread
         this.timeOffset = timeOffset;
         this.outThread = outThread;
         this.maxHugeGaps = maxHugeGaps;
+        this.replayTime = replayTime;
+    }
+
+    /**
+     * Copy a read-only payload so it can be modified.
+     *
+     * @param buf read-only payload
+     *
+     * @return writable copy
+     */
+    private static ByteBuffer copyPayload(ByteBuffer buf)
+    {
+        ByteBuffer src = buf.duplicate();
+        src.position(0);
+
+        ByteBuffer copy = ByteBuffer.allocate(src.limit());
+        copy.put(src);
+        copy.flip();
+        return copy;
     }
 
     /**
@@ -526,8 +557,6 @@ class DataThread
 
     private void process()
     {
-        boolean firstPayload = true;
-        TimeKeeper sysTime = new TimeKeeper(hubId, dataType, true);
         TimeKeeper daqTime = new TimeKeeper(hubId, dataType, false);
 
         int gapCount = 0;
@@ -556,68 +585,52 @@ class DataThread
 
             // update the raw buffer's hit time
             if (timeOffset != 0) {
+                if (buf.isReadOnly()) {
+                    buf = copyPayload(buf);
+                }
                 BBUTC.set(buf, daqTime.get());
             }
 
-            // set system time
-            if (!sysTime.set(System.nanoTime(), 0L, totPayloads)) {
-                // if the current time is before the previous time, skip it
-                continue;
-            }
+            // wait for the other streams to catch up, then check the
+            //  difference between the shared clock and this payload's time
+            long nsTimeGap = replayTime.timeUntilDue(dataType, daqTime.get());
 
-            // check the difference between system time and next payload time
-            long nsTimeGap;
-            if (firstPayload) {
-                // don't need to recalibrate the first payload
-                firstPayload = false;
-                nsTimeGap = 0;
-            } else {
-                // try to deliver payloads at the rate they were created
-
-                // get the difference the current system time and
-                //  the next payload time
-                nsTimeGap = daqTime.baseDiff() - sysTime.baseDiff();
-
-                // whine if the time gap is too long
-                if (nsTimeGap > MAX_GAP_NS) {
-                    if (totPayloads < 10) {
-                        // minimize gap for first few payloads
-                        nsTimeGap = NS_PER_SEC / 10L;
-                    } else {
-                        // complain about gap
-                        final String fmtStr = "Huge time gap (%.2f sec) for" +
-                            " hub#%d %s payload #%d";
-                        final double dblGap =
-                            ((double) nsTimeGap / (double) NS_PER_SEC);
-                        LOG.error(String.format(fmtStr, dblGap, hubId,
-                                                dataType, totPayloads));
-                        if (++gapCount > maxHugeGaps) {
-                            LOG.error("Too many huge gaps for hub#" + hubId +
-                                      " " + dataType + " ... aborting");
-                            break;
-                        }
+            // whine if the time gap is too long
+            if (nsTimeGap > ReplayTimeKeeper.MAX_GAP_NS) {
+                if (totPayloads < 10) {
+                    // minimize gap for first few payloads
+                    nsTimeGap = NS_PER_SEC / 10L;
+                    replayTime.skipGap(daqTime.get(), nsTimeGap);
+                } else {
+                    // complain about gap
+                    final String fmtStr = "Huge time gap (%.2f sec) for" +
+                        " hub#%d %s payload #%d";
+                    final double dblGap =
+                        ((double) nsTimeGap / (double) NS_PER_SEC);
+                    LOG.error(String.format(fmtStr, dblGap, hubId,
+                                            dataType, totPayloads));
+                    if (++gapCount > maxHugeGaps) {
+                        LOG.error("Too many huge gaps for hub#" + hubId +
+                                  " " + dataType + " ... aborting");
+                        break;
                     }
-
-                    // reset base times
-                    sysTime.setBase(nsTimeGap);
-                    daqTime.setBase(0L);
                 }
+            }
 
-                // if we're sending payloads too quickly, wait a bit
-                if (nsTimeGap > NS_PER_SEC) {
-                    totalSleep += nsTimeGap;
-
-                    try {
-                        final long ns_per_ms = 1000000L;
-                        final long sleepMS = nsTimeGap / ns_per_ms;
-                        final int sleepNS = (int) (nsTimeGap % ns_per_ms);
-                        Thread.sleep(sleepMS, sleepNS);
-                    } catch (InterruptedException ie) {
-                        // ignore interrupts
-                    }
-                } else if (nsTimeGap < 0) {
-                    totalBehind -= nsTimeGap;
+            // if we're sending payloads too quickly, wait a bit
+            if (nsTimeGap >= ReplayTimeKeeper.MIN_SLEEP_NS) {
+                totalSleep += nsTimeGap;
+
+                try {
+                    final long ns_per_ms = 1000000L;
+                    final long sleepMS = nsTimeGap / ns_per_ms;
+                    final int sleepNS = (int) (nsTimeGap % ns_per_ms);
+                    Thread.sleep(sleepMS, sleepNS);
+                } catch (InterruptedException ie) {
+                    // ignore interrupts
                 }
+            } else if (nsTimeGap < 0) {
+                totalBehind -= nsTimeGap;
             }
 
             // record the DAQ time for this DOM
@@ -634,7 +647,7 @@ class DataThread
 
             outThread.push(buf);
 
-            if (nsTimeGap >= 0) {
+            if (nsTimeGap > 0) {
                 // if we're ahead of the stream, don't overwhelm other threads
                 Thread.yield();
             }
@@ -664,6 +677,9 @@ class DataThread
                       totPayloads + " " + dataType, thr);
         }
 
+        // don't hold back the other streams
+        replayTime.finished(dataType);
+
         try {
             finishThreadCleanup();
         } finally {
@@ -720,6 +736,9 @@ class OutputThread
     /** If <tt>true</tt>, log when this thread finishes writing all data */
     private static final boolean LOUD = false;
 
+    /** Size of the output queue */
+    private static final PowersOfTwo MAX_QUEUED = PowersOfTwo._131072;
+
     /** ID of this replay hub */
     private int hubId;
     /** Type of files handled by this object */
@@ -728,13 +747,12 @@ class OutputThread
     private HandlerOutputProcessor out;
 
     private Thread thread;
-    private boolean waiting;
-    private boolean stopping;
-    private boolean stopped;
+    private volatile boolean stopping;
+    private volatile boolean stopped;
 
     /** Output queue. */
-    private Deque<ByteBuffer> outputQueue =
-        new ArrayDeque<ByteBuffer>();
+    private final QueueStrategy<ByteBuffer> outputQueue =
+        QueueProvider.Subsystem.REPLAY.createQueue(MAX_QUEUED);
 
     /**
      * Create output thread.
@@ -771,26 +789,38 @@ class OutputThread
         return stopped;
     }
 
-    public boolean isWaiting()
-    {
-        return waiting;
-    }
-
-    public void notifyThread()
+    /**
+     * Queue a payload for writing, waiting for space in the queue if
+     * necessary.  This must only be called from a single producer thread.
+     *
+     * @param buf payload
+     */
+    public void push(ByteBuffer buf)
     {
-        synchronized (outputQueue) {
-            outputQueue.notify();
+        if (buf != null) {
+            enqueue(buf);
         }
     }
 
-    public void push(ByteBuffer buf)
+    /**
+     * Add a buffer to the queue.  Interrupts (which are used to stop the
+     * producer) are deferred until the buffer has been queued.
+     */
+    private void enqueue(ByteBuffer buf)
     {
-        if (buf != null) {
-            synchronized (outputQueue) {
-                outputQueue.addLast(buf);
-                outputQueue.notify();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                outputQueue.enqueue(buf);
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
             }
         }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -809,29 +839,18 @@ class OutputThread
                       " output thread sleep interrupted", ie);
         }
 
-        ByteBuffer buf;
-        while (!stopping || outputQueue.size() > 0) {
-            synchronized (outputQueue) {
-                if (!stopping && outputQueue.size() == 0) {
-                    try {
-                        waiting = true;
-                        outputQueue.wait();
-                    } catch (InterruptedException ie) {
-                        LOG.error("Interrupt while waiting for hub#" + hubId +
-                                  " " + dataType + " output queue", ie);
-                    }
-                    waiting = false;
-                }
-
-                if (outputQueue.size() == 0) {
-                    buf = null;
-                } else {
-                    buf = outputQueue.removeFirst();
-                }
+        while (true) {
+            ByteBuffer buf;
+            try {
+                buf = outputQueue.dequeue();
+            } catch (InterruptedException ie) {
+                LOG.error("Interrupt while waiting for hub#" + hubId +
+                          " " + dataType + " output queue", ie);
+                continue;
             }
 
-            if (buf == null) {
-                continue;
+            if (buf == FileHandler.END_OF_STREAM) {
+                break;
             }
 
             out.send(buf);
@@ -853,12 +872,14 @@ class OutputThread
         thread.start();
     }
 
+    /**
+     * Stop after all queued payloads have been written.  This must be
+     * called from the producer thread.
+     */
     public void stop()
     {
-        synchronized (outputQueue) {
-            stopping = true;
-            outputQueue.notify();
-        }
+        stopping = true;
+        enqueue(FileHandler.END_OF_STREAM);
     }
 
     @Override
@@ -0,0 +1,554 @@
+package icecube.daq.replay;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Read payloads from a list of files by memory-mapping each file and
+ * returning views of the mapped region.  Payloads are not copied.
+ *
+ * Files are mapped privately (copy-on-write) so the replay time offset
+ * can be written into the returned payloads without touching the files.
+ * Files which cannot be opened for writing are mapped read-only and
+ * their payloads must be copied before being modified.
+ * While one file is being read the next one is mapped and loaded into
+ * memory by the reader's background prefetch thread, which exits once
+ * the last file has been mapped.
+ *
+ * Returned views keep their mapping alive until they are garbage
+ * collected, so they may be held by downstream consumers.
+ *
+ * Note: Not thread safe, for single thread access only.
+ */
+class MappedPayloadReader
+    implements ReplayHitReader
+{
+    private static final Logger LOG =
+        Logger.getLogger(MappedPayloadReader.class);
+
+    /** Largest region mapped at one time */
+    static final long MAX_REGION = Integer.MAX_VALUE;
+
+    /** Hitspool file names */
+    private static final Pattern HITSPOOL_PATTERN =
+        Pattern.compile("HitSpool-(\\d+)\\.dat");
+
+    /** Files to read */
+    private final List<File> files;
+    /** Largest region mapped at one time */
+    private final long maxRegion;
+
+    /** Index of the next file to be opened */
+    private int nextFile;
+    /** Thread which maps files in the background */
+    private final ExecutorService prefetcher;
+    /** Next file being mapped in the background */
+    private Future<Region> prefetch;
+
+    /** Mapped region of the current file */
+    private Region region;
+
+    /** Next payload, if peekTime() has been called */
+    private ByteBuffer cachedBuf;
+    /** Number of payloads returned */
+    private int numPayloads;
+
+    /**
+     * Create a reader
+     *
+     * @param files list of files to read, in order
+     */
+    MappedPayloadReader(List<File> files)
+    {
+        this(files, MAX_REGION);
+    }
+
+    /**
+     * Create a reader
+     *
+     * @param files list of files to read, in order
+     * @param maxRegion largest region to map at one time
+     */
+    MappedPayloadReader(List<File> files, long maxRegion)
+    {
+        this.files = new ArrayList<File>(files);
+        this.maxRegion = maxRegion;
+
+        prefetcher = Executors.newSingleThreadExecutor((Runnable r) -> {
+                Thread thread = new Thread(r);
+                thread.setName("MappedPayloadPrefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        startPrefetch();
+    }
+
+    /**
+     * Build a reader for the hitspool files in a directory.  Since
+     * hitspool files are reused in a ring, the files are ordered by the
+     * time of their first payload.
+     *
+     * @param dataDir directory holding <tt>HitSpool-<i>N</i>.dat</tt> files
+     * @param numToSkip number of initial files to skip
+     *
+     * @return <tt>null</tt> if no hitspool files were found
+     *
+     * @throws IOException if a file cannot be read
+     */
+    static MappedPayloadReader forHitSpool(File dataDir, int numToSkip)
+        throws IOException
+    {
+        if (!dataDir.isDirectory()) {
+            return null;
+        }
+
+        File[] list = dataDir.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File f)
+                {
+                    return f.isFile() &&
+                        HITSPOOL_PATTERN.matcher(f.getName()).matches();
+                }
+            });
+        if (list == null || list.length == 0) {
+            return null;
+        }
+
+        final long[] firstTimes = new long[list.length];
+        final Integer[] order = new Integer[list.length];
+        for (int i = 0; i < list.length; i++) {
+            firstTimes[i] = getFirstTime(list[i]);
+            order[i] = i;
+        }
+
+        final File[] files = list;
+        Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b)
+                {
+                    int val = Long.compare(firstTimes[a], firstTimes[b]);
+                    if (val == 0) {
+                        val = Long.compare(getFileNumber(files[a]),
+                                           getFileNumber(files[b]));
+                    }
+                    return val;
+                }
+            });
+
+        ArrayList<File> sorted = new ArrayList<File>();
+        int skipped = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (firstTimes[order[i]] == Long.MIN_VALUE) {
+                // ignore empty files
+                continue;
+            } else if (skipped < numToSkip) {
+                skipped++;
+                continue;
+            }
+            sorted.add(files[order[i]]);
+        }
+
+        return new MappedPayloadReader(sorted);
+    }
+
+    /**
+     * Build a reader for a secondary stream file and any numbered files
+     * which follow it (e.g. <tt>moni-0.dat</tt>, <tt>moni-1.dat</tt>, ...)
+     *
+     * @param dataDir directory holding the files
+     * @param name base file name
+     *
+     * @return <tt>null</tt> if the first file does not exist
+     */
+    static MappedPayloadReader forStream(File dataDir, String name)
+    {
+        ArrayList<File> list = new ArrayList<File>();
+        for (int i = 0; ; i++) {
+            File f = new File(dataDir, name + "-" + i + ".dat");
+            if (!f.isFile()) {
+                break;
+            }
+            list.add(f);
+        }
+
+        if (list.size() == 0) {
+            return null;
+        }
+
+        return new MappedPayloadReader(list);
+    }
+
+    private static long getFileNumber(File f)
+    {
+        Matcher m = HITSPOOL_PATTERN.matcher(f.getName());
+        if (!m.matches()) {
+            return Long.MAX_VALUE;
+        }
+
+        try {
+            return Long.parseLong(m.group(1));
+        } catch (NumberFormatException nfe) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Read the time of the first payload in a file
+     *
+     * @param f file
+     *
+     * @return first time, or <tt>Long.MIN_VALUE</tt> if the file is empty
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private static long getFirstTime(File f)
+        throws IOException
+    {
+        try (FileChannel chan = FileChannel.open(f.toPath(),
+                                                 StandardOpenOption.READ))
+        {
+            ByteBuffer hdr = ByteBuffer.allocate(4);
+            if (chan.read(hdr, 0) < 4) {
+                return Long.MIN_VALUE;
+            }
+
+            final int len = hdr.getInt(0);
+            if (len < 4 || len > chan.size()) {
+                return Long.MIN_VALUE;
+            }
+
+            ByteBuffer buf = ByteBuffer.allocate(Math.min(len, 64));
+            chan.read(buf, 0);
+            buf.flip();
+
+            try {
+                return BBUTC.get(buf);
+            } catch (Error err) {
+                LOG.error("Cannot get first time from " + f, err);
+                return Long.MIN_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Map the next file in the background, stopping the prefetch thread
+     * after the last file has been handed to it
+     */
+    private void startPrefetch()
+    {
+        if (nextFile >= files.size()) {
+            prefetch = null;
+            prefetcher.shutdown();
+            return;
+        }
+
+        final File f = files.get(nextFile++);
+        prefetch = prefetcher.submit(() -> {
+                Region rgn = new Region(f, 0L, maxRegion);
+                rgn.load();
+                return rgn;
+            });
+
+        if (nextFile >= files.size()) {
+            prefetcher.shutdown();
+        }
+    }
+
+    /**
+     * Switch to the prefetched file and begin mapping the next file
+     *
+     * @return <tt>false</tt> if there are no more files
+     */
+    private boolean advanceFile()
+    {
+        while (prefetch != null) {
+            final File f = files.get(nextFile - 1);
+
+            Region next;
+            try {
+                next = prefetch.get();
+            } catch (InterruptedException ie) {
+                LOG.error("Interrupted while mapping " + f);
+                return false;
+            } catch (ExecutionException ee) {
+                LOG.error("Cannot map " + f, ee.getCause());
+                next = null;
+            }
+
+            startPrefetch();
+
+            if (next != null) {
+                region = next;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Return the next payload view
+     *
+     * @return next payload, or <tt>null</tt> if all files have been read
+     */
+    private ByteBuffer readPayload()
+    {
+        while (true) {
+            if (region == null && !advanceFile()) {
+                return null;
+            }
+
+            ByteBuffer buf = region.nextPayload();
+            if (buf != null) {
+                return buf;
+            }
+
+            if (region.hasMore()) {
+                // payload crosses the end of the region, remap from there
+                try {
+                    region = region.remap();
+                    continue;
+                } catch (IOException ioe) {
+                    LOG.error("Cannot remap " + region, ioe);
+                }
+            }
+
+            region = null;
+        }
+    }
+
+    /**
+     * Return the number of files read by this reader
+     *
+     * @return number of files
+     */
+    @Override
+    public int getNumberOfFiles()
+    {
+        return files.size();
+    }
+
+    /**
+     * Get the total number of payloads returned
+     *
+     * @return number of payloads
+     */
+    public int getNumberOfPayloads()
+    {
+        return numPayloads;
+    }
+
+    /**
+     * Is there another payload?
+     *
+     * @return <tt>true</tt> if there's another payload
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if (cachedBuf == null) {
+            cachedBuf = readPayload();
+        }
+
+        return cachedBuf != null;
+    }
+
+    /**
+     * Get the next payload
+     *
+     * @return next payload, or <tt>null</tt> if all files have been read
+     */
+    @Override
+    public ByteBuffer next()
+    {
+        ByteBuffer buf;
+        if (cachedBuf != null) {
+            buf = cachedBuf;
+            cachedBuf = null;
+        } else {
+            buf = readPayload();
+        }
+
+        if (buf != null) {
+            numPayloads++;
+        }
+
+        return buf;
+    }
+
+    /**
+     * Return the time of the next payload
+     *
+     * @return next payload time (Long.MIN_VALUE if there's no next payload)
+     */
+    @Override
+    public long peekTime()
+    {
+        if (!hasNext()) {
+            return Long.MIN_VALUE;
+        }
+
+        return BBUTC.get(cachedBuf);
+    }
+
+    /**
+     * Unsupported
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("MappedPayloadReader[%d files, next %d, %s]",
+                             files.size(), nextFile, region);
+    }
+
+    /**
+     * A mapped region of a file
+     */
+    private static class Region
+    {
+        private final File file;
+        private final long fileSize;
+        private final long fileOffset;
+        private final long maxRegion;
+        private final MappedByteBuffer mapped;
+
+        /** Set when the rest of the file cannot be read */
+        private boolean failed;
+
+        Region(File file, long fileOffset, long maxRegion)
+            throws IOException
+        {
+            this.file = file;
+            this.fileOffset = fileOffset;
+            this.maxRegion = maxRegion;
+
+            // private mappings need a writable channel, although the
+            // file itself is never modified
+            final boolean writable = file.canWrite();
+            final FileChannel chan;
+            if (writable) {
+                chan = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+            } else {
+                chan = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+
+            try {
+                fileSize = chan.size();
+
+                final long len = Math.min(fileSize - fileOffset, maxRegion);
+                mapped = chan.map(writable ? FileChannel.MapMode.PRIVATE :
+                                  FileChannel.MapMode.READ_ONLY, fileOffset,
+                                  len);
+            } finally {
+                chan.close();
+            }
+        }
+
+        /**
+         * Bring the mapped region into memory
+         */
+        void load()
+        {
+            mapped.load();
+        }
+
+        /**
+         * Is there any file data past this region?
+         *
+         * @return <tt>true</tt> if the file continues past this region
+         */
+        boolean hasMore()
+        {
+            return !failed && fileOffset + mapped.limit() < fileSize;
+        }
+
+        /**
+         * Return a view of the next complete payload in this region
+         *
+         * @return <tt>null</tt> if there are no more complete payloads
+         */
+        ByteBuffer nextPayload()
+        {
+            final int pos = mapped.position();
+            if (failed || mapped.limit() - pos < 4) {
+                return null;
+            }
+
+            final int len = mapped.getInt(pos);
+            if (len < 4) {
+                LOG.error(String.format("Bad %d-byte payload at %d in %s," +
+                                        " skipping rest of file", len,
+                                        fileOffset + pos, file));
+                failed = true;
+                return null;
+            } else if (len > mapped.limit() - pos) {
+                if (fileOffset + pos + len > fileSize) {
+                    LOG.error(String.format("Truncated %d-byte payload at" +
+                                            " %d in %s", len,
+                                            fileOffset + pos, file));
+                    failed = true;
+                } else if (pos == 0) {
+                    LOG.error(String.format("%d-byte payload at %d in %s" +
+                                            " is larger than the mapped" +
+                                            " region", len, fileOffset, file));
+                    failed = true;
+                }
+                return null;
+            }
+
+            ByteBuffer view = mapped.duplicate();
+            view.limit(pos + len);
+            view.position(pos);
+            mapped.position(pos + len);
+
+            return view.slice();
+        }
+
+        /**
+         * Map the rest of the file, starting at the current position
+         *
+         * @return new region
+         *
+         * @throws IOException if the file cannot be mapped
+         */
+        Region remap()
+            throws IOException
+        {
+            return new Region(file, fileOffset + mapped.position(),
+                              maxRegion);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%d+%d", file.getName(),
+                                 fileOffset + mapped.position(),
+                                 mapped.limit() - mapped.position());
+        }
+    }
+}
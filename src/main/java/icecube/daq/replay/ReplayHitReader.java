@@ -0,0 +1,26 @@
+package icecube.daq.replay;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Source of replayed hits which can report the time of the first hit
+ * before the replay starts.
+ */
+interface ReplayHitReader
+    extends Iterator<ByteBuffer>
+{
+    /**
+     * Return the number of files read by this reader
+     *
+     * @return number of files
+     */
+    int getNumberOfFiles();
+
+    /**
+     * Return the time of the next hit
+     *
+     * @return next hit time (Long.MIN_VALUE if there's no next hit)
+     */
+    long peekTime();
+}
@@ -128,7 +128,7 @@ public class ReplayHubComponent
     private File configurationPath;
 
     /** Hit reader */
-    private CachingPayloadReader hitReader;
+    private ReplayHitReader hitReader;
     /** time of first hit */
     private long firstTime;
 
@@ -146,6 +146,13 @@ public class ReplayHubComponent
     public static final boolean USE_LEGACY_SENDER =
     Boolean.getBoolean("icecube.daq.sender.SenderSubsystem.use-legacy-sender");
 
+    /**
+     * Configuration directive to read replay files with the stream
+     * readers instead of memory-mapping them.
+     */
+    public static final boolean USE_LEGACY_READER =
+        Boolean.getBoolean("icecube.daq.replay.use-legacy-reader");
+
     /**
      * Create a replay component
      *
@@ -421,6 +428,7 @@ public class ReplayHubComponent
         }
 
         int numToSkip = 0;
+        double speed = 1.0;
 
         // extract replay "tweak" node
         final String tweakNodeStr = replayFilesStr + "/tweak";
@@ -443,10 +451,35 @@ public class ReplayHubComponent
                                                " files to skip");
                 }
             }
+
+            // get replay speed
+            final String speedStr = tweaks.getAttribute("speed");
+            if (speedStr != null && speedStr.length() > 0) {
+                try {
+                    speed = ReplayTimeKeeper.parseSpeed(speedStr);
+                } catch (NumberFormatException nfe) {
+                    throw new DAQCompException("Bad value \"" + speedStr +
+                                               "\" for replay speed");
+                }
+            }
         }
 
+        // all streams are paced by a single clock
+        final ReplayTimeKeeper replayTime =
+            new ReplayTimeKeeper(hubId, speed,
+                                 ReplayTimeKeeper.DEFAULT_MAX_LEAD);
+
         try {
-            hitReader = new CachingPayloadReader(dataDir, hubId, numToSkip);
+            hitReader = null;
+            if (!USE_LEGACY_READER) {
+                hitReader = MappedPayloadReader.forHitSpool(dataDir,
+                                                            numToSkip);
+            }
+            if (hitReader == null) {
+                // compressed data or no hitspool files, use HitSpoolReader
+                hitReader = new CachingPayloadReader(dataDir, hubId,
+                                                     numToSkip);
+            }
         } catch (IOException ioe) {
             throw new DAQCompException("Cannot open " + dataDir, ioe);
         }
@@ -473,15 +506,21 @@ public class ReplayHubComponent
                     continue;
                 }
 
-                try {
-                    fileReader = new PayloadByteReader(f, cache);
-                } catch (IOException ioe) {
-                    throw new DAQCompException("Cannot create " + dst +
-                                               " file handler", ioe);
+                if (!USE_LEGACY_READER) {
+                    fileReader =
+                        MappedPayloadReader.forStream(dataDir, dst.filename());
+                } else {
+                    try {
+                        fileReader = new PayloadByteReader(f, cache);
+                    } catch (IOException ioe) {
+                        throw new DAQCompException("Cannot create " + dst +
+                                                   " file handler", ioe);
+                    }
                 }
             }
 
             handlers[dst.index()] = new FileHandler(hubId, dst, fileReader);
+            handlers[dst.index()].setReplayTimeKeeper(replayTime);
             if (dst == DataStreamType.HIT &&
                 MAX_GAPS != FileHandler.MAX_HUGE_GAPS)
             {
@@ -491,7 +530,7 @@ public class ReplayHubComponent
 
         // done configuring
         if (LOG.isInfoEnabled()) {
-            LOG.info("Hub#" + hubId + ": " + dataDir);
+            LOG.info("Hub#" + hubId + ": " + dataDir + " " + replayTime);
         }
     }
 
@@ -878,6 +917,7 @@ public class ReplayHubComponent
  */
 class CachingPayloadReader
     extends HitSpoolReader
+    implements ReplayHitReader
 {
     /** error logger */
     private static final Logger LOG =
@@ -955,7 +995,8 @@ class CachingPayloadReader
      *
      * @return next hit time (Long.MIN_VALUE if there's no next hit)
      */
-    long peekTime()
+    @Override
+    public long peekTime()
     {
         if (cachedBuf == null) {
             cachedBuf = super.next();
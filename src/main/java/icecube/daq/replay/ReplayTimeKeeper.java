@@ -0,0 +1,267 @@
+package icecube.daq.replay;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pace all of a replay hub's data streams against a single clock.
+ *
+ * Every stream maps its payload times onto a shared system time base,
+ * scaled by the replay speed, so the hit, moni, sn and tcal streams
+ * stay consistent at any speed.  Additionally, no stream is allowed
+ * to get more than <tt>maxLead</tt> DAQ ticks ahead of the slowest
+ * active stream, which keeps the streams in step when the replay is
+ * unthrottled or when one stream falls behind.
+ */
+class ReplayTimeKeeper
+{
+    /** Replay speed which disables pacing */
+    static final double UNTHROTTLED = 0.0;
+
+    /** Nanoseconds per second */
+    private static final long NS_PER_SEC = 1000000000L;
+    /** DAQ ticks per second */
+    private static final long TICKS_PER_SEC = 10000000000L;
+
+    /** Default maximum lead of one stream over the others (DAQ ticks) */
+    static final long DEFAULT_MAX_LEAD = TICKS_PER_SEC;
+
+    /** Maximum gap between payloads (in nanoseconds of replay time) */
+    static final long MAX_GAP_NS = NS_PER_SEC * 3L;
+    /** Don't bother sleeping for less than this (in nanoseconds) */
+    static final long MIN_SLEEP_NS = 10000000L;
+    /** Time to wait between checks of the other streams' positions */
+    private static final long LOCKSTEP_PARK_NS = 100000L;
+
+    /** Marks a stream which is not active */
+    private static final long INACTIVE = Long.MAX_VALUE;
+
+    /** ID of this replay hub */
+    private final int hubId;
+    /** Replay speed, where 1.0 is real time */
+    private final double speed;
+    /** Maximum lead of one stream over the others (DAQ ticks) */
+    private final long maxLead;
+
+    /** DAQ time of the next payload for each stream */
+    private final AtomicLongArray position;
+
+    /** <tt>true</tt> once the time base has been set */
+    private boolean initialized;
+    /** System time corresponding to <tt>baseDAQ</tt> */
+    private long baseSystem;
+    /** DAQ time corresponding to <tt>baseSystem</tt> */
+    private long baseDAQ;
+
+    /**
+     * Create a real-time time keeper
+     *
+     * @param hubId replay hub ID
+     */
+    ReplayTimeKeeper(int hubId)
+    {
+        this(hubId, 1.0, DEFAULT_MAX_LEAD);
+    }
+
+    /**
+     * Create a time keeper
+     *
+     * @param hubId replay hub ID
+     * @param speed replay speed (1.0 is real time, <tt>UNTHROTTLED</tt>
+     *              to replay as fast as possible)
+     * @param maxLead maximum lead of one stream over the others (DAQ ticks)
+     */
+    ReplayTimeKeeper(int hubId, double speed, long maxLead)
+    {
+        if (speed < 0.0 || Double.isNaN(speed) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Bad replay speed " + speed);
+        }
+
+        this.hubId = hubId;
+        this.speed = speed;
+        this.maxLead = maxLead;
+
+        position = new AtomicLongArray(DataStreamType.values().length);
+        for (int i = 0; i < position.length(); i++) {
+            position.set(i, INACTIVE);
+        }
+    }
+
+    /**
+     * Parse a replay speed
+     *
+     * @param str speed factor, or <tt>max</tt> for an unthrottled replay
+     *
+     * @return replay speed
+     *
+     * @throws NumberFormatException if the string is not a valid speed
+     */
+    static double parseSpeed(String str)
+    {
+        final String trimmed = str.trim();
+        if (trimmed.equalsIgnoreCase("max") ||
+            trimmed.equalsIgnoreCase("unthrottled"))
+        {
+            return UNTHROTTLED;
+        }
+
+        final double val = Double.parseDouble(trimmed);
+        if (val < 0.0 || Double.isNaN(val) || Double.isInfinite(val)) {
+            throw new NumberFormatException("Bad replay speed \"" + str +
+                                            "\"");
+        }
+
+        return val;
+    }
+
+    /**
+     * Get the replay speed
+     *
+     * @return speed (1.0 is real time, 0.0 is unthrottled)
+     */
+    double getSpeed()
+    {
+        return speed;
+    }
+
+    /**
+     * Is the replay paced?
+     *
+     * @return <tt>false</tt> if payloads are sent as fast as possible
+     */
+    boolean isThrottled()
+    {
+        return speed != UNTHROTTLED;
+    }
+
+    /**
+     * Get the current system time
+     *
+     * @return nanoseconds
+     */
+    long now()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Convert a DAQ time difference to replay time
+     *
+     * @param ticks DAQ ticks
+     *
+     * @return nanoseconds of system time at the replay speed
+     */
+    private long toReplayNanos(long ticks)
+    {
+        return (long) ((double) (ticks / 10L) / speed);
+    }
+
+    /**
+     * Record the time of a stream's next payload, wait until the stream
+     * is no longer too far ahead of the other streams, then return how
+     * long it will be before the payload is due to be sent.
+     *
+     * @param stream stream type
+     * @param daqTime DAQ time of the next payload
+     *
+     * @return number of nanoseconds until the payload is due (negative if
+     *         the stream is behind the shared clock, always zero if the
+     *         replay is unthrottled)
+     */
+    long timeUntilDue(DataStreamType stream, long daqTime)
+    {
+        final int idx = stream.index();
+        position.set(idx, daqTime);
+
+        waitForOtherStreams(idx, daqTime);
+
+        if (!isThrottled()) {
+            return 0L;
+        }
+
+        synchronized (this) {
+            final long now = now();
+            if (!initialized) {
+                baseSystem = now;
+                baseDAQ = daqTime;
+                initialized = true;
+            }
+
+            return baseSystem + toReplayNanos(daqTime - baseDAQ) - now;
+        }
+    }
+
+    /**
+     * Wait until no other active stream is more than <tt>maxLead</tt>
+     * ticks behind this one.
+     *
+     * @param idx stream index
+     * @param daqTime DAQ time of this stream's next payload
+     */
+    private void waitForOtherStreams(int idx, long daqTime)
+    {
+        while (!Thread.currentThread().isInterrupted()) {
+            boolean ahead = false;
+            for (int i = 0; i < position.length(); i++) {
+                if (i != idx) {
+                    final long other = position.get(i);
+                    if (other != INACTIVE && daqTime - other > maxLead) {
+                        ahead = true;
+                        break;
+                    }
+                }
+            }
+
+            if (!ahead) {
+                break;
+            }
+
+            LockSupport.parkNanos(LOCKSTEP_PARK_NS);
+        }
+    }
+
+    /**
+     * Skip the shared clock forward over a huge gap in the data so that
+     * the payload at <tt>daqTime</tt> is due after <tt>delay</tt>
+     * nanoseconds.
+     *
+     * @param daqTime DAQ time of the next payload
+     * @param delay nanoseconds until the payload should be sent
+     */
+    synchronized void skipGap(long daqTime, long delay)
+    {
+        if (!initialized) {
+            return;
+        }
+
+        // only move forward, another stream may already have skipped
+        final long newBase =
+            now() + delay - toReplayNanos(daqTime - baseDAQ);
+        if (newBase < baseSystem) {
+            baseSystem = newBase;
+        }
+    }
+
+    /**
+     * Note that a stream has sent all its payloads
+     *
+     * @param stream stream type
+     */
+    void finished(DataStreamType stream)
+    {
+        position.set(stream.index(), INACTIVE);
+    }
+
+    @Override
+    public String toString()
+    {
+        final String speedStr;
+        if (isThrottled()) {
+            speedStr = String.format("%.2fx", speed);
+        } else {
+            speedStr = "unthrottled";
+        }
+
+        return String.format("ReplayTimeKeeper[hub#%d,%s]", hubId, speedStr);
+    }
+}
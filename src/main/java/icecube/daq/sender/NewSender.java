@@ -17,6 +17,7 @@ import icecube.daq.performance.binary.record.RecordReader;
 import icecube.daq.performance.binary.record.pdaq.DaqBufferRecordReader;
 import icecube.daq.performance.binary.store.RecordStore;
 import icecube.daq.performance.common.BufferContent;
+import icecube.daq.performance.diagnostic.LatencyHistogram;
 import icecube.daq.sender.readout.ReadoutRequestFiller;
 import icecube.daq.sender.readout.ReadoutRequestFillerImpl;
 import icecube.daq.util.IDOMRegistry;
@@ -165,6 +166,14 @@ public class NewSender implements BufferConsumer, SenderSubsystem
         forwardLC0Hits = true;
     }
 
+    @Override
+    public void switchRun(final int runNumber, final long cutUTC)
+    {
+        // count the batched HLC hits of the prior run before the
+        // monitor moves on to the new run
+        hlcReporter.flush();
+    }
+
     @Override
     public void setHitOutput(final DAQOutputChannelManager hitOut)
     {
@@ -195,6 +204,15 @@ public class NewSender implements BufferConsumer, SenderSubsystem
         return monitorInterface;
     }
 
+    /**
+     * Provides the latency from arrival of a readout request to the
+     * readout being sent.
+     */
+    public LatencyHistogram.Snapshot getReadoutRequestLatency()
+    {
+        return counters.readoutRequestLatency.snapshot();
+    }
+
     @Override
     public void startup()
     {
@@ -267,6 +285,12 @@ public class NewSender implements BufferConsumer, SenderSubsystem
             return counters.readoutLatency;
         }
 
+        @Override
+        public long[] getReadoutRequestLatencyNanos()
+        {
+            return counters.readoutRequestLatency.snapshot().summary();
+        }
+
     }
 
 
@@ -6,6 +6,7 @@ import icecube.daq.payload.IReadoutRequest;
 import icecube.daq.payload.ISourceID;
 import icecube.daq.payload.PayloadException;
 import icecube.daq.performance.common.PowersOfTwo;
+import icecube.daq.performance.diagnostic.SampledQueueTimer;
 import icecube.daq.performance.queue.QueueStrategy;
 import icecube.daq.sender.readout.ReadoutRequestFiller;
 import org.apache.log4j.Logger;
@@ -36,6 +37,10 @@ public class ReadoutRequestHandler implements RequestHandler
             new QueueStrategy.NonBlockingPoll<IReadoutRequest>
     (new SpscArrayQueue<IReadoutRequest>(PowersOfTwo._131072.value()), 100);
 
+    /** Stamps sampled requests for latency measurement. */
+    private final SampledQueueTimer queueTimer =
+            new SampledQueueTimer(PowersOfTwo._131072, PowersOfTwo._4);
+
     /** Destination for fulfilled requests*/
     private final OutputChannel out;
 
@@ -87,7 +92,9 @@ public class ReadoutRequestHandler implements RequestHandler
         try
         {
             counters.numReadoutRequestsReceived++;
+            queueTimer.stamp();
             inq.enqueue(request);
+            queueTimer.commit();
         }
         catch (InterruptedException e)
         {
@@ -100,7 +107,9 @@ public class ReadoutRequestHandler implements RequestHandler
     {
         try
         {
+            queueTimer.stamp();
             inq.enqueue(STOP_MARKER);
+            queueTimer.commit();
         }
         catch (InterruptedException e)
         {
@@ -115,6 +124,7 @@ public class ReadoutRequestHandler implements RequestHandler
             while(running)
             {
                 IReadoutRequest req = inq.dequeue();
+                final long arrivalNanos = queueTimer.dequeue();
 
                 if(req == STOP_MARKER)
                 {
@@ -132,6 +142,12 @@ public class ReadoutRequestHandler implements RequestHandler
                     {
                         out.receiveByteBuffer(readout);
                         counters.numReadoutsSent++;
+
+                        if(arrivalNanos != SampledQueueTimer.NOT_SAMPLED)
+                        {
+                            counters.readoutRequestLatency.record(
+                                    System.nanoTime() - arrivalNanos);
+                        }
                     }
                     else
                     {
@@ -148,6 +148,15 @@ public class Sender
         return cmpVal;
     }
 
+    /**
+     * Report the accumulated HLC hits to the run monitor.  This must be
+     * called from the thread which consumes hits.
+     */
+    public void flushHLCHits()
+    {
+        hlcReporter.flush();
+    }
+
     /**
      * Add a DOM hit to the queue.
      *
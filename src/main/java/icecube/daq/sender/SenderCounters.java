@@ -1,5 +1,7 @@
 package icecube.daq.sender;
 
+import icecube.daq.performance.diagnostic.LatencyHistogram;
+
 /**
  * Diagnostic counters from the sender and readout subsystem.
  *
@@ -21,5 +23,6 @@ public class SenderCounters
     volatile long numOutputsIgnored;
     volatile long numReadoutErrors;
     public volatile long readoutLatency;
+    final LatencyHistogram readoutRequestLatency = new LatencyHistogram();
 
 }
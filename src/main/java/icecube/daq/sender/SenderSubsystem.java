@@ -83,6 +83,14 @@ public interface SenderSubsystem
      */
     public void forwardIsolatedHitsToTrigger();
 
+    /**
+     * Switch the hit stream to a new run. This is called on the hit
+     * stream thread before the first hit of the new run is consumed.
+     * @param runNumber The new run number.
+     * @param cutUTC The cut time, hits at or after it belong to the
+     *               new run.
+     */
+    public void switchRun(int runNumber, long cutUTC);
 
     /**
      * Sets the hit output channel.
@@ -462,6 +470,12 @@ public interface SenderSubsystem
             sender.forwardIsolatedHitsToTrigger();
         }
 
+        @Override
+        public void switchRun(final int runNumber, final long cutUTC)
+        {
+            sender.flushHLCHits();
+        }
+
         @Override
         public void setHitOutput(final DAQOutputChannelManager hitOut)
         {
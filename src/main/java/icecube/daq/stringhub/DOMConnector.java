@@ -3,9 +3,18 @@
 package icecube.daq.stringhub;
 
 import icecube.daq.domapp.AbstractDataCollector;
+import icecube.daq.domapp.CardPermits;
+import icecube.daq.domapp.RunLevel;
 import icecube.daq.juggler.component.DAQConnector;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.apache.log4j.Logger;
 
@@ -17,6 +26,8 @@ public class DOMConnector
 {
 	/** DOM data collectors. */
 	private ArrayList<AbstractDataCollector> collectors;
+	/** Bounds the DOMs softbooting or configuring at once on a card. */
+	private final CardPermits permits;
 	private static final Logger logger = Logger.getLogger(DOMConnector.class);
 
 	/**
@@ -25,10 +36,23 @@ public class DOMConnector
 	 * @param nch number of channels
 	 */
 	public DOMConnector(int nch)
+	{
+		this(nch, CardPermits.SHARED);
+	}
+
+	/**
+	 * Create a DAQ input connector.
+	 *
+	 * @param nch number of channels
+	 * @param permits per-card permits, shared with the data collectors
+	 *                which take them while initializing
+	 */
+	DOMConnector(int nch, CardPermits permits)
 	{
 		super("DOMs", false);
 
 		collectors = new ArrayList<AbstractDataCollector>();
+		this.permits = permits;
 	}
 
 	/**
@@ -46,18 +70,118 @@ public class DOMConnector
 	 */
 	public void configure() throws InterruptedException
 	{
-		// Wait for data collectors to finish initializing
-		for (AbstractDataCollector dc : collectors)
+		// Each DOM is configured as soon as it finishes initializing
+		transition(level -> level != RunLevel.INITIALIZING,
+				AbstractDataCollector::signalConfigure,
+				level -> level != RunLevel.CONFIGURING,
+				permits);
+
+		logger.debug("Data collector ensemble has been configured.");
+	}
+
+	/**
+	 * Drive a run level transition of all data collectors.  Each collector
+	 * is signalled from this thread as soon as it reaches a ready run level
+	 * and a permit is available from its card, in the order the collectors
+	 * became ready.  The permit is released when the collector settles.
+	 * Returns when every collector has settled.
+	 *
+	 * Collectors release their initialization permits before leaving
+	 * INITIALIZING, so every permit released outside this thread is
+	 * followed by a ready event from the same card.
+	 *
+	 * @param ready run levels at which a collector may be signalled
+	 * @param signal starts the transition
+	 * @param settled run levels at which the transition is complete
+	 * @param permits bounds the collectors in transition on a card,
+	 *                <tt>null</tt> for no bound
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void transition(Predicate<RunLevel> ready,
+							Consumer<AbstractDataCollector> signal,
+							final Predicate<RunLevel> settled,
+							CardPermits permits)
+		throws InterruptedException
+	{
+		final LinkedBlockingQueue<Transition> events =
+			new LinkedBlockingQueue<Transition>();
+
+		for (final AbstractDataCollector dc : collectors)
 		{
-			while (dc.isInitializing()) Thread.sleep(100);
-			dc.signalConfigure();
+			dc.whenRunLevel(ready).thenRun(() ->
+				events.add(new Transition(dc, false)));
 		}
 
-		// wait for things to configure
-		for (AbstractDataCollector dc : collectors)
-			while(dc.isConfiguring()) Thread.sleep(100);
+		Map<Integer, ArrayDeque<AbstractDataCollector>> waiting =
+			new HashMap<Integer, ArrayDeque<AbstractDataCollector>>();
+		Map<Integer, Integer> held = new HashMap<Integer, Integer>();
 
-		logger.debug("Data collector ensemble has been configured.");
+		try
+		{
+			int remaining = collectors.size();
+			while (remaining > 0)
+			{
+				Transition event = events.take();
+				final int card = event.dc.getCard();
+				final Semaphore cardPermits =
+					(permits == null) ? null : permits.forCard(card);
+
+				ArrayDeque<AbstractDataCollector> queue =
+					waiting.computeIfAbsent(card,
+						k -> new ArrayDeque<AbstractDataCollector>());
+				if (!event.settled)
+				{
+					queue.add(event.dc);
+				}
+				else
+				{
+					remaining--;
+					if (cardPermits != null)
+					{
+						cardPermits.release();
+						held.merge(card, -1, Integer::sum);
+					}
+				}
+
+				while (!queue.isEmpty() &&
+					   (cardPermits == null || cardPermits.tryAcquire()))
+				{
+					if (cardPermits != null) held.merge(card, 1, Integer::sum);
+
+					final AbstractDataCollector dc = queue.poll();
+					signal.accept(dc);
+					dc.whenRunLevel(settled).thenRun(() ->
+						events.add(new Transition(dc, true)));
+				}
+			}
+		}
+		finally
+		{
+			// permits are shared, return any held by unsettled collectors
+			for (Map.Entry<Integer, Integer> entry : held.entrySet())
+			{
+				if (entry.getValue() > 0)
+				{
+					permits.forCard(entry.getKey()).release(entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * A collector reaching a ready or settled run level.
+	 */
+	private static class Transition
+	{
+		final AbstractDataCollector dc;
+		final boolean settled;
+
+		Transition(AbstractDataCollector dc, boolean settled)
+		{
+			this.dc = dc;
+			this.settled = settled;
+		}
 	}
 
 	/**
@@ -75,7 +199,7 @@ public class DOMConnector
 
 		for (AbstractDataCollector dc : collectors)
 		{
-			while (dc.isAlive()) Thread.sleep(100);
+			dc.join();
 			dc.close();
 		}
 	}
@@ -154,15 +278,11 @@ public class DOMConnector
 	public void startProcessing()
 		throws InterruptedException
 	{
-		CLOOP: for (AbstractDataCollector dc : collectors)
-		{
-			while (!dc.isConfigured())
-			{
-				if (dc.isZombie()) continue CLOOP;
-				Thread.sleep(100);
-			}
-			dc.signalStartRun();
-		}
+		// start every DOM as soon as it is configured, zombies are skipped
+		transition(level -> level == RunLevel.CONFIGURED ||
+				level == RunLevel.ZOMBIE,
+				dc -> { if (!dc.isZombie()) dc.signalStartRun(); },
+				level -> true, null);
 	}
 
 	/**
@@ -173,13 +293,8 @@ public class DOMConnector
 	public void stopProcessing()
 		throws InterruptedException
 	{
-		for (AbstractDataCollector dc : collectors)
-			dc.signalStopRun();
-
-		for (AbstractDataCollector dc : collectors)
-		{
-			while (dc.isStopping()) Thread.sleep(100);
-		}
+		transition(level -> true, AbstractDataCollector::signalStopRun,
+				level -> level != RunLevel.STOPPING, null);
 	}
 
 	public ArrayList<AbstractDataCollector> getCollectors() {
@@ -0,0 +1,344 @@
+package icecube.daq.stringhub;
+
+import icecube.daq.bindery.BufferConsumer;
+import icecube.daq.performance.binary.record.pdaq.DaqBufferRecordReader;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Switches the run number of a live pipeline at a UTC boundary in the
+ * data streams.
+ *
+ *<p>
+ * Each sorted stream passes through a Stream decorator which tracks the
+ * run of the records it delivers. Switching pre-arms the next run on every
+ * stream with a cut time on a whole boundary past the latest record seen
+ * by any stream. The first record of a stream at or after the cut flips
+ * that stream to the next run before the record is delivered, so a record
+ * belongs to the new run exactly when its UTC is at or after the cut.
+ *
+ *<p>
+ * Flipping is done on the stream thread. While nothing is armed a record
+ * costs two volatile reads, of the armed cut and of the record count,
+ * and two ordered stores (lazySet) publishing the latest UTC and the
+ * record count, so no record pays for a full fence. Readers on other
+ * threads use volatile reads and may trail the stream by a moment, which
+ * the cut lead allows for. A flip clears only the cut it reached, so a
+ * cut armed meanwhile is kept for a later record. The actions taken at the
+ * cut are wired once, when the stream is created, so nothing is built or
+ * re-pointed while the streams wait for the boundary.
+ *
+ *<p>
+ * These properties control the cut time:
+ *<pre>
+ *
+ *    icecube.daq.stringhub.RunSwitch.lead-millis = [2000]
+ *
+ *       The minimum distance of the cut past the latest record. This
+ *       must exceed the skew between the streams, otherwise a stream
+ *       which is already past the cut flips on its next record.
+ *
+ *    icecube.daq.stringhub.RunSwitch.align-millis = [1000]
+ *
+ *       The cut is placed on a multiple of this interval.
+ *
+ *</pre>
+ */
+public class RunSwitch
+{
+    private static final Logger logger = Logger.getLogger(RunSwitch.class);
+
+    /** DAQ UTC ticks per millisecond. */
+    private static final long TICKS_PER_MILLI = 10000000L;
+
+    private static final long LEAD_UTC = TICKS_PER_MILLI *
+            Long.getLong("icecube.daq.stringhub.RunSwitch.lead-millis", 2000);
+
+    private static final long ALIGN_UTC = TICKS_PER_MILLI *
+            Long.getLong("icecube.daq.stringhub.RunSwitch.align-millis", 1000);
+
+    private static final DaqBufferRecordReader DATA_TYPE =
+            DaqBufferRecordReader.instance;
+
+    /** Marks a stream which has not started a run. */
+    public static final int NO_RUN = Integer.MIN_VALUE;
+
+    private final long leadUTC;
+    private final long alignUTC;
+
+    private final List<Stream> streams = new ArrayList<Stream>();
+
+
+    public RunSwitch()
+    {
+        this(LEAD_UTC, ALIGN_UTC);
+    }
+
+    /**
+     * @param leadUTC The minimum distance of the cut past the latest
+     *                record, in DAQ ticks.
+     * @param alignUTC The alignment of the cut, in DAQ ticks.
+     */
+    public RunSwitch(final long leadUTC, final long alignUTC)
+    {
+        if (leadUTC < 0 || alignUTC <= 0)
+        {
+            throw new IllegalArgumentException("Bad cut lead " + leadUTC +
+                    " or alignment " + alignUTC);
+        }
+        this.leadUTC = leadUTC;
+        this.alignUTC = alignUTC;
+    }
+
+    /**
+     * Decorate a stream consumer.
+     *
+     * @param name The stream name, for logging.
+     * @param target The consumer of the stream.
+     * @param listener Notified on the stream thread when the stream
+     *                 switches runs, before the first record of the new
+     *                 run is delivered, may be null.
+     * @return The decorated consumer.
+     */
+    public synchronized Stream stream(final String name,
+                                      final BufferConsumer target,
+                                      final Listener listener)
+    {
+        Stream stream = new Stream(name, target, listener);
+        streams.add(stream);
+        return stream;
+    }
+
+    /**
+     * Set the run of all streams, discarding a pending switch. This is
+     * only safe while the streams are not flowing, a switch during a run
+     * arms a cut instead.
+     *
+     * @param runNumber The run number.
+     */
+    public synchronized void start(final int runNumber)
+    {
+        for (Stream stream : streams)
+        {
+            stream.start(runNumber);
+        }
+    }
+
+    /**
+     * Pre-arm a switch at the next boundary past the latest record.
+     *
+     * @param runNumber The next run number.
+     * @return The cut time.
+     */
+    public long arm(final int runNumber)
+    {
+        final long cutUTC = nextBoundary(getLatestUTC());
+        arm(runNumber, cutUTC);
+        return cutUTC;
+    }
+
+    /**
+     * Pre-arm a switch at a cut time.
+     *
+     * @param runNumber The next run number.
+     * @param cutUTC The cut time, records at or after it belong to the
+     *               next run.
+     */
+    public synchronized void arm(final int runNumber, final long cutUTC)
+    {
+        final Cut cut = new Cut(runNumber, cutUTC);
+        for (Stream stream : streams)
+        {
+            Cut replaced = Stream.ARMED.getAndSet(stream, cut);
+            if (replaced != null)
+            {
+                logger.warn("Stream " + stream.name + " did not reach the" +
+                        " cut of run " + replaced.runNumber + " at " +
+                        replaced.utc + " before run " + runNumber +
+                        " was armed");
+            }
+        }
+    }
+
+    /**
+     * @return The latest UTC of all streams, or zero if no record has
+     *         been seen.
+     */
+    public synchronized long getLatestUTC()
+    {
+        long latest = 0;
+        for (Stream stream : streams)
+        {
+            latest = Math.max(latest, stream.getLatestUTC());
+        }
+        return latest;
+    }
+
+    /**
+     * @param utc A UTC time.
+     * @return The first aligned boundary at least the lead past the time.
+     */
+    long nextBoundary(final long utc)
+    {
+        long earliest = utc + leadUTC;
+        return ((earliest + alignUTC - 1) / alignUTC) * alignUTC;
+    }
+
+    /**
+     * Receives the switch of a stream.
+     */
+    public interface Listener
+    {
+        /**
+         * @param runNumber The new run number.
+         * @param cutUTC The cut time, records at or after it belong to
+         *               the new run.
+         */
+        void runSwitched(int runNumber, long cutUTC);
+    }
+
+    /**
+     * A pending switch, shared by all streams.
+     */
+    private static class Cut
+    {
+        final int runNumber;
+        final long utc;
+
+        Cut(final int runNumber, final long utc)
+        {
+            this.runNumber = runNumber;
+            this.utc = utc;
+        }
+    }
+
+    /**
+     * Tracks the run of one stream, flipping it at the armed cut.
+     */
+    public static class Stream implements BufferConsumer
+    {
+        /** Publishes the latest UTC without a full fence. */
+        private static final AtomicLongFieldUpdater<Stream> LATEST_UTC =
+                AtomicLongFieldUpdater.newUpdater(Stream.class, "latestUTC");
+
+        /** Clears the armed cut only if it was not replaced. */
+        private static final AtomicReferenceFieldUpdater<Stream, Cut> ARMED =
+                AtomicReferenceFieldUpdater.newUpdater(Stream.class,
+                        Cut.class, "armed");
+
+        /** Publishes the record count without a full fence. */
+        private static final AtomicLongFieldUpdater<Stream> RUN_RECORDS =
+                AtomicLongFieldUpdater.newUpdater(Stream.class, "runRecords");
+
+        private final String name;
+        private final BufferConsumer target;
+        private final Listener listener;
+
+        private volatile Cut armed;
+
+        private volatile int runNumber = NO_RUN;
+        private volatile long cutUTC = -1;
+        // written only through the updaters, volatile as they require
+        private volatile long latestUTC;
+        private volatile long runRecords;
+
+        private Stream(final String name, final BufferConsumer target,
+                       final Listener listener)
+        {
+            this.name = name;
+            this.target = target;
+            this.listener = listener;
+        }
+
+        private void start(final int runNumber)
+        {
+            armed = null;
+            this.runNumber = runNumber;
+            cutUTC = -1;
+            RUN_RECORDS.set(this, 0);
+        }
+
+        @Override
+        public void consume(final ByteBuffer buf) throws IOException
+        {
+            if (!DATA_TYPE.isEOS(buf))
+            {
+                final long utc = DATA_TYPE.getUTC(buf);
+                final Cut cut = armed;
+                if (cut != null && utc >= cut.utc)
+                {
+                    flip(cut, utc);
+                }
+                LATEST_UTC.lazySet(this, utc);
+                RUN_RECORDS.lazySet(this, runRecords + 1);
+            }
+
+            target.consume(buf);
+        }
+
+        @Override
+        public void endOfStream(final long token) throws IOException
+        {
+            target.endOfStream(token);
+        }
+
+        private void flip(final Cut cut, final long utc)
+        {
+            logger.info("Stream " + name + " switches from run " +
+                    runNumber + " after " + runRecords + " records to run " +
+                    cut.runNumber + " at " + utc + " (cut " + cut.utc + ")");
+
+            // a cut armed since this one was read belongs to a later run
+            ARMED.compareAndSet(this, cut, null);
+            runNumber = cut.runNumber;
+            cutUTC = cut.utc;
+            RUN_RECORDS.lazySet(this, 0);
+
+            if (listener != null)
+            {
+                listener.runSwitched(cut.runNumber, cut.utc);
+            }
+        }
+
+        /**
+         * @return The run of the latest record.
+         */
+        public int getRunNumber()
+        {
+            return runNumber;
+        }
+
+        /**
+         * @return The cut time of the current run, or -1 if the run was
+         *         not switched to.
+         */
+        public long getCutUTC()
+        {
+            return cutUTC;
+        }
+
+        /**
+         * @return The UTC of the latest record, or zero if no record has
+         *         been seen.
+         */
+        public long getLatestUTC()
+        {
+            return LATEST_UTC.get(this);
+        }
+
+        /**
+         * @return The number of records delivered in the current run.
+         */
+        public long getRunRecords()
+        {
+            return RUN_RECORDS.get(this);
+        }
+    }
+
+}
@@ -18,7 +18,8 @@ import icecube.daq.domapp.DataCollectorMBean;
 import icecube.daq.domapp.RunLevel;
 import icecube.daq.domapp.SimDataCollector;
 import icecube.daq.dor.DOMChannelInfo;
-import icecube.daq.dor.Driver;
+import icecube.daq.dor.DriverService;
+import icecube.daq.dor.IDriver;
 import icecube.daq.io.DAQComponentOutputProcess;
 import icecube.daq.io.OutputChannel;
 import icecube.daq.io.DAQStreamReader;
@@ -33,6 +34,7 @@ import icecube.daq.juggler.mbean.MemoryStatistics;
 import icecube.daq.juggler.mbean.SystemStatistics;
 import icecube.daq.monitoring.DOMClockRolloverAlerter;
 import icecube.daq.monitoring.IRunMonitor;
+import icecube.daq.monitoring.LatencyMonitor;
 import icecube.daq.monitoring.RunMonitor;
 import icecube.daq.monitoring.SenderMXBean;
 import icecube.daq.payload.IByteBufferCache;
@@ -43,12 +45,14 @@ import icecube.daq.performance.common.PowersOfTwo;
 import icecube.daq.performance.diagnostic.Content;
 import icecube.daq.performance.diagnostic.DataCollectorAggregateContent;
 import icecube.daq.performance.diagnostic.DiagnosticTrace;
+import icecube.daq.performance.diagnostic.LatencyHistogram;
 import icecube.daq.performance.diagnostic.MeterContent;
 import icecube.daq.performance.diagnostic.Metered;
 import icecube.daq.performance.diagnostic.SenderContent;
 import icecube.daq.performance.diagnostic.cpu.CPUUtilizationContent;
 import icecube.daq.priority.AdjustmentTask;
 import icecube.daq.priority.SorterException;
+import icecube.daq.sender.NewSender;
 import icecube.daq.sender.RequestReader;
 import icecube.daq.sender.SenderSubsystem;
 import icecube.daq.time.gps.IGPSService;
@@ -91,7 +95,7 @@ public class StringHubComponent
 
 
 	private int hubId;
-	private Driver driver = Driver.getInstance();
+	private IDriver driver = DriverService.getInstance();
 	private IByteBufferCache cache;
     private SenderSubsystem sender;
 	private IDOMRegistry domRegistry;
@@ -111,6 +115,15 @@ public class StringHubComponent
 	private IRunMonitor runMonitor;
     private DiagnosticTraceConfig trace;
 
+    /** Switches the run number of the sorted streams. */
+    private RunSwitch runSwitch;
+
+    /** Latency of hits through the sort, null for the priority sort. */
+    private volatile LatencyHistogram hitSortLatency;
+
+    /** Latency of sorted hits into the sender. */
+    private volatile LatencyHistogram hitOutputLatency;
+
 	/** list of configured DOMs filled during configuring() */
 	private List<DOMInfo> configuredDOMs;
 
@@ -308,7 +321,9 @@ public class StringHubComponent
 				logger.error("While joining with RunMonitor thread", ie);
 			}
 		}
-		runMonitor = new RunMonitor(hubId % 1000, getAlertQueue());
+		RunMonitor tmpMonitor = new RunMonitor(hubId % 1000, getAlertQueue());
+		tmpMonitor.setLatencyMonitor(createLatencyMonitor());
+		runMonitor = tmpMonitor;
 		runMonitor.start();
 
         sender.setRunMonitor(runMonitor);
@@ -657,23 +672,44 @@ public class StringHubComponent
             TimeCalibrationCaptureSubsystem.activate(tcalConsumer);
 		}
 
+		// the run switch of each sorted stream is wired here, so that
+		// switching only arms the cut
+		runSwitch = new RunSwitch();
+		BufferConsumer monitorInput = null;
+		BufferConsumer supernovaInput = null;
+		BufferConsumer tcalInput = null;
+		if (openSecondary) {
+			monitorInput = runSwitch.stream("moni", monitorConsumer, null);
+			supernovaInput = runSwitch.stream("sn", supernovaConsumer, null);
+			tcalInput = runSwitch.stream("tcal", tcalConsumer, null);
+		}
+		BufferConsumer hitInput = runSwitch.stream("hit",
+				sender.getHitInput(), (runNumber, cutUTC) -> {
+					sender.switchRun(runNumber, cutUTC);
+					setRunNumber(runNumber);
+				});
+
 		// the hit buffer consumer is either the sender or a hitspool
 		// object which passes all hits onto the sender
-        BufferConsumer consumer = new AsyncSorterOutput(sender.getHitInput(),
+        AsyncSorterOutput consumer = new AsyncSorterOutput(hitInput,
                 PowersOfTwo._2097152, "hit-consumer",
                 trace.getAsyncHitConsumerMeter());
+        hitOutputLatency = consumer.getDeliveryLatency();
 
 		final boolean usePriority =
 			System.getProperty("usePrioritySort") != null;
 
 		// Start the hit merger-sorter
 		if (!usePriority) {
-			hitsSort = new MultiChannelMergeSort(numDOMs, consumer, "hit",
+			MultiChannelMergeSort mcms =
+				new MultiChannelMergeSort(numDOMs, consumer, "hit",
                     trace.getSortQueueMeter(), trace.getSortMeter());
+			hitSortLatency = mcms.getSortLatency();
+			hitsSort = mcms;
 
-			moniSort = new MultiChannelMergeSort(numDOMs, monitorConsumer);
-			scalSort = new MultiChannelMergeSort(numDOMs, supernovaConsumer);
-			tcalSort = new MultiChannelMergeSort(numDOMs, tcalConsumer);
+			moniSort = new MultiChannelMergeSort(numDOMs, monitorInput);
+			scalSort = new MultiChannelMergeSort(numDOMs, supernovaInput);
+			tcalSort = new MultiChannelMergeSort(numDOMs, tcalInput);
 		} else {
 			PrioritySort tmp;
 			try {
@@ -684,17 +720,18 @@ public class StringHubComponent
 
 			prioList.add(tmp);
 			hitsSort = tmp;
+			hitSortLatency = null;
 
 			try {
-				tmp = new PrioritySort("MoniSort", numDOMs, monitorConsumer);
+				tmp = new PrioritySort("MoniSort", numDOMs, monitorInput);
 				prioList.add(tmp);
 				moniSort = tmp;
 
-				tmp = new PrioritySort("SNSort", numDOMs, supernovaConsumer);
+				tmp = new PrioritySort("SNSort", numDOMs, supernovaInput);
 				prioList.add(tmp);
 				scalSort = tmp;
 
-				tmp = new PrioritySort("TCalSort", numDOMs, tcalConsumer);
+				tmp = new PrioritySort("TCalSort", numDOMs, tcalInput);
 				prioList.add(tmp);
 				tcalSort = tmp;
 			} catch (SorterException se) {
@@ -973,6 +1010,7 @@ public class StringHubComponent
                 sender.getMonitor(), this);
 
         setRunNumber(runNumber);
+        runSwitch.start(runNumber);
         setDOMMode(domMode);
 
 		logger.info("StringHub is starting the run.");
@@ -1154,9 +1192,21 @@ public class StringHubComponent
 	public void switching(int runNumber)
 		throws DAQCompException
 	{
-		// this may set the run number before it actually starts,
-		// but hubs have no other way of knowing when the new number has begun
-		setRunNumber(runNumber);
+		// the new run starts at a cut in the hit stream, which sets
+		// the run number when the first hit at or after the cut is sorted
+		if (runSwitch == null) {
+			setRunNumber(runNumber);
+		} else if (runSwitch.getLatestUTC() == 0) {
+			// no record has been seen, but the streams may start at any
+			// moment, so the first record of each stream switches it
+			setRunNumber(runNumber);
+			runSwitch.arm(runNumber, 0);
+			logger.info("Switching to run " + runNumber +
+				" at the first record");
+		} else {
+			final long cutUTC = runSwitch.arm(runNumber);
+			logger.info("Switching to run " + runNumber + " at " + cutUTC);
+		}
 
 		// resend the list of this hub's DOMs which are in the run config
 		sendConfiguredDOMs(runNumber);
@@ -1310,6 +1360,72 @@ public class StringHubComponent
 		return gtc.getTime();
 	}
 
+    @Override
+    public long[] getDispatchLatencyNanos()
+    {
+        return getDispatchLatency().summary();
+    }
+
+    @Override
+    public long[] getHitSortLatencyNanos()
+    {
+        return snapshot(hitSortLatency).summary();
+    }
+
+    @Override
+    public long[] getHitOutputLatencyNanos()
+    {
+        return snapshot(hitOutputLatency).summary();
+    }
+
+    /**
+     * Merge the dispatch latencies of all channels.
+     */
+    private LatencyHistogram.Snapshot getDispatchLatency()
+    {
+        LatencyHistogram.Snapshot merged = LatencyHistogram.EMPTY;
+
+        final DOMConnector tmpConn = conn;
+        if (tmpConn != null)
+        {
+            for (AbstractDataCollector adc : tmpConn.getCollectors())
+            {
+                if (adc instanceof DataCollector)
+                {
+                    merged = merged.add(
+                            ((DataCollector) adc).getDispatchLatency());
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static LatencyHistogram.Snapshot snapshot(
+            final LatencyHistogram histogram)
+    {
+        return histogram == null ? LatencyHistogram.EMPTY :
+                histogram.snapshot();
+    }
+
+    /**
+     * Create the reporter for the latency of each stage of the hit path.
+     *
+     * Stages are resolved at report time so that the sorter and channels
+     * may be replaced on reconfiguration.
+     */
+    private LatencyMonitor createLatencyMonitor()
+    {
+        LatencyMonitor latencyMonitor = new LatencyMonitor();
+        latencyMonitor.addStage("dispatch", () -> getDispatchLatency());
+        latencyMonitor.addStage("sort", () -> snapshot(hitSortLatency));
+        latencyMonitor.addStage("output", () -> snapshot(hitOutputLatency));
+        latencyMonitor.addStage("readout", () ->
+                (sender instanceof NewSender) ?
+                        ((NewSender) sender).getReadoutRequestLatency() :
+                        LatencyHistogram.EMPTY);
+        return latencyMonitor;
+    }
+
 	class DOMSorter
 		implements Comparator<DOMInfo>
 	{
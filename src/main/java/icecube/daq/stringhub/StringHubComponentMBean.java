@@ -64,4 +64,33 @@ public interface StringHubComponentMBean
      * @return the DAQ time (1E10 ticks/sec) of the hit which fulfills this condition.
      */
     long getEarliestLastChannelHitTime();
+
+    /**
+     * Return the latency from acquisition of data to completion of its
+     * processing and dispatch, aggregated across all channels.
+     * @return [p50, p99, p99.9, max] in nanoseconds
+     */
+    default long[] getDispatchLatencyNanos()
+    {
+        return new long[0];
+    }
+
+    /**
+     * Return the latency of hits through the HKN1 sort.
+     * @return [p50, p99, p99.9, max] in nanoseconds
+     */
+    default long[] getHitSortLatencyNanos()
+    {
+        return new long[0];
+    }
+
+    /**
+     * Return the latency from HKN1 output to delivery of hits to the
+     * hit spool and trigger channel.
+     * @return [p50, p99, p99.9, max] in nanoseconds
+     */
+    default long[] getHitOutputLatencyNanos()
+    {
+        return new long[0];
+    }
 }
@@ -8,18 +8,33 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A non-standard diagnostic capture and persist utility for capturing
  * tcal payloads from the SecondaryStreamConsumer.
  *
  *<p>
- * Three properties control tcal capture:
+ * Capture runs on a dedicated writer thread so that a slow disk does not
+ * stall the tcal stream. Accepted payloads are copied into preallocated
+ * segments which the writer commits to the file in groups, either when
+ * a segment fills or when the flush interval elapses. When all segments
+ * are waiting to be written, payloads are dropped or the stream blocks,
+ * according to the full policy.
+ *
+ *<p>
+ * These properties control tcal capture:
  *<pre>
  *
  *    icecube.daq.stringhub.TimeCalibrationCapture.enable = [false]
@@ -38,6 +53,25 @@ import java.nio.file.StandardOpenOption;
  *       any format accepted by Long.decode(). The values "none" and
  *       "all" are also accepted.
  *
+ *    icecube.daq.stringhub.TimeCalibrationCapture.segment-bytes = [262144]
+ *
+ *       The size of each capture segment.
+ *
+ *    icecube.daq.stringhub.TimeCalibrationCapture.segments = [16]
+ *
+ *       The number of capture segments, bounding the captured data
+ *       waiting to be written.
+ *
+ *    icecube.daq.stringhub.TimeCalibrationCapture.full-policy = [drop]
+ *
+ *       drop:  Drop payloads while all segments are waiting to be
+ *              written.
+ *       block: Block the tcal stream until a segment is written.
+ *
+ *    icecube.daq.stringhub.TimeCalibrationCapture.flush-millis = [1000]
+ *
+ *       The longest time a captured payload waits to be written.
+ *
  *</pre>
  *
  * <p>
@@ -67,6 +101,46 @@ public class TimeCalibrationCaptureSubsystem
     public static String FILTER_PROPERTY =
             "icecube.daq.stringhub.TimeCalibrationCapture.mbid-filter";
 
+    public static String SEGMENT_BYTES_PROPERTY =
+            "icecube.daq.stringhub.TimeCalibrationCapture.segment-bytes";
+
+    public static String SEGMENTS_PROPERTY =
+            "icecube.daq.stringhub.TimeCalibrationCapture.segments";
+
+    public static String FULL_POLICY_PROPERTY =
+            "icecube.daq.stringhub.TimeCalibrationCapture.full-policy";
+
+    public static String FLUSH_MILLIS_PROPERTY =
+            "icecube.daq.stringhub.TimeCalibrationCapture.flush-millis";
+
+
+    /**
+     * Policies which define the behavior when all capture segments are
+     * waiting to be written.
+     */
+    public static enum FullPolicy
+    {
+        DROP("drop"),     // drop the payload and count it
+        BLOCK("block");   // block the tcal stream
+
+        public final String key;
+
+        FullPolicy(String key)
+        {
+            this.key = key;
+        }
+
+        static FullPolicy resolve(String key)
+        {
+            switch (key)
+            {
+                case "drop": return DROP;
+                case "block": return BLOCK;
+                default: throw new Error("Unknown full policy: [" + key + "]");
+            }
+        }
+    }
+
 
     /**
      * Activate TCal capture per configuration.
@@ -99,16 +173,14 @@ public class TimeCalibrationCaptureSubsystem
                 final TimeCalibrationCapture tcalCapture =
                         new TimeCalibrationCapture(storageDir, filter);
 
-                try
-                {
-                    tcalCapture.manageFiles();
-                    tcalCapture.attach(tcalStream);
-                }
-                catch (IOException ioe)
-                {
-                    // NOTE: failure does not impinge the run.
-                    logger.error("TCal capture activation failed", ioe);
-                }
+                // NOTE: file management and writing happen on the
+                //       capture thread, failure does not impinge the run.
+                tcalCapture.attach(tcalStream,
+                        Integer.getInteger(SEGMENT_BYTES_PROPERTY, 262144),
+                        Integer.getInteger(SEGMENTS_PROPERTY, 16),
+                        FullPolicy.resolve(System.getProperty(
+                                FULL_POLICY_PROPERTY, "drop")),
+                        Long.getLong(FLUSH_MILLIS_PROPERTY, 1000L));
             }
         }
 
@@ -163,9 +235,22 @@ public class TimeCalibrationCaptureSubsystem
             this.filter = filter;
         }
 
-        public void attach(SecondaryStreamConsumer stream) throws IOException
+        public void attach(final SecondaryStreamConsumer stream,
+                           final int segmentBytes, final int segments,
+                           final FullPolicy policy, final long flushMillis)
         {
-            FilePersistence persistence = new FilePersistence(current, filter);
+            AsyncFilePersistence persistence =
+                    new AsyncFilePersistence(new ChannelOpener()
+                    {
+                        @Override
+                        public GatheringByteChannel open() throws IOException
+                        {
+                            manageFiles();
+                            return FileChannel.open(current,
+                                    StandardOpenOption.CREATE_NEW,
+                                    StandardOpenOption.WRITE);
+                        }
+                    }, filter, segmentBytes, segments, policy, flushMillis);
             stream.setDebugChannel(new CaptureAdapter(persistence));
         }
 
@@ -186,64 +271,349 @@ public class TimeCalibrationCaptureSubsystem
 
 
     /**
-     * Implements storing a buffer stream to a file.
+     * Opens the capture file, called on the capture thread.
      */
-    private static class FilePersistence implements OutputChannel
+    static interface ChannelOpener
     {
+        public GatheringByteChannel open() throws IOException;
+    }
+
 
+    /**
+     * Implements storing a buffer stream to a file from a writer thread.
+     *
+     * Payloads are copied into the current segment on the calling thread,
+     * filled segments are queued to the writer which commits all queued
+     * segments in one gathering write. The writer also takes a partially
+     * filled segment once the flush interval passes without a filled one.
+     */
+    static class AsyncFilePersistence implements OutputChannel
+    {
+        private final ChannelOpener opener;
         private final Filter filter;
-        private final FileChannel channel;
+        private final FullPolicy policy;
+        private final long flushMillis;
+
+        /** Empty segments. */
+        private final BlockingQueue<ByteBuffer> free;
+
+        /** Segments waiting to be written. */
+        private final BlockingQueue<ByteBuffer> full;
 
-        private boolean error;
+        /** Marks the end of the queued segments. */
+        private final ByteBuffer STOP = ByteBuffer.allocate(0);
 
-        private FilePersistence(final Path file, final Filter filter)
-                throws IOException
+        /** The segment being filled, guarded by the persistence. */
+        private ByteBuffer fill;
+
+        private final Thread writer;
+
+        private volatile boolean stopped;
+        private boolean warnedDrop;
+
+        private final AtomicLong captured = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong writtenBytes = new AtomicLong();
+        private final AtomicLong commits = new AtomicLong();
+
+
+        AsyncFilePersistence(final ChannelOpener opener, final Filter filter,
+                             final int segmentBytes, final int segments,
+                             final FullPolicy policy, final long flushMillis)
         {
+            this.opener = opener;
             this.filter = filter;
-            channel = FileChannel.open(file,
-                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            this.policy = policy;
+            this.flushMillis = flushMillis;
+
+            free = new ArrayBlockingQueue<ByteBuffer>(segments);
+            full = new ArrayBlockingQueue<ByteBuffer>(segments + 1);
+            for (int i = 0; i < segments; i++)
+            {
+                free.add(ByteBuffer.allocateDirect(segmentBytes));
+            }
+
+            writer = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    write();
+                }
+            }, "TCalCapture");
+            writer.setDaemon(true);
+            writer.start();
         }
 
         @Override
         public void receiveByteBuffer(final ByteBuffer buf)
         {
-            if(!error)
+            try
+            {
+                if(stopped || !filter.accept(buf))
+                {
+                    return;
+                }
+            }
+            catch (IOException e)
+            {
+                logger.error(e);
+                return;
+            }
+
+            final int length = buf.remaining();
+            synchronized (this)
+            {
+                if(fill != null)
+                {
+                    if(fill.remaining() >= length)
+                    {
+                        // the stream reuses its buffer, copy the payload
+                        fill.put(buf);
+                        captured.incrementAndGet();
+                        return;
+                    }
+                    full.add(fill);
+                    fill = null;
+                }
+            }
+
+            // acquire outside the lock, the writer takes partial
+            // segments under it
+            ByteBuffer next = acquire();
+            if(next == null || next.capacity() < length)
+            {
+                if(next != null)
+                {
+                    free.add(next);
+                }
+                dropped.incrementAndGet();
+                if(!warnedDrop)
+                {
+                    logger.warn("Dropping captured tcals, capture is not" +
+                            " keeping up");
+                    warnedDrop = true;
+                }
+                return;
+            }
+
+            synchronized (this)
+            {
+                fill = next;
+                fill.put(buf);
+                captured.incrementAndGet();
+            }
+        }
+
+        private ByteBuffer acquire()
+        {
+            switch (policy)
+            {
+                case BLOCK:
+                    try
+                    {
+                        return free.take();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                case DROP:
+                    return free.poll();
+                default:
+                    throw new Error("Unknown policy: " + policy);
+            }
+        }
+
+        /**
+         * Queue the remaining captured data and wait for the writer to
+         * commit it.
+         */
+        @Override
+        public void sendLastAndStop()
+        {
+            if(stopped)
+            {
+                return;
+            }
+            stopped = true;
+
+            synchronized (this)
+            {
+                if(fill != null)
+                {
+                    full.add(fill);
+                    fill = null;
+                }
+                full.add(STOP);
+            }
+
+            try
+            {
+                writer.join(Math.max(flushMillis, 1000L) * 10);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            logger.info("TCal capture wrote " + captured.get() +
+                    " payloads, " + writtenBytes.get() + " bytes in " +
+                    commits.get() + " commits, dropped " + dropped.get());
+        }
+
+        /**
+         * The writer thread.
+         */
+        private void write()
+        {
+            GatheringByteChannel channel = null;
+            try
+            {
+                channel = opener.open();
+            }
+            catch (IOException e)
+            {
+                logger.error("TCal capture activation failed", e);
+            }
+
+            final List<ByteBuffer> group = new ArrayList<ByteBuffer>();
+            boolean done = false;
+            while (!done)
             {
+                ByteBuffer next;
                 try
                 {
-                    if(filter.accept(buf))
+                    next = full.poll(flushMillis, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    break;
+                }
+
+                if(next == null)
+                {
+                    synchronized (this)
+                    {
+                        if(fill != null && fill.position() > 0)
+                        {
+                            next = fill;
+                            fill = null;
+                        }
+                    }
+                    if(next == null)
                     {
-                        channel.write(buf);
+                        continue;
                     }
                 }
+
+                // group all queued segments into one commit
+                group.clear();
+                do
+                {
+                    if(next == STOP)
+                    {
+                        done = true;
+                        break;
+                    }
+                    group.add(next);
+                }
+                while ((next = full.poll()) != null);
+
+                if(channel != null && group.size() > 0)
+                {
+                    channel = commit(channel, group);
+                }
+                for (ByteBuffer segment : group)
+                {
+                    segment.clear();
+                    free.add(segment);
+                }
+            }
+
+            if(channel != null)
+            {
+                try
+                {
+                    channel.close();
+                }
                 catch (IOException e)
                 {
                     logger.error(e);
-                    error=true;
                 }
             }
         }
 
-        @Override
-        public void sendLastAndStop()
+        /**
+         * Write a group of segments.
+         *
+         * @return The channel, or null after a write error.
+         */
+        private GatheringByteChannel commit(final GatheringByteChannel channel,
+                                            final List<ByteBuffer> group)
         {
+            ByteBuffer[] srcs = new ByteBuffer[group.size()];
+            long bytes = 0;
+            for (int i = 0; i < srcs.length; i++)
+            {
+                srcs[i] = (ByteBuffer) group.get(i).flip();
+                bytes += srcs[i].remaining();
+            }
+
             try
             {
-                channel.close();
+                long written = 0;
+                while (written < bytes)
+                {
+                    written += channel.write(srcs);
+                }
+                writtenBytes.addAndGet(written);
+                commits.incrementAndGet();
+                return channel;
             }
             catch (IOException e)
             {
                 logger.error(e);
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException ioe)
+                {
+                    // already reported
+                }
+                return null;
             }
         }
 
+        long getCapturedCount()
+        {
+            return captured.get();
+        }
+
+        long getDroppedCount()
+        {
+            return dropped.get();
+        }
+
+        long getWrittenBytes()
+        {
+            return writtenBytes.get();
+        }
+
+        long getCommitCount()
+        {
+            return commits.get();
+        }
+
     }
 
 
     /**
      * Defines a filtering interface for selecting individual TCal payloads.
      */
-    private static interface Filter
+    static interface Filter
     {
         public boolean accept(final ByteBuffer buf) throws IOException;
 
@@ -274,7 +644,7 @@ public class TimeCalibrationCaptureSubsystem
         {
             private final long[] mbids;
 
-            private MbidFilter(final long[] mbids)
+            MbidFilter(final long[] mbids)
             {
                 this.mbids = mbids;
             }
@@ -301,12 +671,12 @@ public class TimeCalibrationCaptureSubsystem
      * Captures buffers from SecondaryStreamConsumer via the
      * setDebugChannel(WritableByteChannel ch) method.
      */
-    private static class CaptureAdapter implements WritableByteChannel
+    static class CaptureAdapter implements WritableByteChannel
     {
         private final OutputChannel sink;
         boolean open;
 
-        private CaptureAdapter(final OutputChannel sink)
+        CaptureAdapter(final OutputChannel sink)
         {
             this.sink = sink;
             open = true;
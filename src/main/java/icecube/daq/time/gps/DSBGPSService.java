@@ -1,6 +1,6 @@
 package icecube.daq.time.gps;
 
-import icecube.daq.dor.Driver;
+import icecube.daq.dor.DriverService;
 import icecube.daq.dor.GPSException;
 import icecube.daq.dor.GPSInfo;
 import icecube.daq.dor.GPSNotReady;
@@ -14,7 +14,7 @@ import org.apache.log4j.Logger;
 import java.io.File;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Implements the production GPS Service backed by the GPS DSB card.
@@ -88,7 +88,7 @@ public class DSBGPSService implements IGPSService
      */
     DSBGPSService()
     {
-        this(Driver.getInstance());
+        this(DriverService.getInstance());
     }
 
     /**
@@ -150,6 +150,52 @@ public class DSBGPSService implements IGPSService
         this.string = string;
     }
 
+    /**
+     * An immutable view of a collector's state, the latest reading
+     * together with the running and failure state that governs its
+     * validity.
+     */
+    private static final class Snapshot
+    {
+        static final Snapshot INITIAL = new Snapshot(null, 0, false, null);
+
+        /** The latest GPS info. **/
+        final GPSInfo gps;
+
+        /** Incremented with each reading. */
+        final long version;
+
+        /** Flag indicating activation/deactivation. */
+        final boolean running;
+
+        /** Non-null if the service failed. */
+        final String failureReason;
+
+        private Snapshot(final GPSInfo gps, final long version,
+                         final boolean running, final String failureReason)
+        {
+            this.gps = gps;
+            this.version = version;
+            this.running = running;
+            this.failureReason = failureReason;
+        }
+
+        Snapshot withGps(final GPSInfo gps)
+        {
+            return new Snapshot(gps, version + 1, running, failureReason);
+        }
+
+        Snapshot withRunning(final boolean running)
+        {
+            return new Snapshot(gps, version, running, failureReason);
+        }
+
+        Snapshot withFailure(final String reason)
+        {
+            return new Snapshot(gps, version, false, reason);
+        }
+    }
+
     /**
      * The per-card thread that continuously polls the
      * gpssync file.
@@ -171,8 +217,12 @@ public class DSBGPSService implements IGPSService
         private IDriver driver;
         private File gpsFile;
 
-        /** The latest GPS info. **/
-        private GPSInfo gps;
+        /**
+         * The latest published state, read without locking by clients.
+         * Replaced as a whole by compare-and-set.
+         */
+        private final AtomicReference<Snapshot> snapshot =
+                new AtomicReference<>(Snapshot.INITIAL);
 
         /** number of consecutive missed reads. */
         private int missedReadCount;
@@ -180,13 +230,6 @@ public class DSBGPSService implements IGPSService
         /** number of consecutive error conditions. */
         private int errorCount;
 
-        /** Flag indicating activation/deactivation. */
-        private AtomicBoolean running;
-
-        /** Flag indicating service failed. */
-        private boolean isFailed;
-        private String failureReason;
-
         /** support clients waiting for an available reading. */
         private CountDownLatch initializationLatch = new CountDownLatch(1);
 
@@ -224,40 +267,46 @@ public class DSBGPSService implements IGPSService
             errorCount = 0;
             MAX_CONSEC_READ_MISSES = maxMissedReads;
             MAX_CONSEC_READ_ERRORS = maxErrors;
-            gps = null;
-            isFailed = false;
-            running = new AtomicBoolean(false);
         }
 
         void startup()
         {
-            running.set(true);
+            publishRunning(true);
             this.start();
         }
 
         void shutdown()
         {
-            running.set(false);
+            publishRunning(false);
             this.interrupt();
         }
 
-        synchronized GPSInfo getGps() throws GPSServiceError
+        GPSInfo getGps() throws GPSServiceError
         {
-            if(isFailed)
+            final Snapshot current = snapshot.get();
+            if(current.failureReason != null)
             {
-                throw new GPSServiceError(failureReason);
+                throw new GPSServiceError(current.failureReason);
             }
-            if(!running.get())
+            if(!current.running)
             {
                 throw new GPSServiceError("Service not running for" +
                         " card " + card);
             }
-            if(gps == null)
+            if(current.gps == null)
             {
                 throw new GPSServiceError("Service not initialized for" +
                         " card " + card);
             }
-            return gps;
+            return current.gps;
+        }
+
+        /**
+         * @return The number of GPS readings published.
+         */
+        long getVersion()
+        {
+            return snapshot.get().version;
         }
 
         boolean waitForReady(long waitMillis)
@@ -268,7 +317,7 @@ public class DSBGPSService implements IGPSService
 
         public boolean isRunning()
         {
-            return running.get();
+            return snapshot.get().running;
         }
 
         @Override
@@ -300,7 +349,7 @@ public class DSBGPSService implements IGPSService
             // Poll the syncgps file at a rate slightly higher than the
             // expected rate of 1 Hz. This prevents accruing scheduling
             // delays creating a backlog of snapshots in the buffer.
-            while (running.get())
+            while (isRunning())
             {
                 try
                 {
@@ -310,6 +359,7 @@ public class DSBGPSService implements IGPSService
                     missedReadCount = 0;
                     errorCount = 0;
 
+                    final GPSInfo gps = snapshot.get().gps;
                     if(gps == null)
                     {
                         // initial value
@@ -339,7 +389,7 @@ public class DSBGPSService implements IGPSService
                 }
                 catch (InterruptedException intx)
                 {
-                    if(!running.get())
+                    if(!isRunning())
                     {
                         // a reasonable way to shutdown
                         return;
@@ -393,19 +443,38 @@ public class DSBGPSService implements IGPSService
 
         private void updateGPS(GPSInfo latestGPS)
         {
-            synchronized (this)
+            Snapshot current;
+            do
+            {
+                current = snapshot.get();
+            }
+            while (!snapshot.compareAndSet(current,
+                    current.withGps(latestGPS)));
+
+            gpsConsumer.process(new ClockProcessor.GPSSnapshot(latestGPS,
+                    card));
+        }
+
+        private void publishRunning(final boolean running)
+        {
+            Snapshot current;
+            do
             {
-                gps = latestGPS;
-                gpsConsumer.process(new ClockProcessor.GPSSnapshot(latestGPS,
-                        card));
+                current = snapshot.get();
             }
+            while (!snapshot.compareAndSet(current,
+                    current.withRunning(running)));
         }
 
         private void setFailed(final String reason)
         {
-            isFailed = true;
-            failureReason = reason;
-            running.set(false);
+            Snapshot current;
+            do
+            {
+                current = snapshot.get();
+            }
+            while (!snapshot.compareAndSet(current,
+                    current.withFailure(reason)));
         }
 
 
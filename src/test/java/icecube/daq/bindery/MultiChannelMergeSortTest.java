@@ -1,5 +1,15 @@
 package icecube.daq.bindery;
 
+import icecube.daq.performance.diagnostic.LatencyHistogram;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 
 /**
  * Tests MultiChannelMergeSort.java
@@ -31,4 +41,60 @@ public class MultiChannelMergeSortTest extends AbstractChannelSorterTest
         return TimestampTrackingPolicy.TRACKED;
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSortLatencyIncludesQueueWait() throws Exception
+    {
+        //
+        // sort latency is measured from consume(), so buffers which wait
+        // in the input queue before the sort thread starts carry the wait,
+        // one buffer in 256 of each channel is sampled
+        //
+        final long waitMillis = 200;
+        final BufferConsumer discard = new BufferConsumer()
+        {
+            @Override
+            public void consume(final ByteBuffer buf)
+            {
+            }
+
+            @Override
+            public void endOfStream(final long token)
+            {
+            }
+        };
+
+        MultiChannelMergeSort subject =
+                new MultiChannelMergeSort(2, discard, "latency");
+        subject.register(1);
+        subject.register(2);
+        for (int i = 0; i < 1024; i++)
+        {
+            subject.consume(hit(1, 1000 + 2 * i));
+            subject.consume(hit(2, 1001 + 2 * i));
+        }
+        subject.endOfStream(1);
+        subject.endOfStream(2);
+
+        Thread.sleep(waitMillis);
+        subject.start();
+        subject.join(10000);
+        assertFalse(subject.isRunning());
+
+        LatencyHistogram.Snapshot latency =
+                subject.getSortLatency().snapshot();
+        assertEquals(8, latency.getCount());
+        assertTrue(latency.getValueAtPercentile(0) >=
+                TimeUnit.MILLISECONDS.toNanos(waitMillis));
+    }
+
+    private static ByteBuffer hit(final long mbid, final long utc)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(38);
+        buf.putInt(0, 38);
+        buf.putInt(4, 3);
+        buf.putLong(8, mbid);
+        buf.putLong(24, utc);
+        return buf;
+    }
+
+}
@@ -0,0 +1,201 @@
+package icecube.daq.bindery;
+
+import icecube.daq.sender.test.MockOutputChannel;
+import icecube.daq.stringhub.test.MockBufferCache;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests SecondaryStreamConsumer.java
+ */
+public class SecondaryStreamConsumerTest
+{
+
+    private MockOutputChannel output;
+    private MockBufferCache cache;
+
+    @Before
+    public void setUp()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+
+        output = new MockOutputChannel();
+        cache = new MockBufferCache("secondary");
+    }
+
+    @Test
+    public void testTranslation() throws IOException
+    {
+        //
+        // records are translated to payloads with the mapped payload ID
+        //
+        SecondaryStreamConsumer subject = new SecondaryStreamConsumer(0, cache, output, 0);
+
+        int[][] formats = {{102, 5}, {202, 4}, {302, 16}};
+        for (int i = 0; i < formats.length; i++)
+        {
+            subject.consume(record(formats[i][0], 0x123456789abcL, 1000 + i, 10 + i));
+        }
+        subject.consume(MultiChannelMergeSort.eos(0x123456789abcL));
+
+        assertTrue(output.stopCalled);
+        assertEquals(formats.length, output.received.size());
+        for (int i = 0; i < formats.length; i++)
+        {
+            verifyPayload(output.received.get(i), formats[i][1], 0x123456789abcL, 1000 + i, 10 + i);
+        }
+
+        assertEquals(-1, SecondaryStreamConsumer.translateFormat(7));
+        assertEquals(-1, SecondaryStreamConsumer.translateFormat(-1));
+        assertEquals(-1, SecondaryStreamConsumer.translateFormat(100000));
+    }
+
+    @Test
+    public void testPrescale() throws IOException
+    {
+        //
+        // prescaled records do not acquire buffers
+        //
+        SecondaryStreamConsumer subject = new SecondaryStreamConsumer(0, cache, output, 10);
+
+        for (int i = 0; i < 100; i++)
+        {
+            subject.consume(record(202, 1, i, 50));
+        }
+
+        assertEquals(10, output.received.size());
+        assertEquals(10, cache.getCurrentAcquiredBuffers());
+        for (int i = 0; i < 10; i++)
+        {
+            verifyPayload(output.received.get(i), 4, 1, 10 * i + 9, 50);
+        }
+    }
+
+    @Test
+    public void testDebugChannel() throws IOException
+    {
+        //
+        // the debug channel sees every record, prescaled or not
+        //
+        SecondaryStreamConsumer subject = new SecondaryStreamConsumer(0, cache, output, 4);
+        final List<ByteBuffer> captured = new ArrayList<>();
+        subject.setDebugChannel(new WritableByteChannel()
+        {
+            @Override
+            public int write(ByteBuffer src)
+            {
+                ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+                copy.put(src).flip();
+                captured.add(copy);
+                return copy.remaining();
+            }
+
+            @Override
+            public boolean isOpen()
+            {
+                return true;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        });
+
+        for (int i = 0; i < 20; i++)
+        {
+            // grows the scratch buffer
+            subject.consume(record(202, 2, i, 100 * i));
+        }
+
+        assertEquals(20, captured.size());
+        assertEquals(5, output.received.size());
+        assertEquals(5, cache.getCurrentAcquiredBuffers());
+        for (int i = 0; i < 20; i++)
+        {
+            verifyPayload(captured.get(i), 4, 2, i, 100 * i);
+        }
+    }
+
+    @Test
+    public void testBatching() throws IOException
+    {
+        //
+        // forwarded payloads are handed over in batches, each in its own
+        // buffer, bounded by count and time span and flushed at the end
+        // of stream
+        //
+        SecondaryStreamConsumer subject = new SecondaryStreamConsumer(0, cache, output, 0, 4);
+
+        for (int i = 0; i < 3; i++)
+        {
+            subject.consume(record(302, 3, 1000 + i, 20 + i));
+        }
+        assertEquals(0, output.received.size());
+        assertEquals(3, cache.getCurrentAcquiredBuffers());
+
+        subject.consume(record(302, 3, 1003, 23));
+        assertEquals(4, output.received.size());
+
+        // a payload a second past the first held one flushes the batch
+        subject.consume(record(302, 3, 2000, 24));
+        subject.consume(record(302, 3, 2000 + 10000000000L, 25));
+        assertEquals(5, output.received.size());
+
+        subject.consume(MultiChannelMergeSort.eos(3));
+        assertTrue(output.stopCalled);
+        assertEquals(6, output.received.size());
+        assertEquals(6, cache.getCurrentAcquiredBuffers());
+        for (int i = 0; i < 4; i++)
+        {
+            verifyPayload(output.received.get(i), 16, 3, 1000 + i, 20 + i);
+        }
+        verifyPayload(output.received.get(4), 16, 3, 2000, 24);
+        verifyPayload(output.received.get(5), 16, 3, 2000 + 10000000000L, 25);
+    }
+
+    /**
+     * A TestDAQ record with a patterned body.
+     */
+    private static ByteBuffer record(int fmtid, long mbid, long utc, int bodyLength)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(32 + bodyLength);
+        buf.putInt(32 + bodyLength);
+        buf.putInt(fmtid);
+        buf.putLong(mbid);
+        buf.putLong(utc * 7);
+        buf.putLong(utc);
+        for (int i = 0; i < bodyLength; i++)
+        {
+            buf.put((byte) (utc + i));
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static void verifyPayload(ByteBuffer payload, int id, long mbid, long utc, int bodyLength)
+    {
+        int base = payload.position();
+        assertEquals(24 + bodyLength, payload.remaining());
+        assertEquals(24 + bodyLength, payload.getInt(base));
+        assertEquals(id, payload.getInt(base + 4));
+        assertEquals(utc, payload.getLong(base + 8));
+        assertEquals(mbid, payload.getLong(base + 16));
+        for (int i = 0; i < bodyLength; i++)
+        {
+            assertEquals((byte) (utc + i), payload.get(base + 24 + i));
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+package icecube.daq.cli.stream;
+
+import icecube.daq.spool.Metadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the time range push-down of DataSource.java
+ */
+public class DataSourceTest
+{
+
+    private static final int NUM_FILES = 10;
+    private static final int RECORDS_PER_FILE = 100;
+
+    private static final int SPOOL_FILES = 5;
+    private static final long SPOOL_START = 100000;
+    private static final long SPOOL_INTERVAL = 1000;
+    private static final long SPOOL_SPACING = 50;
+    private static final int HIT_LENGTH = 38;
+
+    private Path dir;
+    private Path spool;
+
+
+    @Before
+    public void setUp() throws IOException
+    {
+        // 2ndbuild moni archive, utc advances by 10 per record with
+        // a duplicated time spanning each file boundary
+        dir = Files.createTempDirectory("datasource");
+        long utc = 1000;
+        for (int i = 0; i < NUM_FILES; i++)
+        {
+            ByteBuffer content = ByteBuffer.allocate(RECORDS_PER_FILE * 32);
+            for (int j = 0; j < RECORDS_PER_FILE; j++)
+            {
+                content.putInt(32);
+                content.putInt(5);
+                content.putLong(utc);
+                content.putLong(0x123456789L);
+                content.putLong(i * RECORDS_PER_FILE + j);
+                if(j < RECORDS_PER_FILE - 1)
+                {
+                    utc += 10;
+                }
+            }
+            Files.write(dir.resolve(String.format("moni_100_%06d_0_0.dat", i)), content.array());
+        }
+
+        spool = Files.createTempDirectory("hitspool");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        for (File file : dir.toFile().listFiles())
+        {
+            file.delete();
+        }
+        Files.delete(dir);
+
+        for (File file : spool.toFile().listFiles())
+        {
+            file.delete();
+        }
+        Files.delete(spool);
+    }
+
+    @Test
+    public void testSecondBuildRestriction() throws IOException
+    {
+        //
+        // 2ndbuild sources select files by first record time and
+        // yield the same records in range as the full source
+        //
+        verify(1000, 1000, 1);
+        verify(1500, 1600, 1);
+        verify(1990, 1990, 2);
+        verify(1985, 3500, 3);
+        verify(Long.MIN_VALUE, 500, 0);
+        verify(900000, Long.MAX_VALUE, 1);
+        verify(Long.MIN_VALUE, Long.MAX_VALUE, NUM_FILES);
+    }
+
+    @Test
+    public void testUnsupportedScheme() throws IOException
+    {
+        //
+        // sources without an index are not restricted
+        //
+        DataSource source = new DataSource.DirSource(dir.toString(), FileScheme.USER_DEFINED,
+                RecordType.SECONDBUILD_MONI);
+        assertSame(source, source.restrict(0, 10));
+    }
+
+    @Test
+    public void testHitspoolRestriction() throws Exception
+    {
+        //
+        // hitspool sources select files from the metadata across the
+        // spool wrap, search only the files which straddle an end of
+        // the range and yield the same records in range as the full
+        // source
+        //
+        writeSpool(SPOOL_FILES, SPOOL_FILES, false);
+
+        // within a single file
+        verifySpool(epochStart(0) + 120, epochStart(0) + 480, "HitSpool-2.dat");
+        verifySpool(epochStart(4) + 1, epochStart(4) + 1, "HitSpool-1.dat");
+
+        // exactly one file, which is delivered whole
+        DataSource.HitspoolRangeSource exact =
+                verifySpool(epochStart(1), epochStart(2) - 1, "HitSpool-3.dat");
+        assertEquals("[false]", Arrays.toString(exact.search));
+
+        // across the wrap, with whole files between the ends
+        DataSource.HitspoolRangeSource wrap =
+                verifySpool(epochStart(1) + 500, epochStart(4) + 500,
+                        "HitSpool-0.dat", "HitSpool-1.dat", "HitSpool-3.dat", "HitSpool-4.dat");
+        assertEquals("[false, true, true, false]", Arrays.toString(wrap.search));
+
+        // everything, and nothing
+        verifySpool(Long.MIN_VALUE, Long.MAX_VALUE,
+                "HitSpool-0.dat", "HitSpool-1.dat", "HitSpool-2.dat", "HitSpool-3.dat", "HitSpool-4.dat");
+        verifySpool(Long.MIN_VALUE, SPOOL_START - 1);
+        verifySpool(epochStart(SPOOL_FILES), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testHitspoolWithoutMetadata() throws Exception
+    {
+        //
+        // hitspool sources without a hitspool.db are not restricted
+        //
+        writeSpool(SPOOL_FILES, 0, false);
+
+        DataSource source = new DataSource.DirSource(spool.toString(), FileScheme.HITSPOOL, RecordType.PDAQ);
+        assertSame(source, source.restrict(epochStart(1), epochStart(2)));
+    }
+
+    @Test
+    public void testHitspoolIncompleteMetadata() throws Exception
+    {
+        //
+        // hitspool sources with a file missing from the metadata are
+        // not restricted, even when the file is outside the range
+        //
+        writeSpool(SPOOL_FILES, SPOOL_FILES - 1, false);
+
+        DataSource source = new DataSource.DirSource(spool.toString(), FileScheme.HITSPOOL, RecordType.PDAQ);
+        assertSame(source, source.restrict(epochStart(0), epochStart(0) + 500));
+    }
+
+    @Test
+    public void testHitspoolCompressed() throws Exception
+    {
+        //
+        // hitspool sources with a compressed file are not restricted,
+        // even when the file is indexed and outside the range
+        //
+        writeSpool(SPOOL_FILES, SPOOL_FILES, true);
+
+        DataSource source = new DataSource.DirSource(spool.toString(), FileScheme.HITSPOOL, RecordType.PDAQ);
+        assertSame(source, source.restrict(epochStart(1), epochStart(2)));
+    }
+
+    private void verify(long from, long to, int expectedFiles) throws IOException
+    {
+        DataSource full = new DataSource.DirSource(dir.toString(), FileScheme.SECONDBUILD_MONI,
+                RecordType.SECONDBUILD_MONI);
+        DataSource restricted = new DataSource.DirSource(dir.toString(), FileScheme.SECONDBUILD_MONI,
+                RecordType.SECONDBUILD_MONI).restrict(from, to);
+
+        assertTrue(restricted instanceof DataSource.FileSetSource);
+        assertEquals(expectedFiles, ((DataSource.FileSetSource) restricted).files.length);
+        assertEquals(full.describe(), restricted.describe());
+
+        List<Long> expected = select(full, from, to);
+        List<Long> actual = select(restricted, from, to);
+        assertEquals(expected, actual);
+    }
+
+    private DataSource.HitspoolRangeSource verifySpool(long from, long to, String... expectedFiles)
+            throws IOException
+    {
+        DataSource full = new DataSource.DirSource(spool.toString(), FileScheme.HITSPOOL, RecordType.PDAQ);
+        DataSource restricted = new DataSource.DirSource(spool.toString(), FileScheme.HITSPOOL, RecordType.PDAQ)
+                .restrict(from, to);
+
+        assertTrue(restricted instanceof DataSource.HitspoolRangeSource);
+        DataSource.HitspoolRangeSource range = (DataSource.HitspoolRangeSource) restricted;
+        assertEquals(Arrays.asList(expectedFiles),
+                Arrays.stream(range.files).map(File::getName).collect(Collectors.toList()));
+        assertEquals(range.files.length, range.search.length);
+        assertEquals(full.describe(), restricted.describe());
+
+        List<Long> expected = selectHits(full, from, to);
+        List<Long> actual = selectHits(restricted, from, to);
+        assertEquals(expected, actual);
+        return range;
+    }
+
+    /**
+     * Write a wrapped spool, the oldest interval is in HitSpool-2.dat
+     * and the newest in HitSpool-1.dat.
+     *
+     * @param numFiles The number of spool files.
+     * @param numIndexed The number of files recorded in the metadata,
+     *                   the last file is left out first.
+     * @param compressed Add a compressed file after the spool.
+     */
+    private void writeSpool(int numFiles, int numIndexed, boolean compressed) throws IOException, SQLException
+    {
+        Metadata metadata = null;
+        if(numIndexed > 0)
+        {
+            metadata = new Metadata(spool.toFile(), true);
+        }
+        try
+        {
+            int total = compressed ? numFiles + 1 : numFiles;
+            for (int i = 0; i < total; i++)
+            {
+                // files 0 and 1 have wrapped
+                int epoch = (i < 2) ? i + numFiles - 2 : i - 2;
+                if(i == numFiles)
+                {
+                    epoch = numFiles;
+                }
+
+                String name = "HitSpool-" + i + ".dat";
+                byte[] content = spoolContent(epoch);
+                if(i == numFiles)
+                {
+                    name += ".gz";
+                    try(OutputStream out = new GZIPOutputStream(Files.newOutputStream(spool.resolve(name))))
+                    {
+                        out.write(content);
+                    }
+                }
+                else
+                {
+                    Files.write(spool.resolve(name), content);
+                }
+
+                if(metadata != null && (i < numIndexed || i == numFiles))
+                {
+                    metadata.write(name, epochStart(epoch), SPOOL_INTERVAL);
+                }
+            }
+        }
+        finally
+        {
+            if(metadata != null)
+            {
+                metadata.close();
+            }
+        }
+    }
+
+    private static byte[] spoolContent(int epoch)
+    {
+        int count = (int) (SPOOL_INTERVAL / SPOOL_SPACING);
+        ByteBuffer content = ByteBuffer.allocate(count * HIT_LENGTH);
+        for (int j = 0; j < count; j++)
+        {
+            int pos = j * HIT_LENGTH;
+            content.putInt(pos, HIT_LENGTH);
+            content.putInt(pos + 4, 3);
+            content.putLong(pos + 8, epoch * count + j);
+            content.putLong(pos + 24, epochStart(epoch) + j * SPOOL_SPACING);
+        }
+        return content.array();
+    }
+
+    private static long epochStart(int epoch)
+    {
+        return SPOOL_START + epoch * SPOOL_INTERVAL;
+    }
+
+    private static List<Long> selectHits(DataSource source, long from, long to) throws IOException
+    {
+        return source.stream()
+                .filter(bb -> bb.getLong(24) >= from && bb.getLong(24) <= to)
+                .map(bb -> bb.getLong(8))
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> select(DataSource source, long from, long to) throws IOException
+    {
+        return source.stream()
+                .filter(bb -> bb.getLong(8) >= from && bb.getLong(8) <= to)
+                .map(bb -> bb.getLong(24))
+                .collect(Collectors.toList());
+    }
+
+}
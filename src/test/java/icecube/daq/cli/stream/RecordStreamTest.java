@@ -0,0 +1,276 @@
+package icecube.daq.cli.stream;
+
+import icecube.daq.performance.binary.record.RecordReader;
+import icecube.daq.performance.binary.record.pdaq.LengthPrependedRecordReader;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the memory-mapped record source of RecordStream.java
+ */
+public class RecordStreamTest
+{
+
+    private final RecordReader rr = LengthPrependedRecordReader._32Bit.instance;
+
+    private final List<File> files = new ArrayList<>();
+
+
+    @After
+    public void tearDown()
+    {
+        for (File file : files)
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSequential() throws IOException
+    {
+        //
+        // records are delivered in order across files
+        //
+        File[] input = {writeRecords(0, 100), writeRecords(100, 0), writeRecords(100, 250)};
+
+        List<Long> sequence = RecordStream.parseMappedRecordsToStream(input, rr, false)
+                .map(bb -> bb.getLong(4)).collect(Collectors.toList());
+
+        assertEquals(350, sequence.size());
+        for (int i = 0; i < sequence.size(); i++)
+        {
+            assertEquals(i, sequence.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testParallel() throws IOException
+    {
+        //
+        // a parallel stream over large and small files yields every
+        // record once, in order when collected in order
+        //
+        File[] input = {writeRecords(0, 50000), writeRecords(50000, 10), writeRecords(50010, 40000),
+                writeRecords(90010, 5)};
+
+        List<Long> ordered = RecordStream.parseMappedRecordsToStream(input, rr, true)
+                .map(bb -> bb.getLong(4)).collect(Collectors.toList());
+        assertEquals(90015, ordered.size());
+        for (int i = 0; i < ordered.size(); i++)
+        {
+            assertEquals(i, ordered.get(i).longValue());
+        }
+
+        long sum = RecordStream.parseMappedRecordsToStream(input, rr, true).unordered()
+                .mapToLong(bb -> bb.getLong(4)).sum();
+        assertEquals((90015L * 90014L) / 2, sum);
+    }
+
+    @Test
+    public void testSplitAtRecordBoundary() throws IOException
+    {
+        //
+        // a single file splits at a record boundary, the prefix and
+        // remainder cover the file
+        //
+        File[] input = {writeRecords(0, 30000)};
+        ByteBuffer[] segments = {DataInput.mapFile(input[0])};
+
+        RecordStream.MappedRecordSpliterator subject = new RecordStream.MappedRecordSpliterator(segments, rr);
+        long size = subject.estimateSize();
+
+        Spliterator<ByteBuffer> prefix = subject.trySplit();
+        assertNotNull(prefix);
+        assertEquals(size, prefix.estimateSize() + subject.estimateSize());
+        assertTrue(prefix.estimateSize() >= size / 2);
+
+        List<Long> sequence = new ArrayList<>();
+        prefix.forEachRemaining(bb -> sequence.add(bb.getLong(4)));
+        int prefixCount = sequence.size();
+        subject.forEachRemaining(bb -> sequence.add(bb.getLong(4)));
+
+        assertTrue(prefixCount > 0 && prefixCount < 30000);
+        assertEquals(30000, sequence.size());
+        for (int i = 0; i < sequence.size(); i++)
+        {
+            assertEquals(i, sequence.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testIncompleteRecord() throws IOException
+    {
+        //
+        // a truncated record fails the stream
+        //
+        File file = writeRecords(0, 10);
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        content.limit(content.limit() - 3);
+        Files.write(file.toPath(), toArray(content));
+
+        try
+        {
+            RecordStream.parseMappedRecordsToStream(new File[]{file}, rr, false).count();
+            fail("Expected an error");
+        }
+        catch (Error e)
+        {
+            assertTrue(e.getCause() instanceof RecordReader.IncompleteRecordException);
+        }
+    }
+
+    @Test
+    public void testCompressedNotMapped() throws IOException
+    {
+        //
+        // compressed files are rejected by the mapped source
+        //
+        File file = File.createTempFile("records", ".dat.gz");
+        files.add(file);
+
+        try
+        {
+            DataInput.mapFile(file);
+            fail("Expected an exception");
+        }
+        catch (IOException e)
+        {
+            // desired
+        }
+        assertTrue(DataInput.isCompressed(file));
+    }
+
+    @Test
+    public void testBulkAcrossChunks() throws IOException
+    {
+        //
+        // records spanning chunk boundaries and records larger than
+        // the chunk are delivered whole and in order
+        //
+        File file = writeRecords(0, 5000);
+        byte[] content = Files.readAllBytes(file.toPath());
+
+        RecordStream.BulkRecordSpliterator subject =
+                new RecordStream.BulkRecordSpliterator(new ByteArrayInputStream(content), rr, 100);
+
+        List<Long> sequence = new ArrayList<>();
+        int[] position = {0};
+        subject.forEachRemaining(bb -> {
+            assertEquals(0, bb.position());
+            assertEquals(ByteBuffer.wrap(content, position[0], bb.remaining()), bb);
+            position[0] += bb.remaining();
+            sequence.add(bb.getLong(4));
+        });
+
+        assertEquals(content.length, position[0]);
+        assertEquals(5000, sequence.size());
+        for (int i = 0; i < sequence.size(); i++)
+        {
+            assertEquals(i, sequence.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testBulkParallel() throws IOException
+    {
+        //
+        // a parallel stream over a sequential source hands off copies
+        //
+        File file = writeRecords(0, 20000);
+        byte[] content = Files.readAllBytes(file.toPath());
+
+        List<ByteBuffer> records = RecordStream.parseRecordsToStream(new ByteArrayInputStream(content), rr)
+                .parallel().collect(Collectors.toList());
+
+        assertEquals(20000, records.size());
+        for (int i = 0; i < records.size(); i++)
+        {
+            assertEquals(i, records.get(i).getLong(4));
+        }
+    }
+
+    @Test
+    public void testBulkIncompleteRecord() throws IOException
+    {
+        //
+        // a truncated record or header fails the stream
+        //
+        byte[] content = Files.readAllBytes(writeRecords(0, 10).toPath());
+
+        for (int truncate : new int[]{3, content.length - 2})
+        {
+            try
+            {
+                RecordStream.parseRecordsToStream(
+                        new ByteArrayInputStream(content, 0, content.length - truncate), rr).count();
+                fail("Expected an error");
+            }
+            catch (Error e)
+            {
+                assertTrue(e.getCause() instanceof RecordReader.IncompleteRecordException);
+            }
+        }
+    }
+
+    @Test
+    public void testCopy()
+    {
+        //
+        // a copy is independent of the view
+        //
+        ByteBuffer view = ByteBuffer.wrap(new byte[]{0, 0, 0, 8, 1, 2, 3, 4, 9}, 0, 8).slice();
+        ByteBuffer copy = RecordStream.copy(view);
+
+        assertEquals(view, copy);
+        view.put(4, (byte) 7);
+        assertEquals(1, copy.get(4));
+        assertEquals(0, view.position());
+    }
+
+
+    /**
+     * Write records of random length, each holding its sequence number.
+     */
+    private File writeRecords(long first, int count) throws IOException
+    {
+        Random random = new Random(first);
+        ByteBuffer content = ByteBuffer.allocate(count * 256);
+        for (int i = 0; i < count; i++)
+        {
+            int length = 12 + random.nextInt(200);
+            content.putInt(length);
+            content.putLong(first + i);
+            for (int j = 12; j < length; j++)
+            {
+                content.put((byte) j);
+            }
+        }
+        content.flip();
+
+        File file = File.createTempFile("records", ".dat");
+        files.add(file);
+        Files.write(file.toPath(), toArray(content));
+        return file;
+    }
+
+    private static byte[] toArray(ByteBuffer buf)
+    {
+        byte[] array = new byte[buf.remaining()];
+        buf.get(array);
+        return array;
+    }
+
+}
@@ -0,0 +1,144 @@
+package icecube.daq.cli.util;
+
+import icecube.daq.cli.stream.DataInput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ParallelArchiveWriter.java
+ */
+public class ParallelArchiveWriterTest
+{
+
+    private ExecutorService workers;
+    private File file;
+
+    @Before
+    public void setUp()
+    {
+        workers = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown()
+    {
+        workers.shutdownNow();
+        if(file != null)
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testGzip() throws IOException
+    {
+        //
+        // blocks are compressed in parallel and written in order, the
+        // result reads back through DataInput
+        //
+        file = File.createTempFile("archive", ".dat.gz");
+        byte[] content = generate(3 * 1024 * 1024 + 17);
+
+        ParallelArchiveWriter subject = new ParallelArchiveWriter(file, ArchiveWriter.Compression.GZIP,
+                workers, 8, 64 * 1024);
+        write(subject, content);
+        subject.endOfStream(-1);
+
+        assertEquals(content.length, subject.getInputBytes());
+        assertEquals(file.length(), subject.getOutputBytes());
+        assertTrue(subject.getOutputBytes() < subject.getInputBytes());
+
+        assertArrayEquals(content, read(file));
+    }
+
+    @Test
+    public void testBzip2() throws IOException
+    {
+        //
+        // concatenated bzip2 streams read back through DataInput
+        //
+        file = File.createTempFile("archive", ".dat.bz2");
+        byte[] content = generate(1024 * 1024 + 5);
+
+        ParallelArchiveWriter subject = new ParallelArchiveWriter(file, ArchiveWriter.Compression.BZIP2,
+                workers, 8, 100 * 1024);
+        write(subject, content);
+        subject.endOfStream(-1);
+
+        assertArrayEquals(content, read(file));
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        //
+        // an empty output is a valid compressed file
+        //
+        file = File.createTempFile("archive", ".dat.gz");
+
+        ParallelArchiveWriter subject = new ParallelArchiveWriter(file, ArchiveWriter.Compression.GZIP,
+                workers, 8, 64 * 1024);
+        subject.endOfStream(-1);
+
+        assertTrue(file.length() > 0);
+        assertEquals(0, read(file).length);
+    }
+
+    /**
+     * Records of compressible, varying content.
+     */
+    private static byte[] generate(int length)
+    {
+        Random random = new Random(length);
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte) (random.nextInt(16) + (i % 64));
+        }
+        return content;
+    }
+
+    /**
+     * Write in record sized pieces which straddle the blocks.
+     */
+    private static void write(ParallelArchiveWriter subject, byte[] content) throws IOException
+    {
+        Random random = new Random(0);
+        int position = 0;
+        while (position < content.length)
+        {
+            int length = Math.min(content.length - position, 20 + random.nextInt(5000));
+            subject.consume(ByteBuffer.wrap(Arrays.copyOfRange(content, position, position + length)));
+            position += length;
+        }
+    }
+
+    private static byte[] read(File file) throws IOException
+    {
+        try(InputStream in = DataInput.loadFile(file))
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) >= 0)
+            {
+                bos.write(buf, 0, read);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package icecube.daq.cli.util;
+
+import icecube.daq.cli.stream.DataInput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ShredWriter.java
+ */
+public class ShredWriterTest
+{
+
+    private static final int NUM_KEYS = 7;
+
+    private ExecutorService workers;
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        workers = Executors.newFixedThreadPool(3);
+        dir = Files.createTempDirectory("shred").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        workers.shutdownNow();
+        for (File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testUncompressed() throws IOException
+    {
+        //
+        // records are demultiplexed in order with files evicted,
+        // reopened and buffers flushed early
+        //
+        verify("out.dat", null, 2, 4096, 3 * 4096);
+    }
+
+    @Test
+    public void testCompressed() throws IOException
+    {
+        //
+        // compressed chunks appended across reopens read back as
+        // a single stream
+        //
+        verify("out.dat.gz", workers, 2, 4096, 3 * 4096);
+        verify("out.dat.gz", null, 3, 8192, 1024 * 1024);
+    }
+
+    @Test
+    public void testOversizeRecords() throws IOException
+    {
+        //
+        // records larger than the buffer are written whole
+        //
+        verify("out.dat", null, 4, 64, 1024);
+        verify("out.dat.gz", workers, 4, 64, 1024);
+    }
+
+    private void verify(String pattern, ExecutorService workers, int maxOpenFiles, int bufferSize,
+                        long maxBuffered) throws IOException
+    {
+        List<ByteArrayOutputStream> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_KEYS; i++)
+        {
+            expected.add(new ByteArrayOutputStream());
+        }
+
+        ShredWriter subject = new ShredWriter(bb -> bb.getLong(4),
+                key -> new File(dir, pattern.replace("out", "out-" + key)),
+                workers, maxOpenFiles, bufferSize, maxBuffered);
+
+        Random random = new Random(bufferSize);
+        for (int i = 0; i < 20000; i++)
+        {
+            // runs of keys, interleaved
+            int key = (i / 10 + random.nextInt(2)) % NUM_KEYS;
+            int length = 16 + random.nextInt(120);
+            ByteBuffer record = ByteBuffer.allocate(length);
+            record.putInt(length);
+            record.putLong(key);
+            record.putInt(i);
+            record.rewind();
+
+            expected.get(key).write(record.array(), 0, length);
+            subject.consume(record);
+        }
+        subject.endOfStream(-1);
+
+        assertEquals(NUM_KEYS, subject.getFiles().size());
+        assertTrue(subject.getOpenCount() > NUM_KEYS);
+        long total = 0;
+        for (int key = 0; key < NUM_KEYS; key++)
+        {
+            File file = new File(dir, pattern.replace("out", "out-" + key));
+            assertArrayEquals(expected.get(key).toByteArray(), read(file));
+            total += file.length();
+        }
+        assertEquals(total, subject.getOutputBytes());
+    }
+
+    private static byte[] read(File file) throws IOException
+    {
+        try(InputStream in = DataInput.loadFile(file))
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) >= 0)
+            {
+                bos.write(buf, 0, read);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+}
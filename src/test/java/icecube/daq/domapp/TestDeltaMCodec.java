@@ -6,7 +6,9 @@ import icecube.daq.common.MockAppender;
 import icecube.daq.domapp.DeltaMCodec;
 import icecube.daq.domapp.MonitorRecordFactory;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Random;
 
 import junit.framework.JUnit4TestAdapter;
@@ -109,4 +111,169 @@ public class TestDeltaMCodec
 			}
 		}
 	}
+
+	/**
+	 * Test the word decoder against the bit-serial decoder on a
+	 * random corpus of multi-vector bitstreams
+	 */
+	@Test public void testWordDecoder()
+	{
+		Random r = new Random();
+		ByteBuffer buf = ByteBuffer.allocate(16000);
+		for (int loop = 0; loop < 2000; loop++)
+		{
+			short[][] vecs = new short[1 + r.nextInt(5)][];
+			for (int v = 0; v < vecs.length; v++)
+			{
+				vecs[v] = randomVector(r, 1 + r.nextInt(300));
+			}
+			buf.clear();
+			buf.order(r.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+			new DeltaMCodec(buf).encode(vecs);
+			buf.flip();
+
+			ByteBuffer copy = buf.duplicate().order(buf.order());
+			DeltaMCodec serial = new DeltaMCodec(buf);
+			DeltaMCodec word = new DeltaMCodec(copy);
+			for (int v = 0; v < vecs.length; v++)
+			{
+				short[] dec = new short[vecs[v].length + 2];
+				word.decode(dec, 1, vecs[v].length);
+				assertArrayEquals(serial.decode(vecs[v].length),
+						java.util.Arrays.copyOfRange(dec, 1, dec.length - 1));
+				assertEquals(buf.position(), copy.position());
+			}
+		}
+	}
+
+	/**
+	 * Test the word decoder against the bit-serial decoder on
+	 * arbitrary bitstreams, including running out of data
+	 */
+	@Test public void testWordDecoderArbitraryBits()
+	{
+		Random r = new Random();
+		for (int loop = 0; loop < 2000; loop++)
+		{
+			byte[] bits = new byte[1 + r.nextInt(64)];
+			r.nextBytes(bits);
+			ByteBuffer buf = ByteBuffer.wrap(bits);
+			ByteBuffer copy = ByteBuffer.wrap(bits);
+			DeltaMCodec serial = new DeltaMCodec(buf);
+			DeltaMCodec word = new DeltaMCodec(copy);
+			while (true)
+			{
+				int samples = 1 + r.nextInt(40);
+				short[] expected;
+				try
+				{
+					expected = serial.decode(samples);
+				}
+				catch (BufferUnderflowException bue)
+				{
+					try
+					{
+						word.decode(new short[samples], 0, samples);
+						fail("Word decoder read past the buffer limit");
+					}
+					catch (BufferUnderflowException expectedBue)
+					{
+						// expected
+					}
+					break;
+				}
+				short[] dec = new short[samples];
+				word.decode(dec, 0, samples);
+				assertArrayEquals(expected, dec);
+				assertEquals(buf.position(), copy.position());
+			}
+		}
+	}
+
+	/**
+	 * Test the bulk decode of the waveforms of a block of hits
+	 */
+	@Test public void testDecodeHits()
+	{
+		Random r = new Random();
+		int nhits = 200;
+		ByteBuffer buf = ByteBuffer.allocate(nhits * 2000).order(ByteOrder.LITTLE_ENDIAN);
+		int[] word1 = new int[nhits];
+		int[] offsets = new int[nhits];
+		short[][][] expected = new short[nhits][][];
+		for (int n = 0; n < nhits; n++)
+		{
+			int natwd = r.nextInt(DeltaMCodec.ATWD_CHANNELS);
+			switch (r.nextInt(3))
+			{
+			case 0:
+				// SLC, no waveforms
+				expected[n] = new short[0][];
+				break;
+			case 1:
+				word1[n] = 0x8000;
+				expected[n] = new short[][] { randomVector(r, DeltaMCodec.FADC_SAMPLES) };
+				break;
+			default:
+				word1[n] = 0xc000 | (natwd << 12);
+				expected[n] = new short[2 + natwd][];
+				expected[n][0] = randomVector(r, DeltaMCodec.FADC_SAMPLES);
+				for (int ch = 1; ch < expected[n].length; ch++)
+				{
+					expected[n][ch] = randomVector(r, DeltaMCodec.ATWD_SAMPLES);
+				}
+				break;
+			}
+			word1[n] |= 0x80000000;
+			int start = buf.position();
+			buf.putInt(word1[n]).putInt(r.nextInt()).putInt(r.nextInt());
+			offsets[n] = buf.position();
+			if (expected[n].length > 0) new DeltaMCodec(buf).encode(expected[n]);
+			buf.putInt(start, word1[n] | (buf.position() - start));
+		}
+		buf.flip();
+
+		short[] fadc = new short[nhits * DeltaMCodec.FADC_SAMPLES];
+		short[] atwd = new short[nhits * DeltaMCodec.ATWD_CHANNELS * DeltaMCodec.ATWD_SAMPLES];
+		DeltaMCodec.decodeHits(buf, word1, offsets, nhits, fadc, atwd);
+		assertEquals(0, buf.position());
+
+		for (int n = 0; n < nhits; n++)
+		{
+			for (int ch = 0; ch < expected[n].length; ch++)
+			{
+				short[] dest = (ch == 0) ? fadc : atwd;
+				int base = (ch == 0) ? n * DeltaMCodec.FADC_SAMPLES :
+					(n * DeltaMCodec.ATWD_CHANNELS + ch - 1) * DeltaMCodec.ATWD_SAMPLES;
+				for (int i = 0; i < expected[n][ch].length; i++)
+				{
+					assertEquals(expected[n][ch][i], dest[base + i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A waveform-like vector, or a random pattern exercising the
+	 * wide words
+	 */
+	private static short[] randomVector(Random r, int samples)
+	{
+		short[] vec = new short[samples];
+		boolean smooth = r.nextBoolean();
+		int v = 120 + r.nextInt(900);
+		for (int i = 0; i < samples; i++)
+		{
+			if (smooth)
+			{
+				v = Math.max(0, Math.min(1023, v + r.nextInt(7) - 3));
+			}
+			else
+			{
+				v = r.nextInt(1024);
+			}
+			vec[i] = (short) v;
+		}
+		return vec;
+	}
 }
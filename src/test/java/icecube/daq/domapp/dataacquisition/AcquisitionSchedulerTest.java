@@ -0,0 +1,89 @@
+package icecube.daq.domapp.dataacquisition;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static icecube.daq.domapp.dataacquisition.AcquisitionScheduler.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests AcquisitionScheduler.
+ */
+public class AcquisitionSchedulerTest
+{
+
+    @Test
+    public void testDataReadInterval()
+    {
+        //
+        // the interval follows the hit rate within the bounds
+        //
+        AcquisitionScheduler subject = new AcquisitionScheduler();
+
+        double rate = TARGET_HITS_PER_READ * 100.0;
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10),
+                subject.nextDataReadInterval(true, rate));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10),
+                subject.getDataReadIntervalNanos());
+
+        assertEquals(MIN_DATA_READ_INTERVAL_NANOS,
+                subject.nextDataReadInterval(true, 1.0E9));
+        assertEquals(MAX_DATA_READ_INTERVAL_NANOS,
+                subject.nextDataReadInterval(true, 0.001));
+        assertEquals(MAX_DATA_READ_INTERVAL_NANOS,
+                subject.nextDataReadInterval(true, 0.0));
+    }
+
+    @Test
+    public void testDataReadBackoff()
+    {
+        //
+        // empty reads back off exponentially up to the ceiling, a
+        // productive read restores the rate based interval
+        //
+        AcquisitionScheduler subject = new AcquisitionScheduler();
+
+        double rate = TARGET_HITS_PER_READ * 1.0E9 /
+                MIN_DATA_READ_INTERVAL_NANOS;
+        long expected = MIN_DATA_READ_INTERVAL_NANOS;
+        for (int i = 0; i < 30; i++)
+        {
+            expected = Math.min(2 * expected, MAX_DATA_READ_INTERVAL_NANOS);
+            assertEquals(expected, subject.nextDataReadInterval(false, rate));
+        }
+
+        assertEquals(MIN_DATA_READ_INTERVAL_NANOS,
+                subject.nextDataReadInterval(true, rate));
+    }
+
+    @Test
+    public void testIdle()
+    {
+        //
+        // tired cycles idle for exponentially longer up to the ceiling
+        // and no later than the next scheduled read
+        //
+        AcquisitionScheduler subject = new AcquisitionScheduler();
+
+        assertEquals(0, subject.completeCycle(false, Long.MAX_VALUE));
+
+        long expected = 1;
+        for (int i = 0; i < 30; i++)
+        {
+            assertEquals(expected,
+                    subject.completeCycle(true, Long.MAX_VALUE));
+            expected = Math.min(2 * expected, MAX_IDLE_MILLIS);
+        }
+
+        assertEquals(3, subject.completeCycle(true,
+                TimeUnit.MILLISECONDS.toNanos(3)));
+        assertEquals(1, subject.completeCycle(true, -1000));
+
+        assertEquals(0, subject.completeCycle(false, Long.MAX_VALUE));
+        assertEquals(1, subject.completeCycle(true, Long.MAX_VALUE));
+
+        // 2 of 35 cycles were not tired
+        assertEquals(33.0 / 35.0, subject.getTiredRatio(), 1.0E-9);
+    }
+}
@@ -0,0 +1,339 @@
+package icecube.daq.domapp.dataacquisition;
+
+import icecube.daq.domapp.DOMApp;
+import icecube.daq.domapp.dataprocessor.DataProcessorError;
+import icecube.daq.domapp.dataprocessor.test.MockDataProcessor;
+import icecube.daq.dor.SimulatedDriver;
+import icecube.daq.dor.TCALService;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests AcquisitionService.java against simulated DOMs.
+ */
+public class AcquisitionServiceTest
+{
+    private static final int NUM_DOMS = 16;
+
+    private SimulatedDriver driver;
+    private TCALService tcalService;
+    private AcquisitionService subject;
+
+    private final List<DOMApp> apps = new ArrayList<>();
+
+    /** Data requests launched and not yet collected, across channels. */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /** Names of the threads which ran cycles. */
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    @BeforeClass
+    public static void setupLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (subject != null)
+        {
+            subject.shutdown();
+        }
+        if (tcalService != null)
+        {
+            tcalService.shutdown();
+        }
+        for (DOMApp app : apps)
+        {
+            app.close();
+        }
+    }
+
+    @Test
+    public void testChannelsShareThread() throws Exception
+    {
+        //
+        // one thread reads every channel, with the data requests of
+        // channels due together in flight at once
+        //
+        Poller[] pollers = start(1000, 1, NUM_DOMS);
+
+        for (Poller poller : pollers)
+        {
+            poller.awaitCycles(20);
+        }
+        for (Poller poller : pollers)
+        {
+            poller.channel.suspend();
+            assertNull(poller.channel.getFailure().getNow(null));
+            assertTrue(poller.processor.hitMessages > 0);
+            assertTrue(poller.processor.supernovaMessages > 0);
+        }
+
+        assertTrue(maxInFlight.get() > 1);
+        assertEquals("[AcquisitionService-0]", threads.toString());
+    }
+
+    @Test
+    public void testOverlapHidesLatency() throws Exception
+    {
+        //
+        // overlapping the round trips of a batch reads more data from
+        // slow DOMs than waiting on each channel in turn
+        //
+        final long runMillis = 1500;
+
+        Poller[] serial = start(10000, 1, 1);
+        Thread.sleep(runMillis);
+        final int serialReads = stop(serial);
+        assertEquals(1, maxInFlight.get());
+
+        Poller[] batched = start(10000, 1, NUM_DOMS);
+        Thread.sleep(runMillis);
+        final int batchedReads = stop(batched);
+
+        assertTrue("Overlapped " + batchedReads + " reads against " +
+                serialReads + " in series", batchedReads > 2 * serialReads);
+    }
+
+    @Test
+    public void testSuspendResume() throws Exception
+    {
+        //
+        // a suspended channel is not run until it is resumed
+        //
+        Poller[] pollers = start(0, 2, NUM_DOMS);
+        final Poller poller = pollers[3];
+        poller.awaitCycles(10);
+
+        poller.channel.suspend();
+        final int cycles = poller.cycles;
+        pollers[4].awaitCycles(pollers[4].cycles + 10);
+        assertEquals(cycles, poller.cycles);
+
+        poller.channel.resume();
+        poller.awaitCycles(cycles + 10);
+        assertNull(poller.channel.getFailure().getNow(null));
+    }
+
+    @Test
+    public void testFailureStopsChannel() throws Exception
+    {
+        //
+        // a failed cycle stops its channel and is reported, the other
+        // channels keep running
+        //
+        Poller[] pollers = start(0, 1, NUM_DOMS);
+        final Poller failing = pollers[5];
+        failing.awaitCycles(5);
+
+        // as the watchdog of a collector does
+        apps.get(5).close();
+        Throwable failure =
+                failing.channel.getFailure().get(10, TimeUnit.SECONDS);
+        assertTrue(failure instanceof AcquisitionError);
+
+        final int cycles = failing.cycles;
+        pollers[6].awaitCycles(pollers[6].cycles + 10);
+        assertEquals(cycles, failing.cycles);
+
+        // the suspend of a stopped channel returns at once
+        failing.channel.suspend();
+    }
+
+    /**
+     * Boot and start a run on simulated DOMs and resume their channels
+     * on a new service.
+     */
+    private Poller[] start(final long replyLatencyMicros,
+                           final int numThreads, final int batch)
+            throws Exception
+    {
+        tearDown();
+        apps.clear();
+        inFlight.set(0);
+        maxInFlight.set(0);
+        threads.clear();
+
+        driver = new SimulatedDriver(NUM_DOMS, 2000.0, 0.1, 500.0, 0.0,
+                replyLatencyMicros);
+        tcalService = new TCALService(driver);
+        subject = new AcquisitionService(numThreads, batch);
+
+        Poller[] pollers = new Poller[NUM_DOMS];
+        for (int i = 0; i < NUM_DOMS; i++)
+        {
+            final int card = i / 8;
+            final int pair = (i % 8) / 2;
+            final char dom = (i % 2 == 0) ? 'A' : 'B';
+
+            DOMApp app = new DOMApp(driver, card, pair, dom);
+            apps.add(app);
+            assertTrue(app.transitionToDOMApp());
+            app.setDeltaCompressionFormat();
+            app.enableSupernova(0, false);
+            app.beginRun();
+
+            pollers[i] = new Poller(card, pair, dom, app);
+        }
+        for (Poller poller : pollers)
+        {
+            poller.channel.resume();
+        }
+        return pollers;
+    }
+
+    /**
+     * Suspend the channels.
+     *
+     * @return The number of data reads.
+     */
+    private static int stop(final Poller[] pollers)
+    {
+        int reads = 0;
+        for (Poller poller : pollers)
+        {
+            poller.channel.suspend();
+            assertNull(poller.channel.getFailure().getNow(null));
+            reads += poller.processor.hitReads;
+        }
+        return reads;
+    }
+
+    /**
+     * The polling cycle of a channel, as run for a DataCollector.
+     */
+    private class Poller implements AcquisitionService.Cycle
+    {
+        final CountingProcessor processor = new CountingProcessor();
+        final DataAcquisition acquisition;
+        final AcquisitionService.Channel channel;
+
+        volatile int cycles;
+        private boolean requested;
+
+        Poller(final int card, final int pair, final char dom,
+               final DOMApp app)
+        {
+            acquisition = new DataAcquisition(card, pair, dom, processor,
+                    driver, tcalService, app, false);
+            channel = subject.register(card + "" + pair + dom, this);
+        }
+
+        @Override
+        public void launch(final long nowNanos) throws Exception
+        {
+            threads.add(Thread.currentThread().getName());
+
+            requested = acquisition.requestPolling(nowNanos);
+            if (requested)
+            {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(),
+                        Math::max);
+            }
+        }
+
+        @Override
+        public long complete(final long nowNanos) throws Exception
+        {
+            final boolean tired =
+                    acquisition.doPolling(new NullWatchdog(), nowNanos);
+            if (requested)
+            {
+                inFlight.decrementAndGet();
+            }
+            cycles++;
+            return acquisition.completeCycle(tired, true);
+        }
+
+        void awaitCycles(final int count) throws InterruptedException
+        {
+            final long deadline = System.nanoTime() +
+                    TimeUnit.SECONDS.toNanos(10);
+            while (cycles < count)
+            {
+                assertTrue("Ran " + cycles + " of " + count + " cycles",
+                        System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    /**
+     * Counts the messages of each stream.
+     */
+    private static class CountingProcessor extends MockDataProcessor
+    {
+        volatile int hitReads;
+        volatile int hitMessages;
+        volatile int supernovaMessages;
+
+        @Override
+        public void process(final StreamType stream, final ByteBuffer data)
+                throws DataProcessorError
+        {
+            super.process(stream, data);
+            switch (stream)
+            {
+                case HIT:
+                    hitReads++;
+                    if (data.remaining() > 0)
+                    {
+                        hitMessages++;
+                    }
+                    break;
+                case SUPERNOVA:
+                    supernovaMessages++;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static class NullWatchdog implements Watchdog
+    {
+        @Override
+        public void ping()
+        {
+        }
+
+        @Override
+        public long setTimeoutThreshold(final long millis)
+        {
+            return 0;
+        }
+
+        @Override
+        public Mode setTimeoutAction(final Mode mode)
+        {
+            return mode;
+        }
+
+        @Override
+        public void sleep(final long millis)
+        {
+        }
+
+        @Override
+        public void handleInterrupted(final InterruptedException ie)
+        {
+        }
+    }
+}
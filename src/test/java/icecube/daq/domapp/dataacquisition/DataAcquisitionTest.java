@@ -0,0 +1,395 @@
+package icecube.daq.domapp.dataacquisition;
+
+import icecube.daq.domapp.IDOMApp;
+import icecube.daq.domapp.MessageType;
+import icecube.daq.domapp.dataprocessor.DataProcessorError;
+import icecube.daq.domapp.dataprocessor.test.MockDataProcessor;
+import icecube.daq.dor.SimulatedDriver;
+import icecube.daq.dor.TCALService;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the pipelined and requested data reads of DataAcquisition.java
+ */
+public class DataAcquisitionTest
+{
+    private static final long CYCLE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private SimulatedDriver driver;
+    private TCALService tcalService;
+    private MockDOM dom;
+    private CapturingProcessor processor;
+    private DataAcquisition subject;
+    private long now;
+
+    @BeforeClass
+    public static void setupLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+    }
+
+    @Before
+    public void setUp()
+    {
+        driver = new SimulatedDriver(1, 0.0, 0.0, 0.0, 0.0);
+        tcalService = new TCALService(driver);
+        dom = new MockDOM();
+        processor = new CapturingProcessor();
+        subject = new DataAcquisition(0, 0, 'A', processor, driver,
+                tcalService, dom.proxy(), true);
+        now = CYCLE_NANOS;
+    }
+
+    @After
+    public void tearDown()
+    {
+        tcalService.shutdown();
+    }
+
+    @Test
+    public void testDepthGrowsAndShrinks() throws Exception
+    {
+        //
+        // the depth grows by one per cycle while the DOM has a backlog,
+        // up to the ceiling, and halves down to one when it runs dry
+        //
+        dom.backlog = Integer.MAX_VALUE;
+
+        assertEquals(1, subject.getPipelineDepth());
+        for (int i = 0; i < 2 * DataAcquisition.MAX_PIPELINE_DEPTH; i++)
+        {
+            int depth = subject.getPipelineDepth();
+            poll();
+
+            assertEquals(depth, dom.maxOutstanding);
+            assertEquals(Math.min(depth + 1,
+                    DataAcquisition.MAX_PIPELINE_DEPTH),
+                    subject.getPipelineDepth());
+        }
+        assertEquals(DataAcquisition.MAX_PIPELINE_DEPTH,
+                subject.getPipelineDepth());
+
+        dom.backlog = 0;
+        for (int i = 0; i < 2 * DataAcquisition.MAX_PIPELINE_DEPTH; i++)
+        {
+            int depth = subject.getPipelineDepth();
+            poll();
+
+            assertEquals(depth, dom.maxOutstanding);
+            assertEquals(depth, dom.requested);
+            assertEquals(Math.max(depth / 2, 1), subject.getPipelineDepth());
+        }
+        assertEquals(1, subject.getPipelineDepth());
+
+        assertEquals("[]", dom.violations.toString());
+    }
+
+    @Test
+    public void testPartialBacklog() throws Exception
+    {
+        //
+        // a backlog which ends within the pipeline leaves the depth
+        // within its bounds and every reply is collected
+        //
+        dom.backlog = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++)
+        {
+            poll();
+        }
+        assertEquals(5, subject.getPipelineDepth());
+
+        dom.backlog = 3;
+        poll();
+        assertEquals(8, dom.requested);
+        assertEquals(2, subject.getPipelineDepth());
+
+        dom.backlog = 1;
+        poll();
+        assertEquals(3, dom.requested);
+        assertEquals(1, subject.getPipelineDepth());
+
+        assertEquals("[]", dom.violations.toString());
+    }
+
+    @Test
+    public void testRequestCeiling() throws Exception
+    {
+        //
+        // a single read stops topping up the pipeline after a bounded
+        // number of requests so that moni and supernova are not starved
+        //
+        dom.backlog = Integer.MAX_VALUE;
+        for (int i = 0; i < 20; i++)
+        {
+            poll();
+            assertTrue(dom.requested <=
+                    4 * DataAcquisition.MAX_PIPELINE_DEPTH);
+            assertEquals(1, processor.moniCount);
+            assertEquals(1, processor.supernovaCount);
+            processor.moniCount = 0;
+            processor.supernovaCount = 0;
+        }
+
+        assertEquals("[]", dom.violations.toString());
+    }
+
+    @Test
+    public void testDrainedBeforeOtherMessages() throws Exception
+    {
+        //
+        // no data request is outstanding when moni, supernova or
+        // end of run messages are sent
+        //
+        for (int backlog : new int[]{1000, 7, 0, 250, 1, 0})
+        {
+            dom.backlog = backlog;
+            for (int i = 0; i < 5; i++)
+            {
+                poll();
+                assertEquals(0, dom.outstanding);
+            }
+        }
+
+        subject.doEndRun();
+        assertEquals(1, dom.endRuns);
+
+        assertTrue(dom.checked > 0);
+        assertEquals("[]", dom.violations.toString());
+    }
+
+    @Test
+    public void testRepliesInOrder() throws Exception
+    {
+        //
+        // replies reach the processor in the order they were sent
+        //
+        final int numHits = 5000;
+        dom.backlog = numHits;
+        for (int i = 0; i < 1000 && dom.backlog > 0; i++)
+        {
+            poll();
+        }
+        poll();
+
+        assertEquals(numHits, processor.hits.size());
+        for (int i = 0; i < numHits; i++)
+        {
+            assertEquals(i, (long) processor.hits.get(i));
+        }
+
+        assertEquals("[]", dom.violations.toString());
+    }
+
+    @Test
+    public void testRequestedPolling() throws Exception
+    {
+        //
+        // a data request sent ahead of the cycle is collected by the
+        // cycle, and nothing else is sent while it is outstanding
+        //
+        DataAcquisition requested = new DataAcquisition(0, 0, 'A',
+                processor, driver, tcalService, dom.proxy(), false);
+        dom.backlog = 4;
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(requested.requestPolling(now));
+            assertFalse(requested.requestPolling(now));
+            assertEquals(1, dom.outstanding);
+
+            requested.doPolling(new MockWatchdog(), now);
+            assertEquals(0, dom.outstanding);
+            assertEquals(i + 1, processor.hits.size());
+            assertEquals(i, (long) processor.hits.get(i));
+
+            // the next read is not due yet
+            assertFalse(requested.requestPolling(now));
+            now += CYCLE_NANOS;
+        }
+
+        // pipelined reads send their own requests
+        assertFalse(subject.requestPolling(now));
+        assertEquals(0, dom.outstanding);
+
+        assertEquals(8, dom.checked);
+        assertEquals("[]", dom.violations.toString());
+    }
+
+    private void poll() throws AcquisitionError
+    {
+        dom.maxOutstanding = 0;
+        dom.requested = 0;
+        subject.doPolling(new MockWatchdog(), now);
+        now += CYCLE_NANOS;
+        assertEquals(0, dom.outstanding);
+    }
+
+    /**
+     * Scripts a DOM which answers each data request with one hit while
+     * it has a backlog, and checks that nothing else is sent while data
+     * requests are outstanding.
+     */
+    private static class MockDOM implements InvocationHandler
+    {
+        int backlog;
+        long sequence;
+
+        int outstanding;
+        int maxOutstanding;
+        int requested;
+        int checked;
+        int endRuns;
+
+        final List<String> violations = new ArrayList<>();
+
+        IDOMApp proxy()
+        {
+            return (IDOMApp) Proxy.newProxyInstance(
+                    IDOMApp.class.getClassLoader(),
+                    new Class<?>[]{IDOMApp.class}, this);
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                             final Object[] args)
+        {
+            switch (method.getName())
+            {
+                case "requestData":
+                    int n = (Integer) args[0];
+                    outstanding += n;
+                    requested += n;
+                    maxOutstanding = Math.max(maxOutstanding, outstanding);
+                    return null;
+                case "recvMessage":
+                    return reply((ByteBuffer) args[0]);
+                case "toString":
+                    return "MockDOM";
+                default:
+                    checked++;
+                    if (outstanding != 0)
+                    {
+                        violations.add(method.getName() + " with " +
+                                outstanding + " outstanding");
+                    }
+                    break;
+            }
+
+            switch (method.getName())
+            {
+                case "getMoni":
+                case "getSupernova":
+                    ByteBuffer buf = ByteBuffer.allocate(4);
+                    buf.putInt(0, 4);
+                    return buf;
+                case "endRun":
+                    endRuns++;
+                    return null;
+                default:
+                    throw new Error("Unexpected " + method.getName());
+            }
+        }
+
+        private ByteBuffer reply(final ByteBuffer recvBuf)
+        {
+            if (outstanding == 0)
+            {
+                violations.add("recvMessage with nothing outstanding");
+            }
+            outstanding--;
+
+            final int len = (backlog > 0) ? 8 : 0;
+            recvBuf.clear();
+            recvBuf.put(MessageType.GET_DATA.getFacility());
+            recvBuf.put(MessageType.GET_DATA.getSubtype());
+            recvBuf.putShort((short) len);
+            recvBuf.putShort((short) 0);
+            recvBuf.put((byte) 0);
+            recvBuf.put((byte) 1);
+            if (backlog > 0)
+            {
+                recvBuf.putLong(sequence++);
+                backlog--;
+            }
+            recvBuf.flip();
+            return recvBuf;
+        }
+    }
+
+    /**
+     * Records the hit sequence numbers and counts the other streams.
+     */
+    private static class CapturingProcessor extends MockDataProcessor
+    {
+        final List<Long> hits = new ArrayList<>();
+        int moniCount;
+        int supernovaCount;
+
+        @Override
+        public void process(final StreamType stream, final ByteBuffer data)
+                throws DataProcessorError
+        {
+            switch (stream)
+            {
+                case HIT:
+                    assertEquals(8, data.remaining());
+                    hits.add(data.getLong(data.position()));
+                    break;
+                case MONI:
+                    moniCount++;
+                    break;
+                case SUPERNOVA:
+                    supernovaCount++;
+                    break;
+                default:
+                    break;
+            }
+            super.process(stream, data);
+        }
+    }
+
+    private static class MockWatchdog implements Watchdog
+    {
+        @Override
+        public void ping()
+        {
+        }
+
+        @Override
+        public long setTimeoutThreshold(final long millis)
+        {
+            return 0;
+        }
+
+        @Override
+        public Mode setTimeoutAction(final Mode mode)
+        {
+            return mode;
+        }
+
+        @Override
+        public void sleep(final long millis)
+        {
+        }
+
+        @Override
+        public void handleInterrupted(final InterruptedException ie)
+        {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package icecube.daq.domapp.dataacquisition;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests ReceiveBufferPool.
+ */
+public class ReceiveBufferPoolTest
+{
+
+    @Test
+    public void testReuse()
+    {
+        //
+        // returned buffers are reused, cleared
+        //
+        AcquisitionMonitor monitor = new AcquisitionMonitor("test");
+        ReceiveBufferPool subject = new ReceiveBufferPool(64, 4, monitor);
+
+        ByteBuffer first = subject.take();
+        assertEquals(64, first.capacity());
+        first.position(10).limit(20);
+        subject.give(first);
+
+        ByteBuffer second = subject.take();
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(64, second.limit());
+
+        assertEquals(1, subject.getOutstanding());
+        assertEquals(1, monitor.getBufferPoolHighWater());
+        assertEquals(0, monitor.getBufferPoolExhaustedCount());
+    }
+
+    @Test
+    public void testExhaustion()
+    {
+        //
+        // the pool allocates past its capacity, reporting the exhaustion
+        // and high-water mark, and retains no more than its capacity
+        //
+        AcquisitionMonitor monitor = new AcquisitionMonitor("test");
+        ReceiveBufferPool subject = new ReceiveBufferPool(64, 4, monitor);
+
+        ByteBuffer[] taken = new ByteBuffer[6];
+        for (int i = 0; i < taken.length; i++)
+        {
+            taken[i] = subject.take();
+        }
+        assertEquals(6, subject.getOutstanding());
+        assertEquals(6, monitor.getBufferPoolHighWater());
+        assertEquals(2, monitor.getBufferPoolExhaustedCount());
+
+        for (ByteBuffer buf : taken)
+        {
+            subject.give(buf);
+        }
+        assertEquals(0, subject.getOutstanding());
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertSame(taken[i], subject.take());
+        }
+        subject.take();
+        assertEquals(5, subject.getOutstanding());
+        assertEquals(6, monitor.getBufferPoolHighWater());
+        assertEquals(3, monitor.getBufferPoolExhaustedCount());
+    }
+}
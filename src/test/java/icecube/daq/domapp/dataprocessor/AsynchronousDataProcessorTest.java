@@ -11,6 +11,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -109,6 +110,44 @@ public class AsynchronousDataProcessorTest
 
     }
 
+    @Test
+    public void testBulkCompletion() throws DataProcessorError
+    {
+        //
+        // test that the completion of a bulk submission is signaled
+        // after the data is processed
+        //
+        final MockDataProcessor mock = new MockDataProcessor();
+        final AsynchronousDataProcessor subject =
+                AsynchronousDataProcessor.singleThreadedExecutor("test",
+                        mock);
+
+        final AtomicInteger completions = new AtomicInteger();
+        final AtomicInteger processedAtCompletion = new AtomicInteger(-1);
+
+        mock.lock();
+
+        subject.process(
+                new DataProcessor.StreamType[]{DataProcessor.StreamType.HIT,
+                        DataProcessor.StreamType.MONI,
+                        DataProcessor.StreamType.SUPERNOVA},
+                new ByteBuffer[]{DUMMY, DUMMY, DUMMY},
+                () -> {
+                    processedAtCompletion.set(mock.processCount);
+                    completions.incrementAndGet();
+                });
+
+        assertEquals("", 0, completions.get());
+
+        mock.unlock();
+        subject.sync();
+
+        assertEquals("", 1, completions.get());
+        assertEquals("", 3, processedAtCompletion.get());
+
+        subject.shutdown();
+    }
+
     @Test
     public void testFullRejectPolicy() throws DataProcessorError, InterruptedException
     {
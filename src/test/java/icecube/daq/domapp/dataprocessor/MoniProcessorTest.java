@@ -0,0 +1,170 @@
+package icecube.daq.domapp.dataprocessor;
+
+import icecube.daq.bindery.BufferConsumer;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests MoniProcessor.java
+ */
+public class MoniProcessorTest
+{
+    private static final long MBID = 0xabcdef123456L;
+
+    @BeforeClass
+    public static void setupLogging()
+    {
+        // exercise logging calls, but output to nowhere
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+        Logger.getRootLogger().setLevel(Level.ALL);
+    }
+
+    @AfterClass
+    public static void tearDownLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+    }
+
+    @Test
+    public void testClassifyRecords() throws DataProcessorError
+    {
+        //
+        // Test that records are counted, classified and forwarded
+        // unchanged in the pdaq monitor format
+        //
+        MockRapCal rapcal = new MockRapCal(0);
+        rapcal.setUpperBound(Long.MAX_VALUE);
+        CapturingConsumer consumer = new CapturingConsumer();
+        MoniProcessor subject = new MoniProcessor(MBID,
+                new UTCMonotonicDispatcher(consumer,
+                        DataProcessor.StreamType.MONI, rapcal, MBID));
+        DataStats counters = new DataStats(MBID);
+
+        byte[][] records =
+                {
+                        hardwareRecord(1000),
+                        asciiRecord(2000, "Starting run"),
+                        asciiRecord(3000, "SPE scaler 1234"),
+                        asciiRecord(4000, "LBM OVERFLOW 12 hits lost"),
+                        asciiRecord(5000, "OVERFLOW"),
+                        asciiRecord(6000, "not Starting run"),
+                        asciiRecord(7000, ""),
+                };
+        ByteBuffer in = concat(records);
+        subject.process(in, counters);
+
+        assertEquals(0, in.remaining());
+        assertEquals(records.length, counters.getNumMoni());
+        assertEquals(1, counters.getNumLBMOverflows());
+
+        assertEquals(records.length, consumer.buffers.size());
+        for (int i = 0; i < records.length; i++)
+        {
+            ByteBuffer out = consumer.buffers.get(i);
+            assertEquals(records[i].length + 32, out.getInt(0));
+            assertEquals(DataProcessor.MAGIC_MONITOR_FMTID, out.getInt(4));
+            assertEquals(MBID, out.getLong(8));
+            assertEquals(250L * 1000 * (i + 1), out.getLong(24));
+            for (int j = 0; j < records[i].length; j++)
+            {
+                assertEquals(records[i][j], out.get(32 + j));
+            }
+        }
+    }
+
+    @Test
+    public void testStartingRun() throws DataProcessorError
+    {
+        //
+        // Test that the run start message releases the deferral gate
+        //
+        MockRapCal rapcal = new MockRapCal(0);
+        rapcal.setUpperBound(Long.MAX_VALUE);
+        CapturingConsumer consumer = new CapturingConsumer();
+        UTCMonotonicDispatcher dispatcher = new UTCMonotonicDispatcher(
+                consumer, DataProcessor.StreamType.MONI, rapcal, MBID, true);
+        MoniProcessor subject = new MoniProcessor(MBID, dispatcher);
+        DataStats counters = new DataStats(MBID);
+
+        subject.process(concat(hardwareRecord(1000),
+                asciiRecord(2000, "run is Starting run")), counters);
+        assertEquals(2, dispatcher.getDeferredRecordCount());
+        assertEquals(0, consumer.buffers.size());
+
+        subject.process(concat(asciiRecord(3000, "Starting run")), counters);
+        assertEquals(0, dispatcher.getDeferredRecordCount());
+        assertEquals(1, consumer.buffers.size());
+        assertEquals(250L * 3000, consumer.buffers.get(0).getLong(24));
+    }
+
+    private static byte[] hardwareRecord(long domclk)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(84);
+        buf.putShort((short) 84).putShort((short) 0xC8);
+        putClock(buf, domclk);
+        for (int i = 0; buf.remaining() > 0; i++)
+        {
+            buf.put((byte) i);
+        }
+        return buf.array();
+    }
+
+    private static byte[] asciiRecord(long domclk, String text)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(10 + text.length());
+        buf.putShort((short) buf.capacity()).putShort((short) 0xCB);
+        putClock(buf, domclk);
+        buf.put(text.getBytes());
+        return buf.array();
+    }
+
+    private static void putClock(ByteBuffer buf, long domclk)
+    {
+        buf.putShort((short) (domclk >>> 32)).putInt((int) domclk);
+    }
+
+    private static ByteBuffer concat(byte[]... records)
+    {
+        int length = 0;
+        for (byte[] record : records)
+        {
+            length += record.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        for (byte[] record : records)
+        {
+            buf.put(record);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static class CapturingConsumer implements BufferConsumer
+    {
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+
+        @Override
+        public void consume(final ByteBuffer buf)
+        {
+            buffers.add(buf);
+        }
+
+        @Override
+        public void endOfStream(final long mbid)
+        {
+            throw new Error("Only used by PrioritySort");
+        }
+    }
+}
@@ -515,6 +515,69 @@ public class UTCMonotonicDispatcherTest
 
     }
 
+    @Test
+    public void testDeferralWrapsAndGrows() throws DataProcessorError
+    {
+        //
+        // Test partial releases which wrap the deferral ring and a
+        // backlog which grows it, records are released in order
+        //
+
+        final long GPS_OFFSET = 12314;
+        MockRapCal rapcal = new MockRapCal(GPS_OFFSET);
+        MockBufferConsumer consumer = new MockBufferConsumer();
+        UTCMonotonicDispatcher subject = new UTCMonotonicDispatcher(consumer,
+                DataProcessor.StreamType.HIT,
+                rapcal, 0xabcdef123456L);
+
+        rapcal.setUpperBound(Long.MIN_VALUE);
+
+        int capacity = UTCMonotonicDispatcher.INITIAL_DEFERRED_CAPACITY;
+        long[] expected = new long[0];
+        long domclk = 1000;
+        for (int round = 0; round < 6; round++)
+        {
+            // grow the backlog on later rounds
+            int num = capacity / 2 + round * capacity / 3;
+            for (int i = 0; i < num; i++)
+            {
+                subject.dispatchBuffer(generateBuffer(domclk));
+                expected = append(expected, domclk);
+                domclk += 10;
+            }
+
+            // release about half of the backlog
+            int remaining = subject.getDeferredRecordCount();
+            long mark = domclk - (remaining / 2) * 10;
+            rapcal.setUpperBound(mark);
+            subject.dispatchBuffer(generateBuffer(domclk));
+            expected = append(expected, domclk);
+            domclk += 10;
+
+            long[] released = new long[0];
+            for (long clk : expected)
+            {
+                if(clk <= mark)
+                {
+                    released = append(released, clk);
+                }
+            }
+            assertArrayEquals("ordered release expected",
+                    toUTC(released, GPS_OFFSET),
+                    consumer.getReceivedTimes());
+        }
+
+        rapcal.setUpperBound(Long.MAX_VALUE);
+        subject.dispatchBuffer(generateBuffer(domclk));
+        expected = append(expected, domclk);
+
+        assertArrayEquals("ordered release expected",
+                toUTC(expected, GPS_OFFSET),
+                consumer.getReceivedTimes());
+        assertEquals("no deferred records expected",
+                0, subject.getDeferredRecordCount());
+    }
+
     /**
      * Append a value to the end of an array.
      */
@@ -0,0 +1,225 @@
+package icecube.daq.dor;
+
+import icecube.daq.domapp.DOMApp;
+import icecube.daq.domapp.DeltaMCodec;
+import icecube.daq.domapp.MessageException;
+import icecube.daq.rapcal.AbstractRAPCal;
+import icecube.daq.rapcal.ZeroCrossingRAPCal;
+import icecube.daq.util.UTC;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests SimulatedDriver.java and SimulatedDOM.java through DOMApp.
+ */
+public class SimulatedDriverTest
+{
+    private final SimulatedDriver driver =
+            new SimulatedDriver(4, 20000.0, 0.5, 500.0, 100.0);
+
+    private DOMApp app;
+
+    @BeforeClass
+    public static void setupLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+    }
+
+    @After
+    public void tearDown()
+    {
+        if(app != null)
+        {
+            app.close();
+        }
+    }
+
+    @Test
+    public void testBootToDOMApp() throws Exception
+    {
+        //
+        // a DOM boots into iceboot and transitions to DOMApp
+        //
+        app = new DOMApp(driver, 0, 1, 'B');
+        assertFalse(app.isRunningDOMApp());
+        assertTrue(app.transitionToDOMApp());
+        assertTrue(app.isRunningDOMApp());
+
+        assertEquals(driver.getProcfileID(0, 1, 'B'), app.getMainboardID());
+        assertEquals(4, driver.discoverActiveDOMs().size());
+
+        try
+        {
+            app.endRun();
+            fail("Ended a run which was not started");
+        }
+        catch (MessageException me)
+        {
+            // expected
+        }
+
+        // a softboot returns to iceboot
+        driver.softboot(0, 1, 'B');
+        assertFalse(app.isRunningDOMApp());
+    }
+
+    @Test
+    public void testDeltaHits() throws Exception
+    {
+        //
+        // delta compressed hits decode with increasing clocks
+        //
+        app = bootDOMApp(0, 0, 'A');
+        app.setDeltaCompressionFormat();
+        app.beginRun();
+        Thread.sleep(100);
+
+        ByteBuffer data = app.getData();
+        assertTrue(data.remaining() > 8);
+        data.order(ByteOrder.BIG_ENDIAN);
+        int len = data.getShort(0);
+        assertEquals(0x90, data.getShort(2));
+        assertEquals(data.remaining(), len);
+        long clockMSB = (data.getShort(4) & 0xffffL) << 32;
+
+        data.position(8);
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        long lastClock = -1;
+        int hits = 0;
+        int hlcHits = 0;
+        while (data.remaining() > 0)
+        {
+            int start = data.position();
+            int word1 = data.getInt();
+            long clock = clockMSB | (data.getInt() & 0xffffffffL);
+            data.getInt();
+            int hitSize = word1 & 0x7ff;
+
+            assertTrue(word1 < 0);
+            assertTrue(clock > lastClock);
+            lastClock = clock;
+
+            if ((word1 & 0x30000) != 0)
+            {
+                assertEquals(0xc000, word1 & 0xc000);
+                assertEquals(2, (word1 >> 12) & 3);
+
+                ByteBuffer waveforms = data.slice();
+                waveforms.order(ByteOrder.LITTLE_ENDIAN);
+                DeltaMCodec codec = new DeltaMCodec(waveforms);
+                short[] fadc = codec.decode(256);
+                assertEquals(100, fadc[0], 2);
+                for (int ch = 0; ch < 3; ch++)
+                {
+                    short[] atwd = codec.decode(128);
+                    assertEquals(130, atwd[0], 2);
+                }
+                hlcHits++;
+            }
+            else
+            {
+                assertEquals(12, hitSize);
+            }
+
+            data.position(start + hitSize);
+            hits++;
+        }
+        assertTrue(hits > 0);
+        assertTrue(hlcHits > 0);
+    }
+
+    @Test
+    public void testInterval() throws Exception
+    {
+        //
+        // an interval delivers data, then monitoring, then supernova
+        //
+        app = bootDOMApp(0, 0, 'A');
+        app.setDeltaCompressionFormat();
+        app.enableSupernova(6400, false);
+        app.setMoniIntervals(4000000, 4000000);
+        app.beginRun();
+        Thread.sleep(250);
+
+        app.getInterval();
+        ByteBuffer recv = ByteBuffer.allocate(4092);
+        int dataMessages = 0;
+        while (true)
+        {
+            app.recvMessage(recv);
+            if (recv.get(1) != 11) break;
+            dataMessages++;
+        }
+        assertTrue(dataMessages > 0);
+
+        // moni, starting with the run start
+        assertEquals(12, recv.get(1));
+        recv.position(8);
+        ByteBuffer moni = recv.slice();
+        assertEquals(0xCB, moni.getShort(2));
+        String text = new String(moni.array(), moni.arrayOffset() + 10,
+                moni.getShort(0) - 10);
+        assertTrue(text.contains("Starting run"));
+        boolean hardware = false;
+        while (moni.remaining() > 0)
+        {
+            int recl = moni.getShort(moni.position());
+            hardware |= (moni.getShort(moni.position() + 2) == 0xC8);
+            moni.position(moni.position() + recl);
+        }
+        assertTrue(hardware);
+
+        // supernova
+        app.recvMessage(recv);
+        assertEquals(28, recv.get(1));
+        assertEquals(300, recv.getShort(8 + 2));
+        assertTrue(recv.getShort(8) - 10 > 100);
+    }
+
+    @Test
+    public void testTimeCalibration() throws Exception
+    {
+        //
+        // RAPCal recovers the cable delay of the simulated time calibrations
+        //
+        AbstractRAPCal rc = new ZeroCrossingRAPCal();
+        rc.setMainboardID(0x51d000000000L);
+
+        UTC gpsOffset = driver.readGPS(driver.getGPSFile(0)).getOffset();
+        File tcalFile = driver.getTCALFile(0, 0, 'A');
+        TimeCalib tcal = null;
+        for (int i = 0; i < 12; i++)
+        {
+            tcal = driver.readTCAL(tcalFile);
+            rc.update(tcal, gpsOffset);
+            Thread.sleep(2);
+        }
+        assertTrue(rc.isReady());
+        assertEquals(1.5e-6, rc.cableLength(), 1.0e-9);
+
+        // the DOM receives the tcal one cable delay after the DOR sends it
+        long expected = gpsOffset.in_0_1ns() +
+                500L * tcal.getDorTxInDorUnits() + 15000L;
+        long actual = rc.domToUTC(tcal.getDomRxInDomUnits()).in_0_1ns();
+        assertEquals(expected, actual, 1000);
+    }
+
+    private DOMApp bootDOMApp(int card, int pair, char dom) throws Exception
+    {
+        DOMApp domapp = new DOMApp(driver, card, pair, dom);
+        assertFalse(domapp.isRunningDOMApp());
+        domapp.transitionToDOMApp();
+        return domapp;
+    }
+}
@@ -0,0 +1,253 @@
+package icecube.daq.dor;
+
+import icecube.daq.dor.test.MockDriverBase;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests TCALService against a simulated driver.
+ */
+public class TCALServiceTest
+{
+    private static final long WAIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private TCALService service;
+
+    @After
+    public void tearDown()
+    {
+        if (service != null)
+        {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentTCALs() throws Exception
+    {
+        //
+        // TCALs of many channels should be in flight together
+        //
+        SimDriver driver = new SimDriver(TimeUnit.MILLISECONDS.toNanos(20));
+        service = new TCALService(driver);
+
+        List<TCALService.Channel> channels = new ArrayList<>();
+        for (int i = 0; i < 16; i++)
+        {
+            channels.add(service.register(new File("tcal" + i), "" + i));
+        }
+
+        for (TCALService.Channel channel : channels)
+        {
+            assertTrue(channel.request());
+        }
+        for (TCALService.Channel channel : channels)
+        {
+            TCALService.Result result = channel.await(WAIT_NANOS);
+            assertNotNull(result.getTimeCalib());
+            assertTrue(result.getCompletedNanos() >=
+                    result.getInitiatedNanos());
+            assertFalse(channel.isPending());
+        }
+
+        assertTrue("TCALs were not overlapped",
+                driver.maxInFlight.get() > 1);
+        assertEquals(16, driver.opens.get());
+    }
+
+    @Test
+    public void testPollAndHandleReuse() throws Exception
+    {
+        //
+        // poll() never waits, the tcalib handle stays open between TCALs
+        //
+        SimDriver driver = new SimDriver(TimeUnit.MILLISECONDS.toNanos(20));
+        service = new TCALService(driver);
+        TCALService.Channel channel = service.register(new File("tcal"), "A");
+
+        assertNull(channel.poll());
+
+        assertTrue(channel.request());
+        assertFalse("Second request accepted", channel.request());
+        assertTrue(channel.isPending());
+        assertNull(channel.poll());
+
+        long deadline = System.nanoTime() + WAIT_NANOS;
+        TCALService.Result result = null;
+        while (result == null && System.nanoTime() < deadline)
+        {
+            result = channel.poll();
+            Thread.sleep(1);
+        }
+        assertNotNull("TCAL did not complete", result);
+        assertEquals(1L, result.getTimeCalib().getDorTxInDorUnits());
+
+        assertEquals(2L, channel.await(WAIT_NANOS).getTimeCalib()
+                .getDorTxInDorUnits());
+        assertEquals(3L, channel.await(WAIT_NANOS).getTimeCalib()
+                .getDorTxInDorUnits());
+        assertEquals(1, driver.opens.get());
+
+        channel.release();
+        waitForCloses(driver, 1);
+
+        channel.await(WAIT_NANOS);
+        assertEquals(2, driver.opens.get());
+    }
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        //
+        // a TCAL which never completes fails, and the handle is reopened
+        //
+        SimDriver driver = new SimDriver(Long.MAX_VALUE);
+        service = new TCALService(driver);
+        TCALService.Channel channel = service.register(new File("tcal"), "A");
+
+        try
+        {
+            channel.await(WAIT_NANOS);
+            fail("TCAL did not fail");
+        }
+        catch (IOException ioe)
+        {
+            assertEquals("TCAL read failed.", ioe.getMessage());
+        }
+        assertFalse(channel.isPending());
+        waitForCloses(driver, 1);
+
+        driver.completionNanos = 0;
+        assertNotNull(channel.await(WAIT_NANOS));
+        assertEquals(2, driver.opens.get());
+    }
+
+    @Test
+    public void testBlockingDriver() throws Exception
+    {
+        //
+        // drivers which only implement readTCAL() are supported
+        //
+        service = new TCALService(new MockDriverBase()
+        {
+            @Override
+            public TimeCalib readTCAL(final File tcalFile)
+                    throws IOException, InterruptedException
+            {
+                Thread.sleep(5);
+                return buildTimeCalib(99L, System.nanoTime());
+            }
+        });
+        TCALService.Channel channel = service.register(new File("tcal"), "A");
+
+        assertEquals(99L, channel.await(WAIT_NANOS).getTimeCalib()
+                .getDorTxInDorUnits());
+    }
+
+    private static void waitForCloses(SimDriver driver, int expected)
+            throws InterruptedException
+    {
+        long deadline = System.nanoTime() + WAIT_NANOS;
+        while (driver.closes.get() < expected)
+        {
+            if (System.nanoTime() > deadline)
+            {
+                fail("Handle was not closed");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static TimeCalib buildTimeCalib(long dorTx, long txNano)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(292);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putShort((short) 292);
+        buf.putShort((short) 0);
+        buf.putLong(dorTx);
+        buf.position(0);
+        return new TimeCalib(buf, txNano);
+    }
+
+    /**
+     * Driver whose TCALs complete a fixed time after they are initiated.
+     */
+    private static class SimDriver extends MockDriverBase
+    {
+        volatile long completionNanos;
+
+        final AtomicInteger opens = new AtomicInteger();
+        final AtomicInteger closes = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        SimDriver(long completionNanos)
+        {
+            this.completionNanos = completionNanos;
+        }
+
+        @Override
+        public TCALHandle openTCAL(final File tcalFile)
+        {
+            opens.incrementAndGet();
+            return new TCALHandle()
+            {
+                long txNano;
+                long count;
+                boolean initiated;
+
+                @Override
+                public void initiate()
+                {
+                    txNano = System.nanoTime();
+                    initiated = true;
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(),
+                            Math::max);
+                }
+
+                @Override
+                public TimeCalib poll() throws IOException
+                {
+                    if (!initiated)
+                    {
+                        throw new IOException("Not initiated");
+                    }
+                    if (System.nanoTime() - txNano < completionNanos)
+                    {
+                        return null;
+                    }
+
+                    initiated = false;
+                    inFlight.decrementAndGet();
+                    return buildTimeCalib(++count, txNano);
+                }
+
+                @Override
+                public void close()
+                {
+                    if (initiated)
+                    {
+                        inFlight.decrementAndGet();
+                    }
+                    closes.incrementAndGet();
+                }
+            };
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package icecube.daq.dor.test;
 
+import icecube.daq.dor.DOMChannelInfo;
 import icecube.daq.dor.GPSException;
 import icecube.daq.dor.GPSInfo;
 import icecube.daq.dor.IDriver;
@@ -7,7 +8,9 @@ import icecube.daq.dor.TimeCalib;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Sets up a base DOR driver to be extended by Mocks.
@@ -87,4 +90,10 @@ public class MockDriverBase implements IDriver
     {
         return null;
     }
+
+    @Override
+    public List<DOMChannelInfo> discoverActiveDOMs() throws IOException
+    {
+        return new ArrayList<DOMChannelInfo>();
+    }
 }
@@ -0,0 +1,175 @@
+package icecube.daq.monitoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CountBinnerTest
+{
+    /**
+     * Generic implementation used as the reference
+     */
+    class RefConsumer
+        extends BinnedQueueConsumer<Object, Long, Counter>
+    {
+        private TreeSet<Long> keys = new TreeSet<Long>();
+        private List<String> reports = new ArrayList<String>();
+
+        RefConsumer(long binWidth)
+        {
+            super(null, binWidth);
+        }
+
+        @Override
+        BinManager<Counter> createBinManager(Long key, long binStart,
+                                             long binWidth)
+        {
+            return new BinManager<Counter>(key.toString(), binStart,
+                                           binWidth)
+            {
+                @Override
+                Counter createBinContainer()
+                {
+                    return new Counter();
+                }
+            };
+        }
+
+        boolean count(long key, long binIndex)
+        {
+            keys.add(key);
+            try {
+                reportEvent(binIndex, key).inc();
+                return true;
+            } catch (ExpiredRange er) {
+                return false;
+            }
+        }
+
+        @Override
+        void process(Object value)
+        {
+            throw new Error("Unused");
+        }
+
+        @Override
+        void sendData(long binStart, long binEnd)
+        {
+            TreeMap<Long, Integer> counts = new TreeMap<Long, Integer>();
+            for (Long key : keys) {
+                Counter ctr = getExisting(key, binStart, binEnd);
+                counts.put(key, ctr == null ? 0 : ctr.get());
+            }
+            reports.add(binStart + "-" + binEnd + " " + counts);
+        }
+    }
+
+    class Reports
+        implements CountBinner.Reporter
+    {
+        private CountBinner binner;
+        private TreeSet<Long> keys = new TreeSet<Long>();
+        private List<String> reports = new ArrayList<String>();
+
+        @Override
+        public void sendData(long binStart, long binEnd)
+        {
+            TreeMap<Long, Integer> counts = new TreeMap<Long, Integer>();
+            for (Long key : keys) {
+                counts.put(key, (int) binner.getCount(key, binStart, binEnd));
+            }
+            reports.add(binStart + "-" + binEnd + " " + counts);
+        }
+    }
+
+    @Test
+    public void testSimple()
+    {
+        Reports rpt = new Reports();
+        CountBinner binner = new CountBinner(10L, rpt);
+        rpt.binner = binner;
+
+        rpt.keys.add(1L);
+        rpt.keys.add(2L);
+        for (long i = 10; i < 50; i += 5) {
+            assertTrue(binner.count(1L, i));
+            assertTrue(binner.count(2L, i));
+        }
+
+        assertEquals(2, rpt.reports.size());
+        assertEquals("10-19 {1=2, 2=2}", rpt.reports.get(0));
+        assertEquals("20-29 {1=2, 2=2}", rpt.reports.get(1));
+
+        assertFalse("Late value was counted", binner.count(1L, 29L));
+
+        binner.sendRunData();
+
+        assertEquals(4, rpt.reports.size());
+        assertEquals("30-39 {1=2, 2=2}", rpt.reports.get(2));
+        assertEquals("40-45 {1=2, 2=2}", rpt.reports.get(3));
+    }
+
+    @Test
+    public void testMatchesGeneric()
+    {
+        final long binWidth = 1000L;
+        final Random rand = new Random(12345L);
+
+        for (int pass = 0; pass < 20; pass++) {
+            RefConsumer ref = new RefConsumer(binWidth);
+            Reports rpt = new Reports();
+            CountBinner binner = new CountBinner(binWidth, rpt);
+            rpt.binner = binner;
+
+            // more DOMs than the initial number of slots
+            final int numDoms = 1 + rand.nextInt(150);
+            long time = rand.nextInt(100000);
+            for (int run = 0; run < 3; run++) {
+                for (int i = 0; i < 20000; i++) {
+                    final long mbid = 0x100000000L + rand.nextInt(numDoms);
+
+                    time += rand.nextInt(20);
+                    if (rand.nextInt(500) == 0) {
+                        time += rand.nextInt(5000);
+                    }
+                    long utc = time;
+                    if (rand.nextInt(50) == 0) {
+                        utc -= rand.nextInt(3000);
+                    }
+
+                    rpt.keys.add(mbid);
+
+                    Throwable refErr = null;
+                    boolean refVal = false;
+                    try {
+                        refVal = ref.count(mbid, utc);
+                    } catch (Error err) {
+                        refErr = err;
+                    }
+
+                    Throwable newErr = null;
+                    boolean newVal = false;
+                    try {
+                        newVal = binner.count(mbid, utc);
+                    } catch (Error err) {
+                        newErr = err;
+                    }
+
+                    assertEquals("Mismatched error", refErr == null,
+                                 newErr == null);
+                    assertEquals("Mismatched result", refVal, newVal);
+                }
+
+                ref.sendRunData();
+                binner.sendRunData();
+
+                assertEquals(ref.reports, rpt.reports);
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
@@ -89,6 +90,38 @@ class MockAlertQueue
     }
 }
 
+class CapturingAlertQueue
+    extends MockAlertQueue
+{
+    private final List<String> names = new ArrayList<String>();
+    private final List<Map<String, Object>> values =
+        new ArrayList<Map<String, Object>>();
+
+    @Override
+    public synchronized void push(String varname, Alerter.Priority prio,
+                                  IUTCTime utcTime, Map<String, Object> values)
+        throws AlertException
+    {
+        super.push(varname, prio, utcTime, values);
+        names.add(varname);
+        this.values.add(values);
+    }
+
+    /**
+     * Return the sent values of a quantity.
+     */
+    synchronized List<Map<String, Object>> getValues(String varname)
+    {
+        List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equals(varname)) {
+                list.add(values.get(i));
+            }
+        }
+        return list;
+    }
+}
+
 class MockDOMRegistry
     implements IDOMRegistry
 {
@@ -948,4 +981,189 @@ public class RunMonitorTest
 
         assertEquals("Did not receive monitoring data", 3, aq.getNumPushed());
     }
+
+    @Test
+    public void testHLCCountReusedArrays()
+        throws InterruptedException
+    {
+        final int string = 8;
+
+        CapturingAlertQueue aq = new CapturingAlertQueue();
+        RunMonitor runMon = new RunMonitor(string, aq);
+        runMon.start();
+
+        final long DOM0 = 111111111L;
+        final long DOM1 = 123456789L;
+
+        List<DOMInfo> cfgDOMList = new ArrayList<DOMInfo>();
+        cfgDOMList.add(new DOMInfo(DOM0, string, 7));
+        cfgDOMList.add(new DOMInfo(DOM1, string, 62));
+        runMon.setConfiguredDOMs(cfgDOMList);
+
+        waitForThreadStart(runMon);
+
+        final int runNum = 123456;
+        runMon.setRunNumber(runNum);
+        waitForRunSwitch(runMon, runNum, 100);
+
+        // the reporter overwrites its arrays as soon as each call returns
+        long[] mbid = new long[150];
+        long[] utc = new long[150];
+        long time = 1000000L;
+        int dom0Hits = 0;
+        int dom1Hits = 0;
+        for (int batch = 0; batch < 500; batch++) {
+            final int length = 1 + (batch % 150);
+            for (int i = 0; i < length; i++) {
+                final boolean first = (batch + i) % 3 == 0;
+                mbid[i] = first ? DOM0 : DOM1;
+                utc[i] = time++;
+                if (first) {
+                    dom0Hits++;
+                } else {
+                    dom1Hits++;
+                }
+            }
+            runMon.countHLCHit(mbid, utc, length);
+
+            java.util.Arrays.fill(mbid, -1L);
+            java.util.Arrays.fill(utc, -1L);
+        }
+
+        runMon.stop();
+        runMon.join();
+
+        int sent0 = 0;
+        int sent1 = 0;
+        for (Map<String, Object> values :
+                 aq.getValues(HLCCountConsumer.NAME))
+        {
+            Map<?, ?> counts = (Map<?, ?>) values.get("counts");
+            sent0 += (Integer) counts.get(string + "-7");
+            sent1 += (Integer) counts.get(string + "-62");
+        }
+        assertEquals("Bad DOM0 HLC count", dom0Hits, sent0);
+        assertEquals("Bad DOM1 HLC count", dom1Hits, sent1);
+    }
+
+    @Test
+    public void testConcurrentSubmit()
+        throws InterruptedException
+    {
+        final int string = 6;
+        final int numThreads = 4;
+        final int numEvents = 20000;
+
+        CapturingAlertQueue aq = new CapturingAlertQueue();
+        final RunMonitor runMon = new RunMonitor(string, aq);
+        runMon.start();
+
+        List<DOMInfo> cfgDOMList = new ArrayList<DOMInfo>();
+        cfgDOMList.add(new DOMInfo(111111111L, string, 7));
+        runMon.setConfiguredDOMs(cfgDOMList);
+        waitForThreadStart(runMon);
+
+        final int runNum = 123456;
+        runMon.setRunNumber(runNum);
+        waitForRunSwitch(runMon, runNum, 100);
+
+        // push from several threads while the monitor thread drains
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] producers = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int card = t;
+            producers[t] = new Thread() {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            go.await();
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                        for (int i = 0; i < numEvents; i++) {
+                            runMon.pushGPSProcfileNotReady(string, card);
+                            if (i % 1000 == 0) {
+                                Thread.yield();
+                            }
+                        }
+                    }
+                };
+            producers[t].start();
+        }
+        go.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        runMon.stop();
+        runMon.join();
+
+        List<Map<String, Object>> sent =
+            aq.getValues(ProcfileConsumer.NAME);
+        assertEquals("Bad number of procfile reports", 1, sent.size());
+        assertEquals(runNum, sent.get(0).get("runNumber"));
+
+        Map<?, ?> counts = (Map<?, ?>) sent.get(0).get("counts");
+        assertEquals("Bad number of cards", numThreads, counts.size());
+        for (int t = 0; t < numThreads; t++) {
+            assertEquals("Lost events for card " + t, numEvents,
+                         counts.get(Integer.toString(t)));
+        }
+    }
+
+    @Test
+    public void testSwitchAfterQueuedCounts()
+        throws InterruptedException
+    {
+        final int string = 7;
+
+        CapturingAlertQueue aq = new CapturingAlertQueue();
+        RunMonitor runMon = new RunMonitor(string, aq);
+        runMon.start();
+
+        List<DOMInfo> cfgDOMList = new ArrayList<DOMInfo>();
+        cfgDOMList.add(new DOMInfo(111111111L, string, 7));
+        runMon.setConfiguredDOMs(cfgDOMList);
+        waitForThreadStart(runMon);
+
+        int runNum = 123456;
+        runMon.setRunNumber(runNum);
+        waitForRunSwitch(runMon, runNum, 100);
+
+        // each run's counts are queued immediately before the switch,
+        // so they are still in the intake when the switch is requested
+        for (int run = 0; run < 5; run++) {
+            final int numEvents = 1000 * (run + 1);
+            for (int i = 0; i < numEvents; i++) {
+                runMon.pushGPSProcfileNotReady(string, run);
+            }
+
+            runNum++;
+            runMon.setRunNumber(runNum);
+            waitForRunSwitch(runMon, runNum, 100);
+
+            List<Map<String, Object>> sent =
+                aq.getValues(ProcfileConsumer.NAME);
+            assertEquals("Bad number of procfile reports", run + 1,
+                         sent.size());
+            assertEquals("Counts sent for the wrong run", runNum - 1,
+                         sent.get(run).get("runNumber"));
+
+            Map<?, ?> counts = (Map<?, ?>) sent.get(run).get("counts");
+            assertEquals("Counts leaked across runs", 1, counts.size());
+            assertEquals("Counts were not sent with their run", numEvents,
+                         counts.get(Integer.toString(run)));
+        }
+
+        runMon.stop();
+        runMon.join();
+
+        // nothing was queued in the last run
+        List<Map<String, Object>> sent = aq.getValues(ProcfileConsumer.NAME);
+        assertEquals("Bad number of procfile reports", 6, sent.size());
+        assertEquals(runNum, sent.get(5).get("runNumber"));
+        assertEquals("Counts leaked across runs", 0,
+                     ((Map<?, ?>) sent.get(5).get("counts")).size());
+    }
 }
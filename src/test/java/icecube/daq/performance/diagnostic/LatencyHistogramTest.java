@@ -0,0 +1,152 @@
+package icecube.daq.performance.diagnostic;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests LatencyHistogram.java
+ */
+public class LatencyHistogramTest
+{
+
+    @Test
+    public void testBucketBoundaries()
+    {
+        // exact below 64
+        for (int i = 0; i < 64; i++)
+        {
+            assertEquals(i, LatencyHistogram.indexOf(i));
+            assertEquals(i, LatencyHistogram.highestEquivalentValue(i));
+        }
+
+        // buckets are contiguous and ordered
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++)
+        {
+            long low = LatencyHistogram.highestEquivalentValue(i - 1) + 1;
+            long high = LatencyHistogram.highestEquivalentValue(i);
+            assertTrue(high >= low);
+            assertEquals(i, LatencyHistogram.indexOf(low));
+            assertEquals(i, LatencyHistogram.indexOf(high));
+        }
+
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS,
+                LatencyHistogram.highestEquivalentValue(
+                        LatencyHistogram.BUCKET_COUNT - 1));
+
+        // clamping
+        assertEquals(0, LatencyHistogram.indexOf(-100));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+                LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPrecision()
+    {
+        Random random = new Random(8675309);
+        for (int i = 0; i < 100000; i++)
+        {
+            long value = (long) (Math.pow(10, random.nextDouble() * 12));
+            int index = LatencyHistogram.indexOf(value);
+            long high = LatencyHistogram.highestEquivalentValue(index);
+            assertTrue(high >= value);
+            assertTrue((high - value) <= (value / 32) + 1);
+        }
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram subject = new LatencyHistogram();
+        assertArrayEquals(new long[]{0, 0, 0, 0},
+                subject.snapshot().summary());
+
+        long[] values = new long[10000];
+        Random random = new Random(42);
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = random.nextInt(50000000);
+            subject.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        LatencyHistogram.Snapshot snapshot = subject.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+
+        double[] percentiles = {50.0, 99.0, 99.9, 100.0};
+        for (double percentile : percentiles)
+        {
+            int rank = (int) Math.ceil(percentile / 100 * values.length);
+            long expected = values[rank - 1];
+            long actual = snapshot.getValueAtPercentile(percentile);
+            assertTrue(actual >= expected);
+            assertTrue((actual - expected) <= (expected / 32) + 1);
+        }
+    }
+
+    @Test
+    public void testIntervals()
+    {
+        LatencyHistogram subject = new LatencyHistogram();
+        subject.record(100);
+        subject.record(1000000);
+        LatencyHistogram.Snapshot first = subject.snapshot();
+
+        subject.record(200);
+        subject.record(300);
+        LatencyHistogram.Snapshot second = subject.snapshot();
+
+        LatencyHistogram.Snapshot interval = second.since(first);
+        assertEquals(2, interval.getCount());
+        assertTrue(interval.getMax() >= 300);
+        assertTrue(interval.getMax() < 1000000);
+
+        // null and unrelated baselines yield the full snapshot
+        assertSame(second, second.since(null));
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(5000);
+        assertSame(second, second.since(other.snapshot()));
+
+        LatencyHistogram.Snapshot sum = second.add(other.snapshot());
+        assertEquals(5, sum.getCount());
+        assertEquals(1000000, sum.getMax());
+        assertEquals(0, LatencyHistogram.EMPTY.add(
+                LatencyHistogram.EMPTY).getCount());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException
+    {
+        final LatencyHistogram subject = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++)
+        {
+            final int id = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 100000; j++)
+                    {
+                        subject.record(id * 1000 + (j % 1000));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = subject.snapshot();
+        assertEquals(400000, snapshot.getCount());
+        assertEquals(3999, snapshot.getMax());
+    }
+
+}
@@ -0,0 +1,88 @@
+package icecube.daq.performance.diagnostic;
+
+import icecube.daq.performance.common.PowersOfTwo;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests SampledQueueTimer.java
+ */
+public class SampledQueueTimerTest
+{
+
+    @Test
+    public void testSampling()
+    {
+        SampledQueueTimer subject =
+                new SampledQueueTimer(PowersOfTwo._1024, PowersOfTwo._8);
+
+        long before = System.nanoTime();
+        for (int i = 0; i < 1024; i++)
+        {
+            subject.stamp();
+            subject.commit();
+        }
+        long after = System.nanoTime();
+
+        for (int i = 0; i < 1024; i++)
+        {
+            long stamp = subject.dequeue();
+            if (i % 8 == 0)
+            {
+                assertTrue(stamp >= before);
+                assertTrue(stamp <= after);
+            }
+            else
+            {
+                assertEquals(SampledQueueTimer.NOT_SAMPLED, stamp);
+            }
+        }
+    }
+
+    @Test
+    public void testWrapping()
+    {
+        // run well past the ring size with a shallow queue
+        SampledQueueTimer subject =
+                new SampledQueueTimer(PowersOfTwo._16, PowersOfTwo._1);
+
+        for (int i = 0; i < 100000; i++)
+        {
+            long before = System.nanoTime();
+            subject.stamp();
+            subject.commit();
+            subject.stamp();
+            subject.commit();
+            long first = subject.dequeue();
+            long second = subject.dequeue();
+            assertTrue(first >= before);
+            assertTrue(second >= first);
+        }
+    }
+
+    @Test
+    public void testFailedEnqueue()
+    {
+        //
+        // Test that a stamp which is not committed does not shift the
+        // stamps of later elements
+        //
+        SampledQueueTimer subject =
+                new SampledQueueTimer(PowersOfTwo._16, PowersOfTwo._1);
+
+        subject.stamp();
+        long before = System.nanoTime();
+        subject.stamp();
+        subject.commit();
+        long after = System.nanoTime();
+        subject.stamp();
+        subject.commit();
+
+        long first = subject.dequeue();
+        assertTrue(first >= before);
+        assertTrue(first <= after);
+        assertTrue(subject.dequeue() >= after);
+    }
+
+}
@@ -0,0 +1,234 @@
+package icecube.daq.rapcal;
+
+import icecube.daq.dor.TimeCalib;
+import icecube.daq.util.UTC;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static icecube.daq.rapcal.BuildTCalMethods.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests RAPCalCheckpoint.java and the RAPCal warm start.
+ */
+public class RAPCalCheckpointTest
+{
+    private static final long MBID = 0x123456789abcL;
+
+    private static final long DOR_TICS_PER_SECOND = 20000000L;
+
+    /** A DOM clock 1 ppm fast. */
+    private static final long DOM_TICS_PER_SECOND = 40000040L;
+
+    private static final UTC GPS = new UTC(1252454516L);
+
+    private static final long NOW = 1500000000000L;
+
+    private File file;
+
+    @BeforeClass
+    public static void setupLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+    }
+
+    @After
+    public void tearDown()
+    {
+        if(file != null)
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReadWrite() throws Exception
+    {
+        //
+        // a checkpoint round trips through a file
+        //
+        AbstractRAPCal rc = warmRAPCal(0, 5);
+        assertNull(new MyRAPCal().checkpoint(NOW));
+
+        RAPCalCheckpoint checkpoint = rc.checkpoint(NOW);
+        assertEquals(5, checkpoint.size());
+
+        file = File.createTempFile("rapcal", ".ckpt");
+        checkpoint.write(file);
+        RAPCalCheckpoint read = RAPCalCheckpoint.read(file);
+
+        assertEquals(MBID, read.getMainboardID());
+        assertEquals(MyRAPCal.class.getName(), read.getRAPCalClass());
+        assertEquals(NOW, read.getSavedMillis());
+        assertEquals(rc.cableLength(), read.getCableLengthAverage(), 0.0);
+        assertEquals(5, read.getStableSamples());
+        assertEquals(checkpoint.size(), read.size());
+        for (int i = 0; i <= checkpoint.size(); i++)
+        {
+            assertArrayEquals(checkpoint.getTCal(i), read.getTCal(i));
+        }
+        for (int i = 0; i < checkpoint.size(); i++)
+        {
+            assertEquals(checkpoint.getGpsOffset(i), read.getGpsOffset(i));
+        }
+
+        // a truncated file is rejected
+        java.nio.file.Files.write(file.toPath(),
+                java.util.Arrays.copyOf(
+                        java.nio.file.Files.readAllBytes(file.toPath()), 40));
+        try
+        {
+            RAPCalCheckpoint.read(file);
+            fail("Truncated checkpoint was read");
+        }
+        catch (IOException ioe)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWarmStart() throws Exception
+    {
+        //
+        // a seeded rapcal is ready after the first fresh tcal and
+        // reconstructs as if it had seen every tcal
+        //
+        RAPCalCheckpoint checkpoint = warmRAPCal(0, 5).checkpoint(NOW);
+
+        AbstractRAPCal reference = warmRAPCal(0, 5);
+        reference.update(tcal(65), GPS);
+
+        AbstractRAPCal rc = newRAPCal();
+        assertTrue(rc.seed(checkpoint, NOW + 60000));
+        assertFalse(rc.isReady());
+        assertNull(rc.domToUTC(domClock(64)));
+
+        assertTrue(rc.update(tcal(65), GPS));
+        assertTrue(rc.isReady());
+        assertEquals(reference.cableLength(), rc.cableLength(), 0.0);
+        assertEquals(reference.epsilon(), rc.epsilon(), 0.0);
+        for (long second : new long[] {3, 30, 64, 65, 66})
+        {
+            assertEquals(reference.domToUTC(domClock(second)).in_0_1ns(),
+                    rc.domToUTC(domClock(second)).in_0_1ns());
+        }
+
+        // history continues
+        assertTrue(rc.update(tcal(66), GPS));
+        assertTrue(rc.laterThan(domClock(66)));
+    }
+
+    @Test
+    public void testRejectCheckpoint() throws Exception
+    {
+        //
+        // stale, foreign or partial checkpoints do not seed
+        //
+        RAPCalCheckpoint checkpoint = warmRAPCal(0, 5).checkpoint(NOW);
+
+        assertFalse(newRAPCal().seed(checkpoint,
+                NOW + AbstractRAPCal.CHECKPOINT_MAX_AGE_MILLIS + 1));
+        assertFalse(newRAPCal().seed(checkpoint, NOW - 1));
+
+        AbstractRAPCal other = new MyRAPCal();
+        other.setMainboardID(MBID + 1);
+        assertFalse(other.seed(checkpoint, NOW));
+
+        assertFalse(warmRAPCal(0, 1).seed(checkpoint, NOW));
+
+        // cable length not yet established
+        RAPCalCheckpoint early = warmRAPCal(0, 2).checkpoint(NOW);
+        assertFalse(newRAPCal().seed(early, NOW));
+    }
+
+    @Test
+    public void testDiscardInconsistent() throws Exception
+    {
+        //
+        // a seed inconsistent with the first fresh tcal is discarded and
+        // initialization proceeds from that tcal
+        //
+        RAPCalCheckpoint checkpoint = warmRAPCal(0, 5).checkpoint(NOW);
+
+        // DOM clock reset by a softboot
+        AbstractRAPCal rc = newRAPCal();
+        assertTrue(rc.seed(checkpoint, NOW));
+        assertTrue(rc.update(tcal(30, 30 * DOR_TICS_PER_SECOND, 0), GPS));
+        assertFalse(rc.isReady());
+        assertTrue(rc.update(tcal(31, 30 * DOR_TICS_PER_SECOND, 0), GPS));
+        assertTrue(rc.isReady());
+
+        // UTC offset jump
+        rc = newRAPCal();
+        assertTrue(rc.seed(checkpoint, NOW));
+        assertTrue(rc.update(tcal(30), new UTC(GPS.in_0_1ns() + 10000000000L)));
+        assertFalse(rc.isReady());
+
+        // DOM frequency changed
+        rc = newRAPCal();
+        assertTrue(rc.seed(checkpoint, NOW));
+        assertTrue(rc.update(tcal(30, 0, 40 * 30), GPS));
+        assertFalse(rc.isReady());
+
+        // span longer than the checkpoint age limit
+        rc = newRAPCal();
+        assertTrue(rc.seed(checkpoint, NOW));
+        assertTrue(rc.update(tcal(5 +
+                AbstractRAPCal.CHECKPOINT_MAX_AGE_MILLIS / 1000 + 1), GPS));
+        assertFalse(rc.isReady());
+    }
+
+    private static AbstractRAPCal newRAPCal()
+    {
+        AbstractRAPCal rc = new MyRAPCal();
+        rc.setMainboardID(MBID);
+        return rc;
+    }
+
+    /**
+     * A rapcal updated with tcals one second apart.
+     */
+    private static AbstractRAPCal warmRAPCal(long first, long last)
+        throws RAPCalException
+    {
+        AbstractRAPCal rc = newRAPCal();
+        for (long second = first; second <= last; second++)
+        {
+            rc.update(tcal(second), GPS);
+        }
+        return rc;
+    }
+
+    private static long domClock(long second)
+    {
+        return 1000000000L + second * DOM_TICS_PER_SECOND;
+    }
+
+    private static TimeCalib tcal(long second)
+    {
+        return tcal(second, 0, 0);
+    }
+
+    /**
+     * A tcal with a constant round trip, optionally offsetting the DOM
+     * clock.
+     */
+    private static TimeCalib tcal(long second, long domReset, long domDrift)
+    {
+        long dorTx = 5000000000L + second * DOR_TICS_PER_SECOND;
+        long dorRx = dorTx + 200;
+        long domRx = domClock(second) - domReset *
+                (DOM_TICS_PER_SECOND / DOR_TICS_PER_SECOND) + domDrift;
+        long domTx = domRx + 300;
+        return buildTimeCalib(dorTx, dorRx, domRx, domTx);
+    }
+}
@@ -0,0 +1,188 @@
+package icecube.daq.replay;
+
+import icecube.daq.payload.PayloadRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests FileHandler.java
+ */
+public class FileHandlerTest
+{
+    @BeforeClass
+    public static void setupLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+    }
+
+    @Test
+    public void testEndOfStream()
+        throws Exception
+    {
+        //
+        // Test that every payload reaches the output in order, followed
+        // by a single stop when the reader is exhausted
+        //
+        final int numPayloads = 1000;
+        List<ByteBuffer> payloads = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < numPayloads; i++) {
+            payloads.add(hit(1000L + i * 10L));
+        }
+
+        FileHandler handler =
+            new FileHandler(1, DataStreamType.HIT, new Reader(payloads));
+        handler.setReplayTimeKeeper(unthrottled());
+
+        Capture out = new Capture();
+        handler.startThreads(out);
+
+        assertTrue("Output was not stopped",
+                   out.stopped.await(10, TimeUnit.SECONDS));
+        assertEquals(numPayloads, out.sent.size());
+        for (int i = 0; i < numPayloads; i++) {
+            assertSame(payloads.get(i), out.sent.get(i));
+        }
+        assertEquals(numPayloads, handler.getTotalPayloads());
+        assertEquals(0L, handler.getNumInputsQueued());
+        assertEquals(0L, handler.getNumOutputsQueued());
+
+        Thread.sleep(100);
+        assertEquals(1, out.numStops);
+    }
+
+    @Test
+    public void testEmpty()
+        throws Exception
+    {
+        //
+        // Test that an empty reader still stops the output
+        //
+        FileHandler handler =
+            new FileHandler(2, DataStreamType.MONI,
+                            new Reader(new ArrayList<ByteBuffer>()));
+        handler.setReplayTimeKeeper(unthrottled());
+
+        Capture out = new Capture();
+        handler.startThreads(out);
+
+        assertTrue("Output was not stopped",
+                   out.stopped.await(10, TimeUnit.SECONDS));
+        assertEquals(0, out.sent.size());
+        assertEquals(0L, handler.getTotalPayloads());
+    }
+
+    @Test
+    public void testOffset()
+        throws Exception
+    {
+        //
+        // Test that the offset is applied to each payload's time
+        //
+        List<ByteBuffer> payloads = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < 10; i++) {
+            payloads.add(hit(1000L + i));
+        }
+
+        FileHandler handler =
+            new FileHandler(3, DataStreamType.HIT, new Reader(payloads));
+        handler.setReplayTimeKeeper(unthrottled());
+        handler.setReplayOffset(500L);
+
+        Capture out = new Capture();
+        handler.startThreads(out);
+
+        assertTrue("Output was not stopped",
+                   out.stopped.await(10, TimeUnit.SECONDS));
+        assertEquals(10, out.sent.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1500L + i, BBUTC.get(out.sent.get(i)));
+        }
+    }
+
+    private static ReplayTimeKeeper unthrottled()
+    {
+        return new ReplayTimeKeeper(0, ReplayTimeKeeper.UNTHROTTLED,
+                                    ReplayTimeKeeper.DEFAULT_MAX_LEAD);
+    }
+
+    private static ByteBuffer hit(long utc)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(38);
+        buf.putInt(0, 38);
+        buf.putInt(4, PayloadRegistry.PAYLOAD_ID_DELTA_DOMHIT);
+        buf.putLong(8, 0x123456789abcL);
+        buf.putLong(24, utc);
+        return buf;
+    }
+
+    /**
+     * Returns a list of payloads, then <tt>null</tt> like the file readers.
+     */
+    private static class Reader
+        implements Iterator<ByteBuffer>
+    {
+        private final Iterator<ByteBuffer> iter;
+
+        Reader(List<ByteBuffer> list)
+        {
+            iter = list.iterator();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return iter.hasNext();
+        }
+
+        @Override
+        public ByteBuffer next()
+        {
+            if (!iter.hasNext()) {
+                return null;
+            }
+            return iter.next();
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Capture
+        implements HandlerOutputProcessor
+    {
+        final List<ByteBuffer> sent = new ArrayList<ByteBuffer>();
+        final CountDownLatch stopped = new CountDownLatch(1);
+        volatile int numStops;
+
+        @Override
+        public void send(ByteBuffer buf)
+        {
+            assertNotSame(FileHandler.END_OF_STREAM, buf);
+            sent.add(buf);
+        }
+
+        @Override
+        public void stop()
+        {
+            numStops++;
+            stopped.countDown();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package icecube.daq.replay;
+
+import icecube.daq.payload.PayloadRegistry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests MappedPayloadReader.java
+ */
+public class MappedPayloadReaderTest
+{
+    private static final int HIT_LENGTH = 38;
+
+    private File tempDir;
+
+    @BeforeClass
+    public static void setupLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+    }
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        tempDir = Files.createTempDirectory("mapped").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] list = tempDir.listFiles();
+        if (list != null) {
+            for (File f : list) {
+                f.delete();
+            }
+        }
+        tempDir.delete();
+    }
+
+    @Test
+    public void testRemap()
+        throws IOException
+    {
+        //
+        // Test that payloads which cross the mapping limit are read
+        // from a new region
+        //
+        File f = writeFile("hits.dat", times(1000, 10), 0);
+
+        // room for two and a half payloads per region
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(Arrays.asList(f), HIT_LENGTH * 5 / 2);
+        assertEquals(times(1000, 10), readTimes(rdr));
+        assertEquals(10, rdr.getNumberOfPayloads());
+    }
+
+    @Test
+    public void testPayloadLargerThanRegion()
+        throws IOException
+    {
+        //
+        // Test that payloads which cannot fit in a region end their
+        // file instead of remapping forever
+        //
+        File f0 = writeFile("hits-0.dat", times(1000, 3), 0);
+        File f1 = writeFile("hits-1.dat", times(2000, 2), 0);
+
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(Arrays.asList(f0, f1), HIT_LENGTH - 1);
+        assertEquals(times(2000, 0), readTimes(rdr));
+    }
+
+    @Test
+    public void testTruncated()
+        throws IOException
+    {
+        //
+        // Test that a truncated trailing payload is dropped and the
+        // next file is read
+        //
+        File f0 = writeFile("hits-0.dat", times(1000, 3), 20);
+        File f1 = writeFile("hits-1.dat", times(2000, 2), 0);
+
+        MappedPayloadReader rdr =
+            new MappedPayloadReader(Arrays.asList(f0, f1), HIT_LENGTH * 2);
+
+        List<Long> expected = times(1000, 3);
+        expected.addAll(times(2000, 2));
+        assertEquals(expected, readTimes(rdr));
+        assertEquals(2, rdr.getNumberOfFiles());
+    }
+
+    @Test
+    public void testPeekTime()
+        throws IOException
+    {
+        //
+        // Test that peeking does not consume the payload
+        //
+        File f = writeFile("hits.dat", times(500, 2), 0);
+
+        MappedPayloadReader rdr = new MappedPayloadReader(Arrays.asList(f));
+        assertEquals(500L, rdr.peekTime());
+        assertEquals(500L, rdr.peekTime());
+        assertEquals(500L, BBUTC.get(rdr.next()));
+        assertEquals(501L, rdr.peekTime());
+        assertEquals(501L, BBUTC.get(rdr.next()));
+        assertEquals(Long.MIN_VALUE, rdr.peekTime());
+        assertNull(rdr.next());
+        assertEquals(2, rdr.getNumberOfPayloads());
+    }
+
+    @Test
+    public void testPrivateMapping()
+        throws IOException
+    {
+        //
+        // Test that rewriting a payload time does not modify the file
+        //
+        File f = writeFile("hits.dat", times(700, 1), 0);
+
+        MappedPayloadReader rdr = new MappedPayloadReader(Arrays.asList(f));
+        ByteBuffer buf = rdr.next();
+        assertFalse(buf.isReadOnly());
+        BBUTC.set(buf, 9999L);
+        assertEquals(9999L, BBUTC.get(buf));
+
+        rdr = new MappedPayloadReader(Arrays.asList(f));
+        assertEquals(700L, BBUTC.get(rdr.next()));
+    }
+
+    @Test
+    public void testHitSpoolOrder()
+        throws IOException
+    {
+        //
+        // Test that hitspool files are read in order of their first
+        // payload time, not their file number, and that empty files
+        // are ignored
+        //
+        writeFile("HitSpool-0.dat", times(3000, 2), 0);
+        writeFile("HitSpool-1.dat", times(1000, 2), 0);
+        writeFile("HitSpool-2.dat", times(2000, 2), 0);
+        writeFile("HitSpool-3.dat", new ArrayList<Long>(), 0);
+        writeFile("other.dat", times(0, 2), 0);
+
+        MappedPayloadReader rdr = MappedPayloadReader.forHitSpool(tempDir, 0);
+        assertEquals(3, rdr.getNumberOfFiles());
+
+        List<Long> expected = times(1000, 2);
+        expected.addAll(times(2000, 2));
+        expected.addAll(times(3000, 2));
+        assertEquals(expected, readTimes(rdr));
+    }
+
+    @Test
+    public void testHitSpoolSkip()
+        throws IOException
+    {
+        //
+        // Test that skipped files are the earliest ones
+        //
+        writeFile("HitSpool-0.dat", times(3000, 2), 0);
+        writeFile("HitSpool-1.dat", times(1000, 2), 0);
+        writeFile("HitSpool-2.dat", times(2000, 2), 0);
+
+        MappedPayloadReader rdr = MappedPayloadReader.forHitSpool(tempDir, 2);
+        assertEquals(1, rdr.getNumberOfFiles());
+        assertEquals(times(3000, 2), readTimes(rdr));
+
+        rdr = MappedPayloadReader.forHitSpool(tempDir, 3);
+        assertEquals(0, rdr.getNumberOfFiles());
+        assertNull(rdr.next());
+    }
+
+    @Test
+    public void testHitSpoolMissing()
+        throws IOException
+    {
+        //
+        // Test that a directory without hitspool files has no reader
+        //
+        assertNull(MappedPayloadReader.forHitSpool(tempDir, 0));
+        assertNull(MappedPayloadReader.forHitSpool(new File(tempDir, "xxx"),
+                                                   0));
+    }
+
+    @Test
+    public void testStream()
+        throws IOException
+    {
+        //
+        // Test that numbered stream files are read up to the first gap
+        //
+        writeFile("moni-0.dat", times(100, 2), 0);
+        writeFile("moni-1.dat", times(200, 2), 0);
+        writeFile("moni-3.dat", times(400, 2), 0);
+
+        MappedPayloadReader rdr =
+            MappedPayloadReader.forStream(tempDir, "moni");
+        assertEquals(2, rdr.getNumberOfFiles());
+
+        List<Long> expected = times(100, 2);
+        expected.addAll(times(200, 2));
+        assertEquals(expected, readTimes(rdr));
+
+        assertNull(MappedPayloadReader.forStream(tempDir, "sn"));
+    }
+
+    @Test
+    public void testPrefetchThreadExits()
+        throws Exception
+    {
+        //
+        // Test that a single prefetch thread maps all the files and
+        // exits after the last one
+        //
+        List<File> files = new ArrayList<File>();
+        List<Long> expected = new ArrayList<Long>();
+        for (int i = 0; i < 8; i++) {
+            files.add(writeFile("hits-" + i + ".dat", times(i * 100, 3), 0));
+            expected.addAll(times(i * 100, 3));
+        }
+
+        MappedPayloadReader rdr = new MappedPayloadReader(files);
+        assertTrue(countPrefetchThreads() <= 1);
+        assertEquals(expected, readTimes(rdr));
+
+        for (int i = 0; i < 100 && countPrefetchThreads() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, countPrefetchThreads());
+    }
+
+    private static int countPrefetchThreads()
+    {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() &&
+                thread.getName().equals("MappedPayloadPrefetch"))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<Long> readTimes(MappedPayloadReader rdr)
+    {
+        List<Long> list = new ArrayList<Long>();
+        while (rdr.hasNext()) {
+            ByteBuffer buf = rdr.next();
+            assertEquals(HIT_LENGTH, buf.limit());
+            list.add(BBUTC.get(buf));
+        }
+        assertNull(rdr.next());
+        return list;
+    }
+
+    private static List<Long> times(long first, int count)
+    {
+        List<Long> list = new ArrayList<Long>();
+        for (int i = 0; i < count; i++) {
+            list.add(first + i);
+        }
+        return list;
+    }
+
+    private File writeFile(String name, List<Long> times, int partial)
+        throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(times.size() * HIT_LENGTH +
+                                             partial);
+        for (long utc : times) {
+            buf.put(hit(utc));
+        }
+        if (partial > 0) {
+            ByteBuffer last = hit(Long.MAX_VALUE);
+            last.limit(partial);
+            buf.put(last);
+        }
+
+        File f = new File(tempDir, name);
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write(buf.array());
+        }
+        return f;
+    }
+
+    private static ByteBuffer hit(long utc)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(HIT_LENGTH);
+        buf.putInt(0, HIT_LENGTH);
+        buf.putInt(4, PayloadRegistry.PAYLOAD_ID_DELTA_DOMHIT);
+        buf.putLong(8, 0x123456789abcL);
+        buf.putLong(24, utc);
+        return buf;
+    }
+}
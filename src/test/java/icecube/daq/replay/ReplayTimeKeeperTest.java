@@ -0,0 +1,326 @@
+package icecube.daq.replay;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ReplayTimeKeeper.java
+ */
+public class ReplayTimeKeeperTest
+{
+    private static final long NS_PER_SEC = 1000000000L;
+    private static final long TICKS_PER_SEC = 10000000000L;
+
+    @Test
+    public void testParseSpeed()
+    {
+        //
+        // Test the accepted replay speeds
+        //
+        assertEquals(ReplayTimeKeeper.UNTHROTTLED,
+                     ReplayTimeKeeper.parseSpeed("max"), 0.0);
+        assertEquals(ReplayTimeKeeper.UNTHROTTLED,
+                     ReplayTimeKeeper.parseSpeed(" MAX "), 0.0);
+        assertEquals(ReplayTimeKeeper.UNTHROTTLED,
+                     ReplayTimeKeeper.parseSpeed("Unthrottled"), 0.0);
+        assertEquals(1.0, ReplayTimeKeeper.parseSpeed("1"), 0.0);
+        assertEquals(2.5, ReplayTimeKeeper.parseSpeed("2.5"), 0.0);
+        assertEquals(0.25, ReplayTimeKeeper.parseSpeed(" 0.25"), 0.0);
+        assertEquals(0.0, ReplayTimeKeeper.parseSpeed("0"), 0.0);
+    }
+
+    @Test
+    public void testParseBadSpeed()
+    {
+        //
+        // Test that bad replay speeds are rejected
+        //
+        final String[] bad = { "", "fast", "-1", "-0.5", "NaN", "Infinity",
+                               "1.0x" };
+        for (String str : bad) {
+            try {
+                ReplayTimeKeeper.parseSpeed(str);
+                fail("Speed \"" + str + "\" should be rejected");
+            } catch (NumberFormatException nfe) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testBadConstructorSpeed()
+    {
+        //
+        // Test that the time keeper rejects bad speeds
+        //
+        final double[] bad = { -1.0, Double.NaN, Double.POSITIVE_INFINITY };
+        for (double speed : bad) {
+            try {
+                new ReplayTimeKeeper(1, speed, TICKS_PER_SEC);
+                fail("Speed " + speed + " should be rejected");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testRealTime()
+    {
+        //
+        // Test that payloads are due at their original spacing
+        //
+        FakeClock subject = new FakeClock(1.0);
+        assertTrue(subject.isThrottled());
+
+        // the first payload sets the time base
+        assertEquals(0L, subject.timeUntilDue(DataStreamType.HIT, 5000L));
+
+        assertEquals(NS_PER_SEC,
+                     subject.timeUntilDue(DataStreamType.HIT,
+                                          5000L + TICKS_PER_SEC));
+
+        subject.advance(NS_PER_SEC / 4);
+        assertEquals(NS_PER_SEC * 3 / 4,
+                     subject.timeUntilDue(DataStreamType.HIT,
+                                          5000L + TICKS_PER_SEC));
+
+        // a late payload has a negative wait
+        subject.advance(NS_PER_SEC);
+        assertEquals(-NS_PER_SEC / 4,
+                     subject.timeUntilDue(DataStreamType.HIT,
+                                          5000L + TICKS_PER_SEC));
+    }
+
+    @Test
+    public void testSpeedScaling()
+    {
+        //
+        // Test that the replay speed scales the time between payloads
+        //
+        final double[] speeds = { 0.5, 2.0, 10.0 };
+        for (double speed : speeds) {
+            FakeClock subject = new FakeClock(speed);
+            assertEquals(speed, subject.getSpeed(), 0.0);
+
+            assertEquals(0L, subject.timeUntilDue(DataStreamType.HIT, 0L));
+            assertEquals((long) (10 * NS_PER_SEC / speed),
+                         subject.timeUntilDue(DataStreamType.HIT,
+                                              10 * TICKS_PER_SEC));
+        }
+    }
+
+    @Test
+    public void testSharedClock()
+    {
+        //
+        // Test that all streams are paced against the same time base
+        //
+        FakeClock subject = new FakeClock(2.0);
+
+        assertEquals(0L, subject.timeUntilDue(DataStreamType.HIT, 0L));
+        subject.advance(NS_PER_SEC / 2);
+
+        // the moni stream does not get its own time base
+        assertEquals(-NS_PER_SEC / 2,
+                     subject.timeUntilDue(DataStreamType.MONI, 0L));
+        assertEquals(0L,
+                     subject.timeUntilDue(DataStreamType.MONI,
+                                          TICKS_PER_SEC));
+    }
+
+    @Test
+    public void testUnthrottled()
+    {
+        //
+        // Test that an unthrottled replay never waits
+        //
+        FakeClock subject = new FakeClock(ReplayTimeKeeper.UNTHROTTLED);
+        assertFalse(subject.isThrottled());
+
+        assertEquals(0L, subject.timeUntilDue(DataStreamType.HIT, 0L));
+        assertEquals(0L,
+                     subject.timeUntilDue(DataStreamType.HIT,
+                                          1000 * TICKS_PER_SEC));
+    }
+
+    @Test
+    public void testSkipGap()
+    {
+        //
+        // Test that skipping a gap moves the clock forward only
+        //
+        FakeClock subject = new FakeClock(1.0);
+
+        // skipping before the time base is set does nothing
+        subject.skipGap(100 * TICKS_PER_SEC, NS_PER_SEC);
+        assertEquals(0L, subject.timeUntilDue(DataStreamType.HIT, 0L));
+
+        final long gapTime = 100 * TICKS_PER_SEC;
+        assertEquals(100 * NS_PER_SEC,
+                     subject.timeUntilDue(DataStreamType.HIT, gapTime));
+
+        subject.skipGap(gapTime, NS_PER_SEC / 10);
+        assertEquals(NS_PER_SEC / 10,
+                     subject.timeUntilDue(DataStreamType.HIT, gapTime));
+
+        // a later skip to a longer delay is ignored
+        subject.skipGap(gapTime, NS_PER_SEC);
+        assertEquals(NS_PER_SEC / 10,
+                     subject.timeUntilDue(DataStreamType.HIT, gapTime));
+    }
+
+    @Test
+    public void testLockstep()
+        throws Exception
+    {
+        //
+        // Test that a fast stream is held until the slow stream is
+        // within the maximum lead
+        //
+        final FakeClock subject =
+            new FakeClock(ReplayTimeKeeper.UNTHROTTLED, TICKS_PER_SEC);
+
+        assertEquals(0L, subject.timeUntilDue(DataStreamType.MONI, 0L));
+
+        // the hit stream is exactly the maximum lead ahead
+        assertEquals(0L,
+                     subject.timeUntilDue(DataStreamType.HIT, TICKS_PER_SEC));
+
+        Waiter waiter = new Waiter(subject, DataStreamType.HIT,
+                                   3 * TICKS_PER_SEC);
+        waiter.start();
+        assertTrue(waiter.started.await(10, TimeUnit.SECONDS));
+        assertFalse("Hit stream was not held",
+                    waiter.done.await(100, TimeUnit.MILLISECONDS));
+
+        // the moni stream is still too far behind
+        assertEquals(0L,
+                     subject.timeUntilDue(DataStreamType.MONI,
+                                          TICKS_PER_SEC * 3 / 2));
+        assertFalse("Hit stream was not held",
+                    waiter.done.await(100, TimeUnit.MILLISECONDS));
+
+        assertEquals(0L,
+                     subject.timeUntilDue(DataStreamType.MONI,
+                                          2 * TICKS_PER_SEC));
+        assertTrue("Hit stream was not released",
+                   waiter.done.await(10, TimeUnit.SECONDS));
+        assertEquals(0L, waiter.result.get());
+    }
+
+    @Test
+    public void testFinishedReleases()
+        throws Exception
+    {
+        //
+        // Test that a finished stream does not hold back the others
+        //
+        final FakeClock subject =
+            new FakeClock(ReplayTimeKeeper.UNTHROTTLED, TICKS_PER_SEC);
+
+        assertEquals(0L, subject.timeUntilDue(DataStreamType.TCAL, 0L));
+
+        Waiter waiter = new Waiter(subject, DataStreamType.HIT,
+                                   10 * TICKS_PER_SEC);
+        waiter.start();
+        assertTrue(waiter.started.await(10, TimeUnit.SECONDS));
+        assertFalse("Hit stream was not held",
+                    waiter.done.await(100, TimeUnit.MILLISECONDS));
+
+        subject.finished(DataStreamType.TCAL);
+        assertTrue("Hit stream was not released",
+                   waiter.done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInterruptReleases()
+        throws Exception
+    {
+        //
+        // Test that interrupting a held stream releases it
+        //
+        final FakeClock subject =
+            new FakeClock(ReplayTimeKeeper.UNTHROTTLED, TICKS_PER_SEC);
+
+        assertEquals(0L, subject.timeUntilDue(DataStreamType.SN, 0L));
+
+        Waiter waiter = new Waiter(subject, DataStreamType.HIT,
+                                   10 * TICKS_PER_SEC);
+        waiter.start();
+        assertTrue(waiter.started.await(10, TimeUnit.SECONDS));
+        assertFalse("Hit stream was not held",
+                    waiter.done.await(100, TimeUnit.MILLISECONDS));
+
+        waiter.interrupt();
+        assertTrue("Hit stream was not released",
+                   waiter.done.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Time keeper with a clock which only moves when told to.
+     */
+    private static class FakeClock
+        extends ReplayTimeKeeper
+    {
+        private final AtomicLong nanos = new AtomicLong(123456789L);
+
+        FakeClock(double speed)
+        {
+            this(speed, ReplayTimeKeeper.DEFAULT_MAX_LEAD);
+        }
+
+        FakeClock(double speed, long maxLead)
+        {
+            super(1, speed, maxLead);
+        }
+
+        void advance(long ns)
+        {
+            nanos.addAndGet(ns);
+        }
+
+        @Override
+        long now()
+        {
+            return nanos.get();
+        }
+    }
+
+    /**
+     * Thread which waits for a payload to be due.
+     */
+    private static class Waiter
+        extends Thread
+    {
+        private final ReplayTimeKeeper keeper;
+        private final DataStreamType stream;
+        private final long daqTime;
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicLong result = new AtomicLong(Long.MIN_VALUE);
+
+        Waiter(ReplayTimeKeeper keeper, DataStreamType stream, long daqTime)
+        {
+            this.keeper = keeper;
+            this.stream = stream;
+            this.daqTime = daqTime;
+
+            setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            started.countDown();
+            result.set(keeper.timeUntilDue(stream, daqTime));
+            done.countDown();
+        }
+    }
+}
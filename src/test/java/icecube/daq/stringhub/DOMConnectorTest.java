@@ -0,0 +1,392 @@
+package icecube.daq.stringhub;
+
+import icecube.daq.domapp.AbstractDataCollector;
+import icecube.daq.domapp.CardPermits;
+import icecube.daq.domapp.DOMConfiguration;
+import icecube.daq.domapp.RunLevel;
+import icecube.daq.domapp.SimDataCollector;
+import icecube.daq.dor.DOMChannelInfo;
+import icecube.daq.monitoring.IRunMonitor;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests DOMConnector.java
+ */
+public class DOMConnectorTest
+{
+    private final List<AbstractDataCollector> collectors =
+        new ArrayList<AbstractDataCollector>();
+
+    private final Recorder recorder = new Recorder();
+
+    private final ExecutorService executor =
+        Executors.newSingleThreadExecutor();
+
+    @BeforeClass
+    public static void setupLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        for (AbstractDataCollector dc : collectors)
+        {
+            dc.signalShutdown();
+        }
+    }
+
+    @Test
+    public void testRunCycle() throws Exception
+    {
+        //
+        // simulated DOMs are configured, started and stopped
+        //
+        DOMConnector subject = new DOMConnector(16, new CardPermits(8));
+        DOMConfiguration config = new DOMConfiguration();
+        for (int card = 0; card < 2; card++)
+        {
+            for (int i = 0; i < 8; i++)
+            {
+                String mbid = String.format("%012x", 0x1000 * card + i);
+                DOMChannelInfo chan =
+                    new DOMChannelInfo(mbid, card, i / 2, i % 2 == 0 ? 'A' : 'B');
+                AbstractDataCollector dc = new SimDataCollector(chan, config,
+                    null, null, null, null, false);
+                collectors.add(dc);
+                subject.add(dc);
+            }
+        }
+
+        subject.configure();
+        assertAll(RunLevel.CONFIGURED);
+
+        subject.startProcessing();
+        for (AbstractDataCollector dc : collectors)
+        {
+            await(dc, RunLevel.RUNNING);
+        }
+
+        subject.stopProcessing();
+        assertAll(RunLevel.CONFIGURED);
+    }
+
+    @Test
+    public void testConfigureInReadyOrder() throws Exception
+    {
+        //
+        // each DOM is configured as soon as it is ready, without waiting
+        // for the DOMs ahead of it in the list as the old polling loop did
+        //
+        DOMConnector subject = new DOMConnector(4, new CardPermits(8));
+        ScriptedCollector[] doms = addDOMs(subject, 0, 4);
+
+        Future<?> configure = configure(subject);
+
+        doms[3].setRunLevel(RunLevel.IDLE);
+        await(doms[3], RunLevel.CONFIGURING);
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(RunLevel.INITIALIZING, doms[i].getRunLevel());
+        }
+
+        doms[1].setRunLevel(RunLevel.IDLE);
+        await(doms[1], RunLevel.CONFIGURING);
+        doms[3].setRunLevel(RunLevel.CONFIGURED);
+
+        doms[0].setRunLevel(RunLevel.IDLE);
+        doms[2].setRunLevel(RunLevel.IDLE);
+        await(doms[0], RunLevel.CONFIGURING);
+        await(doms[2], RunLevel.CONFIGURING);
+
+        doms[0].setRunLevel(RunLevel.CONFIGURED);
+        doms[1].setRunLevel(RunLevel.CONFIGURED);
+        assertFalse(configure.isDone());
+        doms[2].setRunLevel(RunLevel.CONFIGURED);
+
+        configure.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(doms[3].getName(), doms[1].getName(),
+                                   doms[0].getName(), doms[2].getName()),
+                     recorder.configured);
+        assertEquals(3, recorder.getMaxConfiguring(0));
+    }
+
+    @Test
+    public void testConfigureLimitPerCard() throws Exception
+    {
+        //
+        // no more than the limit configure at once on a card, cards
+        // proceed independently
+        //
+        CardPermits permits = new CardPermits(2);
+        DOMConnector subject = new DOMConnector(8, permits);
+        ScriptedCollector[] card0 = addDOMs(subject, 0, 4);
+        ScriptedCollector[] card1 = addDOMs(subject, 1, 4);
+
+        Future<?> configure = configure(subject);
+
+        for (ScriptedCollector dc : card0)
+        {
+            dc.setRunLevel(RunLevel.IDLE);
+        }
+
+        // the connector handles events in order, so card 0 has been
+        // seen once a card 1 DOM is configuring
+        card1[0].setRunLevel(RunLevel.IDLE);
+        await(card1[0], RunLevel.CONFIGURING);
+        assertEquals(RunLevel.CONFIGURING, card0[0].getRunLevel());
+        assertEquals(RunLevel.CONFIGURING, card0[1].getRunLevel());
+        assertEquals(RunLevel.IDLE, card0[2].getRunLevel());
+        assertEquals(RunLevel.IDLE, card0[3].getRunLevel());
+
+        card0[1].setRunLevel(RunLevel.CONFIGURED);
+        await(card0[2], RunLevel.CONFIGURING);
+        assertEquals(RunLevel.IDLE, card0[3].getRunLevel());
+
+        for (int i = 1; i < card1.length; i++)
+        {
+            card1[i].setRunLevel(RunLevel.IDLE);
+        }
+        await(card1[1], RunLevel.CONFIGURING);
+        assertEquals(RunLevel.IDLE, card1[2].getRunLevel());
+        for (ScriptedCollector[] card : new ScriptedCollector[][] {card1, card0})
+        {
+            for (ScriptedCollector dc : card)
+            {
+                await(dc, RunLevel.CONFIGURING, RunLevel.CONFIGURED);
+                dc.setRunLevel(RunLevel.CONFIGURED);
+            }
+        }
+
+        configure.get(10, TimeUnit.SECONDS);
+        assertAll(RunLevel.CONFIGURED);
+        assertEquals(2, recorder.getMaxConfiguring(0));
+        assertEquals(2, recorder.getMaxConfiguring(1));
+        assertEquals(2, permits.forCard(0).availablePermits());
+        assertEquals(2, permits.forCard(1).availablePermits());
+    }
+
+    @Test
+    public void testInitializationHoldsPermit() throws Exception
+    {
+        //
+        // a DOM initializing on its own thread holds a permit from the
+        // same limit as configure
+        //
+        CardPermits permits = new CardPermits(1);
+        DOMConnector subject = new DOMConnector(3, permits);
+        ScriptedCollector[] card0 = addDOMs(subject, 0, 2);
+        ScriptedCollector[] card1 = addDOMs(subject, 1, 1);
+
+        // card0[0] is softbooting
+        permits.forCard(0).acquire();
+
+        Future<?> configure = configure(subject);
+
+        card0[1].setRunLevel(RunLevel.IDLE);
+        card1[0].setRunLevel(RunLevel.IDLE);
+        await(card1[0], RunLevel.CONFIGURING);
+        assertEquals(RunLevel.IDLE, card0[1].getRunLevel());
+
+        // as DataCollector does, the permit is released before idling
+        permits.forCard(0).release();
+        card0[0].setRunLevel(RunLevel.IDLE);
+        await(card0[1], RunLevel.CONFIGURING);
+        assertEquals(RunLevel.IDLE, card0[0].getRunLevel());
+
+        card0[1].setRunLevel(RunLevel.CONFIGURED);
+        await(card0[0], RunLevel.CONFIGURING);
+        card0[0].setRunLevel(RunLevel.CONFIGURED);
+        card1[0].setRunLevel(RunLevel.CONFIGURED);
+
+        configure.get(10, TimeUnit.SECONDS);
+        assertEquals(1, recorder.getMaxConfiguring(0));
+        assertEquals(1, permits.forCard(0).availablePermits());
+        assertEquals(1, permits.forCard(1).availablePermits());
+    }
+
+    @Test
+    public void testInterruptReturnsPermits() throws Exception
+    {
+        //
+        // permits held for DOMs which are still configuring are returned
+        // when configure is interrupted
+        //
+        CardPermits permits = new CardPermits(2);
+        DOMConnector subject = new DOMConnector(3, permits);
+        ScriptedCollector[] doms = addDOMs(subject, 0, 3);
+
+        Future<?> configure = configure(subject);
+
+        for (ScriptedCollector dc : doms)
+        {
+            dc.setRunLevel(RunLevel.IDLE);
+        }
+        await(doms[0], RunLevel.CONFIGURING);
+        await(doms[1], RunLevel.CONFIGURING);
+
+        configure.cancel(true);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(2, permits.forCard(0).availablePermits());
+    }
+
+    private Future<?> configure(final DOMConnector subject)
+    {
+        return executor.submit(() -> {
+            subject.configure();
+            return null;
+        });
+    }
+
+    private ScriptedCollector[] addDOMs(DOMConnector subject, int card,
+                                        int count)
+    {
+        ScriptedCollector[] doms = new ScriptedCollector[count];
+        for (int i = 0; i < count; i++)
+        {
+            doms[i] = new ScriptedCollector(card, i, recorder);
+            collectors.add(doms[i]);
+            subject.add(doms[i]);
+        }
+        return doms;
+    }
+
+    private static void await(AbstractDataCollector dc, RunLevel... levels)
+        throws Exception
+    {
+        final List<RunLevel> accepted = Arrays.asList(levels);
+        dc.whenRunLevel(accepted::contains).get(10, TimeUnit.SECONDS);
+    }
+
+    private void assertAll(RunLevel expected)
+    {
+        for (AbstractDataCollector dc : collectors)
+        {
+            assertEquals(dc.getName(), expected, dc.getRunLevel());
+        }
+    }
+
+    /**
+     * Counts the DOMs configuring on each card.
+     */
+    private static class Recorder
+    {
+        final List<String> configured = new ArrayList<String>();
+        private final Map<Integer, Integer> configuring =
+            new HashMap<Integer, Integer>();
+        private final Map<Integer, Integer> maxConfiguring =
+            new HashMap<Integer, Integer>();
+
+        synchronized void record(AbstractDataCollector dc, RunLevel from,
+                                 RunLevel to)
+        {
+            final int card = dc.getCard();
+            if (to == RunLevel.CONFIGURING && from != RunLevel.CONFIGURING)
+            {
+                configured.add(dc.getName());
+                int count = configuring.merge(card, 1, Integer::sum);
+                maxConfiguring.merge(card, count, Math::max);
+            }
+            else if (from == RunLevel.CONFIGURING && to != RunLevel.CONFIGURING)
+            {
+                configuring.merge(card, -1, Integer::sum);
+            }
+        }
+
+        synchronized int getMaxConfiguring(int card)
+        {
+            return maxConfiguring.getOrDefault(card, 0);
+        }
+    }
+
+    /**
+     * A collector without a thread, moved between run levels by the test.
+     */
+    private static class ScriptedCollector
+        extends AbstractDataCollector
+    {
+        private final Recorder recorder;
+
+        ScriptedCollector(int card, int index, Recorder recorder)
+        {
+            super(card, index / 2, index % 2 == 0 ? 'A' : 'B');
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void setRunLevel(RunLevel runLevel)
+        {
+            synchronized (this)
+            {
+                recorder.record(this, getRunLevel(), runLevel);
+                super.setRunLevel(runLevel);
+            }
+        }
+
+        @Override
+        public void signalShutdown()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public long getNumHits()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getNumMoni()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getNumTcal()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getNumSupernova()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getAcquisitionLoopCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public void setRunMonitor(IRunMonitor runMonitor)
+        {
+        }
+    }
+}
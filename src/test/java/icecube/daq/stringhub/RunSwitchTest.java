@@ -0,0 +1,227 @@
+package icecube.daq.stringhub;
+
+import icecube.daq.bindery.BufferConsumer;
+import icecube.daq.bindery.MultiChannelMergeSort;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests RunSwitch.java
+ */
+public class RunSwitchTest
+{
+    private static final long SECOND = 10000000000L;
+
+    @BeforeClass
+    public static void setupLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+    }
+
+    @Test
+    public void testNextBoundary()
+    {
+        //
+        // Test that the cut is the first aligned boundary past the lead
+        //
+        RunSwitch subject = new RunSwitch(2 * SECOND, SECOND);
+        assertEquals(3 * SECOND, subject.nextBoundary(SECOND));
+        assertEquals(4 * SECOND, subject.nextBoundary(SECOND + 1));
+        assertEquals(4 * SECOND, subject.nextBoundary(2 * SECOND - 1));
+
+        subject = new RunSwitch(0, SECOND);
+        assertEquals(SECOND, subject.nextBoundary(SECOND));
+        assertEquals(0, subject.nextBoundary(0));
+    }
+
+    @Test
+    public void testCut() throws Exception
+    {
+        //
+        // Test that the stream switches before delivering the first
+        // record at or after the cut
+        //
+        RunSwitch subject = new RunSwitch(SECOND, SECOND);
+        final Capture target = new Capture();
+        final List<Long> switches = new ArrayList<Long>();
+        RunSwitch.Stream stream = subject.stream("hit", target,
+                (runNumber, cutUTC) -> {
+                    assertEquals(124, runNumber);
+                    switches.add(cutUTC);
+                    switches.add((long) target.utcs.size());
+                });
+        subject.start(123);
+
+        stream.consume(record(SECOND / 2));
+        stream.consume(record(SECOND + 7));
+        assertEquals(SECOND + 7, subject.getLatestUTC());
+
+        assertEquals(3 * SECOND, subject.arm(124));
+        stream.consume(record(2 * SECOND));
+        stream.consume(record(3 * SECOND - 1));
+        assertEquals(123, stream.getRunNumber());
+        assertEquals(-1, stream.getCutUTC());
+        assertEquals(4, stream.getRunRecords());
+
+        stream.consume(record(3 * SECOND + 5));
+        stream.consume(record(4 * SECOND));
+        assertEquals(124, stream.getRunNumber());
+        assertEquals(3 * SECOND, stream.getCutUTC());
+        assertEquals(2, stream.getRunRecords());
+
+        assertEquals(2, switches.size());
+        assertEquals(3 * SECOND, (long) switches.get(0));
+        assertEquals(4, (long) switches.get(1));
+        assertEquals(6, target.utcs.size());
+    }
+
+    @Test
+    public void testRecordAtCut() throws Exception
+    {
+        //
+        // Test that a record at the cut belongs to the new run
+        //
+        RunSwitch subject = new RunSwitch(SECOND, SECOND);
+        Capture target = new Capture();
+        RunSwitch.Stream stream = subject.stream("hit", target, null);
+        subject.start(1);
+
+        subject.arm(2, 5 * SECOND);
+        stream.consume(record(5 * SECOND - 1));
+        assertEquals(1, stream.getRunNumber());
+        stream.consume(record(5 * SECOND));
+        assertEquals(2, stream.getRunNumber());
+        assertEquals(1, stream.getRunRecords());
+    }
+
+    @Test
+    public void testStreamsShareCut() throws Exception
+    {
+        //
+        // Test that lagging streams switch at the same cut time
+        //
+        RunSwitch subject = new RunSwitch(2 * SECOND, SECOND);
+        RunSwitch.Stream hits = subject.stream("hit", new Capture(), null);
+        RunSwitch.Stream moni = subject.stream("moni", new Capture(), null);
+        subject.start(10);
+
+        hits.consume(record(10 * SECOND + 3));
+        moni.consume(record(7 * SECOND));
+        assertEquals(13 * SECOND, subject.arm(11));
+
+        for (long utc = 7 * SECOND; utc < 15 * SECOND; utc += SECOND / 3)
+        {
+            hits.consume(record(utc + 3 * SECOND));
+            moni.consume(record(utc));
+        }
+
+        assertEquals(11, hits.getRunNumber());
+        assertEquals(11, moni.getRunNumber());
+        assertEquals(13 * SECOND, hits.getCutUTC());
+        assertEquals(13 * SECOND, moni.getCutUTC());
+    }
+
+    @Test
+    public void testEndOfStream() throws Exception
+    {
+        //
+        // Test that the end of stream does not switch an armed stream
+        //
+        RunSwitch subject = new RunSwitch(SECOND, SECOND);
+        Capture target = new Capture();
+        RunSwitch.Stream stream = subject.stream("hit", target, null);
+        subject.start(5);
+
+        stream.consume(record(SECOND));
+        subject.arm(6);
+        stream.consume(MultiChannelMergeSort.eos(0));
+
+        assertEquals(5, stream.getRunNumber());
+        assertEquals(2, target.utcs.size());
+        assertEquals(Long.MAX_VALUE, (long) target.utcs.get(1));
+    }
+
+    @Test
+    public void testRearm() throws Exception
+    {
+        //
+        // Test that arming again replaces a switch which was not reached
+        //
+        RunSwitch subject = new RunSwitch(SECOND, SECOND);
+        RunSwitch.Stream stream = subject.stream("hit", new Capture(), null);
+        subject.start(1);
+
+        subject.arm(2, 5 * SECOND);
+        subject.arm(3, 6 * SECOND);
+        stream.consume(record(5 * SECOND));
+        assertEquals(1, stream.getRunNumber());
+        stream.consume(record(6 * SECOND));
+        assertEquals(3, stream.getRunNumber());
+
+        subject.start(7);
+        assertEquals(7, stream.getRunNumber());
+        assertEquals(-1, stream.getCutUTC());
+    }
+
+    @Test
+    public void testArmBeforeFirstRecord() throws Exception
+    {
+        //
+        // Test that a cut at zero switches each stream at its first record
+        //
+        RunSwitch subject = new RunSwitch(SECOND, SECOND);
+        RunSwitch.Stream hits = subject.stream("hit", new Capture(), null);
+        RunSwitch.Stream moni = subject.stream("moni", new Capture(), null);
+        subject.start(1);
+
+        subject.arm(2, 0);
+        hits.consume(record(SECOND));
+        assertEquals(2, hits.getRunNumber());
+        assertEquals(0, hits.getCutUTC());
+        assertEquals(1, hits.getRunRecords());
+        assertEquals(1, moni.getRunNumber());
+
+        moni.consume(record(SECOND / 2));
+        assertEquals(2, moni.getRunNumber());
+
+        // the cut is cleared, so a later record does not switch again
+        hits.consume(record(2 * SECOND));
+        assertEquals(2, hits.getRunRecords());
+    }
+
+    private static ByteBuffer record(final long utc)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(38);
+        buf.putInt(0, 38);
+        buf.putInt(4, 3);
+        buf.putLong(8, 0x123456789abcL);
+        buf.putLong(24, utc);
+        return buf;
+    }
+
+    private static class Capture implements BufferConsumer
+    {
+        final List<Long> utcs = new ArrayList<Long>();
+
+        @Override
+        public void consume(final ByteBuffer buf)
+        {
+            utcs.add(buf.getLong(24));
+        }
+
+        @Override
+        public void endOfStream(final long mbid)
+        {
+            throw new Error("Only used by PrioritySort");
+        }
+    }
+}
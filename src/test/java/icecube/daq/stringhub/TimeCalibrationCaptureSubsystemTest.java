@@ -0,0 +1,354 @@
+package icecube.daq.stringhub;
+
+import icecube.daq.stringhub.TimeCalibrationCaptureSubsystem.AsyncFilePersistence;
+import icecube.daq.stringhub.TimeCalibrationCaptureSubsystem.CaptureAdapter;
+import icecube.daq.stringhub.TimeCalibrationCaptureSubsystem.ChannelOpener;
+import icecube.daq.stringhub.TimeCalibrationCaptureSubsystem.Filter;
+import icecube.daq.stringhub.TimeCalibrationCaptureSubsystem.FullPolicy;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests TimeCalibrationCaptureSubsystem.java
+ */
+public class TimeCalibrationCaptureSubsystemTest
+{
+    private static final int PAYLOAD_BYTES = 100;
+
+    private Path directory;
+
+    @BeforeClass
+    public static void setupLogging()
+    {
+        BasicConfigurator.resetConfiguration();
+        BasicConfigurator.configure(new NullAppender());
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        if(directory != null)
+        {
+            for (Path file : Files.newDirectoryStream(directory))
+            {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testCapture() throws IOException
+    {
+        //
+        // Test that payloads written through a reused buffer are captured
+        // to the current file in group commits, rotating the prior file
+        //
+        directory = Files.createTempDirectory("tcal-capture");
+        Files.write(directory.resolve("current.dat"), new byte[] {1, 2, 3});
+
+        final CountingOpener opener = new CountingOpener();
+        final TimeCalibrationCaptureSubsystem.TimeCalibrationCapture capture =
+                new TimeCalibrationCaptureSubsystem.TimeCalibrationCapture(
+                        directory, new Filter.AllFilter());
+        AsyncFilePersistence persistence = new AsyncFilePersistence(
+                new ChannelOpener()
+                {
+                    @Override
+                    public GatheringByteChannel open() throws IOException
+                    {
+                        capture.manageFiles();
+                        return opener.open(directory.resolve("current.dat"));
+                    }
+                }, new Filter.AllFilter(), 1024, 4, FullPolicy.BLOCK, 1000);
+        CaptureAdapter adapter = new CaptureAdapter(persistence);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteBuffer scratch = ByteBuffer.allocate(PAYLOAD_BYTES);
+        for (int i = 0; i < 500; i++)
+        {
+            fill(scratch, i, 0x123456789abcL);
+            expected.write(scratch.array(), 0, PAYLOAD_BYTES);
+            assertEquals(PAYLOAD_BYTES, adapter.write(scratch));
+        }
+        adapter.close();
+        assertFalse(adapter.isOpen());
+
+        assertArrayEquals(new byte[] {1, 2, 3},
+                Files.readAllBytes(directory.resolve("last.dat")));
+        assertArrayEquals(expected.toByteArray(),
+                Files.readAllBytes(directory.resolve("current.dat")));
+
+        assertEquals(500, persistence.getCapturedCount());
+        assertEquals(0, persistence.getDroppedCount());
+        assertEquals(500 * PAYLOAD_BYTES, persistence.getWrittenBytes());
+        assertTrue(persistence.getCommitCount() <= opener.writes);
+        assertTrue(opener.writes < 500);
+    }
+
+    @Test
+    public void testFilter() throws IOException
+    {
+        //
+        // Test that only payloads of selected DOMs are captured
+        //
+        MemoryChannel channel = new MemoryChannel(new CountDownLatch(0));
+        AsyncFilePersistence persistence = new AsyncFilePersistence(channel,
+                new Filter.MbidFilter(new long[] {11, 13}), 1024, 4,
+                FullPolicy.DROP, 1000);
+
+        ByteBuffer scratch = ByteBuffer.allocate(PAYLOAD_BYTES);
+        for (int i = 0; i < 20; i++)
+        {
+            fill(scratch, i, 10 + (i % 5));
+            persistence.receiveByteBuffer(scratch);
+        }
+        persistence.sendLastAndStop();
+
+        assertEquals(8, persistence.getCapturedCount());
+        byte[] data = channel.data.toByteArray();
+        assertEquals(8 * PAYLOAD_BYTES, data.length);
+        for (int i = 0; i < 8; i++)
+        {
+            long mbid = ByteBuffer.wrap(data).getLong(i * PAYLOAD_BYTES + 16);
+            assertTrue(mbid == 11 || mbid == 13);
+        }
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception
+    {
+        //
+        // Test that a partial segment is written after the flush interval
+        //
+        MemoryChannel channel = new MemoryChannel(new CountDownLatch(0));
+        AsyncFilePersistence persistence = new AsyncFilePersistence(channel,
+                new Filter.AllFilter(), 1024, 4, FullPolicy.DROP, 50);
+
+        ByteBuffer scratch = ByteBuffer.allocate(PAYLOAD_BYTES);
+        for (int i = 0; i < 3; i++)
+        {
+            fill(scratch, i, 1);
+            persistence.receiveByteBuffer(scratch);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (persistence.getWrittenBytes() < 3 * PAYLOAD_BYTES &&
+                System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(3 * PAYLOAD_BYTES, persistence.getWrittenBytes());
+        assertTrue(channel.isOpen());
+
+        persistence.sendLastAndStop();
+        assertEquals(3 * PAYLOAD_BYTES, channel.data.size());
+    }
+
+    @Test
+    public void testDropPolicy() throws Exception
+    {
+        //
+        // Test that payloads are dropped and counted while the writer is
+        // stalled, without blocking the stream
+        //
+        CountDownLatch stall = new CountDownLatch(1);
+        MemoryChannel channel = new MemoryChannel(stall);
+        AsyncFilePersistence persistence = new AsyncFilePersistence(channel,
+                new Filter.AllFilter(), 1000, 2, FullPolicy.DROP, 1000);
+
+        ByteBuffer scratch = ByteBuffer.allocate(PAYLOAD_BYTES);
+        for (int i = 0; i < 100; i++)
+        {
+            fill(scratch, i, 1);
+            persistence.receiveByteBuffer(scratch);
+        }
+        assertTrue(persistence.getDroppedCount() > 0);
+        assertEquals(100, persistence.getCapturedCount() +
+                persistence.getDroppedCount());
+
+        stall.countDown();
+        persistence.sendLastAndStop();
+        assertEquals(persistence.getCapturedCount() * PAYLOAD_BYTES,
+                channel.data.size());
+    }
+
+    @Test
+    public void testBlockPolicy() throws Exception
+    {
+        //
+        // Test that the stream blocks while the writer is stalled and
+        // nothing is dropped
+        //
+        CountDownLatch stall = new CountDownLatch(1);
+        MemoryChannel channel = new MemoryChannel(stall);
+        final AsyncFilePersistence persistence = new AsyncFilePersistence(
+                channel, new Filter.AllFilter(), 1000, 2, FullPolicy.BLOCK,
+                1000);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread stream = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                ByteBuffer scratch = ByteBuffer.allocate(PAYLOAD_BYTES);
+                for (int i = 0; i < 100; i++)
+                {
+                    fill(scratch, i, 1);
+                    persistence.receiveByteBuffer(scratch);
+                }
+                done.countDown();
+            }
+        };
+        stream.start();
+
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        stall.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        persistence.sendLastAndStop();
+        assertEquals(100, persistence.getCapturedCount());
+        assertEquals(0, persistence.getDroppedCount());
+        assertEquals(100 * PAYLOAD_BYTES, channel.data.size());
+    }
+
+    /**
+     * Fill a payload in the secondary stream tcal format.
+     */
+    private static void fill(ByteBuffer buf, int seq, long mbid)
+    {
+        buf.clear();
+        buf.putInt(PAYLOAD_BYTES);
+        buf.putInt(4);
+        buf.putLong(seq);
+        buf.putLong(mbid);
+        while (buf.hasRemaining())
+        {
+            buf.put((byte) (seq + buf.position()));
+        }
+        buf.flip();
+    }
+
+    /**
+     * Opens file channels, counting the writes.
+     */
+    private static class CountingOpener
+    {
+        int writes;
+
+        GatheringByteChannel open(final Path file) throws IOException
+        {
+            final GatheringByteChannel delegate =
+                    java.nio.channels.FileChannel.open(file,
+                            java.nio.file.StandardOpenOption.CREATE_NEW,
+                            java.nio.file.StandardOpenOption.WRITE);
+            return new MemoryChannel(new CountDownLatch(0))
+            {
+                @Override
+                public long write(final ByteBuffer[] srcs, final int offset,
+                                  final int length) throws IOException
+                {
+                    writes++;
+                    return delegate.write(srcs, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    super.close();
+                    delegate.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * A channel holding written data in memory, writes wait for a latch.
+     */
+    private static class MemoryChannel
+            implements GatheringByteChannel, ChannelOpener
+    {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final CountDownLatch stall;
+        private volatile boolean open = true;
+
+        MemoryChannel(final CountDownLatch stall)
+        {
+            this.stall = stall;
+        }
+
+        @Override
+        public GatheringByteChannel open()
+        {
+            return this;
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offset,
+                          final int length) throws IOException
+        {
+            try
+            {
+                stall.await();
+            }
+            catch (InterruptedException e)
+            {
+                throw new IOException(e);
+            }
+
+            long written = 0;
+            for (int i = offset; i < offset + length; i++)
+            {
+                written += write(srcs[i]);
+            }
+            return written;
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs) throws IOException
+        {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(final ByteBuffer src)
+        {
+            int length = src.remaining();
+            byte[] bytes = new byte[length];
+            src.get(bytes);
+            synchronized (data)
+            {
+                data.write(bytes, 0, length);
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            open = false;
+        }
+    }
+}
@@ -129,6 +129,80 @@ public class GPSCollectorTest
 
     }
 
+    @Test
+    public void testConcurrentReaders()
+            throws InterruptedException, GPSServiceError
+    {
+        //
+        // Readers poll the published snapshot while the collector
+        // updates it, every reading is a complete, valid reading
+        //
+        MockGPSDriver driver = new MockGPSDriver();
+        DSBGPSService base = new DSBGPSService(driver);
+
+        final DSBGPSService.GPSCollector subject =
+                base.new GPSCollector(driver, 0);
+
+        driver.setMode(MockGPSDriver.Mode.Value);
+        driver.setValue(generateGPSInfo("001:22:33:44", 1231235L));
+
+        subject.startup();
+        assertTrue("should be ready", subject.waitForReady(NOMINAL_WAIT_MILLIS));
+        long initialVersion = subject.getVersion();
+
+        final long expectedOffset = subject.getGps().getOffset().in_0_1ns();
+        final int[] errors = new int[1];
+        final long[] reads = new long[4];
+        Thread[] readers = new Thread[reads.length];
+        for (int i = 0; i < readers.length; i++)
+        {
+            final int idx = i;
+            readers[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    long stop = System.currentTimeMillis() + NOMINAL_SLEEP_MILLIS;
+                    while (System.currentTimeMillis() < stop)
+                    {
+                        try
+                        {
+                            GPSInfo gps = subject.getGps();
+                            if(gps.getOffset().in_0_1ns() != expectedOffset)
+                            {
+                                synchronized (errors) { errors[0]++; }
+                            }
+                            reads[idx]++;
+                        }
+                        catch (GPSServiceError gpsServiceError)
+                        {
+                            synchronized (errors) { errors[0]++; }
+                        }
+                    }
+                }
+            };
+            readers[i].start();
+        }
+
+        //advance GPS and DOR the same amount
+        driver.setValue(generateGPSInfo("001:22:33:45", 1231235L + 20000000));
+
+        for (Thread reader : readers)
+        {
+            reader.join();
+        }
+
+        assertEquals("no errors expected", 0, errors[0]);
+        for (long count : reads)
+        {
+            assertTrue("reads expected", count > 0);
+        }
+        assertTrue("updates expected", subject.getVersion() > initialVersion);
+        assertEquals("", "001:22:33:45", subject.getGps().getTimestring() );
+
+        subject.shutdown();
+    }
+
     @Test
     public void testBadShutdown()
             throws InterruptedException, GPSServiceError